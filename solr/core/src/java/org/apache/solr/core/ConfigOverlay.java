@@ -194,6 +194,20 @@ public class ConfigOverlay implements MapSerializable {
       "      autowarmCount:20," +
       "      maxRamMB:20," +
       "      regenerator:0}," +
+      "    segmentFilterCache:{" +
+      "      class:0," +
+      "      size:0," +
+      "      initialSize:20," +
+      "      autowarmCount:20," +
+      "      maxRamMB:20," +
+      "      regenerator:0}," +
+      "    joinCache:{" +
+      "      class:0," +
+      "      size:0," +
+      "      initialSize:20," +
+      "      autowarmCount:20," +
+      "      maxRamMB:20," +
+      "      regenerator:0}," +
       "    queryResultCache:{" +
       "      class:0," +
       "      size:20," +
@@ -34,6 +34,7 @@ import org.apache.solr.handler.admin.LoggingHandler;
 import org.apache.solr.handler.admin.LukeRequestHandler;
 import org.apache.solr.handler.admin.PluginInfoHandler;
 import org.apache.solr.handler.admin.PropertiesRequestHandler;
+import org.apache.solr.handler.admin.RunningQueriesHandler;
 import org.apache.solr.handler.admin.SegmentsInfoRequestHandler;
 import org.apache.solr.handler.admin.ShowFileRequestHandler;
 import org.apache.solr.handler.admin.SolrInfoMBeanHandler;
@@ -93,6 +94,7 @@ public class ImplicitPlugins {
     ping.initArgs.add(INVARIANTS, new NamedList<>(makeMap("echoParams", "all", "q", "{!lucene}*:*")));
     implicits.add(ping);
     implicits.add(getReqHandlerInfo("/admin/segments", SegmentsInfoRequestHandler.class, null));
+    implicits.add(getReqHandlerInfo("/admin/queries", RunningQueriesHandler.class, null));
     return implicits;
   }
 
@@ -252,6 +252,8 @@ public class SolrConfig extends Config implements MapSerializable {
 
 
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
+    segmentFilterCacheConfig = CacheConfig.getConfig(this, "query/segmentFilterCache");
+    joinCacheConfig = CacheConfig.getConfig(this, "query/joinCache");
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
     documentCacheConfig = CacheConfig.getConfig(this, "query/documentCache");
     CacheConfig conf = CacheConfig.getConfig(this, "query/fieldValueCache");
@@ -468,6 +470,8 @@ public class SolrConfig extends Config implements MapSerializable {
 //  public final float filtOptThreshold;
   // SolrIndexSearcher - caches configurations
   public final CacheConfig filterCacheConfig;
+  public final CacheConfig segmentFilterCacheConfig;
+  public final CacheConfig joinCacheConfig;
   public final CacheConfig queryResultCacheConfig;
   public final CacheConfig documentCacheConfig;
   public final CacheConfig fieldValueCacheConfig;
@@ -873,7 +877,7 @@ public class SolrConfig extends Config implements MapSerializable {
     }
 
 
-    addCacheConfig(m, filterCacheConfig, queryResultCacheConfig, documentCacheConfig, fieldValueCacheConfig);
+    addCacheConfig(m, filterCacheConfig, segmentFilterCacheConfig, joinCacheConfig, queryResultCacheConfig, documentCacheConfig, fieldValueCacheConfig);
     if (jmxConfig != null) result.put("jmx", jmxConfig.toMap());
     m = new LinkedHashMap();
     result.put("requestDispatcher", m);
@@ -86,6 +86,7 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.IndexSchemaFactory;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
+import org.apache.solr.search.CancellableQueries;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheMBean;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -187,6 +188,13 @@ public final class SolrCore implements SolrInfoMBean, Closeable {
     return restManager;
   }
 
+  private final CancellableQueries cancellableQueries = new CancellableQueries();
+
+  /** The running requests of this core that can be cancelled. */
+  public CancellableQueries getCancellableQueries() {
+    return cancellableQueries;
+  }
+
   static int boolean_query_max_clause_count = Integer.MIN_VALUE;
   
   // only change the BooleanQuery maxClauseCount once for ALL cores...
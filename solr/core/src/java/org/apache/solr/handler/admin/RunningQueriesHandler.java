@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.admin;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.CancellableQueries;
+
+import static org.apache.solr.common.params.CommonParams.QUERY_ID;
+
+/**
+ * Lists the running requests of the core that were sent with a
+ * {@link org.apache.solr.common.params.CommonParams#QUERY_ID}, and cancels those given with the
+ * <code>cancel</code> parameter.  A cancelled request stops at its next check and returns what it
+ * computed so far, flagged with <code>partialResults</code>.
+ * <p>
+ * For a distributed request, the id is passed on to the shards: it is the shard requests that are
+ * cancelled, by sending the cancellation to the cores that serve them.
+ *
+ * @see CancellableQueries
+ */
+public class RunningQueriesHandler extends RequestHandlerBase {
+  public static final String CANCEL = "cancel";
+
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    CancellableQueries queries = req.getCore().getCancellableQueries();
+    String[] toCancel = req.getParams().getParams(CANCEL);
+    if (toCancel != null) {
+      NamedList<Boolean> cancelled = new SimpleOrderedMap<>();
+      for (String queryId : toCancel) {
+        cancelled.add(queryId, queries.cancel(queryId));
+      }
+      rsp.add("cancelled", cancelled);
+    }
+    rsp.add(QUERY_ID + "s", queries.getQueryIds());
+    rsp.setHttpCaching(false);
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+  @Override
+  public String getDescription() {
+    return "List and cancel the running requests";
+  }
+}
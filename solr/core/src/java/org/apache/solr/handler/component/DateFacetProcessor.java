@@ -35,6 +35,7 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.TrieDateField;
 import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.util.DateMathParser;
 import org.apache.solr.util.DateFormatUtil;
@@ -247,6 +248,7 @@ public class DateFacetProcessor extends SimpleFacets {
   @Deprecated
   protected int rangeCount(ParsedParams parsed, SchemaField sf, Date low, Date high,
                            boolean iLow, boolean iHigh) throws IOException {
+    SolrQueryTimeoutImpl.exitIfNeeded();
     String lowStr = (low == null) ? null : DateFormatUtil.formatExternal(low);
     String highStr = (high == null) ? null : DateFormatUtil.formatExternal(high);
     Query rangeQ = sf.getType().getRangeQuery(null, sf, lowStr, highStr, iLow, iHigh);
@@ -85,6 +85,8 @@ import org.apache.solr.search.CollapsingQParserPlugin;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.ExpandedGroups;
+import org.apache.solr.search.PostFilter;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrConstantScoreQuery;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -106,6 +108,8 @@ import org.apache.solr.util.plugin.SolrCoreAware;
  * expand.q=*:* (optional, overrides the main query)<br>
  * expand.fq=type:child (optional, overrides the main filter queries)<br>
  * expand.field=field (mandatory if the not used with the CollapsingQParserPlugin)<br>
+ * expand.singlePass=true (optional, gathers the groups while collapsing by score rather than running the query again,
+ * when none of expand.sort, expand.q, expand.fq and expand.field are used)<br>
  */
 public class ExpandComponent extends SearchComponent implements PluginInfoInitialized, SolrCoreAware {
   public static final String COMPONENT_NAME = "expand";
@@ -142,6 +146,7 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
 
     String field = params.get(ExpandParams.EXPAND_FIELD);
     String hint = null;
+    boolean otherPostFilters = false;
     if (field == null) {
       List<Query> filters = rb.getFilters();
       if (filters != null) {
@@ -150,6 +155,8 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
             CollapsingQParserPlugin.CollapsingPostFilter cp = (CollapsingQParserPlugin.CollapsingPostFilter) q;
             field = cp.getField();
             hint = cp.hint;
+          } else if (q instanceof PostFilter && ((PostFilter) q).getCost() >= 100 && !((PostFilter) q).getCache()) {
+            otherPostFilters = true;
           }
         }
       }
@@ -319,6 +326,15 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
         }
       }
 
+      // The groups gathered while collapsing only hold the docs the collapse saw, which may include docs
+      // that another post filter removed afterwards.
+      ExpandedGroups expandedGroups = (ExpandedGroups) req.getContext().get(ExpandedGroups.CONTEXT_KEY);
+      if (expandedGroups != null && expandedGroups.isComplete() && !otherPostFilters && field.equals(expandedGroups.getField())
+          && limit == expandedGroups.getRows() && params.getBool(ExpandParams.EXPAND_SINGLE_PASS, false)) {
+        rb.rsp.add("expanded", getExpanded(expandedGroups, groupBits, collapsedSet, ordBytes, fieldType));
+        return;
+      }
+
       if(count > 0 && count < 200) {
         try {
           groupQuery = getGroupQuery(field, count, ordBytes);
@@ -421,6 +437,25 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     rb.rsp.add("expanded", outMap);
   }
 
+  private NamedList getExpanded(ExpandedGroups expandedGroups,
+                                FixedBitSet groupBits,
+                                IntHashSet collapsedSet,
+                                IntObjectHashMap<BytesRef> ordBytes,
+                                FieldType fieldType) throws IOException {
+    NamedList outMap = new SimpleOrderedMap();
+    CharsRefBuilder charsRef = new CharsRefBuilder();
+    DocIdSetIterator iterator = new BitSetIterator(groupBits, 0); // cost is not useful here
+    int group;
+    while ((group = iterator.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      DocSlice slice = expandedGroups.getMembers(group, collapsedSet);
+      if (slice != null) {
+        fieldType.indexedToReadable(ordBytes.get(group), charsRef);
+        outMap.add(charsRef.toString(), slice);
+      }
+    }
+    return outMap;
+  }
+
   @Override
   public int distributedProcess(ResponseBuilder rb) throws IOException {
     if (rb.doExpand && rb.stage < finishingStage) {
@@ -49,6 +49,7 @@ import org.apache.solr.request.SimpleFacets;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -255,17 +256,26 @@ public class FacetComponent extends SearchComponent {
 
       NamedList<Object> counts = FacetComponent.getFacetCounts(f);
       String[] pivots = params.getParams(FacetParams.FACET_PIVOT);
-      if (!ArrayUtils.isEmpty(pivots)) {
+      if (!ArrayUtils.isEmpty(pivots) && !f.isPartialResults()) {
         PivotFacetProcessor pivotProcessor 
           = new PivotFacetProcessor(rb.req, rb.getResults().docSet, params, rb);
-        SimpleOrderedMap<List<NamedList<Object>>> v 
-          = pivotProcessor.process(pivots);
-        if (v != null) {
-          counts.add(PIVOT_KEY, v);
+        try {
+          SimpleOrderedMap<List<NamedList<Object>>> v
+            = pivotProcessor.process(pivots);
+          if (v != null) {
+            counts.add(PIVOT_KEY, v);
+          }
+        } catch (RuntimeException e) {
+          if (!SolrQueryTimeoutImpl.isExit(e)) throw e;
+          log.warn("Query: " + rb.req.getParamString() + "; " + e.getMessage());
+          f.setPartialResults(true);
         }
       }
 
       rb.rsp.add("facet_counts", counts);
+      if (f.isPartialResults() && rb.rsp.getResponseHeader().get("partialResults") == null) {
+        rb.rsp.getResponseHeader().add("partialResults", Boolean.TRUE);
+      }
     }
   }
 
@@ -300,6 +310,18 @@ public class FacetComponent extends SearchComponent {
       throw new SolrException(ErrorCode.SERVER_ERROR, e);
     } catch (SyntaxError e) {
       throw new SolrException(ErrorCode.BAD_REQUEST, e);
+    } catch (RuntimeException e) {
+      if (!SolrQueryTimeoutImpl.isExit(e)) throw e;
+      // the request was cancelled or ran out of time: the kinds of facets that were
+      // not counted are returned empty
+      log.warn("Query: " + simpleFacets.getRequest().getParamString() + "; " + e.getMessage());
+      simpleFacets.setPartialResults(true);
+      for (String key : new String[] {FACET_QUERY_KEY, FACET_FIELD_KEY, FACET_DATE_KEY, FACET_RANGES_KEY,
+          FACET_INTERVALS_KEY, SpatialHeatmapFacets.RESPONSE_KEY}) {
+        if (counts.get(key) == null) {
+          counts.add(key, new SimpleOrderedMap<>());
+        }
+      }
     }
     return counts;
   }
@@ -16,7 +16,9 @@ package org.apache.solr.handler.component;
  * limitations under the License.
  */
 
+import java.io.IOException;
 import java.net.ConnectException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -29,12 +31,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.HttpClient;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrResponse;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
@@ -65,6 +69,8 @@ public class HttpShardHandler extends ShardHandler {
   private HttpShardHandlerFactory httpShardHandlerFactory;
   private CompletionService<ShardResponse> completionService;
   private Set<Future<ShardResponse>> pending;
+  // requests the executor had no room for, run by the thread that waits for the responses
+  private List<Callable<ShardResponse>> deferred;
   private Map<String,List<String>> shardToURLs;
   private HttpClient httpClient;
 
@@ -75,6 +81,7 @@ public class HttpShardHandler extends ShardHandler {
     this.httpShardHandlerFactory = httpShardHandlerFactory;
     completionService = httpShardHandlerFactory.newCompletionService();
     pending = new HashSet<>();
+    deferred = new ArrayList<>();
 
     // maps "localhost:8983|localhost:7574" to a shuffled List("http://localhost:8983","http://localhost:7574")
     // This is primarily to keep track of what order we should use to query the replicas of a shard
@@ -160,6 +167,14 @@ public class HttpShardHandler extends ShardHandler {
     // do this outside of the callable for thread safety reasons
     final List<String> urls = getURLs(shard, preferredHostAddress);
 
+    final String cacheKey = httpShardHandlerFactory.getResponseCacheKey(sreq, shard, params);
+    final HttpShardHandlerFactory.CachedResponse hit = cacheKey == null ? null
+        : httpShardHandlerFactory.getCachedResponse(cacheKey);
+    if (cacheKey != null) {
+      // only a response that tells the index it was answered from can be checked before it is used
+      params.set(ShardParams.SHARDS_INDEX_VERSION, true);
+    }
+
     Callable<ShardResponse> task = new Callable<ShardResponse>() {
       @Override
       public ShardResponse call() throws Exception {
@@ -184,23 +199,41 @@ public class HttpShardHandler extends ShardHandler {
           // no need to set the response parser as binary is the default
           // req.setResponseParser(new BinaryResponseParser());
 
-          // if there are no shards available for a slice, urls.size()==0
-          if (urls.size()==0) {
-            // TODO: what's the right error code here? We should use the same thing when
-            // all of the servers for a shard are down.
-            throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "no servers hosting shard: " + shard);
-          }
+          if (hit != null && httpShardHandlerFactory.isCurrent(hit, httpClient)) {
+            // the replica still searches the index it answered the same request from
+            srsp.setShardAddress(hit.shardAddress);
+            ssr.nl = hit.getResponse();
+          } else {
+            // if there are no shards available for a slice, urls.size()==0
+            if (urls.size()==0) {
+              // TODO: what's the right error code here? We should use the same thing when
+              // all of the servers for a shard are down.
+              throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "no servers hosting shard: " + shard);
+            }
 
-          if (urls.size() <= 1) {
-            String url = urls.get(0);
-            srsp.setShardAddress(url);
-            try (SolrClient client = new HttpSolrClient(url, httpClient)) {
-              ssr.nl = client.request(req);
+            if (urls.size() <= 1) {
+              String url = urls.get(0);
+              srsp.setShardAddress(url);
+              long start = httpShardHandlerFactory.requestStarted(url);
+              boolean answered = false;
+              try (SolrClient client = new HttpSolrClient(url, httpClient)) {
+                ssr.nl = client.request(req);
+                answered = true;
+              } catch (SolrException e) {
+                // an error, but from a replica that is up
+                answered = true;
+                throw e;
+              } finally {
+                httpShardHandlerFactory.requestFinished(url, start, answered);
+              }
+            } else {
+              LBHttpSolrClient.Rsp rsp = params.getBool(ShardParams.SHARDS_HEDGE, false)
+                  ? makeHedgedRequest(req, urls, params.getFloat(ShardParams.SHARDS_HEDGE_PERCENTILE, 95f))
+                  : makeLoadBalancedRequest(req, urls);
+              ssr.nl = rsp.getResponse();
+              srsp.setShardAddress(rsp.getServer());
             }
-          } else {
-            LBHttpSolrClient.Rsp rsp = httpShardHandlerFactory.makeLoadBalancedRequest(req, urls);
-            ssr.nl = rsp.getResponse();
-            srsp.setShardAddress(rsp.getServer());
+            httpShardHandlerFactory.responseReceived(cacheKey, srsp.getShardAddress(), ssr.nl);
           }
         }
         catch( ConnectException cex ) {
@@ -228,12 +261,89 @@ public class HttpShardHandler extends ShardHandler {
         MDC.put("ShardRequest.urlList", urls.toString());
       }
       pending.add( completionService.submit(task) );
+    } catch (RejectedExecutionException e) {
+      // the executor is saturated: rather than fail the request, or block while the other
+      // shards could be queried, send it from take(), when this thread would just be waiting
+      deferred.add(task);
     } finally {
       MDC.remove("ShardRequest.shards");
       MDC.remove("ShardRequest.urlList");
     }
   }
   
+  private LBHttpSolrClient.Rsp makeLoadBalancedRequest(QueryRequest req, List<String> urls)
+      throws SolrServerException, IOException {
+    // the load balancer records how long each replica it tries takes
+    return httpShardHandlerFactory.makeLoadBalancedRequest(req, urls);
+  }
+
+  /**
+   * Sends the request to the first replica and, if it hasn't answered once the given percentile
+   * of the recent response times of the shard is over, a backup request to the next: the first
+   * to answer wins, and the http request of the other is aborted.  As long as too few response
+   * times are known, no backup request is sent.
+   */
+  private LBHttpSolrClient.Rsp makeHedgedRequest(final QueryRequest req, final List<String> urls, float percentile)
+      throws Exception {
+    long delay = httpShardHandlerFactory.getHedgeDelay(urls, percentile, TimeUnit.NANOSECONDS);
+    if (delay < 0) {
+      return makeLoadBalancedRequest(req, urls);
+    }
+    CompletionService<LBHttpSolrClient.Rsp> hedges = httpShardHandlerFactory.newHedgeCompletionService();
+    List<Future<LBHttpSolrClient.Rsp>> futures = new ArrayList<>(2);
+    final HttpShardHandlerFactory.AbortableRequest first = new HttpShardHandlerFactory.AbortableRequest();
+    final HttpShardHandlerFactory.AbortableRequest backup = new HttpShardHandlerFactory.AbortableRequest();
+    try {
+      futures.add(hedges.submit(new Callable<LBHttpSolrClient.Rsp>() {
+        @Override
+        public LBHttpSolrClient.Rsp call() throws Exception {
+          return httpShardHandlerFactory.makeLoadBalancedRequest(req, urls, first);
+        }
+      }));
+    } catch (RejectedExecutionException e) {
+      // no thread to spare for either request
+      return makeLoadBalancedRequest(req, urls);
+    }
+    try {
+      Future<LBHttpSolrClient.Rsp> done = hedges.poll(delay, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        final List<String> backupUrls = new ArrayList<>(urls);
+        backupUrls.add(backupUrls.remove(0));
+        try {
+          futures.add(hedges.submit(new Callable<LBHttpSolrClient.Rsp>() {
+            @Override
+            public LBHttpSolrClient.Rsp call() throws Exception {
+              return httpShardHandlerFactory.makeLoadBalancedRequest(req, backupUrls, backup);
+            }
+          }));
+        } catch (RejectedExecutionException e) {
+          // no thread to spare for the backup: keep waiting for the first
+        }
+        done = hedges.take();
+      }
+      int left = futures.size();
+      while (true) {
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          // the other one may still answer
+          if (--left == 0) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+          }
+          done = hedges.take();
+        }
+      }
+    } finally {
+      // the request still running is left with nothing to wait for
+      first.abort();
+      backup.abort();
+      for (Future<LBHttpSolrClient.Rsp> future : futures) {
+        future.cancel(false);
+      }
+    }
+  }
+
   /**
    * Subclasses could modify the request based on the shard
    */
@@ -270,26 +380,38 @@ public class HttpShardHandler extends ShardHandler {
   
   private ShardResponse take(boolean bailOnError) {
     
-    while (pending.size() > 0) {
+    while (pending.size() > 0 || deferred.size() > 0) {
+      ShardResponse rsp;
       try {
-        Future<ShardResponse> future = completionService.take();
-        pending.remove(future);
-        ShardResponse rsp = future.get();
+        Future<ShardResponse> future = deferred.isEmpty() ? completionService.take() : completionService.poll();
+        if (future != null) {
+          pending.remove(future);
+          rsp = future.get();
+        } else {
+          rsp = deferred.remove(0).call();
+        }
         if (bailOnError && rsp.getException() != null) return rsp; // if exception, return immediately
         // add response to the response list... we do this after the take() and
         // not after the completion of "call" so we know when the last response
         // for a request was received.  Otherwise we might return the same
         // request more than once.
         rsp.getShardRequest().responses.add(rsp);
-        if (rsp.getShardRequest().responses.size() == rsp.getShardRequest().actualShards.length) {
-          return rsp;
-        }
       } catch (InterruptedException e) {
         throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
       } catch (ExecutionException e) {
         // should be impossible... the problem with catching the exception
         // at this level is we don't know what ShardRequest it applied to
         throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Impossible Exception",e);
+      } catch (Exception e) {
+        // same as above, the task itself catches everything
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Impossible Exception",e);
+      }
+      ShardRequest sreq = rsp.getShardRequest();
+      if (sreq.responseListener != null) {
+        sreq.responseListener.responseReceived(rsp);
+      }
+      if (sreq.responses.size() == sreq.actualShards.length) {
+        return rsp;
       }
     }
     return null;
@@ -301,6 +423,7 @@ public class HttpShardHandler extends ShardHandler {
     for (Future<ShardResponse> future : pending) {
       future.cancel(false);
     }
+    deferred.clear();
   }
 
   @Override
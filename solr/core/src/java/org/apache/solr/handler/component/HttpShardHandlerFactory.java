@@ -18,35 +18,62 @@ package org.apache.solr.handler.component;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.ResponseParser;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpClientConfigurer;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.common.util.URLUtil;
 import org.apache.solr.core.PluginInfo;
+import org.apache.solr.handler.admin.LukeRequestHandler;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.update.UpdateShardHandlerConfig;
+import org.apache.solr.util.ConcurrentLRUCache;
 import org.apache.solr.util.DefaultSolrThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.apache.solr.util.plugin.PluginInfoInitialized {
@@ -57,8 +84,10 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // it's not used, so it could be created statically for
   // the distributed search component if desired.
   //
-  // Consider CallerRuns policy and a lower max threads to throttle
-  // requests at some point (or should we simply return failure?)
+  // The executor can be bounded with maximumPoolSize and sizeOfQueue:
+  // the shard requests it has no room for are then sent by the thread
+  // that waits for their responses (see HttpShardHandler.submit), so the
+  // threads used no longer grow with the number of concurrent requests.
   private ThreadPoolExecutor commExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
       0,
       Integer.MAX_VALUE,
@@ -67,6 +96,17 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       new DefaultSolrThreadFactory("httpShardExecutor")
   );
 
+  // The hedges of a shard request are sent from a task of commExecutor that waits for them, so
+  // they can't queue behind it there: they get their own threads, handed off directly.  Without
+  // a thread left, the first request is sent by the waiting task itself, and no backup is sent.
+  private ThreadPoolExecutor hedgeExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+      0,
+      Integer.MAX_VALUE,
+      5, TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(),
+      new DefaultSolrThreadFactory("httpShardHedgeExecutor")
+  );
+
   protected HttpClient defaultClient;
   private LBHttpSolrClient loadbalancer;
   //default values:
@@ -80,9 +120,23 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   int queueSize = -1;
   boolean accessPolicy = false;
   boolean useRetries = false;
+  boolean latencyAwareSelection = false;
+  int responseCacheSize = 0;
+  int responseCacheMaxAge = 10000;
+  int responseCacheMaxRamMB = 64;
 
   private String scheme = null;
 
+  // response times and requests in flight, by replica url
+  private final ConcurrentMap<String,ReplicaStats> replicaStats = new ConcurrentHashMap<>();
+
+  // the request the current thread sends through the load balancer, if it can be aborted
+  private final ThreadLocal<AbortableRequest> abortableRequest = new ThreadLocal<>();
+
+  // the responses of shard search requests, and the last index version seen by replica url
+  private ConcurrentLRUCache<String,CachedResponse> responseCache;
+  private final ConcurrentMap<String,Long> indexVersions = new ConcurrentHashMap<>();
+
   private final Random r = new Random();
 
   // URL scheme to be used in distributed search.
@@ -107,6 +161,18 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // due to connection pooling limitations / races
   static final String USE_RETRIES = "useRetries";
 
+  // Query the replicas of a shard that answer the fastest first, rather than in random order
+  static final String INIT_LATENCY_AWARE_SELECTION = "latencyAwareSelection";
+
+  // How many responses of shard search requests to cache, 0 to cache none
+  static final String INIT_RESPONSE_CACHE_SIZE = "responseCacheSize";
+
+  // For how long, in ms, a cached response can be used at most
+  static final String INIT_RESPONSE_CACHE_MAX_AGE = "responseCacheMaxAge";
+
+  // How much heap, in MB, the cached responses can take at most
+  static final String INIT_RESPONSE_CACHE_MAX_RAM_MB = "responseCacheMaxRamMB";
+
   /**
    * Get {@link ShardHandler} that uses the default http client.
    */
@@ -141,6 +207,17 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     this.queueSize = getParameter(args, INIT_SIZE_OF_QUEUE, queueSize,sb);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy,sb);
     this.useRetries = getParameter(args, USE_RETRIES, useRetries,sb);
+    this.latencyAwareSelection = getParameter(args, INIT_LATENCY_AWARE_SELECTION, latencyAwareSelection,sb);
+    this.responseCacheSize = getParameter(args, INIT_RESPONSE_CACHE_SIZE, responseCacheSize,sb);
+    this.responseCacheMaxAge = getParameter(args, INIT_RESPONSE_CACHE_MAX_AGE, responseCacheMaxAge,sb);
+    this.responseCacheMaxRamMB = getParameter(args, INIT_RESPONSE_CACHE_MAX_RAM_MB, responseCacheMaxRamMB,sb);
+    if (responseCacheSize > 0) {
+      int lowerWatermark = (int) Math.ceil(0.9 * responseCacheSize);
+      long maxRamBytes = responseCacheMaxRamMB * 1024L * 1024L;
+      responseCache = new ConcurrentLRUCache<>(responseCacheSize, lowerWatermark,
+          (int) Math.floor((lowerWatermark + responseCacheSize) / 2), maxRamBytes, (long) (0.9 * maxRamBytes),
+          (int) Math.ceil(0.75 * responseCacheSize), false, false, null);
+    }
     log.info("created with {}",sb);
     
     // magic sysprop to make tests reproducible: set by SolrTestCaseJ4.
@@ -160,6 +237,14 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         blockingQueue,
         new DefaultSolrThreadFactory("httpShardExecutor")
     );
+    // room for the two hedges of every shard request commExecutor can run
+    this.hedgeExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+        0,
+        (int) Math.min(Integer.MAX_VALUE, 2L * this.maximumPoolSize),
+        this.keepAliveTime, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        new DefaultSolrThreadFactory("httpShardHedgeExecutor")
+    );
 
     ModifiableSolrParams clientParams = getClientParams();
 
@@ -202,7 +287,7 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   }
 
   protected LBHttpSolrClient createLoadbalancer(HttpClient httpClient){
-    return new LBHttpSolrClient(httpClient);
+    return new ShardLoadBalancer(httpClient);
   }
 
   protected <T> T getParameter(NamedList initArgs, String configKey, T defaultValue, StringBuilder sb) {
@@ -220,6 +305,7 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   public void close() {
     try {
       ExecutorUtil.shutdownAndAwaitTermination(commExecutor);
+      ExecutorUtil.shutdownAndAwaitTermination(hedgeExecutor);
     } finally {
       try {
         if (defaultClient != null) {
@@ -230,6 +316,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         if (loadbalancer != null) {
           loadbalancer.close();
         }
+        if (responseCache != null) {
+          responseCache.destroy();
+        }
       }
     }
   }
@@ -246,6 +335,20 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     return loadbalancer.request(new LBHttpSolrClient.Req(req, urls));
   }
 
+  /**
+   * Makes a request to one or more of the given urls, using the configured load balancer, that
+   * can be aborted from another thread with the given handle.
+   */
+  LBHttpSolrClient.Rsp makeLoadBalancedRequest(QueryRequest req, List<String> urls, AbortableRequest abortable)
+    throws SolrServerException, IOException {
+    abortableRequest.set(abortable);
+    try {
+      return makeLoadBalancedRequest(req, urls);
+    } finally {
+      abortableRequest.remove();
+    }
+  }
+
   /**
    * Creates a randomized list of urls for the given shard.
    *
@@ -268,15 +371,432 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     if (urls.size() > 1)
       Collections.shuffle(urls, r);
 
+    // the shuffle still breaks the ties, between the replicas that weren't queried lately
+    if (latencyAwareSelection && urls.size() > 1) {
+      // the costs change as requests come and go, so take them once
+      long now = System.nanoTime();
+      final Map<String,Double> costs = new HashMap<>();
+      for (String url : urls) {
+        costs.put(url, getReplicaStats(url).getCost(now));
+      }
+      Collections.sort(urls, new Comparator<String>() {
+        @Override
+        public int compare(String url1, String url2) {
+          return Double.compare(costs.get(url1), costs.get(url2));
+        }
+      });
+    }
+
     return urls;
   }
 
+  ReplicaStats getReplicaStats(String url) {
+    ReplicaStats stats = replicaStats.get(url);
+    if (stats == null) {
+      ReplicaStats newStats = new ReplicaStats();
+      stats = replicaStats.putIfAbsent(url, newStats);
+      if (stats == null) stats = newStats;
+    }
+    return stats;
+  }
+
+  /**
+   * Records that a request is sent to the given replica.
+   *
+   * @return the start time of the request, to pass to {@link #requestFinished}
+   */
+  public long requestStarted(String url) {
+    getReplicaStats(url).outstanding.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Records that the request sent to the given replica is over: how long it took to answer, or
+   * that it failed, which counts as a slow answer.
+   */
+  public void requestFinished(String url, long startTime, boolean answered) {
+    long elapsed = System.nanoTime() - startTime;
+    ReplicaStats stats = getReplicaStats(url);
+    stats.outstanding.decrementAndGet();
+    if (answered) {
+      stats.addResponseTime(elapsed);
+    } else {
+      stats.addFailure(elapsed);
+    }
+  }
+
+  /**
+   * Records that the request sent to the given replica was aborted before it answered, because
+   * another replica was faster.
+   */
+  public void requestAborted(String url, long startTime) {
+    long elapsed = System.nanoTime() - startTime;
+    ReplicaStats stats = getReplicaStats(url);
+    stats.outstanding.decrementAndGet();
+    stats.addUnanswered(elapsed);
+  }
+
+  /**
+   * How long to wait for the replicas of a shard before sending a backup request: the given
+   * percentile of their recent response times, or -1 if too few of them are known.
+   */
+  public long getHedgeDelay(List<String> urls, float percentile, TimeUnit unit) {
+    long[] all = new long[0];
+    for (String url : urls) {
+      long[] responseTimes = getReplicaStats(url).getResponseTimes();
+      int n = all.length;
+      all = Arrays.copyOf(all, n + responseTimes.length);
+      System.arraycopy(responseTimes, 0, all, n, responseTimes.length);
+    }
+    if (all.length < ReplicaStats.MIN_SAMPLES) {
+      return -1;
+    }
+    Arrays.sort(all);
+    int idx = (int) Math.ceil(percentile / 100 * all.length) - 1;
+    return unit.convert(all[Math.max(0, Math.min(idx, all.length - 1))], TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * The key of the response to the given shard request in the response cache, or null if it
+   * can't be cached: only the requests of search components are, and not those whose results
+   * depend on when they are run.  The user the request is made for is part of the key, since
+   * what a user may see can differ.
+   */
+  String getResponseCacheKey(ShardRequest sreq, String shard, SolrParams params) {
+    if (responseCache == null || sreq.purpose == 0 || (sreq.purpose & ShardRequest.PURPOSE_PRIVATE) != 0
+        || !params.getBool(ShardParams.SHARDS_CACHE, true)) {
+      return null;
+    }
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    Principal principal = requestInfo == null ? null : requestInfo.getReq().getUserPrincipal();
+    List<String> names = new ArrayList<>();
+    for (Iterator<String> it = params.getParameterNamesIterator(); it.hasNext(); ) {
+      String name = it.next();
+      // NOW is set on every request, the query id is unique to each
+      if (!"NOW".equals(name) && !CommonParams.QUERY_ID.equals(name)) {
+        names.add(name);
+      }
+    }
+    Collections.sort(names);
+    StringBuilder key = new StringBuilder();
+    // prefixed with its length, a user name can't be mistaken for the start of a shard
+    if (principal != null) {
+      key.append(principal.getName().length()).append(':').append(principal.getName());
+    }
+    key.append('|').append(shard);
+    for (String name : names) {
+      for (String value : params.getParams(name)) {
+        if (value.contains("NOW")) {
+          return null;
+        }
+        key.append('&').append(name).append('=').append(value);
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * The cached response of the given key, or null if there is none, or if it was there for
+   * too long or the replica that answered it is known to have seen changes to its index since.
+   * Before it is used, a response must still be checked with {@link #isCurrent}.
+   */
+  CachedResponse getCachedResponse(String key) {
+    CachedResponse cached = responseCache.get(key);
+    if (cached == null) {
+      return null;
+    }
+    if (System.nanoTime() - cached.time > TimeUnit.MILLISECONDS.toNanos(responseCacheMaxAge)
+        || (cached.indexVersion != null && !cached.indexVersion.equals(indexVersions.get(cached.shardAddress)))) {
+      responseCache.remove(key);
+      return null;
+    }
+    return cached;
+  }
+
+  /**
+   * Whether the replica that answered the cached response still searches the same index: it is
+   * asked for its index version by the luke handler, which doesn't search.  This saves running
+   * the request on the replica, but not a round trip to it.  An entry that changes in the
+   * meantime is still used for at most the max age of the cache.
+   */
+  boolean isCurrent(CachedResponse cached, HttpClient httpClient) {
+    if (cached.indexVersion == null) {
+      // a shard that doesn't tell its index version can't be checked
+      return false;
+    }
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("show", "index");
+    params.set(LukeRequestHandler.NUMTERMS, 0);
+    QueryRequest probe = new QueryRequest(params, SolrRequest.METHOD.POST);
+    probe.setPath("/admin/luke");
+    Object indexVersion;
+    try (HttpSolrClient client = new HttpSolrClient(cached.shardAddress, httpClient)) {
+      NamedList<?> index = (NamedList<?>) client.request(probe).get("index");
+      indexVersion = index == null ? null : index.get("version");
+    } catch (Exception e) {
+      // the request itself will show what is wrong
+      return false;
+    }
+    if (indexVersion instanceof Long) {
+      indexVersions.put(cached.shardAddress, (Long) indexVersion);
+    }
+    return cached.indexVersion.equals(indexVersion);
+  }
+
+  /**
+   * Keeps track of the index version of the replica that answered a shard request, and caches
+   * the response if it has a key.
+   */
+  void responseReceived(String key, String shardAddress, NamedList<Object> response) {
+    if (responseCache == null || shardAddress == null || response == null) {
+      return;
+    }
+    NamedList<?> header = (NamedList<?>) response.get("responseHeader");
+    Long indexVersion = header == null ? null : (Long) header.get(QueryComponent.INDEX_VERSION);
+    if (indexVersion != null) {
+      indexVersions.put(shardAddress, indexVersion);
+    }
+    if (key == null || (header != null && header.get("partialResults") != null)) {
+      return;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      new JavaBinCodec().marshal(response, out);
+    } catch (IOException e) {
+      // can't happen with bytes in memory
+      throw new RuntimeException(e);
+    }
+    // a response that would take much of the cache would evict many others for one
+    if (out.size() > responseCacheMaxRamMB * 1024L * 1024L / 10) {
+      return;
+    }
+    responseCache.put(key, new CachedResponse(out.toByteArray(), shardAddress, indexVersion));
+  }
+
+  /** A response in the response cache, kept serialized so that every use gets its own copy */
+  static class CachedResponse implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CachedResponse.class);
+
+    final byte[] response;
+    final String shardAddress;
+    final Long indexVersion;
+    final long time = System.nanoTime();
+
+    CachedResponse(byte[] response, String shardAddress, Long indexVersion) {
+      this.response = response;
+      this.shardAddress = shardAddress;
+      this.indexVersion = indexVersion;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(response);
+    }
+
+    @Override
+    public Collection<Accountable> getChildResources() {
+      return Collections.emptyList();
+    }
+
+    /** A copy of the response, that the caller is free to change */
+    @SuppressWarnings("unchecked")
+    NamedList<Object> getResponse() {
+      try {
+        return (NamedList<Object>) new JavaBinCodec().unmarshal(new ByteArrayInputStream(response));
+      } catch (IOException e) {
+        // can't happen with bytes in memory
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * The response times and requests in flight of a replica.
+   */
+  static class ReplicaStats {
+    static final int MIN_SAMPLES = 20;
+    private static final int MAX_SAMPLES = 128;
+    private static final double ALPHA = 0.3;
+    // after this long without an answer, what we knew of the replica is forgotten, so that
+    // it is tried again
+    private static final long STALE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // what a failed request counts as in the average, at least
+    static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    final AtomicInteger outstanding = new AtomicInteger();
+    private final long[] samples = new long[MAX_SAMPLES];
+    private int numSamples;
+    private int nextSample;
+    private boolean known;
+    private double ewma;
+    private long lastSample;
+
+    synchronized void addResponseTime(long nanos) {
+      addToAverage(nanos);
+      samples[nextSample] = nanos;
+      nextSample = (nextSample + 1) % MAX_SAMPLES;
+      numSamples = Math.min(numSamples + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * A failed request or a timeout counts as a slow answer in the average, but not in the
+     * response times the hedge delay is taken from.
+     */
+    synchronized void addFailure(long nanos) {
+      addToAverage(Math.max(nanos, FAILURE_PENALTY_NANOS));
+    }
+
+    /** A request given up on took at least that long: it counts in the average only too. */
+    synchronized void addUnanswered(long nanos) {
+      addToAverage(nanos);
+    }
+
+    private void addToAverage(long nanos) {
+      long now = System.nanoTime();
+      if (known && now - lastSample > STALE_NANOS) {
+        known = false;
+        numSamples = 0;
+        nextSample = 0;
+      }
+      ewma = known ? ewma + ALPHA * (nanos - ewma) : nanos;
+      known = true;
+      lastSample = now;
+    }
+
+    /** The moving average of the response times, in nanoseconds, or 0 if none is known */
+    synchronized double getResponseTime(long now) {
+      if (!known || now - lastSample > STALE_NANOS) return 0;
+      return ewma;
+    }
+
+    /** What a request to the replica is expected to cost: the requests in flight are waited on too */
+    double getCost(long now) {
+      return getResponseTime(now) * (outstanding.get() + 1);
+    }
+
+    synchronized long[] getResponseTimes() {
+      if (numSamples > 0 && System.nanoTime() - lastSample > STALE_NANOS) return new long[0];
+      return Arrays.copyOf(samples, numSamples);
+    }
+  }
+
+  /**
+   * A request sent through the load balancer that another thread can abort, e.g. once a backup
+   * request was answered.  Interrupting the thread that sends it wouldn't stop it: it blocks on
+   * a socket read, so the http request itself is aborted, which closes its connection.
+   */
+  static class AbortableRequest {
+    private HttpRequestBase method;
+    private boolean aborted;
+
+    synchronized void abort() {
+      aborted = true;
+      if (method != null) {
+        method.abort();
+      }
+    }
+
+    synchronized boolean isAborted() {
+      return aborted;
+    }
+
+    private synchronized void setMethod(HttpRequestBase method) {
+      this.method = method;
+      if (aborted && method != null) {
+        method.abort();
+      }
+    }
+  }
+
+  /**
+   * The load balancer of the shard requests: it records the response time of every replica it
+   * tries, answered or not, and lets the request of the current thread be aborted.
+   */
+  private class ShardLoadBalancer extends LBHttpSolrClient {
+
+    ShardLoadBalancer(HttpClient httpClient) {
+      super(httpClient);
+    }
+
+    @Override
+    protected HttpSolrClient makeSolrClient(String server) {
+      HttpSolrClient client = new HttpSolrClient(server, getHttpClient(), getParser()) {
+        @Override
+        protected NamedList<Object> executeMethod(HttpRequestBase method, ResponseParser processor)
+            throws SolrServerException {
+          AbortableRequest abortable = abortableRequest.get();
+          if (abortable == null) {
+            return super.executeMethod(method, processor);
+          }
+          abortable.setMethod(method);
+          try {
+            return super.executeMethod(method, processor);
+          } finally {
+            abortable.setMethod(null);
+          }
+        }
+      };
+      if (getRequestWriter() != null) {
+        client.setRequestWriter(getRequestWriter());
+      }
+      if (getQueryParams() != null) {
+        client.setQueryParams(getQueryParams());
+      }
+      return client;
+    }
+
+    @Override
+    protected Exception doRequest(HttpSolrClient client, Req req, Rsp rsp, boolean isUpdate,
+        boolean isZombie, String zombieKey) throws SolrServerException, IOException {
+      AbortableRequest abortable = abortableRequest.get();
+      if (abortable != null && abortable.isAborted()) {
+        throw new SolrServerException("The request was aborted");
+      }
+      String url = client.getBaseURL();
+      long start = requestStarted(url);
+      boolean answered = false;
+      try {
+        Exception ex = super.doRequest(client, req, rsp, isUpdate, isZombie, zombieKey);
+        answered = ex == null;
+        return ex;
+      } catch (SolrException e) {
+        // an error, but from a replica that is up
+        answered = true;
+        throw e;
+      } finally {
+        if (!answered && abortable != null && abortable.isAborted()) {
+          requestAborted(url, start);
+        } else {
+          requestFinished(url, start, answered);
+        }
+      }
+    }
+
+    @Override
+    protected Exception addZombie(HttpSolrClient server, Exception e) {
+      // the replica was only slower than another one
+      AbortableRequest abortable = abortableRequest.get();
+      if (abortable != null && abortable.isAborted()) {
+        return e;
+      }
+      return super.addZombie(server, e);
+    }
+  }
+
   /**
    * Creates a new completion service for use by a single set of distributed requests.
    */
   public CompletionService newCompletionService() {
     return new ExecutorCompletionService<ShardResponse>(commExecutor);
   }
+
+  /**
+   * Creates a new completion service for the hedges of a single shard request: it rejects the
+   * requests it has no thread for rather than queue them.
+   */
+  CompletionService<LBHttpSolrClient.Rsp> newHedgeCompletionService() {
+    return new ExecutorCompletionService<>(hedgeExecutor);
+  }
   
   /**
    * Rebuilds the URL replacing the URL scheme of the passed URL with the
@@ -76,6 +76,7 @@ import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocListAndSet;
 import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.ExpandedGroups;
 import org.apache.solr.search.Grouping;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
@@ -121,6 +122,8 @@ import org.slf4j.LoggerFactory;
 public class QueryComponent extends SearchComponent
 {
   public static final String COMPONENT_NAME = "query";
+  /** The version of the index a shard request was answered from, in the header of the response */
+  public static final String INDEX_VERSION = "indexVersion";
   private static final Logger LOG = LoggerFactory.getLogger(QueryComponent.class);
 
   @Override
@@ -305,6 +308,11 @@ public class QueryComponent extends SearchComponent
     }
     SolrIndexSearcher searcher = req.getSearcher();
 
+    if (params.getBool(ShardParams.SHARDS_INDEX_VERSION, false) && rb.rsp.getResponseHeader() != null) {
+      // tells the node that caches the response of this shard when it is no longer current
+      rb.rsp.getResponseHeader().add(INDEX_VERSION, searcher.getIndexReader().getVersion());
+    }
+
     StatsCache statsCache = req.getCore().getStatsCache();
     
     int purpose = params.getInt(ShardParams.SHARDS_PURPOSE, ShardRequest.PURPOSE_GET_TOP_IDS);
@@ -521,7 +529,13 @@ public class QueryComponent extends SearchComponent
     }
 
     // normal search result
-    searcher.search(result, cmd);
+    // only the collapse of the main query gathers the groups to expand, see ExpandedGroups
+    req.getContext().put(ExpandedGroups.GATHER_KEY, Boolean.TRUE);
+    try {
+      searcher.search(result, cmd);
+    } finally {
+      req.getContext().remove(ExpandedGroups.GATHER_KEY);
+    }
     rb.setResult(result);
 
     ResultContext ctx = new ResultContext();
@@ -930,6 +944,11 @@ public class QueryComponent extends SearchComponent
 
     if (additionalAdded) sreq.params.add(CommonParams.FL, additionalFL.toString());
 
+    if (!mergesIds(rb.getMergeStrategies())) {
+      // merge the responses as they come
+      sreq.responseListener = new ShardDocMerger(rb);
+    }
+
     rb.addRequest(this, sreq);
   }
   
@@ -939,6 +958,17 @@ public class QueryComponent extends SearchComponent
     return true;
   }
 
+  private static boolean mergesIds(List<MergeStrategy> mergeStrategies) {
+    if (mergeStrategies != null) {
+      for (MergeStrategy mergeStrategy : mergeStrategies) {
+        if (mergeStrategy.mergesIds()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private void mergeIds(ResponseBuilder rb, ShardRequest sreq) {
       List<MergeStrategy> mergeStrategies = rb.getMergeStrategies();
       if(mergeStrategies != null) {
@@ -956,132 +986,21 @@ public class QueryComponent extends SearchComponent
         }
       }
 
-      SortSpec ss = rb.getSortSpec();
-      Sort sort = ss.getSort();
-
-      SortField[] sortFields = null;
-      if(sort != null) sortFields = sort.getSort();
-      else {
-        sortFields = new SortField[]{SortField.FIELD_SCORE};
+      ShardDocMerger merger = sreq.responseListener instanceof ShardDocMerger
+          ? (ShardDocMerger) sreq.responseListener : new ShardDocMerger(rb);
+      // the responses the shard handler didn't tell it of
+      for (int i = merger.merged; i < sreq.responses.size(); i++) {
+        merger.responseReceived(sreq.responses.get(i));
       }
- 
-      IndexSchema schema = rb.req.getSchema();
-      SchemaField uniqueKeyField = schema.getUniqueKeyField();
-
-
-      // id to shard mapping, to eliminate any accidental dups
-      HashMap<Object,String> uniqueDoc = new HashMap<>();
-
-      // Merge the docs via a priority queue so we don't have to sort *all* of the
-      // documents... we only need to order the top (rows+start)
-      ShardFieldSortedHitQueue queue;
-      queue = new ShardFieldSortedHitQueue(sortFields, ss.getOffset() + ss.getCount(), rb.req.getSearcher());
-
-      NamedList<Object> shardInfo = null;
-      if(rb.req.getParams().getBool(ShardParams.SHARDS_INFO, false)) {
-        shardInfo = new SimpleOrderedMap<>();
-        rb.rsp.getValues().add(ShardParams.SHARDS_INFO,shardInfo);
+      if (merger.shardInfo != null) {
+        rb.rsp.getValues().add(ShardParams.SHARDS_INFO, merger.shardInfo);
       }
-      
-      long numFound = 0;
-      Float maxScore=null;
-      boolean partialResults = false;
-      for (ShardResponse srsp : sreq.responses) {
-        SolrDocumentList docs = null;
 
-        if(shardInfo!=null) {
-          SimpleOrderedMap<Object> nl = new SimpleOrderedMap<>();
-          
-          if (srsp.getException() != null) {
-            Throwable t = srsp.getException();
-            if(t instanceof SolrServerException) {
-              t = ((SolrServerException)t).getCause();
-            }
-            nl.add("error", t.toString() );
-            StringWriter trace = new StringWriter();
-            t.printStackTrace(new PrintWriter(trace));
-            nl.add("trace", trace.toString() );
-            if (srsp.getShardAddress() != null) {
-              nl.add("shardAddress", srsp.getShardAddress());
-            }
-          }
-          else {
-            docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
-            nl.add("numFound", docs.getNumFound());
-            nl.add("maxScore", docs.getMaxScore());
-            nl.add("shardAddress", srsp.getShardAddress());
-          }
-          if(srsp.getSolrResponse()!=null) {
-            nl.add("time", srsp.getSolrResponse().getElapsedTime());
-          }
-
-          shardInfo.add(srsp.getShard(), nl);
-        }
-        // now that we've added the shard info, let's only proceed if we have no error.
-        if (srsp.getException() != null) {
-          partialResults = true;
-          continue;
-        }
-
-        if (docs == null) { // could have been initialized in the shards info block above
-          docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
-        }
-        
-        NamedList<?> responseHeader = (NamedList<?>)srsp.getSolrResponse().getResponse().get("responseHeader");
-        if (responseHeader != null && Boolean.TRUE.equals(responseHeader.get("partialResults"))) {
-          partialResults = true;
-        }
-        
-        // calculate global maxScore and numDocsFound
-        if (docs.getMaxScore() != null) {
-          maxScore = maxScore==null ? docs.getMaxScore() : Math.max(maxScore, docs.getMaxScore());
-        }
-        numFound += docs.getNumFound();
-
-        NamedList sortFieldValues = (NamedList)(srsp.getSolrResponse().getResponse().get("sort_values"));
-        NamedList unmarshalledSortFieldValues = unmarshalSortValues(ss, sortFieldValues, schema);
-
-        // go through every doc in this response, construct a ShardDoc, and
-        // put it in the priority queue so it can be ordered.
-        for (int i=0; i<docs.size(); i++) {
-          SolrDocument doc = docs.get(i);
-          Object id = doc.getFieldValue(uniqueKeyField.getName());
-
-          String prevShard = uniqueDoc.put(id, srsp.getShard());
-          if (prevShard != null) {
-            // duplicate detected
-            numFound--;
-
-            // For now, just always use the first encountered since we can't currently
-            // remove the previous one added to the priority queue.  If we switched
-            // to the Java5 PriorityQueue, this would be easier.
-            continue;
-            // make which duplicate is used deterministic based on shard
-            // if (prevShard.compareTo(srsp.shard) >= 0) {
-            //  TODO: remove previous from priority queue
-            //  continue;
-            // }
-          }
-
-          ShardDoc shardDoc = new ShardDoc();
-          shardDoc.id = id;
-          shardDoc.shard = srsp.getShard();
-          shardDoc.orderInShard = i;
-          Object scoreObj = doc.getFieldValue("score");
-          if (scoreObj != null) {
-            if (scoreObj instanceof String) {
-              shardDoc.score = Float.parseFloat((String)scoreObj);
-            } else {
-              shardDoc.score = (Float)scoreObj;
-            }
-          }
-
-          shardDoc.sortFieldValues = unmarshalledSortFieldValues;
+      SortSpec ss = rb.getSortSpec();
+      ShardFieldSortedHitQueue queue = merger.queue;
+      long numFound = merger.numFound;
+      Float maxScore = merger.maxScore;
 
-          queue.insertWithOverflow(shardDoc);
-        } // end for-each-doc-in-response
-      } // end for-each-response
-      
       // The queue now has 0 -> queuesize docs, where queuesize <= start + rows
       // So we want to pop the last documents off the queue to get
       // the docs offset -> queuesize
@@ -1116,13 +1035,172 @@ public class QueryComponent extends SearchComponent
 
       populateNextCursorMarkFromMergedShards(rb);
 
-      if (partialResults) {
+      if (merger.partialResults) {
         if(rb.rsp.getResponseHeader().get("partialResults") == null) {
           rb.rsp.getResponseHeader().add("partialResults", Boolean.TRUE);
         }
       }
   }
 
+  /**
+   * Merges the top ids of the shards into a priority queue, one response at a time: as the
+   * listener of the request, each response is merged as soon as it is received, while the
+   * other shards are still answering, and {@link #mergeIds} only has to take the page of
+   * results off the queue.
+   */
+  private class ShardDocMerger implements ShardRequest.ResponseListener {
+    final SortSpec ss;
+    final IndexSchema schema;
+    final SchemaField uniqueKeyField;
+    // Merge the docs via a priority queue so we don't have to sort *all* of the
+    // documents... we only need to order the top (rows+start)
+    final ShardFieldSortedHitQueue queue;
+    // id to shard mapping, to eliminate any accidental dups
+    final HashMap<Object,String> uniqueDoc = new HashMap<>();
+    final NamedList<Object> shardInfo;
+
+    long numFound = 0;
+    Float maxScore = null;
+    boolean partialResults = false;
+    // the number of responses merged so far
+    int merged = 0;
+    // a doc that didn't make it into the queue, or was pushed out of it, to reuse
+    ShardDoc spare;
+
+    ShardDocMerger(ResponseBuilder rb) {
+      ss = rb.getSortSpec();
+      schema = rb.req.getSchema();
+      uniqueKeyField = schema.getUniqueKeyField();
+
+      Sort sort = ss.getSort();
+      SortField[] sortFields = null;
+      if(sort != null) sortFields = sort.getSort();
+      else {
+        sortFields = new SortField[]{SortField.FIELD_SCORE};
+      }
+      queue = new ShardFieldSortedHitQueue(sortFields, ss.getOffset() + ss.getCount(), rb.req.getSearcher());
+
+      if(rb.req.getParams().getBool(ShardParams.SHARDS_INFO, false)) {
+        shardInfo = new SimpleOrderedMap<>();
+      } else {
+        shardInfo = null;
+      }
+    }
+
+    @Override
+    public void responseReceived(ShardResponse srsp) {
+      merged++;
+      SolrDocumentList docs = null;
+
+      if(shardInfo!=null) {
+        SimpleOrderedMap<Object> nl = new SimpleOrderedMap<>();
+
+        if (srsp.getException() != null) {
+          Throwable t = srsp.getException();
+          if(t instanceof SolrServerException) {
+            t = ((SolrServerException)t).getCause();
+          }
+          nl.add("error", t.toString() );
+          StringWriter trace = new StringWriter();
+          t.printStackTrace(new PrintWriter(trace));
+          nl.add("trace", trace.toString() );
+          if (srsp.getShardAddress() != null) {
+            nl.add("shardAddress", srsp.getShardAddress());
+          }
+        }
+        else {
+          docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
+          nl.add("numFound", docs.getNumFound());
+          nl.add("maxScore", docs.getMaxScore());
+          nl.add("shardAddress", srsp.getShardAddress());
+        }
+        if(srsp.getSolrResponse()!=null) {
+          nl.add("time", srsp.getSolrResponse().getElapsedTime());
+        }
+
+        shardInfo.add(srsp.getShard(), nl);
+      }
+      // now that we've added the shard info, let's only proceed if we have no error.
+      if (srsp.getException() != null) {
+        partialResults = true;
+        return;
+      }
+
+      if (docs == null) { // could have been initialized in the shards info block above
+        docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
+      }
+
+      NamedList<?> responseHeader = (NamedList<?>)srsp.getSolrResponse().getResponse().get("responseHeader");
+      if (responseHeader != null && Boolean.TRUE.equals(responseHeader.get("partialResults"))) {
+        partialResults = true;
+      }
+
+      // calculate global maxScore and numDocsFound
+      if (docs.getMaxScore() != null) {
+        maxScore = maxScore==null ? docs.getMaxScore() : Math.max(maxScore, docs.getMaxScore());
+      }
+      numFound += docs.getNumFound();
+
+      NamedList sortFieldValues = (NamedList)(srsp.getSolrResponse().getResponse().get("sort_values"));
+      NamedList unmarshalledSortFieldValues = unmarshalSortValues(ss, sortFieldValues, schema);
+      int numSortValues = unmarshalledSortFieldValues.size();
+
+      // go through every doc in this response, construct a ShardDoc, and
+      // put it in the priority queue so it can be ordered.
+      boolean queueFull = false;
+      for (int i=0; i<docs.size(); i++) {
+        SolrDocument doc = docs.get(i);
+        Object id = doc.getFieldValue(uniqueKeyField.getName());
+
+        String prevShard = uniqueDoc.put(id, srsp.getShard());
+        if (prevShard != null) {
+          // duplicate detected
+          numFound--;
+
+          // For now, just always use the first encountered since we can't currently
+          // remove the previous one added to the priority queue.  If we switched
+          // to the Java5 PriorityQueue, this would be easier.
+          continue;
+          // make which duplicate is used deterministic based on shard
+          // if (prevShard.compareTo(srsp.shard) >= 0) {
+          //  TODO: remove previous from priority queue
+          //  continue;
+          // }
+        }
+
+        // the docs of a shard come in order: once one didn't make it into the queue, none
+        // of the docs after it can, they are only still looked at for the duplicates
+        if (queueFull) continue;
+
+        ShardDoc shardDoc = spare != null ? spare : new ShardDoc();
+        shardDoc.id = id;
+        shardDoc.shard = srsp.getShard();
+        shardDoc.orderInShard = i;
+        shardDoc.score = Float.NaN;
+        Object scoreObj = doc.getFieldValue("score");
+        if (scoreObj != null) {
+          if (scoreObj instanceof String) {
+            shardDoc.score = Float.parseFloat((String)scoreObj);
+          } else {
+            shardDoc.score = (Float)scoreObj;
+          }
+        }
+
+        shardDoc.sortFieldValues = unmarshalledSortFieldValues;
+        // this doc's own values, so that comparing it doesn't go through the lists of the shard
+        if (shardDoc.fields == null || shardDoc.fields.length != numSortValues) {
+          shardDoc.fields = new Object[numSortValues];
+        }
+        for (int j = 0; j < numSortValues; j++) {
+          shardDoc.fields[j] = ((List) unmarshalledSortFieldValues.getVal(j)).get(i);
+        }
+
+        spare = queue.insertWithOverflow(shardDoc);
+        queueFull = spare == shardDoc;
+      } // end for-each-doc-in-response
+    }
+  }
+
   /**
    * Inspects the state of the {@link ResponseBuilder} and populates the next 
    * {@link ResponseBuilder#setNextCursorMark} as appropriate based on the merged 
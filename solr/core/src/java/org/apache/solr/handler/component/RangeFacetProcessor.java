@@ -38,6 +38,7 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 
 import org.slf4j.Logger;
@@ -266,6 +267,7 @@ public class RangeFacetProcessor extends SimpleFacets {
    * @see org.apache.lucene.search.TermRangeQuery
    */
   protected int rangeCount(DocSet subset, RangeFacetRequest rfr, RangeFacetRequest.FacetRange fr) throws IOException, SyntaxError {
+    SolrQueryTimeoutImpl.exitIfNeeded();
     SchemaField schemaField = rfr.getSchemaField();
     Query rangeQ = schemaField.getType().getRangeQuery(null, schemaField, fr.lower, fr.upper, fr.includeLower, fr.includeUpper);
     if (rfr.isGroupFacet()) {
@@ -606,7 +606,8 @@ public class RealTimeGetComponent extends SearchComponent
       for (String versionStr : versions) {
         long version = Long.parseLong(versionStr);
         try {
-          Object o = recentUpdates.lookup(version);
+          // the updates are only passed on to the peer, so their strings needn't be decoded
+          Object o = recentUpdates.lookup(version, true);
           if (o == null) continue;
 
           if (version > 0) {
@@ -24,6 +24,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.util.Version;
@@ -267,7 +269,14 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware ,
       if (timeAllowed > 0L) {
         SolrQueryTimeoutImpl.set(timeAllowed);
       }
+      String queryId = req.getParams().get(CommonParams.QUERY_ID);
+      AtomicBoolean cancelled = null;
       try {
+        if (queryId != null) {
+          cancelled = req.getCore().getCancellableQueries().register(queryId);
+          SolrQueryTimeoutImpl.setCancelled(cancelled);
+        }
+
         // The semantics of debugging vs not debugging are different enough that
         // it makes sense to have two control loops
         if(!rb.isDebug()) {
@@ -291,7 +300,7 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware ,
             rb.addDebugInfo("timing", timer.asNamedList() );
           }
         }
-      } catch (ExitableDirectoryReader.ExitingReaderException ex) {
+      } catch (ExitableDirectoryReader.ExitingReaderException | SolrQueryTimeoutImpl.ExitingQueryException ex) {
         log.warn( "Query: " + req.getParamString() + "; " + ex.getMessage());
         SolrDocumentList r = (SolrDocumentList) rb.rsp.getValues().get("response");
         if(r == null)
@@ -306,6 +315,9 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware ,
         rb.rsp.getResponseHeader().add("partialResults", Boolean.TRUE);
       } finally {
         SolrQueryTimeoutImpl.reset();
+        if (cancelled != null) {
+          req.getCore().getCancellableQueries().unregister(queryId, cancelled);
+        }
       }
     } else {
       // a distributed request
@@ -47,6 +47,7 @@ public class ShardDoc extends FieldDoc {
   NamedList sortFieldValues;
   // sort field values for *all* docs in a particular shard.
   // this doc's values are in position orderInShard
+  // if set, fields has this doc's values, in the same order as the fields of sortFieldValues
 
   // TODO: store the SolrDocument here?
   // Store the order in the merged list for lookup when getting stored fields?
@@ -202,6 +203,9 @@ class ShardFieldSortedHitQueue extends PriorityQueue<ShardDoc> {
     }
 
     Object sortVal(ShardDoc shardDoc) {
+      if (shardDoc.fields != null) {
+        return shardDoc.fields[fieldNum];
+      }
       assert(shardDoc.sortFieldValues.getName(fieldNum).equals(fieldName));
       List lst = (List)shardDoc.sortFieldValues.getVal(fieldNum);
       return lst.get(shardDoc.orderInShard);
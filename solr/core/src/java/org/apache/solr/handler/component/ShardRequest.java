@@ -59,6 +59,17 @@ public class ShardRequest {
   /** may be null */
   public String nodeName;
 
+  /**
+   * may be null... told of each response as soon as it is received, by the thread that waits
+   * for the responses, so that they can be worked on while other shards are still answering
+   */
+  public ResponseListener responseListener;
+
+  public interface ResponseListener {
+    /** called after the response was added to {@link #responses} */
+    void responseReceived(ShardResponse srsp);
+  }
+
   // TODO: one could store a list of numbers to correlate where returned docs
   // go in the top-level response rather than looking up by id...
   // this would work well if we ever transitioned to using internal ids and
@@ -32,6 +32,7 @@ import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QueryParsing;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 
 /*
@@ -189,6 +190,7 @@ public class IntervalFacets implements Iterable<FacetInterval> {
       if (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc()) {
         do {
           ctx = ctxIt.next();
+          SolrQueryTimeoutImpl.exitIfNeeded();
         } while (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc());
         assert doc >= ctx.docBase;
         switch (numericType) {
@@ -239,6 +241,7 @@ public class IntervalFacets implements Iterable<FacetInterval> {
     List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
     for (int subIndex = 0; subIndex < leaves.size(); subIndex++) {
       LeafReaderContext leaf = leaves.get(subIndex);
+      SolrQueryTimeoutImpl.exitIfNeeded();
       DocIdSet dis = filter.getDocIdSet(leaf, null); // solr docsets already exclude any deleted docs
       if (dis == null) {
         continue;
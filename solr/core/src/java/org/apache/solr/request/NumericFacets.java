@@ -50,6 +50,7 @@ import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 
 /** Utility class to compute facets on numeric fields. */
 final class NumericFacets {
@@ -152,6 +153,7 @@ final class NumericFacets {
       if (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc()) {
         do {
           ctx = ctxIt.next();
+          SolrQueryTimeoutImpl.exitIfNeeded();
         } while (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc());
         assert doc >= ctx.docBase;
         switch (numericType) {
@@ -70,6 +70,7 @@ import org.apache.solr.search.Insanity;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QueryParsing;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SortedIntDocSet;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.grouping.GroupingSpecification;
@@ -113,6 +114,8 @@ public class SimpleFacets {
   protected final SolrIndexSearcher searcher;
   protected final SolrQueryRequest req;
   protected final ResponseBuilder rb;
+  /** Whether the counts are partial, because the request was cancelled or ran out of time */
+  protected volatile boolean partialResults;
 
   // per-facet values
   protected final static class ParsedParams {
@@ -319,6 +322,7 @@ public class SimpleFacets {
 
     if (null != facetQs && 0 != facetQs.length) {
       for (String q : facetQs) {
+        SolrQueryTimeoutImpl.exitIfNeeded();
         final ParsedParams parsed = parseParams(FacetParams.FACET_QUERY, q);
         getFacetQueryCount(parsed, res);
       }
@@ -393,6 +397,7 @@ public class SimpleFacets {
    * @see FacetParams#FACET_ZEROS
    */
   private NamedList<Integer> getTermCounts(String field, Integer mincount, ParsedParams parsed) throws IOException {
+    SolrQueryTimeoutImpl.exitIfNeeded();
     final SolrParams params = parsed.params;
     final DocSet docs = parsed.docs;
     final int threads = parsed.threads;
@@ -631,6 +636,9 @@ public class SimpleFacets {
             } catch (SolrException se) {
               throw se;
             } catch (Exception e) {
+              if (SolrQueryTimeoutImpl.isExit(e)) {
+                throw (RuntimeException) e;
+              }
               throw new SolrException(ErrorCode.SERVER_ERROR,
                                       "Exception during facet.field: " + facetValue, e);
             } finally {
@@ -639,17 +647,29 @@ public class SimpleFacets {
           }
         };
 
-        RunnableFuture<NamedList> runnableFuture = new FutureTask<>(callable);
+        // the threads of the executor check the limits of the request too
+        RunnableFuture<NamedList> runnableFuture = new FutureTask<>(SolrQueryTimeoutImpl.propagate(callable));
         semaphore.acquire();//may block and/or interrupt
         executor.execute(runnableFuture);//releases semaphore when done
         futures.add(runnableFuture);
       }//facetFs loop
 
       //Loop over futures to get the values. The order is the same as facetFs but shouldn't matter.
+      boolean exited = false;
       for (Future<NamedList> future : futures) {
-        res.addAll(future.get());
+        try {
+          res.addAll(future.get());
+        } catch (ExecutionException ee) {
+          if (!SolrQueryTimeoutImpl.isExit(ee.getCause())) {
+            throw ee;
+          }
+          // the request was cancelled or ran out of time: keep the fields counted so far
+          log.warn("facet.field: " + ee.getCause().getMessage());
+          partialResults = exited = true;
+          break;
+        }
       }
-      assert semaphore.availablePermits() >= maxThreads;
+      assert exited || semaphore.availablePermits() >= maxThreads;
     } catch (InterruptedException e) {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
           "Error while processing facet fields: InterruptedException", e);
@@ -961,5 +981,17 @@ public class SimpleFacets {
   public ResponseBuilder getResponseBuilder() {
     return rb;
   }
+
+  /**
+   * Returns true if some of the counts are missing, because the request was cancelled or
+   * ran out of time while they were computed.
+   */
+  public boolean isPartialResults() {
+    return partialResults;
+  }
+
+  public void setPartialResults(boolean partialResults) {
+    this.partialResults = partialResults;
+  }
 }
 
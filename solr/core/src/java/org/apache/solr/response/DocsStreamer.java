@@ -57,6 +57,8 @@ import org.apache.solr.search.SolrReturnFields;
  */
 public class DocsStreamer implements Iterator<SolrDocument> {
   private static final Set<Class> KNOWN_TYPES = new HashSet<>();
+  /** The most documents read at once, see {@link SolrIndexSearcher#readDocs(Document[], int[], Set)} */
+  static final int READ_AHEAD = 256;
   private final DocList docs;
 
   private SolrIndexSearcher searcher;
@@ -65,8 +67,13 @@ public class DocsStreamer implements Iterator<SolrDocument> {
   private DocIterator docIterator;
   private boolean onlyPseudoFields;
   private Set<String> fnames;
+  private Set<String> docValuesFields;  // when all the fields to return are read from docValues
   private TransformContext context;
   private int idx = -1;
+  // documents are read a batch at a time, so that those that share a stored fields block are read together
+  private DocIterator readAheadIterator;
+  private Document[] readAhead;
+  private int readAheadPos;
 
   public DocsStreamer(DocList docList, Query query, SolrQueryRequest req, ReturnFields returnFields) {
     this.docs = docList;
@@ -83,6 +90,13 @@ public class DocsStreamer implements Iterator<SolrDocument> {
     fnames = returnFields.getLuceneFieldNames();
     onlyPseudoFields = (fnames == null && !returnFields.wantsAllFields() && !returnFields.hasPatternMatching())
         || (fnames != null && fnames.size() == 1 && SolrReturnFields.SCORE.equals(fnames.iterator().next()));
+    if (!onlyPseudoFields && fnames != null && !returnFields.wantsAllFields() && !returnFields.hasPatternMatching()) {
+      Set<String> fields = new HashSet<>(fnames);
+      fields.remove(SolrReturnFields.SCORE);
+      if (searcher.canUseDocValuesAsStored(fields)) {
+        docValuesFields = fields;
+      }
+    }
     if (transformer != null) transformer.setContext(context);
   }
 
@@ -108,7 +122,7 @@ public class DocsStreamer implements Iterator<SolrDocument> {
       sdoc = new SolrDocument();
     } else {
       try {
-        Document doc = searcher.doc(id, fnames);
+        Document doc = nextDoc(id);
         sdoc = getDoc(doc, schema);
       } catch (IOException e) {
         throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error reading document with docId " + id, e);
@@ -126,6 +140,28 @@ public class DocsStreamer implements Iterator<SolrDocument> {
 
   }
 
+  private Document nextDoc(int id) throws IOException {
+    if (readAhead == null || readAheadPos == readAhead.length) {
+      if (readAheadIterator == null) {
+        readAheadIterator = docs.iterator();
+      }
+      int[] ids = new int[Math.min(READ_AHEAD, docs.size() - idx)];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = readAheadIterator.nextDoc();
+      }
+      readAhead = new Document[ids.length];
+      readAheadPos = 0;
+      if (docValuesFields != null) {
+        searcher.readDocValues(readAhead, ids, docValuesFields);
+      } else {
+        searcher.readDocs(readAhead, ids, fnames);
+      }
+    }
+    Document doc = readAhead[readAheadPos++];
+    assert doc != null : "docId " + id + " was not read ahead";
+    return doc;
+  }
+
   public static SolrDocument getDoc(Document doc, final IndexSchema schema) {
     SolrDocument out = new SolrDocument();
     for (IndexableField f : doc.getFields()) {
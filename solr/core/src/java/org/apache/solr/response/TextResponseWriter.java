@@ -184,6 +184,9 @@ public abstract class TextResponseWriter {
       writeByteArr(name, arr.bytes, arr.offset, arr.length);
     } else if (val instanceof EnumFieldValue) {
       writeStr(name, val.toString(), true);
+    } else if (val instanceof CharSequence) {
+      // e.g. the field values of tlog records read without decoding their strings
+      writeStr(name, val.toString(), true);
     } else if (val instanceof WriteableValue) {
       ((WriteableValue)val).write(name, this);
     } else {
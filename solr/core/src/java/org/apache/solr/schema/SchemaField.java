@@ -89,6 +89,7 @@ public final class SchemaField extends FieldProperties {
   public boolean indexed() { return (properties & INDEXED)!=0; }
   public boolean stored() { return (properties & STORED)!=0; }
   public boolean hasDocValues() { return (properties & DOC_VALUES) != 0; }
+  public boolean useDocValuesAsStored() { return (properties & USE_DOCVALUES_AS_STORED) != 0; }
   public boolean storeTermVector() { return (properties & STORE_TERMVECTORS)!=0; }
   public boolean storeTermPositions() { return (properties & STORE_TERMPOSITIONS)!=0; }
   public boolean storeTermOffsets() { return (properties & STORE_TERMOFFSETS)!=0; }
@@ -319,6 +320,7 @@ public final class SchemaField extends FieldProperties {
       properties.add(getPropertyName(INDEXED), indexed());
       properties.add(getPropertyName(STORED), stored());
       properties.add(getPropertyName(DOC_VALUES), hasDocValues());
+      properties.add(getPropertyName(USE_DOCVALUES_AS_STORED), useDocValuesAsStored());
       properties.add(getPropertyName(STORE_TERMVECTORS), storeTermVector());
       properties.add(getPropertyName(STORE_TERMPOSITIONS), storeTermPositions());
       properties.add(getPropertyName(STORE_TERMOFFSETS), storeTermOffsets());
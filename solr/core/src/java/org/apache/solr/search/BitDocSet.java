@@ -232,6 +232,8 @@ public class BitDocSet extends DocSetBase {
     FixedBitSet newbits = bits.clone();
     if (other instanceof BitDocSet) {
       newbits.andNot(((BitDocSet) other).bits);
+    } else if (other instanceof OffHeapBitDocSet) {
+      ((OffHeapBitDocSet) other).andNotFrom(newbits);
     } else {
       DocIterator iter = other.iterator();
       while (iter.hasNext()) {
@@ -251,6 +253,9 @@ public class BitDocSet extends DocSetBase {
       BitDocSet otherDocSet = (BitDocSet) other;
       newbits = FixedBitSet.ensureCapacity(newbits, otherDocSet.bits.length());
       newbits.or(otherDocSet.bits);
+    } else if (other instanceof OffHeapBitDocSet) {
+      // let it handle the sizing, it knows how to read its own bits
+      return other.union(this);
     } else {
       DocIterator iter = other.iterator();
       while (iter.hasNext()) {
@@ -146,5 +146,15 @@ public class CacheConfig implements MapSerializable{
     return nodeName;
   }
 
+  /**
+   * Whether large DocSet values should be moved off the Java heap before they are cached,
+   * set with the <code>offHeap</code> attribute. Only applies to the filterCache.
+   *
+   * @see OffHeapBitDocSet
+   */
+  public boolean isOffHeap() {
+    return Boolean.parseBoolean(args.get("offHeap"));
+  }
+
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.common.SolrException;
+
+/**
+ * The running requests of a core that can be cancelled, by the id they were sent with in the
+ * {@link org.apache.solr.common.params.CommonParams#QUERY_ID} parameter.
+ * <p>
+ * Cancelling a request sets its flag, which the request checks through
+ * {@link SolrQueryTimeoutImpl} like it checks timeAllowed: it stops at the next check, and returns
+ * what it computed so far with <code>partialResults</code>.
+ */
+public class CancellableQueries {
+  private final ConcurrentMap<String,AtomicBoolean> running = new ConcurrentHashMap<>();
+
+  /**
+   * Registers a request that starts, and returns the flag that is set when it is cancelled.
+   *
+   * @throws SolrException if a request with the same id is already running
+   */
+  public AtomicBoolean register(String queryId) {
+    AtomicBoolean cancelled = new AtomicBoolean();
+    if (running.putIfAbsent(queryId, cancelled) != null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "A request with the same queryId is already running: " + queryId);
+    }
+    return cancelled;
+  }
+
+  /** Forgets a request that is done. */
+  public void unregister(String queryId, AtomicBoolean cancelled) {
+    running.remove(queryId, cancelled);
+  }
+
+  /** Cancels a running request, and returns false if there is no request with this id. */
+  public boolean cancel(String queryId) {
+    AtomicBoolean cancelled = running.get(queryId);
+    if (cancelled == null) {
+      return false;
+    }
+    cancelled.set(true);
+    return true;
+  }
+
+  /** Returns the ids of the running requests, sorted. */
+  public List<String> getQueryIds() {
+    List<String> ids = new ArrayList<>(running.keySet());
+    Collections.sort(ids);
+    return ids;
+  }
+}
@@ -17,14 +17,25 @@
 
 package org.apache.solr.search;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
 
 import com.carrotsearch.hppc.FloatArrayList;
 import com.carrotsearch.hppc.IntArrayList;
@@ -63,8 +74,10 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.LongValues;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ExpandParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.QueryElevationComponent;
@@ -76,6 +89,7 @@ import org.apache.solr.schema.StrField;
 import org.apache.solr.schema.TrieFloatField;
 import org.apache.solr.schema.TrieIntField;
 import org.apache.solr.schema.TrieLongField;
+import org.apache.solr.util.DefaultSolrThreadFactory;
 
 /**
 
@@ -104,6 +118,11 @@ import org.apache.solr.schema.TrieLongField;
  <p>
  fq={!collapse field=field_name nullPolicy=nullPolicy}
  <p>
+ Collapse on a String field by score, collapsing the segments in parallel with up to 4 threads
+ (a negative number means no limit):
+ <p>
+ fq={!collapse field=field_name threads=4}
+ <p>
  There are three null policies: <br>
  ignore : removes docs with a null value in the collapse field (default).<br>
  expand : treats each doc with a null value in the collapse field as a separate group.<br>
@@ -121,6 +140,30 @@ public class CollapsingQParserPlugin extends QParserPlugin {
   public static final String HINT_TOP_FC = "top_fc";
   public static final String HINT_MULTI_DOCVALUES = "multi_docvalues";
 
+  /* for internal testing purposes only: the number of values from which group heads start sparse */
+  static int sparseHeadsMinValueCount = 1 << 16;
+
+  static final ArrayRecycler arrayRecycler = new ArrayRecycler();
+
+  /*
+  * Recycles the arrays once the request is done: the collectors can be run more than once
+  * by a request, so the arrays are still needed after finish().
+  */
+  private static void recycleOnClose(Closeable arrays) {
+    SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+    if(info != null) {
+      info.addCloseHook(arrays);
+    }
+  }
+
+  static final Executor collapseExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          10, TimeUnit.SECONDS, // terminate idle threads after 10 sec
+          new SynchronousQueue<Runnable>()  // directly hand off tasks
+          , new DefaultSolrThreadFactory("collapseExecutor")
+  );
+
 
   public void init(NamedList namedList) {
 
@@ -223,6 +266,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     public static final int NULL_POLICY_COLLAPSE = 1;
     public static final int NULL_POLICY_EXPAND = 2;
     private int size;
+    private int threads;
+    private int expandRows;
 
     public String getField(){
       return this.collapseField;
@@ -303,6 +348,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       this.hint = localParams.get("hint");
       this.size = localParams.getInt("size", 100000); //Only used for collapsing on int fields.
+      this.threads = localParams.getInt("threads", 0); //Only used for collapsing on String fields by score.
+
+      // The ExpandComponent can only reuse the groups if it would expand them with the main query and filters.
+      if (params != null &&
+          params.getBool(ExpandParams.EXPAND, false) &&
+          params.getBool(ExpandParams.EXPAND_SINGLE_PASS, false) &&
+          params.get(ExpandParams.EXPAND_Q) == null &&
+          params.getParams(ExpandParams.EXPAND_FQ) == null &&
+          params.get(ExpandParams.EXPAND_SORT) == null &&
+          params.get(ExpandParams.EXPAND_FIELD) == null &&
+          GroupHeadSelectorType.SCORE.equals(groupHeadSelector.type)) {
+        this.expandRows = params.getInt(ExpandParams.EXPAND_ROWS, 5);
+      }
 
       {
         final SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
@@ -370,6 +428,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         }
 
         boostDocsMap = getBoostDocs(searcher, this.boosted, context);
+        // only the collapse of the main query gathers the groups to expand
+        int expandRows = context != null && context.get(ExpandedGroups.GATHER_KEY) != null ? this.expandRows : 0;
         return collectorFactory.getCollector(this.collapseField,
                                              this.groupHeadSelector,
                                              this.sortSpec,
@@ -377,6 +437,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                              this.hint,
                                              this.needsScores,
                                              this.size,
+                                             this.threads,
+                                             expandRows,
                                              boostDocsMap,
                                              searcher);
 
@@ -474,24 +536,24 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
   private static class OrdScoreCollector extends DelegatingCollector {
 
-    private LeafReaderContext[] contexts;
-    private FixedBitSet collapsedSet;
+    LeafReaderContext[] contexts;
+    FixedBitSet collapsedSet;
     private SortedDocValues collapseValues;
-    private MultiDocValues.OrdinalMap ordinalMap;
-    private SortedDocValues segmentValues;
-    private LongValues segmentOrdinalMap;
+    MultiDocValues.OrdinalMap ordinalMap;
+    SortedDocValues segmentValues;
+    LongValues segmentOrdinalMap;
     private MultiDocValues.MultiSortedDocValues multiSortedDocValues;
-    private int[] ords;
-    private float[] scores;
+    OrdScoreHeads heads;
     private int maxDoc;
-    private int nullPolicy;
-    private float nullScore = -Float.MAX_VALUE;
-    private int nullDoc;
-    private FloatArrayList nullScores;
-    private IntArrayList boostOrds;
-    private IntArrayList boostDocs;
-    private MergeBoost mergeBoost;
-    private boolean boosts;
+    int nullPolicy;
+    float nullScore = -Float.MAX_VALUE;
+    int nullDoc;
+    FloatArrayList nullScores;
+    IntArrayList boostOrds;
+    IntArrayList boostDocs;
+    MergeBoost mergeBoost;
+    boolean boosts;
+    ExpandedGroups expandedGroups;
 
     public OrdScoreCollector(int maxDoc,
                              int segments,
@@ -507,10 +569,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         this.multiSortedDocValues = (MultiDocValues.MultiSortedDocValues)collapseValues;
         this.ordinalMap = multiSortedDocValues.mapping;
       }
-      this.ords = new int[valueCount];
-      Arrays.fill(this.ords, -1);
-      this.scores = new float[valueCount];
-      Arrays.fill(this.scores, -Float.MAX_VALUE);
+      this.heads = new OrdScoreHeads(valueCount);
+      recycleOnClose(this.heads);
       this.nullPolicy = nullPolicy;
       if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
         nullScores = new FloatArrayList();
@@ -543,6 +603,9 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       } else {
         this.segmentValues = collapseValues;
       }
+      if(expandedGroups != null && context.ord == 0) {
+        expandedGroups.clear(); // the query may be collected more than once
+      }
     }
 
     @Override
@@ -569,9 +632,9 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if(ord > -1) {
         float score = scorer.score();
-        if(score > scores[ord]) {
-          ords[ord] = globalDoc;
-          scores[ord] = score;
+        heads.collect(ord, globalDoc, score);
+        if(expandedGroups != null) {
+          expandedGroups.collect(ord, globalDoc, score);
         }
       } else if(nullPolicy == CollapsingPostFilter.NULL_POLICY_COLLAPSE) {
         float score = scorer.score();
@@ -587,6 +650,13 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
     @Override
     public void finish() throws IOException {
+      if(expandedGroups != null) {
+        SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+        if(info != null) {
+          info.getReq().getContext().put(ExpandedGroups.CONTEXT_KEY, expandedGroups);
+        }
+      }
+
       if(contexts.length == 0) {
         return;
       }
@@ -602,7 +672,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           int ord = this.boostOrds.get(i);
           if(ord > -1) {
             //Remove any group heads that are in the same groups as boosted documents.
-            ords[ord] = -1;
+            heads.remove(ord);
           }
           //Add the boosted docs to the collapsedSet
           this.collapsedSet.set(boostDocs.get(i));
@@ -611,12 +681,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
 
       //Build the sorted DocSet of group heads.
-      for(int i=0; i<ords.length; i++) {
-        int doc = ords[i];
-        if(doc > -1) {
-          collapsedSet.set(doc);
-        }
-      }
+      heads.setDocs(collapsedSet);
 
       int currentContext = 0;
       int currentDocBase = 0;
@@ -664,7 +729,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         }
 
         if(ord > -1) {
-          dummy.score = scores[ord];
+          dummy.score = heads.score(ord);
         } else if(boosts && mergeBoost.boost(docId)) {
           //Ignore so it doesn't mess up the null scoring.
         } else if(this.nullPolicy == CollapsingPostFilter.NULL_POLICY_COLLAPSE) {
@@ -683,6 +748,400 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     }
   }
 
+  /*
+  * Collapses on Ordinal Values using Score to select the group head, with the work split by segment.
+  * Once a segment is collected its docs are collapsed on the segment ordinals by a task of the
+  * collapseExecutor, while the next segments are being collected. The group heads of the segments
+  * are then merged on the top level ordinals of the OrdinalMap in finish().
+  */
+
+  private static class ParallelOrdScoreCollector extends OrdScoreCollector {
+
+    private final String field;
+    private final Semaphore semaphore;
+    private final List<Future<SegmentCollapse>> futures = new ArrayList<>();
+    private SegmentCollapse segment;
+
+    public ParallelOrdScoreCollector(int maxDoc,
+                                     int segments,
+                                     String field,
+                                     SortedDocValues collapseValues,
+                                     int nullPolicy,
+                                     IntIntHashMap boostDocsMap,
+                                     int threads) {
+      super(maxDoc, segments, collapseValues, nullPolicy, boostDocsMap);
+      assert this.ordinalMap != null;
+      this.field = field;
+      this.semaphore = new Semaphore(threads < 0 ? Integer.MAX_VALUE : threads);
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+      submit();
+      super.doSetNextReader(context);
+      this.segment = new SegmentCollapse(context, this.field, this.nullPolicy);
+    }
+
+    @Override
+    public void collect(int contextDoc) throws IOException {
+      int globalDoc = contextDoc+this.docBase;
+
+      // The boosted docs are few, they are handled as they are collected.
+      if(boosts && mergeBoost.boost(globalDoc)) {
+        int ord = segmentValues.getOrd(contextDoc);
+        if(ord > -1) {
+          ord = (int)segmentOrdinalMap.get(ord);
+        }
+        boostDocs.add(globalDoc);
+        boostOrds.add(ord);
+        return;
+      }
+
+      segment.docs.add(contextDoc);
+      segment.docScores.add(scorer.score());
+    }
+
+    private void submit() {
+      final SegmentCollapse task = this.segment;
+      this.segment = null;
+      if(task == null || task.docs.isEmpty()) {
+        return;
+      }
+
+      FutureTask<SegmentCollapse> future = new FutureTask<>(new Callable<SegmentCollapse>() {
+        @Override
+        public SegmentCollapse call() throws Exception {
+          try {
+            task.collapse();
+            return task;
+          } finally {
+            semaphore.release();
+          }
+        }
+      });
+
+      try {
+        semaphore.acquire(); // bounds the number of segments buffered or being collapsed
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while collapsing", e);
+      }
+      collapseExecutor.execute(future);
+      futures.add(future);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      submit();
+
+      // The segments are merged in order and a head only replaces another one with a higher score,
+      // so ties go to the lowest doc, like with the sequential collector.
+      for(Future<SegmentCollapse> future : futures) {
+        SegmentCollapse seg;
+        try {
+          seg = future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while collapsing", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if(cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          } else if(cause instanceof IOException) {
+            throw (IOException)cause;
+          }
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error collapsing a segment", cause);
+        }
+
+        seg.heads.mergeInto(heads, ordinalMap.getGlobalOrds(seg.ord), seg.docBase);
+        seg.heads.close();
+
+        if(seg.nullScore > nullScore) {
+          nullScore = seg.nullScore;
+          nullDoc = seg.docBase+seg.nullDoc;
+        }
+
+        if(seg.nullDocs != null) {
+          for(int i=0; i<seg.nullDocs.size(); i++) {
+            collapsedSet.set(seg.docBase+seg.nullDocs.get(i));
+          }
+          nullScores.addAll(seg.nullDocScores);
+        }
+      }
+      futures.clear();
+
+      super.finish();
+    }
+  }
+
+  /*
+  * The docs of a segment that were collected by the ParallelOrdScoreCollector, and once
+  * collapsed the group heads of the segment, by segment ordinal.
+  */
+
+  private static class SegmentCollapse {
+
+    final int ord;
+    final int docBase;
+    private final LeafReader reader;
+    private final String field;
+    private final int nullPolicy;
+
+    IntArrayList docs = new IntArrayList();
+    FloatArrayList docScores = new FloatArrayList();
+
+    OrdScoreHeads heads;
+    float nullScore = -Float.MAX_VALUE;
+    int nullDoc;
+    IntArrayList nullDocs;
+    FloatArrayList nullDocScores;
+
+    public SegmentCollapse(LeafReaderContext context, String field, int nullPolicy) {
+      this.ord = context.ord;
+      this.docBase = context.docBase;
+      this.reader = context.reader();
+      this.field = field;
+      this.nullPolicy = nullPolicy;
+      if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
+        this.nullDocs = new IntArrayList();
+        this.nullDocScores = new FloatArrayList();
+      }
+    }
+
+    public void collapse() throws IOException {
+      // Doc values can only be used by the thread that acquired them.
+      SortedDocValues values = DocValues.getSorted(reader, field);
+      this.heads = new OrdScoreHeads(values.getValueCount());
+      int size = docs.size();
+      for(int i=0; i<size; i++) {
+        int doc = docs.get(i);
+        float score = docScores.get(i);
+        int ord = values.getOrd(doc);
+        if(ord > -1) {
+          heads.collect(ord, doc, score);
+        } else if(nullPolicy == CollapsingPostFilter.NULL_POLICY_COLLAPSE) {
+          if(score > nullScore) {
+            nullScore = score;
+            nullDoc = doc;
+          }
+        } else if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
+          nullDocs.add(doc);
+          nullDocScores.add(score);
+        }
+      }
+      this.docs = null;
+      this.docScores = null;
+    }
+  }
+
+  /*
+  * The group heads of the score collectors: the best doc of each ordinal and its score.
+  * When there are many ordinals the heads start in a hash table that only holds the groups
+  * that were hit, and move to arrays indexed by ordinal once enough groups were hit for
+  * the arrays to be the smaller of the two. Arrays are recycled across requests.
+  */
+
+  private static class OrdScoreHeads implements Closeable {
+
+    private final int valueCount;
+    private final int maxSparseGroups;
+
+    // dense
+    private int[] docs;
+    private float[] scores;
+
+    // sparse, slots index the doc and score of an ordinal in the lists
+    private IntIntHashMap slots;
+    private IntArrayList slotDocs;
+    private FloatArrayList slotScores;
+
+    public OrdScoreHeads(int valueCount) {
+      this.valueCount = valueCount;
+      // Roughly the point where a hash entry and its list slots outweigh 8 bytes per ordinal.
+      this.maxSparseGroups = valueCount >>> 3;
+      if(valueCount < sparseHeadsMinValueCount) {
+        allocateDense();
+      } else {
+        this.slots = new IntIntHashMap();
+        this.slotDocs = new IntArrayList();
+        this.slotScores = new FloatArrayList();
+      }
+    }
+
+    private void allocateDense() {
+      this.docs = arrayRecycler.getInts(valueCount);
+      Arrays.fill(this.docs, -1);
+      this.scores = arrayRecycler.getFloats(valueCount);
+      Arrays.fill(this.scores, -Float.MAX_VALUE);
+    }
+
+    /** Keeps the doc as the head of the group of the ordinal if its score is higher. */
+    public void collect(int ord, int doc, float score) {
+      if(docs != null) {
+        if(score > scores[ord]) {
+          docs[ord] = doc;
+          scores[ord] = score;
+        }
+        return;
+      }
+
+      int slot = slots.indexOf(ord);
+      if(slots.indexExists(slot)) {
+        int index = slots.indexGet(slot);
+        if(score > slotScores.get(index)) {
+          slotDocs.set(index, doc);
+          slotScores.set(index, score);
+        }
+      } else if(score > -Float.MAX_VALUE) {
+        slots.indexInsert(slot, ord, slotDocs.size());
+        slotDocs.add(doc);
+        slotScores.add(score);
+        if(slotDocs.size() > maxSparseGroups) {
+          densify();
+        }
+      }
+    }
+
+    private void densify() {
+      allocateDense();
+      for(IntIntCursor cursor : slots) {
+        docs[cursor.key] = slotDocs.get(cursor.value);
+        scores[cursor.key] = slotScores.get(cursor.value);
+      }
+      this.slots = null;
+      this.slotDocs = null;
+      this.slotScores = null;
+    }
+
+    /** Removes the head of the group of the ordinal, its score is kept. */
+    public void remove(int ord) {
+      if(docs != null) {
+        docs[ord] = -1;
+      } else {
+        int slot = slots.indexOf(ord);
+        if(slots.indexExists(slot)) {
+          slotDocs.set(slots.indexGet(slot), -1);
+        }
+      }
+    }
+
+    public float score(int ord) {
+      if(docs != null) {
+        return scores[ord];
+      }
+      int slot = slots.indexOf(ord);
+      return slots.indexExists(slot) ? slotScores.get(slots.indexGet(slot)) : -Float.MAX_VALUE;
+    }
+
+    /** Sets the bits of the group heads. */
+    public void setDocs(FixedBitSet set) {
+      if(docs != null) {
+        for(int i=0; i<valueCount; i++) {
+          int doc = docs[i];
+          if(doc > -1) {
+            set.set(doc);
+          }
+        }
+      } else {
+        int size = slotDocs.size();
+        for(int i=0; i<size; i++) {
+          int doc = slotDocs.get(i);
+          if(doc > -1) {
+            set.set(doc);
+          }
+        }
+      }
+    }
+
+    /** Collects the heads into the heads of the top level ordinals, the docs being relative to docBase. */
+    public void mergeInto(OrdScoreHeads target, LongValues globalOrds, int docBase) {
+      if(docs != null) {
+        for(int ord=0; ord<valueCount; ord++) {
+          int doc = docs[ord];
+          if(doc > -1) {
+            target.collect((int)globalOrds.get(ord), docBase+doc, scores[ord]);
+          }
+        }
+      } else {
+        for(IntIntCursor cursor : slots) {
+          int doc = slotDocs.get(cursor.value);
+          if(doc > -1) {
+            target.collect((int)globalOrds.get(cursor.key), docBase+doc, slotScores.get(cursor.value));
+          }
+        }
+      }
+    }
+
+    /** Hands the arrays over to the next requests, the heads can't be used anymore. */
+    @Override
+    public void close() {
+      if(docs != null) {
+        arrayRecycler.recycle(docs);
+        arrayRecycler.recycle(scores);
+        this.docs = null;
+        this.scores = null;
+      }
+      this.slots = null;
+      this.slotDocs = null;
+      this.slotScores = null;
+    }
+  }
+
+  /*
+  * Keeps the arrays indexed by ordinal of finished requests, so that the next requests
+  * collapsing on a field with the same number of values don't have to allocate them again.
+  * The arrays are softly referenced and can still be reclaimed under memory pressure.
+  * The content of the arrays returned is undefined.
+  */
+
+  static class ArrayRecycler {
+
+    private static final int MAX_ARRAYS = 8;
+
+    private final LinkedList<SoftReference<int[]>> ints = new LinkedList<>();
+    private final LinkedList<SoftReference<float[]>> floats = new LinkedList<>();
+
+    public synchronized int[] getInts(int size) {
+      for(Iterator<SoftReference<int[]>> it = ints.iterator(); it.hasNext();) {
+        int[] array = it.next().get();
+        if(array == null) {
+          it.remove();
+        } else if(array.length == size) {
+          it.remove();
+          return array;
+        }
+      }
+      return new int[size];
+    }
+
+    public synchronized float[] getFloats(int size) {
+      for(Iterator<SoftReference<float[]>> it = floats.iterator(); it.hasNext();) {
+        float[] array = it.next().get();
+        if(array == null) {
+          it.remove();
+        } else if(array.length == size) {
+          it.remove();
+          return array;
+        }
+      }
+      return new float[size];
+    }
+
+    public synchronized void recycle(int[] array) {
+      if(ints.size() == MAX_ARRAYS) {
+        ints.removeFirst();
+      }
+      ints.addLast(new SoftReference<>(array));
+    }
+
+    public synchronized void recycle(float[] array) {
+      if(floats.size() == MAX_ARRAYS) {
+        floats.removeFirst();
+      }
+      floats.addLast(new SoftReference<>(array));
+    }
+  }
+
   /*
   * Collapses on an integer field using the score to select the group head.
   */
@@ -909,20 +1368,21 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.nullPolicy = nullPolicy;
       this.needsScores = needsScores;
       if (null != sortSpec) {
-        this.collapseStrategy = new OrdSortSpecStrategy(maxDoc, nullPolicy, new int[valueCount], groupHeadSelector, this.needsScores, boostDocs, sortSpec, searcher, collapseValues);
+        this.collapseStrategy = new OrdSortSpecStrategy(maxDoc, nullPolicy, arrayRecycler.getInts(valueCount), groupHeadSelector, this.needsScores, boostDocs, sortSpec, searcher, collapseValues);
       } else if (funcQuery != null) {
-        this.collapseStrategy =  new OrdValueSourceStrategy(maxDoc, nullPolicy, new int[valueCount], groupHeadSelector, this.needsScores, boostDocs, funcQuery, searcher, collapseValues);
+        this.collapseStrategy =  new OrdValueSourceStrategy(maxDoc, nullPolicy, arrayRecycler.getInts(valueCount), groupHeadSelector, this.needsScores, boostDocs, funcQuery, searcher, collapseValues);
       } else {
         if(fieldType instanceof TrieIntField) {
-          this.collapseStrategy = new OrdIntStrategy(maxDoc, nullPolicy, new int[valueCount], groupHeadSelector, this.needsScores, boostDocs, collapseValues);
+          this.collapseStrategy = new OrdIntStrategy(maxDoc, nullPolicy, arrayRecycler.getInts(valueCount), groupHeadSelector, this.needsScores, boostDocs, collapseValues);
         } else if(fieldType instanceof TrieFloatField) {
-          this.collapseStrategy = new OrdFloatStrategy(maxDoc, nullPolicy, new int[valueCount], groupHeadSelector, this.needsScores, boostDocs, collapseValues);
+          this.collapseStrategy = new OrdFloatStrategy(maxDoc, nullPolicy, arrayRecycler.getInts(valueCount), groupHeadSelector, this.needsScores, boostDocs, collapseValues);
         } else if(fieldType instanceof TrieLongField) {
-          this.collapseStrategy =  new OrdLongStrategy(maxDoc, nullPolicy, new int[valueCount], groupHeadSelector, this.needsScores, boostDocs, collapseValues);
+          this.collapseStrategy =  new OrdLongStrategy(maxDoc, nullPolicy, arrayRecycler.getInts(valueCount), groupHeadSelector, this.needsScores, boostDocs, collapseValues);
         } else {
           throw new IOException("min/max must be either TrieInt, TrieLong, TrieFloat.");
         }
       }
+      recycleOnClose(this.collapseStrategy);
     }
 
     public boolean acceptsDocsOutOfOrder() {
@@ -1181,6 +1641,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                                             String hint,
                                             boolean needsScores,
                                             int size,
+                                            int threads,
+                                            int expandRows,
                                             IntIntHashMap boostDocs,
                                             SolrIndexSearcher searcher) throws IOException {
 
@@ -1238,6 +1700,18 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         
         if (collapseFieldType instanceof StrField) {
 
+          if(expandRows > 0 && boostDocs == null) {
+            // Elevated docs don't follow the collapse, they are left to the second pass of the ExpandComponent.
+            OrdScoreCollector collector = new OrdScoreCollector(maxDoc, leafCount, docValues, nullPolicy, boostDocs);
+            collector.expandedGroups = new ExpandedGroups(collapseField, expandRows);
+            return collector;
+          }
+
+          if(threads != 0 && docValues instanceof MultiDocValues.MultiSortedDocValues) {
+            // Only worth it with several segments, top_fc and single segment indexes have a single ordinal space.
+            return new ParallelOrdScoreCollector(maxDoc, leafCount, collapseField, docValues, nullPolicy, boostDocs, threads);
+          }
+
           return new OrdScoreCollector(maxDoc, leafCount, docValues, nullPolicy, boostDocs);
 
         } else if (collapseFieldType instanceof TrieIntField ||
@@ -1359,7 +1833,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
    * using min/max field value to select the group head.
    *
    */
-  private static abstract class OrdFieldValueStrategy {
+  private static abstract class OrdFieldValueStrategy implements Closeable {
     protected int nullPolicy;
     protected int[] ords; 
     protected Scorer scorer;
@@ -1454,6 +1928,21 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     public float[] getScores() {
       return scores;
     }
+
+    protected float[] newScores() {
+      float[] scores = arrayRecycler.getFloats(ords.length);
+      Arrays.fill(scores, 0F);
+      return scores;
+    }
+
+    /** Hands the arrays over to the next requests, the strategy can't be used anymore. */
+    @Override
+    public void close() {
+      arrayRecycler.recycle(ords);
+      if(scores != null) {
+        arrayRecycler.recycle(scores);
+      }
+    }
   }
 
   /*
@@ -1476,7 +1965,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                           SortedDocValues values) throws IOException {
       super(maxDoc, ords, nullPolicy, needsScores, boostDocs, values);
       this.field = groupHeadSelector.selectorText;
-      this.ordVals = new int[ords.length];
+      this.ordVals = arrayRecycler.getInts(ords.length);
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
       
@@ -1490,13 +1979,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
 
       if(needsScores) {
-        this.scores = new float[ords.length];
+        this.scores = newScores();
         if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
           nullScores = new FloatArrayList();
         }
       }
     }
 
+    @Override
+    public void close() {
+      super.close();
+      arrayRecycler.recycle(ordVals);
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
     }
@@ -1557,7 +2052,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
                             SortedDocValues values) throws IOException {
       super(maxDoc, ords, nullPolicy, needsScores, boostDocs, values);
       this.field = groupHeadSelector.selectorText;
-      this.ordVals = new float[ords.length];
+      this.ordVals = arrayRecycler.getFloats(ords.length);
       
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
@@ -1572,13 +2067,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
 
       if(needsScores) {
-        this.scores = new float[ords.length];
+        this.scores = newScores();
         if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
           nullScores = new FloatArrayList();
         }
       }
     }
 
+    @Override
+    public void close() {
+      super.close();
+      arrayRecycler.recycle(ordVals);
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
     }
@@ -1654,7 +2155,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
 
       if(needsScores) {
-        this.scores = new float[ords.length];
+        this.scores = newScores();
         if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
           nullScores = new FloatArrayList();
         }
@@ -1727,7 +2228,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       super(maxDoc, ords, nullPolicy, needsScores, boostDocs, values);
       this.valueSource = funcQuery.getValueSource();
       this.rcontext = ValueSource.newContext(searcher);
-      this.ordVals = new float[ords.length];
+      this.ordVals = arrayRecycler.getFloats(ords.length);
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
       
@@ -1743,13 +2244,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.cscore = collapseScore.setupIfNeeded(groupHeadSelector, rcontext);
 
       if(this.needsScores) {
-        this.scores = new float[ords.length];
+        this.scores = newScores();
         if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
           nullScores = new FloatArrayList();
         }
       }
     }
 
+    @Override
+    public void close() {
+      super.close();
+      arrayRecycler.recycle(ordVals);
+    }
+
     public void setNextReader(LeafReaderContext context) throws IOException {
       functionValues = this.valueSource.getValues(rcontext, context);
     }
@@ -1824,7 +2331,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.compareState = new SortFieldsCompare(sort.getSort(), ords.length);
 
       if (this.needsScores) {
-        this.scores = new float[ords.length];
+        this.scores = newScores();
         if(nullPolicy == CollapsingPostFilter.NULL_POLICY_EXPAND) {
           nullScores = new FloatArrayList();
         }
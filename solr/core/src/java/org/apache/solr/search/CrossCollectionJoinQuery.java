@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.client.solrj.io.SolrClientCache;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.stream.CloudSolrStream;
+import org.apache.solr.client.solrj.io.stream.StreamContext;
+import org.apache.solr.client.solrj.io.stream.TupleStream;
+import org.apache.solr.client.solrj.io.stream.UniqueStream;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.util.RTimer;
+
+/**
+ * A join whose from side is a collection of the cluster that doesn't need a replica on this node.
+ * <p>
+ * The from query runs against the remote collection through its <code>/export</code> handler, which
+ * streams back the values of the from field sorted and deduplicated across shards.  Only those keys
+ * cross the network; the docs of the to side are then found by seeking the keys, in order, in the
+ * terms of the to field of every segment.
+ * <p>
+ * Since the remote collection can change at any time, the query is only equal to another one built
+ * within the same time-to-live window, which bounds how long a cached result can be stale.
+ */
+class CrossCollectionJoinQuery extends Query {
+  final String query;
+  final String zkHost;
+  final String collection;
+  final String fromField;
+  final String toField;
+  final long timestamp;  // the start of the time-to-live window the query was created in, in ms since the epoch
+  final SolrClientCache clientCache;  // not part of equals() and hashCode()
+
+  public CrossCollectionJoinQuery(String query, String zkHost, String collection, String fromField, String toField,
+                                  long timestamp, SolrClientCache clientCache) {
+    this.query = query;
+    this.zkHost = zkHost;
+    this.collection = collection;
+    this.fromField = fromField;
+    this.toField = toField;
+    this.timestamp = timestamp;
+    this.clientCache = clientCache;
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+    return new CrossCollectionJoinWeight((SolrIndexSearcher) searcher);
+  }
+
+  private class CrossCollectionJoinWeight extends ConstantScoreWeight {
+    final SolrIndexSearcher searcher;
+    ResponseBuilder rb;
+    Filter filter;
+
+    int fromKeyCount;   // number of distinct keys returned by the from collection
+    int toTermHits;     // number of keys found in at least one segment of the to side
+
+    public CrossCollectionJoinWeight(SolrIndexSearcher searcher) {
+      super(CrossCollectionJoinQuery.this);
+      this.searcher = searcher;
+      SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+      if (info != null) {
+        rb = info.getResponseBuilder();
+      }
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context) throws IOException {
+      if (filter == null) {
+        boolean debug = rb != null && rb.isDebug();
+        RTimer timer = (debug ? new RTimer() : null);
+        DocSet resultSet = getDocSet();
+        if (timer != null) timer.stop();
+
+        if (debug) {
+          SimpleOrderedMap<Object> dbg = new SimpleOrderedMap<>();
+          dbg.add("time", (long) timer.getTime());
+          dbg.add("fromKeyCount", fromKeyCount);
+          dbg.add("toTermHits", toTermHits);
+          dbg.add("toSetSize", resultSet.size());
+          rb.addDebug(dbg, "join", CrossCollectionJoinQuery.this.toString());
+        }
+
+        filter = resultSet.getTopFilter();
+      }
+
+      DocIdSet readerSet = filter.getDocIdSet(context, null);
+      if (readerSet == null) {
+        return null;
+      }
+      DocIdSetIterator readerSetIterator = readerSet.iterator();
+      if (readerSetIterator == null) {
+        return null;
+      }
+      return new ConstantScoreScorer(this, score(), readerSetIterator);
+    }
+
+    public DocSet getDocSet() throws IOException {
+      BytesRefArray keys = fetchKeys(searcher.getSchema().getFieldType(toField));
+      fromKeyCount = keys.size();
+      if (fromKeyCount == 0) {
+        return DocSet.EMPTY;
+      }
+
+      FixedBitSet bits = new FixedBitSet(searcher.maxDoc());
+      List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+      // a key that is in several segments only counts once
+      FixedBitSet keyHits = new FixedBitSet(fromKeyCount);
+      for (LeafReaderContext leaf : leaves) {
+        Terms terms = leaf.reader().terms(toField);
+        if (terms == null) continue;
+        TermsEnum termsEnum = terms.iterator();
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        PostingsEnum postingsEnum = null;
+
+        // keys are in order, so the terms enum only ever moves forward and can stop at the end
+        BytesRefIterator iter = keys.iterator();
+        int keyNum = 0;
+        for (BytesRef key = iter.next(); key != null; key = iter.next(), keyNum++) {
+          TermsEnum.SeekStatus status = termsEnum.seekCeil(key);
+          if (status == TermsEnum.SeekStatus.END) break;
+          if (status != TermsEnum.SeekStatus.FOUND) continue;
+          keyHits.set(keyNum);
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+          int base = leaf.docBase;
+          for (int doc = postingsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postingsEnum.nextDoc()) {
+            if (liveDocs == null || liveDocs.get(doc)) bits.set(base + doc);
+          }
+        }
+      }
+      toTermHits = keyHits.cardinality();
+
+      return DocSetUtil.toDocSet(bits);
+    }
+
+    /**
+     * Streams the distinct values of the from field for the docs of the from query, and returns them
+     * as terms of the to field, sorted and without duplicates.
+     */
+    private BytesRefArray fetchKeys(FieldType toType) throws IOException {
+      BytesRefArray keys = new BytesRefArray(Counter.newCounter());
+      Map<String,String> params = new HashMap<>();
+      params.put(CommonParams.QT, "/export");
+      params.put(CommonParams.Q, query);
+      params.put(CommonParams.FL, fromField);
+      params.put(CommonParams.SORT, fromField + " asc");
+
+      FieldComparator comp = new FieldComparator(fromField, ComparatorOrder.ASCENDING);
+      TupleStream stream = new UniqueStream(new CloudSolrStream(zkHost, collection, params), comp);
+      StreamContext context = new StreamContext();
+      context.setSolrClientCache(clientCache);
+      stream.setStreamContext(context);
+
+      BytesRefBuilder term = new BytesRefBuilder();
+      try {
+        stream.open();
+        for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+          Object value = tuple.get(fromField);
+          if (value == null) continue;
+          if (value instanceof List) {
+            for (Object v : (List) value) {
+              toType.readableToIndexed(v.toString(), term);
+              keys.append(term.get());
+            }
+          } else {
+            toType.readableToIndexed(value.toString(), term);
+            keys.append(term.get());
+          }
+        }
+      } catch (IOException e) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+            "Cross-collection join: unable to read the join keys from " + collection, e);
+      } finally {
+        stream.close();
+      }
+
+      // the order of the from field is not necessarily the order of the terms of the to field
+      BytesRefArray sorted = new BytesRefArray(Counter.newCounter());
+      BytesRefIterator iter = keys.iterator(BytesRef.getUTF8SortedAsUnicodeComparator());
+      BytesRefBuilder last = null;
+      for (BytesRef key = iter.next(); key != null; key = iter.next()) {
+        if (last != null && last.get().equals(key)) continue;
+        sorted.append(key);
+        if (last == null) last = new BytesRefBuilder();
+        last.copyBytes(key);
+      }
+      return sorted;
+    }
+  }
+
+  @Override
+  public String toString(String field) {
+    return "{!join method=" + JoinQParserPlugin.Method.crossCollection + " from=" + fromField + " to=" + toField
+        + " fromIndex=" + collection + "}" + query;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) return false;
+    CrossCollectionJoinQuery other = (CrossCollectionJoinQuery) o;
+    return this.query.equals(other.query)
+        && this.zkHost.equals(other.zkHost)
+        && this.collection.equals(other.collection)
+        && this.fromField.equals(other.fromField)
+        && this.toField.equals(other.toField)
+        && this.timestamp == other.timestamp;
+  }
+
+  @Override
+  public int hashCode() {
+    int h = super.hashCode();
+    h = h * 31 + query.hashCode();
+    h = h * 31 + zkHost.hashCode();
+    h = h * 31 + collection.hashCode();
+    h = h * 31 + fromField.hashCode();
+    h = h * 31 + toField.hashCode();
+    h = h * 31 + (int) (timestamp ^ (timestamp >>> 32));
+    return h;
+  }
+}
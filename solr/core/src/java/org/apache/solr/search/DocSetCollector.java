@@ -79,6 +79,10 @@ public class DocSetCollector extends SimpleCollector {
     } else {
       // set the bits for ids that were collected in the array
       for (int i=0; i<scratch.length; i++) bits.set(scratch[i]);
+      if (pos < DocSetUtil.mediumSetSize(maxDoc)) {
+        // not dense enough to be worth a bit per document
+        return RoaringDocSet.fromBits(bits);
+      }
       return new BitDocSet(bits,pos);
     }
   }
@@ -51,6 +51,14 @@ public class DocSetUtil {
     return (maxDoc>>6)+5;  // The +5 is for better test coverage for small sets
   }
 
+  /**
+   * The cut-off point for medium sets (RoaringDocSet) vs large sets (BitDocSet).
+   * Sets with at least {@link #smallSetSize} docs but less than this are represented as a RoaringDocSet.
+   */
+  public static int mediumSetSize(int maxDoc) {
+    return maxDoc>>4;  // a RoaringDocSet takes at most 2 bytes per doc while a BitDocSet takes maxDoc/8 bytes
+  }
+
   /**
    * Iterates DocSets to test for equality - slow and for testing purposes only.
    * @lucene.internal
@@ -199,10 +207,27 @@ public class DocSetUtil {
       // assert equals(docSet, smallSet);
       return smallSet;
     }
+    if (sz < mediumSetSize(maxDoc)) {
+      return RoaringDocSet.fromBits(docSet.getBits());
+    }
 
     return docSet;
   }
 
+  /** Returns the most compact DocSet for the bits.  The bits may become owned by the returned set. */
+  public static DocSet toDocSet(FixedBitSet bits) {
+    BitDocSet docSet = new BitDocSet(bits);
+    int sz = docSet.size();
+    int maxDoc = bits.length();
+    if (sz < smallSetSize(maxDoc)) {
+      return toSmallSet(docSet);
+    }
+    if (sz < mediumSetSize(maxDoc)) {
+      return RoaringDocSet.fromBits(bits);
+    }
+    return docSet;
+  }
+
   public static DocSet toSmallSet(BitDocSet bitSet) {
     int sz = bitSet.size();
     int[] docs = new int[sz];
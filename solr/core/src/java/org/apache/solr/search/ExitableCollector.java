@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+/**
+ * A collector that stops the collection, with a {@link SolrQueryTimeoutImpl.ExitingQueryException},
+ * once the request was cancelled or ran out of time.  It checks at every segment, and every
+ * {@link #CHECK_INTERVAL} docs collected within a segment.
+ *
+ * @see SolrQueryTimeoutImpl#exitIfNeeded()
+ */
+public class ExitableCollector extends FilterCollector {
+  static final int CHECK_INTERVAL = 1 << 10;
+
+  public ExitableCollector(Collector in) {
+    super(in);
+  }
+
+  @Override
+  public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+    SolrQueryTimeoutImpl.exitIfNeeded();
+    return new FilterLeafCollector(super.getLeafCollector(context)) {
+      int count;
+
+      @Override
+      public void collect(int doc) throws IOException {
+        if ((++count & (CHECK_INTERVAL - 1)) == 0) {
+          SolrQueryTimeoutImpl.exitIfNeeded();
+        }
+        in.collect(doc);
+      }
+    };
+  }
+
+  /** Wraps the collector if the request of the current thread can be cancelled. */
+  public static Collector wrap(Collector collector) {
+    return SolrQueryTimeoutImpl.isCancellable() ? new ExitableCollector(collector) : collector;
+  }
+}
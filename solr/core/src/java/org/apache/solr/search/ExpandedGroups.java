@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * The best scoring members of the groups of a collapse, kept while collapsing so that the
+ * ExpandComponent doesn't have to run the query a second time.
+ * <p>
+ * Groups are identified by the top level ordinal of the collapse field.  Every group keeps its
+ * members in a bounded queue ordered like {@link org.apache.lucene.search.TopScoreDocCollector}
+ * orders them, by descending score and then by ascending doc, along with the number of docs
+ * collected for the group.  The queues are one longer than the rows to expand, since the group
+ * head is a member of its group too.
+ * <p>
+ * Every group takes room for that many members, 8 bytes each, whether it fills it or not: the
+ * memory grows with the number of groups times the rows.  Past {@link #MAX_ENTRIES} members the
+ * groups are given up on, and the ExpandComponent expands with its second pass.
+ *
+ * @see org.apache.solr.common.params.ExpandParams#EXPAND_SINGLE_PASS
+ */
+public final class ExpandedGroups {
+
+  /** The key of the request context the groups of the collapse of the main query are kept under. */
+  public static final String CONTEXT_KEY = "collapse.expandedGroups";
+
+  /**
+   * The key of the request context that is set while the main query is collected.  Only that
+   * collapse gathers groups: the collapses run for faceting and the like see other docs.
+   */
+  public static final String GATHER_KEY = "collapse.gatherExpandedGroups";
+
+  /** The most members there is room for, over all the groups. */
+  static final int MAX_ENTRIES = 1 << 22;
+
+  private final String field;
+  private final int rows;
+  private final int capacity;
+
+  private IntIntHashMap slots = new IntIntHashMap();
+  private int numSlots;
+  private int[] sizes = new int[0];
+  private int[] counts = new int[0];
+  private int[] docs = new int[0];
+  private float[] scores = new float[0];
+  private boolean overflowed;
+
+  public ExpandedGroups(String field, int rows) {
+    this.field = field;
+    this.rows = rows;
+    this.capacity = rows + 1;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  /** Whether all the groups were kept, rather than given up on for taking too much room. */
+  public boolean isComplete() {
+    return !overflowed;
+  }
+
+  /** Forgets all the groups, for when the query is collected again. */
+  public void clear() {
+    slots = new IntIntHashMap();
+    numSlots = 0;
+    overflowed = false;
+  }
+
+  /** Adds a doc to its group.  Docs must be collected in order. */
+  public void collect(int group, int doc, float score) {
+    if (overflowed) {
+      return;
+    }
+    int index = slots.indexOf(group);
+    int slot;
+    if (slots.indexExists(index)) {
+      slot = slots.indexGet(index);
+    } else {
+      if ((long) (numSlots + 1) * capacity > MAX_ENTRIES) {
+        overflowed = true;
+        slots = new IntIntHashMap();
+        sizes = counts = docs = new int[0];
+        scores = new float[0];
+        return;
+      }
+      slot = numSlots++;
+      slots.indexInsert(index, group, slot);
+      if (numSlots > sizes.length) {
+        sizes = ArrayUtil.grow(sizes, numSlots);
+        counts = ArrayUtil.grow(counts, numSlots);
+        docs = ArrayUtil.grow(docs, numSlots * capacity);
+        scores = ArrayUtil.grow(scores, numSlots * capacity);
+      }
+      sizes[slot] = 0;
+      counts[slot] = 0;
+    }
+
+    counts[slot]++;
+    int base = slot * capacity;
+    int size = sizes[slot];
+    // on a tie the doc collected first, which is the lowest, stays ahead
+    if (size == capacity && !(score > scores[base + size - 1])) {
+      return;
+    }
+
+    int pos = size == capacity ? size - 1 : size;
+    while (pos > 0 && scores[base + pos - 1] < score) {
+      docs[base + pos] = docs[base + pos - 1];
+      scores[base + pos] = scores[base + pos - 1];
+      pos--;
+    }
+    docs[base + pos] = doc;
+    scores[base + pos] = score;
+    if (size < capacity) {
+      sizes[slot]++;
+    }
+  }
+
+  /**
+   * Returns the best members of the group that are not excluded, or null if there are none.
+   * The number of matches of the slice is the number of docs collected for the group, less
+   * the excluded ones, which must all be among the best members of the group.
+   */
+  public DocSlice getMembers(int group, IntHashSet exclude) {
+    int index = slots.indexOf(group);
+    if (!slots.indexExists(index)) {
+      return null;
+    }
+
+    int slot = slots.indexGet(index);
+    int base = slot * capacity;
+    int size = sizes[slot];
+    int[] memberDocs = new int[Math.min(size, rows)];
+    float[] memberScores = new float[memberDocs.length];
+    int len = 0;
+    int excluded = 0;
+    for (int i = 0; i < size; i++) {
+      int doc = docs[base + i];
+      if (exclude.contains(doc)) {
+        excluded++;
+      } else if (len < memberDocs.length) {
+        memberDocs[len] = doc;
+        memberScores[len] = scores[base + i];
+        len++;
+      }
+    }
+
+    if (len == 0) {
+      return null;
+    }
+    return new DocSlice(0, len, memberDocs, memberScores, counts[slot] - excluded, memberScores[0]);
+  }
+}
@@ -16,12 +16,15 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.Accountable;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.util.ConcurrentLRUCache;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -34,6 +37,10 @@ import java.util.concurrent.TimeUnit;
  * This implementation does not use a separate cleanup thread. Instead it uses the calling thread
  * itself to do the cleanup when the size of the cache exceeds certain limits.
  * <p>
+ * If <code>maxRamMB</code> is set, the least recently used entries are also evicted once the
+ * estimated heap usage goes above it, until it is back under 'minRamMB' (90% of maxRamMB by default).
+ * Values, and ideally keys, must then implement {@link Accountable}.
+ * <p>
  * Also see <a href="http://wiki.apache.org/solr/SolrCaching">SolrCaching</a>
  *
  *
@@ -41,7 +48,7 @@ import java.util.concurrent.TimeUnit;
  * @see org.apache.solr.search.SolrCache
  * @since solr 1.4
  */
-public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
+public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V>, Accountable {
 
   // contains the statistics objects for all open caches of the same type
   private List<ConcurrentLRUCache.Stats> statsList;
@@ -51,6 +58,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private String description = "Concurrent LRU Cache";
   private ConcurrentLRUCache<K,V> cache;
   private int showItems = 0;
+  private long maxRamBytes = Long.MAX_VALUE;
 
   @Override
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
@@ -82,10 +90,20 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     str = (String) args.get("cleanupThread");
     boolean newThread = str == null ? false : Boolean.parseBoolean(str);
 
+    str = (String) args.get("maxRamMB");
+    maxRamBytes = str == null ? Long.MAX_VALUE : (long) (Double.parseDouble(str) * 1024L * 1024L);
+    long minRamBytes = Long.MAX_VALUE;
+    if (maxRamBytes != Long.MAX_VALUE) {
+      str = (String) args.get("minRamMB");
+      minRamBytes = str == null ? (long) (maxRamBytes * 0.9) : (long) (Double.parseDouble(str) * 1024L * 1024L);
+      minRamBytes = Math.min(minRamBytes, maxRamBytes);
+    }
+
     str = (String) args.get("showItems");
     showItems = str == null ? 0 : Integer.parseInt(str);
     description = generateDescription(limit, initialSize, minLimit, acceptableLimit, newThread);
-    cache = new ConcurrentLRUCache<>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    cache = new ConcurrentLRUCache<>(limit, minLimit, acceptableLimit, maxRamBytes, minRamBytes,
+        initialSize, newThread, false, null);
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLRUCache.Stats>) persistence;
@@ -111,6 +129,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     if (isAutowarmingOn()) {
       description += ", " + getAutowarmDescription();
     }
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / 1024L / 1024L);
+    }
     description += ')';
     return description;
   }
@@ -209,6 +230,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     long chits = 0;
     long cinserts = 0;
     long cevictions = 0;
+    long cevictionsRamUsage = 0;
 
     // NOTE: It is safe to iterate on a CopyOnWriteArrayList
     for (ConcurrentLRUCache.Stats statistiscs : statsList) {
@@ -216,6 +238,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       chits += statistiscs.getCumulativeHits();
       cinserts += statistiscs.getCumulativePuts();
       cevictions += statistiscs.getCumulativeEvictions();
+      cevictionsRamUsage += statistiscs.getCumulativeEvictionsRamUsage();
     }
 
     lst.add("lookups", lookups);
@@ -224,6 +247,11 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("maxRamMB", maxRamBytes / 1024L / 1024L);
+      lst.add("ramBytesUsed", ramBytesUsed());
+      lst.add("evictionsRamUsage", stats.getCumulativeEvictionsRamUsage());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("cumulative_lookups", clookups);
@@ -231,6 +259,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
     lst.add("cumulative_inserts", cinserts);
     lst.add("cumulative_evictions", cevictions);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("cumulative_evictionsRamUsage", cevictionsRamUsage);
+    }
 
     if (showItems != 0) {
       Map items = cache.getLatestAccessedItems( showItems == -1 ? Integer.MAX_VALUE : showItems );
@@ -252,6 +283,16 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   public String toString() {
     return name() + getStatistics().toString();
   }
+
+  @Override
+  public long ramBytesUsed() {
+    return cache == null ? 0 : cache.ramBytesUsed();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
 }
 
 
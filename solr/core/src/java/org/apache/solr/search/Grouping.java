@@ -448,13 +448,15 @@ public class Grouping {
       }
       collector = timeLimitingCollector;
     }
+    collector = ExitableCollector.wrap(collector);
     try {
       Query q = query;
       if (luceneFilter != null) {
         q = new FilteredQuery(q, luceneFilter);
       }
       searcher.search(q, collector);
-    } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException x) {
+    } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException
+        | SolrQueryTimeoutImpl.ExitingQueryException x) {
       logger.warn( "Query: " + query + "; " + x.getMessage() );
       qr.setPartialResults(true);
     }
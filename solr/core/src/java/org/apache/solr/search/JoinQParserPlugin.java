@@ -22,11 +22,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiPostingsEnum;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.ConstantScoreScorer;
@@ -39,20 +45,29 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.StringHelper;
+import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.join.ScoreJoinQParserPlugin;
 import org.apache.solr.util.RTimer;
@@ -60,11 +75,64 @@ import org.apache.solr.util.RefCounted;
 
 public class JoinQParserPlugin extends QParserPlugin {
   public static final String NAME = "join";
+  /** Local param selecting how the terms of the from docs are found, see {@link Method} */
+  public static final String METHOD = "method";
+
+  /** Local param for the number of seconds a cross-collection join may be cached, 60 by default */
+  public static final String TTL = "ttl";
+
+  /** The ways to find the join terms of the docs matching the from query */
+  public enum Method {
+    /** walks the terms of the from field and checks which of them match a doc of the from set */
+    index,
+    /**
+     * reads the terms of the docs of the from set from the docValues of the from field, so that
+     * the cost depends on the size of the from set rather than on the number of terms in the field.
+     * Falls back to <code>index</code> if the from field has no SORTED or SORTED_SET docValues.
+     */
+    dv,
+    /**
+     * runs the from query against <code>fromIndex</code>, a collection of the cluster that doesn't need
+     * a replica on this node, and joins on the keys it sends back.  The from field must have docValues
+     * and the from collection an <code>/export</code> handler.
+     */
+    crossCollection;
+
+    public static Method get(String method) {
+      if (method == null) return index;
+      try {
+        return valueOf(method);
+      } catch (IllegalArgumentException e) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown join method: " + method);
+      }
+    }
+  }
+
+  // clients for the from collections of cross-collection joins, created on first use
+  private SolrClientCache clientCache;
 
   @Override
   public void init(NamedList args) {
   }
 
+  private synchronized SolrClientCache getClientCache(SolrCore core) {
+    if (clientCache == null) {
+      final SolrClientCache cache = new SolrClientCache();
+      core.addCloseHook(new CloseHook() {
+        @Override
+        public void preClose(SolrCore core) {
+        }
+
+        @Override
+        public void postClose(SolrCore core) {
+          cache.close();
+        }
+      });
+      clientCache = cache;
+    }
+    return clientCache;
+  }
+
   @Override
   public QParser createParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
     return new QParser(qstr, localParams, params, req) {
@@ -82,9 +150,14 @@ public class JoinQParserPlugin extends QParserPlugin {
         final String fromField = getParam("from");
         final String fromIndex = getParam("fromIndex");
         final String toField = getParam("to");
+        final Method method = Method.get(getParam(METHOD));
         final String v = localParams.get("v");
         final String coreName;
 
+        if (method == Method.crossCollection) {
+          return parseCrossCollectionJoin(fromIndex, fromField, toField, v);
+        }
+
         Query fromQuery;
         long fromCoreOpenTime = 0;
 
@@ -120,8 +193,30 @@ public class JoinQParserPlugin extends QParserPlugin {
 
         JoinQuery jq = new JoinQuery(fromField, toField, coreName == null ? fromIndex : coreName, fromQuery);
         jq.fromCoreOpenTime = fromCoreOpenTime;
+        jq.method = method;
         return jq;
       }
+
+      Query parseCrossCollectionJoin(String collection, String fromField, String toField, String v) {
+        CoreContainer container = req.getCore().getCoreDescriptor().getCoreContainer();
+        if (!container.isZooKeeperAware()) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Cross-collection join requires SolrCloud");
+        }
+        if (collection == null || fromField == null || toField == null) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+              "Cross-collection join requires fromIndex, from and to");
+        }
+        if (req.getSchema().getFieldOrNull(toField) == null) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Cross-collection join: no such field " + toField);
+        }
+        long ttl = localParams.getLong(TTL, 60) * 1000;
+        // queries created within the same window are equal, so their results can be cached for that long;
+        // without a ttl the window is a single ms
+        long now = System.currentTimeMillis();
+        long timestamp = ttl <= 0 ? now : now - now % ttl;
+        return new CrossCollectionJoinQuery(v, container.getZkController().getZkServerAddress(), collection,
+            fromField, toField, timestamp, getClientCache(req.getCore()));
+      }
     };
   }
 
@@ -134,6 +229,8 @@ class JoinQuery extends Query {
   String fromIndex;
   Query q;
   long fromCoreOpenTime;
+  // not part of equals() and hashCode(), all methods give the same results
+  JoinQParserPlugin.Method method = JoinQParserPlugin.Method.index;
 
   public JoinQuery(String fromField, String toField, String fromIndex, Query subQuery) {
     this.fromField = fromField;
@@ -248,6 +345,7 @@ class JoinQuery extends Query {
           dbg.add("toTermDirectCount", toTermDirectCount);
           dbg.add("smallSetsDeferred", smallSetsDeferred);
           dbg.add("toSetDocsAdded", resultListDocs);
+          if (toSegmentsReused >= 0) dbg.add("toSegmentsReused", toSegmentsReused);
 
           // TODO: perhaps synchronize  addDebug in the future...
           rb.addDebug(dbg, "join", JoinQuery.this.toString());
@@ -282,20 +380,69 @@ class JoinQuery extends Query {
     int smallSetsDeferred;    // number of small sets collected to be used later to intersect w/ bitset or create another small set
 
 
+    // the to side of the join, filled in by joinTerm()
+    private FixedBitSet resultBits;
+    private List<DocSet> resultList;
+    private int minDocFreqTo;
+    private int maxSortedIntSize;
+
+    // the to side segments of a cached result that could be reused, -1 if not cached
+    int toSegmentsReused = -1;
+
+    // the join terms of the from side, only kept when the result gets cached
+    private BytesRefArray joinedTerms;
+
     public DocSet getDocSet() throws IOException {
-      FixedBitSet resultBits = null;
+      // the result of a same core join changes with every commit, so only cross-core joins are cached
+      SolrCache<Query,JoinResult> joinCache = fromSearcher == toSearcher ? null : toSearcher.getJoinCache();
+      if (joinCache == null) {
+        return computeDocSet();
+      }
+
+      // the version of the from core is not part of the key, so that a reopened from core
+      // that didn't change can still use the result
+      JoinQuery key = new JoinQuery(fromField, toField, fromIndex, q);
+      long fromVersion = fromSearcher.getIndexReader().getVersion();
+      JoinResult result = joinCache.get(key);
+      if (result != null && result.getFromVersion() == fromVersion) {
+        toSegmentsReused = result.getSegmentsReused(toSearcher);
+        JoinResult current = result.forSearcher(toSearcher);
+        if (current != result) {
+          joinCache.put(key, current);
+        }
+        return current.getDocSet(toSearcher);
+      }
+
+      Counter termsBytesUsed = Counter.newCounter();
+      joinedTerms = new BytesRefArray(termsBytesUsed);
+      DocSet answer = computeDocSet();
+      joinCache.put(key, JoinResult.create(fromVersion, toField, joinedTerms, termsBytesUsed, toSearcher, answer));
+      joinedTerms = null;
+      return answer;
+    }
+
+    private DocSet computeDocSet() throws IOException {
+      resultBits = null;
 
       // minimum docFreq to use the cache
       int minDocFreqFrom = Math.max(5, fromSearcher.maxDoc() >> 13);
-      int minDocFreqTo = Math.max(5, toSearcher.maxDoc() >> 13);
+      minDocFreqTo = Math.max(5, toSearcher.maxDoc() >> 13);
 
       // use a smaller size than normal since we will need to sort and dedup the results
-      int maxSortedIntSize = Math.max(10, toSearcher.maxDoc() >> 10);
+      maxSortedIntSize = Math.max(10, toSearcher.maxDoc() >> 10);
 
       DocSet fromSet = fromSearcher.getDocSet(q);
       fromSetSize = fromSet.size();
 
-      List<DocSet> resultList = new ArrayList<>(10);
+      if (method == JoinQParserPlugin.Method.dv) {
+        TrieField.TrieTypes numericType = getNumericJoinType();
+        long[] keys = numericType == null ? null : getFromNumericKeys(fromSet, numericType);
+        if (keys != null) {
+          return joinNumeric(keys, numericType);
+        }
+      }
+
+      resultList = new ArrayList<>(10);
 
       // make sure we have a set that is fast for random access, if we will use it for that
       DocSet fastForRandomSet = fromSet;
@@ -309,13 +456,14 @@ class JoinQuery extends Query {
       if (fromFields == null) return DocSet.EMPTY;
       Terms terms = fromFields.terms(fromField);
       Terms toTerms = toFields.terms(toField);
-      if (terms == null || toTerms==null) return DocSet.EMPTY;
+      // a cached result needs all the join terms, even if the to side doesn't have them (yet)
+      if (terms == null || toTerms==null && joinedTerms==null) return DocSet.EMPTY;
       String prefixStr = TrieField.getMainValuePrefix(fromSearcher.getSchema().getFieldType(fromField));
       BytesRef prefix = prefixStr == null ? null : new BytesRef(prefixStr);
 
       BytesRef term = null;
       TermsEnum  termsEnum = terms.iterator();
-      TermsEnum  toTermsEnum = toTerms.iterator();
+      TermsEnum  toTermsEnum = toTerms == null ? TermsEnum.EMPTY : toTerms.iterator();
       SolrIndexSearcher.DocsEnumState fromDeState = null;
       SolrIndexSearcher.DocsEnumState toDeState = null;
 
@@ -344,6 +492,12 @@ class JoinQuery extends Query {
       toDeState.postingsEnum = null;
       toDeState.minSetSizeCached = minDocFreqTo;
 
+      SortedSetDocValues fromDocValues = method == JoinQParserPlugin.Method.dv ? getFromDocValues() : null;
+      if (fromDocValues != null) {
+        joinFromDocValues(fromSet, fromDocValues, toTermsEnum, toDeState);
+        term = null;  // skip walking the from terms
+      }
+
       while (term != null) {
         if (prefix != null && !StringHelper.startsWith(term, prefix))
           break;
@@ -390,65 +544,8 @@ class JoinQuery extends Query {
           intersects = fromSet.intersects(fromTermSet);
         }
 
-        if (intersects) {
-          fromTermHits++;
-          fromTermHitsTotalDf++;
-          TermsEnum.SeekStatus status = toTermsEnum.seekCeil(term);
-          if (status == TermsEnum.SeekStatus.END) break;
-          if (status == TermsEnum.SeekStatus.FOUND) {
-            toTermHits++;
-            int df = toTermsEnum.docFreq();
-            toTermHitsTotalDf += df;
-            if (resultBits==null && df + resultListDocs > maxSortedIntSize && resultList.size() > 0) {
-              resultBits = new FixedBitSet(toSearcher.maxDoc());
-            }
-
-            // if we don't have a bitset yet, or if the resulting set will be too large
-            // use the filterCache to get a DocSet
-            if (toTermsEnum.docFreq() >= minDocFreqTo || resultBits == null) {
-              // use filter cache
-              DocSet toTermSet = toSearcher.getDocSet(toDeState);
-              resultListDocs += toTermSet.size();
-              if (resultBits != null) {
-                toTermSet.addAllTo(new BitDocSet(resultBits));
-              } else {
-                if (toTermSet instanceof BitDocSet) {
-                  resultBits = ((BitDocSet)toTermSet).bits.clone();
-                } else {
-                  resultList.add(toTermSet);
-                }
-              }
-            } else {
-              toTermDirectCount++;
-
-              // need to use liveDocs here so we don't map to any deleted ones
-              toDeState.postingsEnum = toDeState.termsEnum.postings(toDeState.postingsEnum, PostingsEnum.NONE);
-              toDeState.postingsEnum = BitsFilteredPostingsEnum.wrap(toDeState.postingsEnum, toDeState.liveDocs);
-              PostingsEnum postingsEnum = toDeState.postingsEnum;
-
-              if (postingsEnum instanceof MultiPostingsEnum) {
-                MultiPostingsEnum.EnumWithSlice[] subs = ((MultiPostingsEnum) postingsEnum).getSubs();
-                int numSubs = ((MultiPostingsEnum) postingsEnum).getNumSubs();
-                for (int subindex = 0; subindex<numSubs; subindex++) {
-                  MultiPostingsEnum.EnumWithSlice sub = subs[subindex];
-                  if (sub.postingsEnum == null) continue;
-                  int base = sub.slice.start;
-                  int docid;
-                  while ((docid = sub.postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                    resultListDocs++;
-                    resultBits.set(docid + base);
-                  }
-                }
-              } else {
-                int docid;
-                while ((docid = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                  resultListDocs++;
-                  resultBits.set(docid);
-                }
-              }
-            }
-
-          }
+        if (intersects && !joinTerm(term, toTermsEnum, toDeState) && joinedTerms == null) {
+          break;
         }
 
         term = termsEnum.next();
@@ -500,6 +597,288 @@ class JoinQuery extends Query {
       return new SortedIntDocSet(dedup, dedup.length);
     }
 
+    /**
+     * Adds the docs of the to side matching a term of the from side.  Terms must be passed in order,
+     * returns false when there are no more terms on the to side.  The term is recorded when the
+     * result is going to be cached, so the caller has to keep passing terms in that case.
+     */
+    private boolean joinTerm(BytesRef term, TermsEnum toTermsEnum, SolrIndexSearcher.DocsEnumState toDeState) throws IOException {
+      fromTermHits++;
+      fromTermHitsTotalDf++;
+      if (joinedTerms != null) joinedTerms.append(term);
+      TermsEnum.SeekStatus status = toTermsEnum.seekCeil(term);
+      if (status == TermsEnum.SeekStatus.END) return false;
+      if (status == TermsEnum.SeekStatus.FOUND) {
+        toTermHits++;
+        int df = toTermsEnum.docFreq();
+        toTermHitsTotalDf += df;
+        if (resultBits==null && df + resultListDocs > maxSortedIntSize && resultList.size() > 0) {
+          resultBits = new FixedBitSet(toSearcher.maxDoc());
+        }
+
+        // if we don't have a bitset yet, or if the resulting set will be too large
+        // use the filterCache to get a DocSet
+        if (toTermsEnum.docFreq() >= minDocFreqTo || resultBits == null) {
+          // use filter cache
+          DocSet toTermSet = toSearcher.getDocSet(toDeState);
+          resultListDocs += toTermSet.size();
+          if (resultBits != null) {
+            toTermSet.addAllTo(new BitDocSet(resultBits));
+          } else {
+            if (toTermSet instanceof BitDocSet) {
+              resultBits = ((BitDocSet)toTermSet).bits.clone();
+            } else {
+              resultList.add(toTermSet);
+            }
+          }
+        } else {
+          toTermDirectCount++;
+
+          // need to use liveDocs here so we don't map to any deleted ones
+          toDeState.postingsEnum = toDeState.termsEnum.postings(toDeState.postingsEnum, PostingsEnum.NONE);
+          toDeState.postingsEnum = BitsFilteredPostingsEnum.wrap(toDeState.postingsEnum, toDeState.liveDocs);
+          PostingsEnum postingsEnum = toDeState.postingsEnum;
+
+          if (postingsEnum instanceof MultiPostingsEnum) {
+            MultiPostingsEnum.EnumWithSlice[] subs = ((MultiPostingsEnum) postingsEnum).getSubs();
+            int numSubs = ((MultiPostingsEnum) postingsEnum).getNumSubs();
+            for (int subindex = 0; subindex<numSubs; subindex++) {
+              MultiPostingsEnum.EnumWithSlice sub = subs[subindex];
+              if (sub.postingsEnum == null) continue;
+              int base = sub.slice.start;
+              int docid;
+              while ((docid = sub.postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                resultListDocs++;
+                resultBits.set(docid + base);
+              }
+            }
+          } else {
+            int docid;
+            while ((docid = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+              resultListDocs++;
+              resultBits.set(docid);
+            }
+          }
+        }
+
+      }
+      return true;
+    }
+
+    /**
+     * Returns the type of the from and to fields if they are integer, long or date trie fields of the
+     * same type, which can be joined on their values rather than on their terms, or null otherwise.
+     */
+    private TrieField.TrieTypes getNumericJoinType() {
+      FieldType fromType = fromSearcher.getSchema().getFieldTypeNoEx(fromField);
+      FieldType toType = toSearcher.getSchema().getFieldTypeNoEx(toField);
+      if (!(fromType instanceof TrieField) || !(toType instanceof TrieField)) return null;
+      TrieField.TrieTypes type = ((TrieField) fromType).getType();
+      if (type != ((TrieField) toType).getType()) return null;
+      switch (type) {
+        case INTEGER:
+        case LONG:
+        case DATE:
+          return type;
+        default:
+          // float and double docValues don't hold the values in the order of their terms
+          return null;
+      }
+    }
+
+    /**
+     * Returns the distinct values of the from field for the docs of the from set, in order, read from its
+     * docValues.  Returns null if the from field has no docValues.
+     */
+    private long[] getFromNumericKeys(DocSet fromSet, TrieField.TrieTypes type) throws IOException {
+      LeafReader fromReader = fromSearcher.getLeafReader();
+      FieldInfo fieldInfo = fromReader.getFieldInfos().fieldInfo(fromField);
+      if (fieldInfo == null) return null;
+
+      long[] keys;
+      int numKeys = 0;
+      if (fieldInfo.getDocValuesType() == DocValuesType.NUMERIC) {
+        NumericDocValues values = DocValues.getNumeric(fromReader, fromField);
+        Bits docsWithField = DocValues.getDocsWithField(fromReader, fromField);
+        keys = new long[Math.min(fromSet.size(), 16)];
+        for (DocIterator iter = fromSet.iterator(); iter.hasNext(); ) {
+          int doc = iter.nextDoc();
+          if (!docsWithField.get(doc)) continue;
+          if (numKeys == keys.length) keys = ArrayUtil.grow(keys, numKeys + 1);
+          keys[numKeys++] = values.get(doc);
+        }
+        Arrays.sort(keys, 0, numKeys);
+      } else if (fieldInfo.getDocValuesType() == DocValuesType.SORTED_SET) {
+        // multiValued trie fields keep their terms as docValues, the order of which is the order of the values
+        SortedSetDocValues values = DocValues.getSortedSet(fromReader, fromField);
+        long valueCount = values.getValueCount();
+        if (valueCount == 0) return new long[0];
+        LongBitSet ords = new LongBitSet(valueCount);
+        for (DocIterator iter = fromSet.iterator(); iter.hasNext(); ) {
+          values.setDocument(iter.nextDoc());
+          for (long ord; (ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS; ) {
+            ords.set(ord);
+          }
+        }
+        keys = new long[(int) Math.min(ords.cardinality(), Integer.MAX_VALUE - 8)];
+        for (long ord = ords.nextSetBit(0); ord >= 0 && numKeys < keys.length; ord = ord + 1 < valueCount ? ords.nextSetBit(ord + 1) : -1) {
+          BytesRef term = values.lookupOrd(ord);
+          keys[numKeys++] = type == TrieField.TrieTypes.INTEGER ? NumericUtils.prefixCodedToInt(term) : NumericUtils.prefixCodedToLong(term);
+        }
+      } else {
+        return null;
+      }
+
+      // dedup
+      int pos = 0;
+      for (int i = 0; i < numKeys; i++) {
+        if (pos == 0 || keys[i] != keys[pos - 1]) keys[pos++] = keys[i];
+      }
+      return pos == keys.length ? keys : Arrays.copyOf(keys, pos);
+    }
+
+    /**
+     * Joins on the sorted values of the from side.  Segments of the to side with many docs per key probe the
+     * docValues of every doc, the others walk the terms of the to field alongside the keys.
+     */
+    private DocSet joinNumeric(long[] keys, TrieField.TrieTypes type) throws IOException {
+      fromTermCount = keys.length;
+      fromTermHits = keys.length;
+      boolean isInt = type == TrieField.TrieTypes.INTEGER;
+
+      if (joinedTerms != null) {
+        BytesRefBuilder term = new BytesRefBuilder();
+        for (long key : keys) {
+          if (isInt) NumericUtils.intToPrefixCoded((int) key, 0, term);
+          else NumericUtils.longToPrefixCoded(key, 0, term);
+          joinedTerms.append(term.get());
+        }
+      }
+
+      if (keys.length == 0) {
+        return DocSet.EMPTY;
+      }
+
+      FixedBitSet bits = new FixedBitSet(toSearcher.maxDoc());
+      for (LeafReaderContext leaf : toSearcher.getTopReaderContext().leaves()) {
+        LeafReader reader = leaf.reader();
+        FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(toField);
+        if (fieldInfo == null) continue;
+        if (fieldInfo.getDocValuesType() == DocValuesType.NUMERIC && keys.length >= (reader.maxDoc() >> 4)) {
+          joinNumericDocValues(keys, leaf, bits);
+        } else {
+          joinNumericTerms(keys, isInt, leaf, bits);
+        }
+      }
+
+      resultListDocs = bits.cardinality();
+      return DocSetUtil.toDocSet(bits);
+    }
+
+    private void joinNumericDocValues(long[] keys, LeafReaderContext leaf, FixedBitSet bits) throws IOException {
+      toTermDirectCount++;
+      LeafReader reader = leaf.reader();
+      NumericDocValues values = DocValues.getNumeric(reader, toField);
+      Bits docsWithField = DocValues.getDocsWithField(reader, toField);
+      Bits liveDocs = reader.getLiveDocs();
+      int base = leaf.docBase;
+      for (int doc = 0, maxDoc = reader.maxDoc(); doc < maxDoc; doc++) {
+        if (liveDocs != null && !liveDocs.get(doc)) continue;
+        if (Arrays.binarySearch(keys, values.get(doc)) >= 0 && docsWithField.get(doc)) {
+          bits.set(base + doc);
+        }
+      }
+    }
+
+    private void joinNumericTerms(long[] keys, boolean isInt, LeafReaderContext leaf, FixedBitSet bits) throws IOException {
+      Terms terms = leaf.reader().terms(toField);
+      if (terms == null) return;
+      TermsEnum termsEnum = terms.iterator();
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      PostingsEnum postingsEnum = null;
+      BytesRefBuilder scratch = new BytesRefBuilder();
+      int base = leaf.docBase;
+
+      int i = 0;
+      BytesRef term = seekNumeric(termsEnum, keys[0], isInt, scratch);
+      boolean stepped = true;  // whether the last move on the terms was a step rather than a seek
+      while (term != null && i < keys.length) {
+        // the full precision terms come first and are in the order of their values
+        int shift = isInt ? NumericUtils.getPrefixCodedIntShift(term) : NumericUtils.getPrefixCodedLongShift(term);
+        if (shift != 0) break;
+        long value = isInt ? NumericUtils.prefixCodedToInt(term) : NumericUtils.prefixCodedToLong(term);
+        if (value < keys[i]) {
+          // step to the next term first, and only seek if that wasn't enough
+          if (stepped) {
+            term = termsEnum.next();
+            stepped = false;
+          } else {
+            term = seekNumeric(termsEnum, keys[i], isInt, scratch);
+            stepped = true;
+          }
+          continue;
+        }
+        if (value > keys[i]) {
+          // skip the keys that are not in this segment
+          int next = Arrays.binarySearch(keys, i + 1, keys.length, value);
+          i = next >= 0 ? next : -next - 1;
+          continue;
+        }
+
+        toTermHits++;
+        postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+        for (int doc = postingsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postingsEnum.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) bits.set(base + doc);
+        }
+        i++;
+        term = termsEnum.next();
+        stepped = true;
+      }
+    }
+
+    private BytesRef seekNumeric(TermsEnum termsEnum, long key, boolean isInt, BytesRefBuilder scratch) throws IOException {
+      if (isInt) NumericUtils.intToPrefixCoded((int) key, 0, scratch);
+      else NumericUtils.longToPrefixCoded(key, 0, scratch);
+      return termsEnum.seekCeil(scratch.get()) == TermsEnum.SeekStatus.END ? null : termsEnum.term();
+    }
+
+    /** Returns the docValues of the from field, or null if it has none that can be used for the join. */
+    private SortedSetDocValues getFromDocValues() throws IOException {
+      LeafReader fromReader = fromSearcher.getLeafReader();
+      FieldInfo fieldInfo = fromReader.getFieldInfos().fieldInfo(fromField);
+      if (fieldInfo == null) return null;
+      DocValuesType type = fieldInfo.getDocValuesType();
+      if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) return null;
+      // top-level ords, so that a term shared by several segments is only joined once
+      return DocValues.getSortedSet(fromReader, fromField);
+    }
+
+    /**
+     * Finds the terms of the from set through the ords of its docs, then joins on them.  Only
+     * the terms of the from set get looked up, not all the terms of the field.
+     */
+    private void joinFromDocValues(DocSet fromSet, SortedSetDocValues fromDocValues, TermsEnum toTermsEnum,
+                                   SolrIndexSearcher.DocsEnumState toDeState) throws IOException {
+      long valueCount = fromDocValues.getValueCount();
+      if (valueCount == 0) return;
+      LongBitSet ords = new LongBitSet(valueCount);
+      for (DocIterator iter = fromSet.iterator(); iter.hasNext(); ) {
+        fromDocValues.setDocument(iter.nextDoc());
+        for (long ord; (ord = fromDocValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS; ) {
+          ords.set(ord);
+        }
+      }
+
+      // ords are in term order, so the to side only ever seeks forward
+      for (long ord = ords.nextSetBit(0); ord >= 0; ord = ord + 1 < valueCount ? ords.nextSetBit(ord + 1) : -1) {
+        fromTermCount++;
+        fromTermTotalDf++;
+        if (!joinTerm(fromDocValues.lookupOrd(ord), toTermsEnum, toDeState) && joinedTerms == null) {
+          break;
+        }
+      }
+    }
+
   }
 
   @Override
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cached result of a cross-core join, as kept in the joinCache of the to side.
+ * <p>
+ * The result is only valid for the index version of the from side it was computed with.  The docs
+ * of the to side are kept per segment, without taking deletions into account, so that the result
+ * carries over to new searchers of the to side.  The join terms are kept as well, which is all
+ * that is needed to extend the result to new segments.
+ * <p>
+ * Instances are immutable, so they can be shared by concurrent requests.
+ */
+public final class JoinResult implements Accountable {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(JoinResult.class);
+
+  private final long fromVersion;
+  private final String toField;
+  private final BytesRefArray terms;  // the join terms, in order
+  private final Counter termsBytesUsed;
+  private final Map<Object,DocSet> segmentSets;  // keyed by core key
+
+  private JoinResult(long fromVersion, String toField, BytesRefArray terms, Counter termsBytesUsed, Map<Object,DocSet> segmentSets) {
+    this.fromVersion = fromVersion;
+    this.toField = toField;
+    this.terms = terms;
+    this.termsBytesUsed = termsBytesUsed;
+    this.segmentSets = segmentSets;
+  }
+
+  /**
+   * Creates the result of a join from the set it produced on the to side.
+   *
+   * @param fromVersion the index version of the from side
+   * @param terms the terms of the from side that matched, in order
+   * @param termsBytesUsed the counter the terms were allocated with
+   * @param toSearcher the searcher the set was computed with
+   * @param toSet the docs of toSearcher that matched
+   */
+  public static JoinResult create(long fromVersion, String toField, BytesRefArray terms, Counter termsBytesUsed,
+                                  SolrIndexSearcher toSearcher, DocSet toSet) throws IOException {
+    List<LeafReaderContext> leaves = toSearcher.getTopReaderContext().leaves();
+    DocSetCollector[] collectors = new DocSetCollector[leaves.size()];
+    for (int i = 0; i < collectors.length; i++) {
+      collectors[i] = new DocSetCollector(leaves.get(i).reader().maxDoc());
+    }
+
+    int leaf = -1;
+    int docBase = 0;
+    int nextDocBase = 0;
+    for (DocIterator iter = toSet.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      while (doc >= nextDocBase) {
+        leaf++;
+        docBase = leaves.get(leaf).docBase;
+        nextDocBase = docBase + leaves.get(leaf).reader().maxDoc();
+      }
+      collectors[leaf].collect(doc - docBase);
+    }
+
+    Map<Object,DocSet> segmentSets = new IdentityHashMap<>(leaves.size());
+    for (int i = 0; i < collectors.length; i++) {
+      segmentSets.put(leaves.get(i).reader().getCoreCacheKey(), collectors[i].getDocSet());
+    }
+    return new JoinResult(fromVersion, toField, terms, termsBytesUsed, segmentSets);
+  }
+
+  /** The index version of the from side this result is valid for. */
+  public long getFromVersion() {
+    return fromVersion;
+  }
+
+  /** Returns true if all the segments of the searcher are part of this result. */
+  public boolean covers(SolrIndexSearcher toSearcher) {
+    for (LeafReaderContext leaf : toSearcher.getTopReaderContext().leaves()) {
+      if (!segmentSets.containsKey(leaf.reader().getCoreCacheKey())) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a result with exactly the segments of the searcher.  The segments that are
+   * not part of this result yet are computed from the join terms, the others are reused.
+   */
+  public JoinResult forSearcher(SolrIndexSearcher toSearcher) throws IOException {
+    List<LeafReaderContext> leaves = toSearcher.getTopReaderContext().leaves();
+    if (leaves.size() == segmentSets.size() && covers(toSearcher)) {
+      return this;
+    }
+
+    Map<Object,DocSet> newSets = new IdentityHashMap<>(leaves.size());
+    for (LeafReaderContext leaf : leaves) {
+      Object coreKey = leaf.reader().getCoreCacheKey();
+      DocSet segmentSet = segmentSets.get(coreKey);
+      if (segmentSet == null) {
+        segmentSet = joinSegment(leaf.reader());
+      }
+      newSets.put(coreKey, segmentSet);
+    }
+    return new JoinResult(fromVersion, toField, terms, termsBytesUsed, newSets);
+  }
+
+  /** Returns the number of segments of the searcher whose docs could be reused. */
+  public int getSegmentsReused(SolrIndexSearcher toSearcher) {
+    int reused = 0;
+    for (LeafReaderContext leaf : toSearcher.getTopReaderContext().leaves()) {
+      if (segmentSets.containsKey(leaf.reader().getCoreCacheKey())) reused++;
+    }
+    return reused;
+  }
+
+  private DocSet joinSegment(LeafReader reader) throws IOException {
+    int maxDoc = reader.maxDoc();
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    Terms toTerms = reader.terms(toField);
+    if (toTerms != null) {
+      TermsEnum toTermsEnum = toTerms.iterator();
+      PostingsEnum postingsEnum = null;
+      BytesRefIterator iter = terms.iterator();
+      for (BytesRef term = iter.next(); term != null; term = iter.next()) {
+        if (!toTermsEnum.seekExact(term)) continue;
+        // no liveDocs, so that the set stays valid when docs of the segment get deleted
+        postingsEnum = toTermsEnum.postings(postingsEnum, PostingsEnum.NONE);
+        bits.or(postingsEnum);
+      }
+    }
+
+    return DocSetUtil.toDocSet(bits);
+  }
+
+  /**
+   * Returns the docs of the searcher, which must be covered by this result.
+   *
+   * @see #forSearcher
+   */
+  public DocSet getDocSet(SolrIndexSearcher toSearcher) throws IOException {
+    DocSetCollector collector = new DocSetCollector(toSearcher.maxDoc());
+    for (LeafReaderContext leaf : toSearcher.getTopReaderContext().leaves()) {
+      DocSet segmentSet = segmentSets.get(leaf.reader().getCoreCacheKey());
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      LeafCollector leafCollector = collector.getLeafCollector(leaf);
+      for (DocIterator iter = segmentSet.iterator(); iter.hasNext(); ) {
+        int doc = iter.nextDoc();
+        if (liveDocs == null || liveDocs.get(doc)) leafCollector.collect(doc);
+      }
+    }
+    return collector.getDocSet();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long size = BASE_RAM_BYTES_USED + termsBytesUsed.get()
+        + RamUsageEstimator.NUM_BYTES_OBJECT_REF * 4 * segmentSets.size();
+    for (DocSet set : segmentSets.values()) {
+      size += set.ramBytesUsed();
+    }
+    return size;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
@@ -18,12 +18,15 @@ package org.apache.solr.search;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.lucene.util.Accountable;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -38,6 +41,10 @@ import static org.apache.solr.common.params.CommonParams.NAME;
  * This implementation does not use a separate cleanup thread. Instead it uses the calling thread
  * itself to do the cleanup when the size of the cache exceeds certain limits.
  * <p>
+ * If <code>maxRamMB</code> is set, the least frequently used entries are also evicted once the
+ * estimated heap usage goes above it, until it is back under 'minRamMB' (90% of maxRamMB by default).
+ * Values, and ideally keys, must then implement {@link Accountable}.
+ * <p>
  * Also see <a href="http://wiki.apache.org/solr/SolrCaching">SolrCaching</a>
  * <p>
  * <b>This API is experimental and subject to change</b>
@@ -46,7 +53,7 @@ import static org.apache.solr.common.params.CommonParams.NAME;
  * @see org.apache.solr.search.SolrCache
  * @since solr 3.6
  */
-public class LFUCache<K, V> implements SolrCache<K, V> {
+public class LFUCache<K, V> implements SolrCache<K, V>, Accountable {
 
   // contains the statistics objects for all open caches of the same type
   private List<ConcurrentLFUCache.Stats> statsList;
@@ -61,6 +68,7 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
   private ConcurrentLFUCache<K, V> cache;
   private int showItems = 0;
   private Boolean timeDecay = true;
+  private long maxRamBytes = Long.MAX_VALUE;
 
   @Override
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
@@ -103,15 +111,28 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     str = (String) args.get("timeDecay");
     timeDecay = (str == null) ? true : Boolean.parseBoolean(str);
 
+    str = (String) args.get("maxRamMB");
+    maxRamBytes = str == null ? Long.MAX_VALUE : (long) (Double.parseDouble(str) * 1024L * 1024L);
+    long minRamBytes = Long.MAX_VALUE;
+    if (maxRamBytes != Long.MAX_VALUE) {
+      str = (String) args.get("minRamMB");
+      minRamBytes = str == null ? (long) (maxRamBytes * 0.9) : (long) (Double.parseDouble(str) * 1024L * 1024L);
+      minRamBytes = Math.min(minRamBytes, maxRamBytes);
+    }
+
     description = "Concurrent LFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
         ", minSize=" + minLimit + ", acceptableSize=" + acceptableSize + ", cleanupThread=" + newThread +
         ", timeDecay=" + Boolean.toString(timeDecay);
     if (autowarmCount > 0) {
       description += ", autowarmCount=" + autowarmCount + ", regenerator=" + regenerator;
     }
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / 1024L / 1024L);
+    }
     description += ')';
 
-    cache = new ConcurrentLFUCache<>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay);
+    cache = new ConcurrentLFUCache<>(limit, minLimit, acceptableSize, maxRamBytes, minRamBytes,
+        initialSize, newThread, false, null, timeDecay);
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLFUCache.Stats>) persistence;
@@ -259,6 +280,11 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("maxRamMB", maxRamBytes / 1024L / 1024L);
+      lst.add("ramBytesUsed", ramBytesUsed());
+      lst.add("evictionsRamUsage", stats.getCumulativeEvictionsRamUsage());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("timeDecay", timeDecay);
@@ -267,6 +293,7 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     long chits = 0;
     long cinserts = 0;
     long cevictions = 0;
+    long cevictionsRamUsage = 0;
 
     // NOTE: It is safe to iterate on a CopyOnWriteArrayList
     for (ConcurrentLFUCache.Stats statistiscs : statsList) {
@@ -274,12 +301,16 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
       chits += statistiscs.getCumulativeHits();
       cinserts += statistiscs.getCumulativePuts();
       cevictions += statistiscs.getCumulativeEvictions();
+      cevictionsRamUsage += statistiscs.getCumulativeEvictionsRamUsage();
     }
     lst.add("cumulative_lookups", clookups);
     lst.add("cumulative_hits", chits);
     lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
     lst.add("cumulative_inserts", cinserts);
     lst.add("cumulative_evictions", cevictions);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("cumulative_evictionsRamUsage", cevictionsRamUsage);
+    }
 
     if (showItems != 0) {
       Map items = cache.getMostUsedItems(showItems == -1 ? Integer.MAX_VALUE : showItems);
@@ -301,4 +332,14 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
   public String toString() {
     return name + getStatistics().toString();
   }
+
+  @Override
+  public long ramBytesUsed() {
+    return cache == null ? 0 : cache.ramBytesUsed();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
 }
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * <code>OffHeapBitDocSet</code> is a read-only counterpart of {@link BitDocSet} whose
+ * bits live in a direct buffer outside of the Java heap.
+ * <p>
+ * It is meant for large sets that are kept around for a long time, like filterCache
+ * entries (see the <code>offHeap</code> cache parameter): the heap only holds a small
+ * wrapper, so caching many filters does not grow the old generation. The native memory
+ * is released when the set is garbage collected, and its amount is bounded by
+ * <code>-XX:MaxDirectMemorySize</code>.
+ * <p>
+ * Set operations read the buffer directly and return ordinary heap based DocSets.
+ * {@link #getBits()} has to copy the set back to the heap, so callers that need a
+ * {@link FixedBitSet} should be avoided on hot paths.
+ */
+public class OffHeapBitDocSet extends DocSetBase {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapBitDocSet.class)
+      + 2 * RamUsageEstimator.shallowSizeOfInstance(ByteBuffer.class); // the direct buffer and its long view
+
+  private final LongBuffer bits;  // absolute access only, the position is never moved
+  private final int numBits;
+  private final int numWords;
+  private final int size;
+
+  /**
+   * Copies the given bits to off-heap memory.
+   *
+   * @param size the number of set bits, or -1 if unknown
+   * @throws OutOfMemoryError if the direct memory limit has been reached
+   */
+  public OffHeapBitDocSet(FixedBitSet bits, int size) {
+    this.numBits = bits.length();
+    this.numWords = FixedBitSet.bits2words(numBits);
+    LongBuffer buffer = ByteBuffer.allocateDirect(numWords << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+    buffer.put(bits.getBits(), 0, numWords);
+    buffer.rewind();
+    this.bits = buffer;
+    this.size = size == -1 ? (int) bits.cardinality() : size;
+  }
+
+  /**
+   * Returns an off-heap copy of the given set if it is a {@link BitDocSet}, and the set
+   * itself otherwise. Small sets are already compact on the heap. If the direct memory
+   * limit has been reached the set also stays on the heap.
+   */
+  public static DocSet toOffHeap(DocSet set) {
+    if (!(set instanceof BitDocSet)) {
+      return set;
+    }
+    BitDocSet bitDocSet = (BitDocSet) set;
+    try {
+      return new OffHeapBitDocSet(bitDocSet.getBits(), bitDocSet.size());
+    } catch (OutOfMemoryError e) {
+      // only thrown for "Direct buffer memory", the heap itself is fine
+      return set;
+    }
+  }
+
+  /** Returns the index of the first set bit at or after <code>index</code>, or NO_MORE_DOCS. */
+  int nextSetBit(int index) {
+    if (index >= numBits) {
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+    int i = index >> 6;
+    long word = bits.get(i) >> index;  // skip all the bits to the right of index
+    if (word != 0) {
+      return index + Long.numberOfTrailingZeros(word);
+    }
+    while (++i < numWords) {
+      word = bits.get(i);
+      if (word != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private int pos = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("OffHeapBitDocSet is read-only");
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = nextSetBit(old + 1);
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  /**
+   * @return a heap copy of the bits of this set.
+   */
+  @Override
+  public FixedBitSet getBits() {
+    long[] words = new long[numWords];
+    bits.duplicate().get(words);
+    return new FixedBitSet(words, numBits);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns true of the doc exists in the set. Should only be called when doc &lt;
+   * maxDoc of the index the set was created for.
+   */
+  @Override
+  public boolean exists(int doc) {
+    assert doc >= 0 && doc < numBits: "doc=" + doc + ", numBits=" + numBits;
+    return (bits.get(doc >> 6) & (1L << doc)) != 0;
+  }
+
+  /** Returns the words of a bit set based DocSet, or null for other implementations. */
+  private static LongBuffer words(DocSet set) {
+    if (set instanceof OffHeapBitDocSet) {
+      return ((OffHeapBitDocSet) set).bits;
+    } else if (set instanceof BitDocSet) {
+      FixedBitSet fbs = ((BitDocSet) set).getBits();
+      return LongBuffer.wrap(fbs.getBits(), 0, FixedBitSet.bits2words(fbs.length()));
+    }
+    return null;
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // they had better not call us back!
+      return other.intersectionSize(this);
+    }
+    int n = Math.min(numWords, otherWords.limit());
+    long count = 0;
+    for (int i = 0; i < n; i++) {
+      count += Long.bitCount(bits.get(i) & otherWords.get(i));
+    }
+    return (int) count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // they had better not call us back!
+      return other.intersects(this);
+    }
+    int n = Math.min(numWords, otherWords.limit());
+    for (int i = 0; i < n; i++) {
+      if ((bits.get(i) & otherWords.get(i)) != 0) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public int unionSize(DocSet other) {
+    LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      return super.unionSize(other);
+    }
+    int otherNumWords = otherWords.limit();
+    int n = Math.min(numWords, otherNumWords);
+    long count = 0;
+    for (int i = 0; i < n; i++) {
+      count += Long.bitCount(bits.get(i) | otherWords.get(i));
+    }
+    for (int i = n; i < numWords; i++) {
+      count += Long.bitCount(bits.get(i));
+    }
+    for (int i = n; i < otherNumWords; i++) {
+      count += Long.bitCount(otherWords.get(i));
+    }
+    return (int) count;
+  }
+
+  @Override
+  public int andNotSize(DocSet other) {
+    LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      return super.andNotSize(other);
+    }
+    int n = Math.min(numWords, otherWords.limit());
+    long count = 0;
+    for (int i = 0; i < n; i++) {
+      count += Long.bitCount(bits.get(i) & ~otherWords.get(i));
+    }
+    for (int i = n; i < numWords; i++) {
+      count += Long.bitCount(bits.get(i));
+    }
+    return (int) count;
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // the smaller DocSets know how to intersect with us through exists()
+      return other.intersection(this);
+    }
+    int n = Math.min(numWords, otherWords.limit());
+    long[] newbits = new long[numWords];
+    for (int i = 0; i < n; i++) {
+      newbits[i] = bits.get(i) & otherWords.get(i);
+    }
+    return new BitDocSet(new FixedBitSet(newbits, numBits));
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    FixedBitSet newbits = getBits();
+    LongBuffer otherWords = words(other);
+    if (otherWords != null) {
+      long[] words = newbits.getBits();
+      int n = Math.min(numWords, otherWords.limit());
+      for (int i = 0; i < n; i++) {
+        words[i] &= ~otherWords.get(i);
+      }
+    } else {
+      DocIterator iter = other.iterator();
+      while (iter.hasNext()) {
+        int doc = iter.nextDoc();
+        if (doc < numBits) {
+          newbits.clear(doc);
+        }
+      }
+    }
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    FixedBitSet newbits = getBits();
+    if (other instanceof BitDocSet) {
+      FixedBitSet otherBits = ((BitDocSet) other).getBits();
+      newbits = FixedBitSet.ensureCapacity(newbits, otherBits.length());
+      newbits.or(otherBits);
+    } else if (other instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet otherDocSet = (OffHeapBitDocSet) other;
+      newbits = FixedBitSet.ensureCapacity(newbits, otherDocSet.numBits);
+      otherDocSet.orInto(newbits);
+    } else {
+      DocIterator iter = other.iterator();
+      while (iter.hasNext()) {
+        int doc = iter.nextDoc();
+        newbits = FixedBitSet.ensureCapacity(newbits, doc);
+        newbits.set(doc);
+      }
+    }
+    return new BitDocSet(newbits);
+  }
+
+  /** ORs this set into <code>target</code>, which must be at least as long as this set. */
+  void orInto(FixedBitSet target) {
+    long[] words = target.getBits();
+    for (int i = 0; i < numWords; i++) {
+      words[i] |= bits.get(i);
+    }
+  }
+
+  /** Clears the bits of this set in <code>target</code>. */
+  void andNotFrom(FixedBitSet target) {
+    long[] words = target.getBits();
+    int n = Math.min(numWords, FixedBitSet.bits2words(target.length()));
+    for (int i = 0; i < n; i++) {
+      words[i] &= ~bits.get(i);
+    }
+  }
+
+  @Override
+  public void addAllTo(DocSet target) {
+    if (target instanceof BitDocSet) {
+      orInto(((BitDocSet) target).getBits());
+      ((BitDocSet) target).invalidateSize();
+    } else {
+      super.addAllTo(target);
+    }
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(final LeafReaderContext context, final Bits acceptDocs) {
+        LeafReader reader = context.reader();
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        final int base = context.docBase;
+        final int maxDoc = reader.maxDoc();
+        final int max = base + maxDoc;   // one past the max doc in this segment.
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+              int pos = base - 1;
+              int adjustedDoc = -1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() {
+                pos = nextSetBit(pos + 1);
+                return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public int advance(int target) {
+                if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+                pos = nextSetBit(target + base);
+                return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public long cost() {
+                // pro-rate the cached size for the segment
+                return (long) (size * ((FixedBitSet.bits2words(maxDoc) << 6) / (float) numBits));
+              }
+            };
+          }
+
+          @Override
+          public boolean isCacheable() {
+            return true;
+          }
+
+          @Override
+          public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED;
+          }
+
+          @Override
+          public Bits bits() {
+            return new Bits() {
+              @Override
+              public boolean get(int index) {
+                return exists(index + base);
+              }
+
+              @Override
+              public int length() {
+                return maxDoc;
+              }
+            };
+          }
+
+        }, acceptDocs2);
+      }
+
+      @Override
+      public String toString(String field) {
+        return "OffHeapBitSetDocTopFilter";
+      }
+    };
+  }
+
+  /**
+   * Returns the heap memory used by this set, which does not include the
+   * bits themselves. See {@link #offHeapBytesUsed()}.
+   */
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED;
+  }
+
+  /** Returns the amount of direct memory holding the bits of this set. */
+  public long offHeapBytesUsed() {
+    return (long) numWords << 3;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
@@ -20,13 +20,21 @@ package org.apache.solr.search;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 
 /** A hash key encapsulating a query, a list of filters, and a sort
  *
  */
-public final class QueryResultKey {
+public final class QueryResultKey implements Accountable {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(QueryResultKey.class);
+  private static final long BASE_SF_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SortField.class);
+
   final Query query;
   final Sort sort;
   final SortField[] sfields;
@@ -34,6 +42,7 @@ public final class QueryResultKey {
   final int nc_flags;  // non-comparable flags... ignored by hashCode and equals
 
   private final int hc;  // cached hashCode
+  private final long ramBytesUsed; // cached, queries are immutable
 
   private static SortField[] defaultSort = new SortField[0];
 
@@ -45,20 +54,39 @@ public final class QueryResultKey {
     this.nc_flags = nc_flags;
 
     int h = query.hashCode();
+    long ramSize = BASE_RAM_BYTES_USED + ramBytesUsed(query);
 
     if (filters != null) {
-      for (Query filt : filters)
+      for (Query filt : filters) {
         // NOTE: simple summation used here so keys with the same filters but in
         // different orders get the same hashCode
         h += filt.hashCode();
+        ramSize += RamUsageEstimator.NUM_BYTES_OBJECT_REF + ramBytesUsed(filt);
+      }
     }
 
     sfields = (this.sort !=null) ? this.sort.getSort() : defaultSort;
     for (SortField sf : sfields) {
       h = h*29 + sf.hashCode();
+      ramSize += RamUsageEstimator.NUM_BYTES_OBJECT_REF + BASE_SF_RAM_BYTES_USED;
     }
 
     hc = h;
+    ramBytesUsed = ramSize;
+  }
+
+  private static long ramBytesUsed(Query q) {
+    return q instanceof Accountable ? ((Accountable) q).ramBytesUsed() : LRUCache.DEFAULT_RAM_BYTES_USED;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
   }
 
   @Override
@@ -17,12 +17,22 @@
 
 package org.apache.solr.search;
 
+import org.apache.lucene.queries.TermsQuery;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.query.FilterQuery;
 
 import java.util.Collection;
 
@@ -110,6 +120,39 @@ public class QueryUtils {
     return isNegative(q) ? fixNegativeQuery(q) : q;
   }
 
+  /**
+   * Returns true if the documents that the query matches in a segment only depend on that segment,
+   * which is what makes caching the matches per segment safe.  This is only known for a few
+   * common query types, so false is returned for anything else (joins, function queries
+   * that use top-level ords, fuzzy queries that pick their terms across the index...).
+   */
+  public static boolean isSegmentLocal(Query q) {
+    if (q instanceof TermQuery || q instanceof TermsQuery || q instanceof MatchAllDocsQuery || q instanceof MatchNoDocsQuery
+        || q instanceof PhraseQuery || q instanceof MultiPhraseQuery) {
+      return true;
+    }
+    if (q instanceof MultiTermQuery) {
+      return !(q instanceof FuzzyQuery);
+    }
+    if (q instanceof BooleanQuery) {
+      for (BooleanClause clause : (BooleanQuery) q) {
+        if (!isSegmentLocal(clause.getQuery())) return false;
+      }
+      return true;
+    }
+    if (q instanceof DisjunctionMaxQuery) {
+      for (Query disjunct : (DisjunctionMaxQuery) q) {
+        if (!isSegmentLocal(disjunct)) return false;
+      }
+      return true;
+    }
+    if (q instanceof BoostQuery) return isSegmentLocal(((BoostQuery) q).getQuery());
+    if (q instanceof ConstantScoreQuery) return isSegmentLocal(((ConstantScoreQuery) q).getQuery());
+    if (q instanceof WrappedQuery) return isSegmentLocal(((WrappedQuery) q).getWrappedQuery());
+    if (q instanceof FilterQuery) return isSegmentLocal(((FilterQuery) q).getQuery());
+    return false;
+  }
+
   /** Fixes a negative query by adding a MatchAllDocs query clause.
    * The query passed in *must* be a negative query.
    */
@@ -0,0 +1,1034 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * <code>RoaringDocSet</code> represents a sorted set of Lucene Document Ids split in
+ * chunks of 65536 documents, in the spirit of Roaring bitmaps.
+ * <p>
+ * Each non-empty chunk is stored in the most compact of three containers: a sorted array
+ * of the low 16 bits of each doc (up to 4096 docs), a 65536 bit bitmap, or a list of runs
+ * of consecutive docs. This fills the gap between {@link SortedIntDocSet}, which gets big
+ * and slow to intersect as sets grow, and {@link BitDocSet}, which costs maxDoc/8 bytes
+ * however few docs match.
+ * <p>
+ * Sets are read-only once built. Operations with another <code>RoaringDocSet</code> or a
+ * {@link BitDocSet} are done chunk by chunk and return a <code>RoaringDocSet</code>,
+ * except for union with a <code>BitDocSet</code>.
+ *
+ * @see DocSetUtil#mediumSetSize(int)
+ */
+public class RoaringDocSet extends DocSetBase {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RoaringDocSet.class)
+      + 2 * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+  /** The largest array container, above this a bitmap takes less space. */
+  static final int ARRAY_MAX = 4096;
+  static final int BITMAP_WORDS = 1 << 10;  // 65536 bits
+
+  private final char[] keys;  // the high 16 bits of the docs of each container, sorted
+  private final Container[] containers;
+  private final int size;
+
+  private RoaringDocSet(char[] keys, Container[] containers, int size) {
+    this.keys = keys;
+    this.containers = containers;
+    this.size = size;
+  }
+
+  private static RoaringDocSet create(char[] keys, Container[] containers, int numContainers) {
+    if (numContainers < keys.length) {
+      keys = Arrays.copyOf(keys, numContainers);
+      containers = Arrays.copyOf(containers, numContainers);
+    }
+    int size = 0;
+    for (Container c : containers) {
+      size += c.cardinality();
+    }
+    return new RoaringDocSet(keys, containers, size);
+  }
+
+  /**
+   * Builds a set from a sorted list of ids.
+   *
+   * @param docs Sorted list of ids
+   * @param len  Number of ids in the list
+   */
+  public static RoaringDocSet fromSortedDocs(int[] docs, int len) {
+    int numKeys = 0;
+    for (int i = 0, prevKey = -1; i < len; i++) {
+      int key = docs[i] >>> 16;
+      if (key != prevKey) {
+        numKeys++;
+        prevKey = key;
+      }
+    }
+    char[] keys = new char[numKeys];
+    Container[] containers = new Container[numKeys];
+    int k = 0;
+    int start = 0;
+    while (start < len) {
+      int key = docs[start] >>> 16;
+      int end = start + 1;
+      while (end < len && (docs[end] >>> 16) == key) {
+        end++;
+      }
+      keys[k] = (char) key;
+      containers[k++] = fromSortedLowBits(docs, start, end);
+      start = end;
+    }
+    return create(keys, containers, k);
+  }
+
+  /**
+   * Builds a set from bits, which are copied.
+   */
+  public static RoaringDocSet fromBits(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    int numWords = FixedBitSet.bits2words(bits.length());
+    int numChunks = (numWords + BITMAP_WORDS - 1) >>> 10;
+    char[] keys = new char[numChunks];
+    Container[] containers = new Container[numChunks];
+    int k = 0;
+    for (int chunk = 0; chunk < numChunks; chunk++) {
+      int from = chunk << 10;
+      int to = Math.min(numWords, from + BITMAP_WORDS);
+      long[] chunkWords = new long[BITMAP_WORDS];
+      System.arraycopy(words, from, chunkWords, 0, to - from);
+      Container c = fromWords(chunkWords);
+      if (c != null) {
+        keys[k] = (char) chunk;
+        containers[k++] = c;
+      }
+    }
+    return create(keys, containers, k);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Returns the index of the container for <code>key</code>, or a negative value like {@link Arrays#binarySearch}. */
+  private int containerIndex(int key) {
+    return Arrays.binarySearch(keys, (char) key);
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    int idx = containerIndex(doc >>> 16);
+    return idx >= 0 && containers[idx].contains(doc & 0xFFFF);
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final Cursor cursor = new Cursor();
+      private int pos = cursor.nextDoc();
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("The remove  operation is not supported by this Iterator.");
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = cursor.nextDoc();
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public FixedBitSet getBits() {
+    int maxDoc = size > 0 ? lastDoc() : 0;
+    FixedBitSet bs = new FixedBitSet(maxDoc + 1);
+    long[] words = bs.getBits();
+    for (int i = 0; i < keys.length; i++) {
+      containers[i].orInto(words, keys[i] << 10);
+    }
+    return bs;
+  }
+
+  private int lastDoc() {
+    int last = keys.length - 1;
+    return (keys[last] << 16) | containers[last].last();
+  }
+
+  // Set operations.  Other RoaringDocSets and BitDocSets are handled container by container,
+  // small sets are better at driving the operation through exists(), and anything else is
+  // handled by checking each of our docs.
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      RoaringDocSet o = (RoaringDocSet) other;
+      int count = 0;
+      for (int i = 0, j = 0; i < keys.length && j < o.keys.length; ) {
+        if (keys[i] < o.keys[j]) {
+          i++;
+        } else if (keys[i] > o.keys[j]) {
+          j++;
+        } else {
+          count += andCount(containers[i++], o.containers[j++]);
+        }
+      }
+      return count;
+    } else if (other instanceof BitDocSet) {
+      FixedBitSet bits = ((BitDocSet) other).getBits();
+      int count = 0;
+      for (int i = 0; i < keys.length; i++) {
+        count += andCount(containers[i], keys[i], bits);
+      }
+      return count;
+    } else if (isSmall(other)) {
+      return other.intersectionSize(this);
+    }
+    int count = 0;
+    for (DocIterator iter = iterator(); iter.hasNext(); ) {
+      if (other.exists(iter.nextDoc())) count++;
+    }
+    return count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof RoaringDocSet || other instanceof BitDocSet) {
+      return intersectionSize(other) > 0;
+    } else if (isSmall(other)) {
+      return other.intersects(this);
+    }
+    for (DocIterator iter = iterator(); iter.hasNext(); ) {
+      if (other.exists(iter.nextDoc())) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      RoaringDocSet o = (RoaringDocSet) other;
+      int n = Math.min(keys.length, o.keys.length);
+      char[] newKeys = new char[n];
+      Container[] newContainers = new Container[n];
+      int k = 0;
+      for (int i = 0, j = 0; i < keys.length && j < o.keys.length; ) {
+        if (keys[i] < o.keys[j]) {
+          i++;
+        } else if (keys[i] > o.keys[j]) {
+          j++;
+        } else {
+          Container c = and(containers[i], o.containers[j]);
+          if (c != null) {
+            newKeys[k] = keys[i];
+            newContainers[k++] = c;
+          }
+          i++;
+          j++;
+        }
+      }
+      return create(newKeys, newContainers, k);
+    } else if (other instanceof BitDocSet) {
+      return andBits(((BitDocSet) other).getBits(), false);
+    } else if (isSmall(other)) {
+      return other.intersection(this);
+    }
+    return filter(other, true);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      RoaringDocSet o = (RoaringDocSet) other;
+      char[] newKeys = new char[keys.length];
+      Container[] newContainers = new Container[keys.length];
+      int k = 0;
+      for (int i = 0, j = 0; i < keys.length; i++) {
+        while (j < o.keys.length && o.keys[j] < keys[i]) {
+          j++;
+        }
+        Container c = j < o.keys.length && o.keys[j] == keys[i] ? andNot(containers[i], o.containers[j]) : containers[i];
+        if (c != null) {
+          newKeys[k] = keys[i];
+          newContainers[k++] = c;
+        }
+      }
+      return create(newKeys, newContainers, k);
+    } else if (other instanceof BitDocSet) {
+      return andBits(((BitDocSet) other).getBits(), true);
+    }
+    return filter(other, false);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      int[] otherDocs = ((SortedIntDocSet) other).getDocs();
+      other = fromSortedDocs(otherDocs, otherDocs.length);
+    }
+    if (!(other instanceof RoaringDocSet)) {
+      return super.union(other);
+    }
+    RoaringDocSet o = (RoaringDocSet) other;
+    char[] newKeys = new char[keys.length + o.keys.length];
+    Container[] newContainers = new Container[newKeys.length];
+    int k = 0;
+    int i = 0, j = 0;
+    while (i < keys.length || j < o.keys.length) {
+      if (j == o.keys.length || (i < keys.length && keys[i] < o.keys[j])) {
+        newKeys[k] = keys[i];
+        newContainers[k++] = containers[i++];  // containers are immutable, so they can be shared
+      } else if (i == keys.length || keys[i] > o.keys[j]) {
+        newKeys[k] = o.keys[j];
+        newContainers[k++] = o.containers[j++];
+      } else {
+        newKeys[k] = keys[i];
+        newContainers[k++] = or(containers[i++], o.containers[j++]);
+      }
+    }
+    return create(newKeys, newContainers, k);
+  }
+
+  /** Sets that rely on exists() from the other set for their own set operations. */
+  private static boolean isSmall(DocSet other) {
+    return other instanceof SortedIntDocSet || other instanceof HashDocSet || other instanceof DocSlice;
+  }
+
+  /** Returns our docs that do, or don't, exist in <code>other</code>. */
+  private RoaringDocSet filter(DocSet other, boolean keep) {
+    int[] docs = new int[size];
+    int n = 0;
+    for (DocIterator iter = iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      if (other.exists(doc) == keep) docs[n++] = doc;
+    }
+    return fromSortedDocs(docs, n);
+  }
+
+  private RoaringDocSet andBits(FixedBitSet bits, boolean negate) {
+    char[] newKeys = new char[keys.length];
+    Container[] newContainers = new Container[keys.length];
+    int k = 0;
+    for (int i = 0; i < keys.length; i++) {
+      Container c = andBits(containers[i], keys[i], bits, negate);
+      if (c != null) {
+        newKeys[k] = keys[i];
+        newContainers[k++] = c;
+      }
+    }
+    return create(newKeys, newContainers, k);
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(final LeafReaderContext context, final Bits acceptDocs) {
+        LeafReader reader = context.reader();
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        final int base = context.docBase;
+        final int maxDoc = reader.maxDoc();
+        final int max = base + maxDoc;   // one past the max doc in this segment.
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+              final Cursor cursor = new Cursor();
+              int adjustedDoc = -1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() {
+                int doc = adjustedDoc == -1 ? cursor.advance(base) : cursor.nextDoc();
+                return adjustedDoc = doc < max ? doc - base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public int advance(int target) {
+                if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+                int doc = cursor.advance(target + base);
+                return adjustedDoc = doc < max ? doc - base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public long cost() {
+                return size;
+              }
+            };
+          }
+
+          @Override
+          public boolean isCacheable() {
+            return true;
+          }
+
+          @Override
+          public long ramBytesUsed() {
+            return RoaringDocSet.this.ramBytesUsed();
+          }
+
+          @Override
+          public Bits bits() {
+            // random access needs a binary search, iterating is better
+            return null;
+          }
+
+        }, acceptDocs2);
+      }
+
+      @Override
+      public String toString(String field) {
+        return "RoaringDocSetTopFilter";
+      }
+    };
+  }
+
+  @Override
+  protected RoaringDocSet clone() {
+    return this;  // immutable
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long bytes = BASE_RAM_BYTES_USED + ((long) keys.length << 1)
+        + (long) containers.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    for (Container c : containers) {
+      bytes += c.ramBytesUsed();
+    }
+    return bytes;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  /** Iterates over the docs in order, with the ability to skip ahead. */
+  private final class Cursor {
+    private int containerIdx = -1;
+    private int base;
+    private Container.ValueIterator values;
+
+    /** Returns the next doc, or NO_MORE_DOCS. */
+    int nextDoc() {
+      for (;;) {
+        if (values != null) {
+          int low = values.next();
+          if (low >= 0) return base | low;
+        }
+        if (++containerIdx >= keys.length) {
+          values = null;
+          containerIdx = keys.length;
+          return DocIdSetIterator.NO_MORE_DOCS;
+        }
+        base = keys[containerIdx] << 16;
+        values = containers[containerIdx].iterator();
+      }
+    }
+
+    /** Returns the first doc at or after <code>target</code> and after the current doc, or NO_MORE_DOCS. */
+    int advance(int target) {
+      int key = target >>> 16;
+      if (containerIdx < 0 || containerIdx >= keys.length || keys[containerIdx] != key) {
+        if (containerIdx >= keys.length) return DocIdSetIterator.NO_MORE_DOCS;
+        if (containerIdx < 0 || keys[containerIdx] < key) {
+          int idx = containerIndex(key);
+          if (idx < 0) {
+            // no container for the key, start with the next one
+            containerIdx = -idx - 2;
+            values = null;
+            return nextDoc();
+          }
+          containerIdx = idx;
+          base = key << 16;
+          values = containers[idx].iterator();
+        } else {
+          // already past the target's container
+          return nextDoc();
+        }
+      }
+      int low = values.advance(target & 0xFFFF);
+      if (low >= 0) return base | low;
+      values = null;  // exhausted, move on to the next container
+      return nextDoc();
+    }
+  }
+
+  // Containers.  All hold the low 16 bits of the docs of one chunk, and are immutable.
+
+  /** Picks the most compact container for a bitmap of 1024 words, or returns null if it is empty. */
+  static Container fromWords(long[] words) {
+    int cardinality = 0;
+    int runs = 0;
+    long prevTopBit = 0;
+    for (long w : words) {
+      cardinality += Long.bitCount(w);
+      // a run starts on each set bit whose predecessor isn't set
+      runs += Long.bitCount(w & ~((w << 1) | prevTopBit));
+      prevTopBit = w >>> 63;
+    }
+    if (cardinality == 0) {
+      return null;
+    }
+    int runBytes = runs << 2;
+    if (runBytes < Math.min(cardinality << 1, BITMAP_WORDS << 3)) {
+      return RunContainer.fromWords(words, runs, cardinality);
+    }
+    if (cardinality <= ARRAY_MAX) {
+      return ArrayContainer.fromWords(words, cardinality);
+    }
+    return new BitmapContainer(words, cardinality);
+  }
+
+  /** Builds a container from docs[start:end], which are sorted and share the same high 16 bits. */
+  static Container fromSortedLowBits(int[] docs, int start, int end) {
+    int cardinality = end - start;
+    int runs = 1;
+    for (int i = start + 1; i < end; i++) {
+      if (docs[i] != docs[i - 1] + 1) runs++;
+    }
+    if (cardinality <= ARRAY_MAX && (runs << 2) >= (cardinality << 1)) {
+      char[] values = new char[cardinality];
+      for (int i = 0; i < cardinality; i++) {
+        values[i] = (char) docs[start + i];
+      }
+      return new ArrayContainer(values);
+    }
+    long[] words = new long[BITMAP_WORDS];
+    for (int i = start; i < end; i++) {
+      int low = docs[i] & 0xFFFF;
+      words[low >>> 6] |= 1L << low;
+    }
+    return fromWords(words);
+  }
+
+  static int andCount(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      if (b instanceof ArrayContainer) {
+        return ArrayContainer.intersect(((ArrayContainer) a).values, ((ArrayContainer) b).values, null);
+      }
+      return ((ArrayContainer) a).countIn(b);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).countIn(a);
+    }
+    long[] wa = a.words();
+    long[] wb = b.words();
+    int count = 0;
+    for (int i = 0; i < BITMAP_WORDS; i++) {
+      count += Long.bitCount(wa[i] & wb[i]);
+    }
+    return count;
+  }
+
+  static Container and(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      if (b instanceof ArrayContainer) {
+        char[] va = ((ArrayContainer) a).values;
+        char[] out = new char[Math.min(va.length, ((ArrayContainer) b).values.length)];
+        int n = ArrayContainer.intersect(va, ((ArrayContainer) b).values, out);
+        return n == 0 ? null : new ArrayContainer(Arrays.copyOf(out, n));
+      }
+      return ((ArrayContainer) a).filter(b, true);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).filter(a, true);
+    }
+    long[] wa = a.words();
+    long[] wb = b.words();
+    long[] words = new long[BITMAP_WORDS];
+    for (int i = 0; i < BITMAP_WORDS; i++) {
+      words[i] = wa[i] & wb[i];
+    }
+    return fromWords(words);
+  }
+
+  static Container andNot(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).filter(b, false);
+    }
+    long[] words = a.words().clone();
+    if (b instanceof ArrayContainer) {
+      for (char v : ((ArrayContainer) b).values) {
+        words[v >>> 6] &= ~(1L << v);
+      }
+    } else {
+      long[] wb = b.words();
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        words[i] &= ~wb[i];
+      }
+    }
+    return fromWords(words);
+  }
+
+  static Container or(Container a, Container b) {
+    if (a instanceof ArrayContainer && b instanceof ArrayContainer
+        && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+      char[] va = ((ArrayContainer) a).values;
+      char[] vb = ((ArrayContainer) b).values;
+      char[] out = new char[va.length + vb.length];
+      int i = 0, j = 0, n = 0;
+      while (i < va.length && j < vb.length) {
+        if (va[i] < vb[j]) {
+          out[n++] = va[i++];
+        } else if (va[i] > vb[j]) {
+          out[n++] = vb[j++];
+        } else {
+          out[n++] = va[i++];
+          j++;
+        }
+      }
+      while (i < va.length) out[n++] = va[i++];
+      while (j < vb.length) out[n++] = vb[j++];
+      return new ArrayContainer(n == out.length ? out : Arrays.copyOf(out, n));
+    }
+    long[] words = new long[BITMAP_WORDS];
+    a.orInto(words, 0);
+    b.orInto(words, 0);
+    return fromWords(words);
+  }
+
+  /** Counts the docs of chunk <code>key</code> that are also set in <code>bits</code>. */
+  static int andCount(Container c, int key, FixedBitSet bits) {
+    int base = key << 16;
+    if (c instanceof ArrayContainer) {
+      int count = 0;
+      int length = bits.length();
+      for (char v : ((ArrayContainer) c).values) {
+        int doc = base | v;
+        if (doc < length && bits.get(doc)) count++;
+      }
+      return count;
+    }
+    long[] words = c.words();
+    long[] other = bits.getBits();
+    int from = key << 10;
+    int to = Math.min(FixedBitSet.bits2words(bits.length()), from + BITMAP_WORDS);
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      count += Long.bitCount(words[i - from] & other[i]);
+    }
+    return count;
+  }
+
+  /** Intersects (or subtracts) <code>bits</code> with the container of chunk <code>key</code>. */
+  static Container andBits(Container c, int key, FixedBitSet bits, boolean negate) {
+    int base = key << 16;
+    if (c instanceof ArrayContainer) {
+      char[] values = ((ArrayContainer) c).values;
+      char[] out = new char[values.length];
+      int n = 0;
+      int length = bits.length();
+      for (char v : values) {
+        int doc = base | v;
+        if ((doc < length && bits.get(doc)) != negate) out[n++] = v;
+      }
+      return n == 0 ? null : new ArrayContainer(n == out.length ? values : Arrays.copyOf(out, n));
+    }
+    long[] words = c.words().clone();
+    long[] other = bits.getBits();
+    int from = key << 10;
+    int to = Math.min(FixedBitSet.bits2words(bits.length()), from + BITMAP_WORDS);
+    if (negate) {
+      for (int i = from; i < to; i++) {
+        words[i - from] &= ~other[i];
+      }
+    } else {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        words[i] = from + i < to ? words[i] & other[from + i] : 0;
+      }
+    }
+    return fromWords(words);
+  }
+
+  abstract static class Container {
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /** Returns the largest value. */
+    abstract int last();
+
+    /** Returns the container as a bitmap of 1024 words, which must not be modified. */
+    abstract long[] words();
+
+    /** Sets the values of this container in <code>words</code>, starting at <code>offset</code>. */
+    abstract void orInto(long[] words, int offset);
+
+    abstract ValueIterator iterator();
+
+    abstract long ramBytesUsed();
+
+    abstract static class ValueIterator {
+      /** Returns the next value, or -1. */
+      abstract int next();
+
+      /** Returns the first value at or after <code>target</code> and after the current one, or -1. */
+      abstract int advance(int target);
+    }
+  }
+
+  static final class ArrayContainer extends Container {
+    final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    static ArrayContainer fromWords(long[] words, int cardinality) {
+      char[] values = new char[cardinality];
+      int n = 0;
+      for (int i = 0; i < words.length; i++) {
+        long w = words[i];
+        while (w != 0) {
+          values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+
+    /** Merges two sorted arrays, writing the common values to <code>out</code> unless it is null. */
+    static int intersect(char[] a, char[] b, char[] out) {
+      int i = 0, j = 0, n = 0;
+      while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+          i++;
+        } else if (a[i] > b[j]) {
+          j++;
+        } else {
+          if (out != null) out[n] = a[i];
+          n++;
+          i++;
+          j++;
+        }
+      }
+      return n;
+    }
+
+    int countIn(Container other) {
+      int count = 0;
+      for (char v : values) {
+        if (other.contains(v)) count++;
+      }
+      return count;
+    }
+
+    Container filter(Container other, boolean keep) {
+      char[] out = new char[values.length];
+      int n = 0;
+      for (char v : values) {
+        if (other.contains(v) == keep) out[n++] = v;
+      }
+      if (n == 0) return null;
+      return n == values.length ? this : new ArrayContainer(Arrays.copyOf(out, n));
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(int low) {
+      return Arrays.binarySearch(values, (char) low) >= 0;
+    }
+
+    @Override
+    int last() {
+      return values[values.length - 1];
+    }
+
+    @Override
+    long[] words() {
+      long[] words = new long[BITMAP_WORDS];
+      orInto(words, 0);
+      return words;
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      for (char v : values) {
+        words[offset + (v >>> 6)] |= 1L << v;
+      }
+    }
+
+    @Override
+    ValueIterator iterator() {
+      return new ValueIterator() {
+        int idx = 0;
+
+        @Override
+        int next() {
+          return idx < values.length ? values[idx++] : -1;
+        }
+
+        @Override
+        int advance(int target) {
+          if (idx < values.length && values[idx] < target) {
+            int found = Arrays.binarySearch(values, idx, values.length, (char) target);
+            idx = found >= 0 ? found : -found - 1;
+          }
+          return next();
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF)
+          + RamUsageEstimator.sizeOf(values);
+    }
+  }
+
+  static final class BitmapContainer extends Container {
+    final long[] words;
+    final int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    int last() {
+      for (int i = BITMAP_WORDS - 1; ; i--) {
+        if (words[i] != 0) return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+      }
+    }
+
+    @Override
+    long[] words() {
+      return words;
+    }
+
+    @Override
+    void orInto(long[] target, int offset) {
+      int n = Math.min(BITMAP_WORDS, target.length - offset);
+      for (int i = 0; i < n; i++) {
+        target[offset + i] |= words[i];
+      }
+    }
+
+    int nextSetBit(int index) {
+      if (index >= BITMAP_WORDS << 6) return -1;
+      int i = index >>> 6;
+      long word = words[i] >> index;  // skip all the bits to the right of index
+      if (word != 0) {
+        return index + Long.numberOfTrailingZeros(word);
+      }
+      while (++i < BITMAP_WORDS) {
+        word = words[i];
+        if (word != 0) {
+          return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    ValueIterator iterator() {
+      return new ValueIterator() {
+        int pos = -1;
+
+        @Override
+        int next() {
+          return pos = nextSetBit(pos + 1);
+        }
+
+        @Override
+        int advance(int target) {
+          return pos = nextSetBit(Math.max(pos + 1, target));
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT)
+          + RamUsageEstimator.sizeOf(words);
+    }
+  }
+
+  static final class RunContainer extends Container {
+    final char[] starts;
+    final char[] ends;  // inclusive
+    final int cardinality;
+
+    RunContainer(char[] starts, char[] ends, int cardinality) {
+      this.starts = starts;
+      this.ends = ends;
+      this.cardinality = cardinality;
+    }
+
+    static RunContainer fromWords(long[] words, int runs, int cardinality) {
+      char[] starts = new char[runs];
+      char[] ends = new char[runs];
+      int n = 0;
+      int pos = 0;
+      int max = BITMAP_WORDS << 6;
+      while (n < runs) {
+        // find the start of the next run, then its end
+        while (pos < max && (words[pos >>> 6] & (1L << pos)) == 0) {
+          long w = words[pos >>> 6] >>> pos;
+          pos = w == 0 ? ((pos >>> 6) + 1) << 6 : pos + Long.numberOfTrailingZeros(w);
+        }
+        starts[n] = (char) pos;
+        while (pos < max && (words[pos >>> 6] & (1L << pos)) != 0) {
+          long w = ~words[pos >>> 6] >>> pos;
+          pos = w == 0 ? ((pos >>> 6) + 1) << 6 : pos + Long.numberOfTrailingZeros(w);
+        }
+        ends[n++] = (char) (pos - 1);
+      }
+      return new RunContainer(starts, ends, cardinality);
+    }
+
+    /** Returns the index of the last run starting at or before <code>low</code>, or -1. */
+    private int runIndex(int low) {
+      int found = Arrays.binarySearch(starts, (char) low);
+      return found >= 0 ? found : -found - 2;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low) {
+      int idx = runIndex(low);
+      return idx >= 0 && low <= ends[idx];
+    }
+
+    @Override
+    int last() {
+      return ends[ends.length - 1];
+    }
+
+    @Override
+    long[] words() {
+      long[] words = new long[BITMAP_WORDS];
+      orInto(words, 0);
+      return words;
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      for (int r = 0; r < starts.length; r++) {
+        int start = starts[r];
+        int end = ends[r];
+        int startWord = start >>> 6;
+        int endWord = end >>> 6;
+        long startMask = -1L << start;
+        long endMask = -1L >>> (63 - (end & 63));
+        if (startWord == endWord) {
+          words[offset + startWord] |= startMask & endMask;
+        } else {
+          words[offset + startWord] |= startMask;
+          for (int i = startWord + 1; i < endWord; i++) {
+            words[offset + i] = -1L;
+          }
+          words[offset + endWord] |= endMask;
+        }
+      }
+    }
+
+    @Override
+    ValueIterator iterator() {
+      return new ValueIterator() {
+        int run = 0;
+        int value = starts.length == 0 ? -1 : starts[0] - 1;
+
+        @Override
+        int next() {
+          if (run >= starts.length) return -1;
+          if (value < ends[run]) return ++value;
+          if (++run >= starts.length) return -1;
+          return value = starts[run];
+        }
+
+        @Override
+        int advance(int target) {
+          if (run >= starts.length) return -1;
+          if (target <= value + 1) return next();
+          int idx = Math.max(run, runIndex(target));
+          if (idx >= 0 && target <= ends[idx]) {
+            run = idx;
+            return value = target;
+          }
+          run = idx + 1;
+          return run < starts.length ? (value = starts[run]) : -1;
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT)
+          + RamUsageEstimator.sizeOf(starts) + RamUsageEstimator.sizeOf(ends);
+    }
+  }
+}
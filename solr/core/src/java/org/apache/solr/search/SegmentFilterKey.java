@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/** A hash key encapsulating a filter query and the core cache key of the segment it was evaluated on.
+ *
+ * @see org.apache.lucene.index.LeafReader#getCoreCacheKey()
+ */
+public final class SegmentFilterKey implements Accountable {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentFilterKey.class);
+
+  final Query query;
+  final Object coreKey;
+
+  private final int hc;  // cached hashCode
+
+  public SegmentFilterKey(Query query, Object coreKey) {
+    this.query = query;
+    this.coreKey = coreKey;
+    this.hc = query.hashCode() * 31 + coreKey.hashCode();
+  }
+
+  public Query getQuery() {
+    return query;
+  }
+
+  public Object getCoreKey() {
+    return coreKey;
+  }
+
+  @Override
+  public int hashCode() {
+    return hc;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SegmentFilterKey)) return false;
+    SegmentFilterKey other = (SegmentFilterKey) o;
+    // core keys are compared by identity, like Lucene does for its own caches
+    return this.hc == other.hc && this.coreKey == other.coreKey && this.query.equals(other.query);
+  }
+
+  @Override
+  public String toString() {
+    return query + "@" + Integer.toHexString(System.identityHashCode(coreKey));
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    // the core key is owned by the segment, not by the cache
+    return BASE_RAM_BYTES_USED
+        + (query instanceof Accountable ? ((Accountable) query).ramBytesUsed() : LRUCache.DEFAULT_RAM_BYTES_USED);
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
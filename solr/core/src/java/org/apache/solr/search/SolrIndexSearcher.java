@@ -35,7 +35,9 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.lucene.codecs.StoredFieldsReader;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
@@ -45,17 +47,23 @@ import org.apache.lucene.document.LazyDocument;
 import org.apache.lucene.document.LongField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.CodecReader;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiPostingsEnum;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
@@ -83,6 +91,8 @@ import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.facet.UnInvertedField;
 import org.apache.solr.search.stats.StatsSource;
 import org.apache.solr.update.SolrIndexConfig;
@@ -126,6 +136,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
   
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
+  private final boolean filterCacheOffHeap;
+  private final SolrCache<SegmentFilterKey,DocSet> segmentFilterCache;
+  private final SolrCache<Query,JoinResult> joinCache;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<Integer,Document> documentCache;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
@@ -191,6 +204,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     if( timeAllowed > 0 ) {
       collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowed);
     }
+    collector = ExitableCollector.wrap(collector);
     
     if (postFilter != null) {
       postFilter.setLastDelegate(collector);
@@ -199,7 +213,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
     try {
       super.search(query, collector);
-    } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException x) {
+    } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException
+        | SolrQueryTimeoutImpl.ExitingQueryException x) {
       log.warn("Query: " + query + "; " + x.getMessage());
       qr.setPartialResults(true);
     } catch (EarlyTerminatingCollectorException etce) {
@@ -263,8 +278,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       ArrayList<SolrCache> clist = new ArrayList<>();
       fieldValueCache = solrConfig.fieldValueCacheConfig==null ? null : solrConfig.fieldValueCacheConfig.newInstance();
       if (fieldValueCache!=null) clist.add(fieldValueCache);
+      // before the filterCache, so that its autowarming can reuse the segment sets
+      segmentFilterCache = solrConfig.segmentFilterCacheConfig==null ? null : solrConfig.segmentFilterCacheConfig.newInstance();
+      if (segmentFilterCache!=null) clist.add(segmentFilterCache);
+      joinCache = solrConfig.joinCacheConfig==null ? null : solrConfig.joinCacheConfig.newInstance();
+      if (joinCache!=null) clist.add(joinCache);
       filterCache= solrConfig.filterCacheConfig==null ? null : solrConfig.filterCacheConfig.newInstance();
       if (filterCache!=null) clist.add(filterCache);
+      filterCacheOffHeap = filterCache != null && solrConfig.filterCacheConfig.isOffHeap();
       queryResultCache = solrConfig.queryResultCacheConfig==null ? null : solrConfig.queryResultCacheConfig.newInstance();
       if (queryResultCache!=null) clist.add(queryResultCache);
       documentCache = solrConfig.documentCacheConfig==null ? null : solrConfig.documentCacheConfig.newInstance();
@@ -287,6 +308,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       cacheList = clist.toArray(new SolrCache[clist.size()]);
     } else {
       filterCache=null;
+      filterCacheOffHeap=false;
+      segmentFilterCache=null;
+      joinCache=null;
       queryResultCache=null;
       documentCache=null;
       fieldValueCache=null;
@@ -514,6 +538,38 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       );
     }
 
+    if (solrConfig.segmentFilterCacheConfig != null && solrConfig.segmentFilterCacheConfig.getRegenerator() == null) {
+      solrConfig.segmentFilterCacheConfig.setRegenerator(
+              new CacheRegenerator() {
+                @Override
+                public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+                  // segment sets stay valid for as long as their segment is part of the index
+                  Object coreKey = ((SegmentFilterKey)oldKey).getCoreKey();
+                  for (LeafReaderContext leaf : newSearcher.getTopReaderContext().leaves()) {
+                    if (leaf.reader().getCoreCacheKey() == coreKey) {
+                      newCache.put(oldKey, oldVal);
+                      break;
+                    }
+                  }
+                  return true;
+                }
+              }
+      );
+    }
+
+    if (solrConfig.joinCacheConfig != null && solrConfig.joinCacheConfig.getRegenerator() == null) {
+      solrConfig.joinCacheConfig.setRegenerator(
+              new CacheRegenerator() {
+                @Override
+                public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+                  // only the new segments need to be joined, the from side is checked when the result is used
+                  newCache.put(oldKey, ((JoinResult)oldVal).forSearcher(newSearcher));
+                  return true;
+                }
+              }
+      );
+    }
+
     if (solrConfig.queryResultCacheConfig != null && solrConfig.queryResultCacheConfig.getRegenerator() == null) {
       final int queryResultWindowSize = solrConfig.queryResultWindowSize;
       solrConfig.queryResultCacheConfig.setRegenerator(
@@ -762,12 +818,180 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
    * and reads them into an array of Documents.
    */
   public void readDocs(Document[] docs, DocList ids, Set<String> fields) throws IOException {
+    int[] docIds = new int[docs.length];
     DocIterator iter = ids.iterator();
-    for (int i=0; i<docs.length; i++) {
-      docs[i] = doc(iter.nextDoc(), fields);
+    for (int i=0; i<docIds.length; i++) {
+      docIds[i] = iter.nextDoc();
+    }
+    readDocs(docs, docIds, fields);
+  }
+
+  /**
+   * Reads the documents with the given ids into an array of Documents, the same way
+   * {@link #doc(int, Set)} would read them one at a time.
+   * <p>
+   * The documents that are not in the documentCache are read in docid order, one segment at a
+   * time, through a stored fields reader that keeps the last block it decompressed.  Documents
+   * that share a compressed block, which is common for the documents of a page, only
+   * decompress it once.
+   */
+  public void readDocs(Document[] docs, int[] ids, Set<String> fields) throws IOException {
+    // the docids to read, in the high bits, along with their position in the array
+    long[] toRead = new long[ids.length];
+    int numToRead = 0;
+    for (int i=0; i<ids.length; i++) {
+      Document d = documentCache == null ? null : documentCache.get(ids[i]);
+      if (d != null) {
+        docs[i] = d;
+      } else {
+        toRead[numToRead++] = ((long) ids[i] << 32) | i;
+      }
+    }
+    Arrays.sort(toRead, 0, numToRead);
+
+    LeafReaderContext leaf = null;
+    StoredFieldsReader blockReader = null;
+    int nextDocBase = 0;
+    for (int i=0; i<numToRead; i++) {
+      int id = (int) (toRead[i] >>> 32);
+      int pos = (int) toRead[i];
+      if (leaf == null || id >= nextDocBase) {
+        leaf = leafContexts.get(ReaderUtil.subIndex(id, leafContexts));
+        nextDocBase = leaf.docBase + leaf.reader().maxDoc();
+        blockReader = getBlockReader(leaf.reader());
+      }
+
+      Document d;
+      if (i > 0 && id == (int) (toRead[i-1] >>> 32)) {
+        d = docs[(int) toRead[i-1]];  // the same doc asked for twice
+      } else if (blockReader == null) {
+        d = doc(id, fields);
+      } else {
+        if (!enableLazyFieldLoading || fields == null) {
+          DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+          blockReader.visitDocument(id - leaf.docBase, visitor);
+          d = visitor.getDocument();
+        } else {
+          SetNonLazyFieldSelector visitor = new SetNonLazyFieldSelector(fields, getIndexReader(), id);
+          blockReader.visitDocument(id - leaf.docBase, visitor);
+          d = visitor.doc;
+        }
+        if (documentCache != null) {
+          documentCache.put(id, d);
+        }
+      }
+      docs[pos] = d;
     }
   }
 
+  /**
+   * Returns true if all the given fields can be read from their docValues rather than from the stored
+   * fields, see {@link #readDocValues}.  These are the stored, single valued string and trie fields
+   * that have docValues and the <code>useDocValuesAsStored</code> property, which tells that the docValues
+   * of every document hold the same value as its stored field.
+   */
+  public boolean canUseDocValuesAsStored(Set<String> fields) {
+    if (fields == null || fields.isEmpty()) return false;
+    for (String field : fields) {
+      SchemaField sf = schema.getFieldOrNull(field);
+      if (sf == null || !sf.stored() || !sf.hasDocValues() || !sf.useDocValuesAsStored() || sf.multiValued()) {
+        return false;
+      }
+      if (!(sf.getType() instanceof StrField || sf.getType() instanceof TrieField)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the given fields of the documents with the given ids from their docValues, into an
+   * array of Documents holding a stored field per value.  The documents are read in docid order,
+   * one segment at a time, and the stored fields are not read at all.  The fields must be
+   * ones {@link #canUseDocValuesAsStored} is true for.
+   * <p>
+   * The documents only have the given fields, so they are not added to the documentCache.
+   */
+  public void readDocValues(Document[] docs, int[] ids, Set<String> fields) throws IOException {
+    long[] toRead = new long[ids.length];
+    for (int i=0; i<ids.length; i++) {
+      toRead[i] = ((long) ids[i] << 32) | i;
+      docs[i] = new Document();
+    }
+    Arrays.sort(toRead);
+
+    SchemaField[] schemaFields = new SchemaField[fields.size()];
+    int f = 0;
+    for (String field : fields) {
+      schemaFields[f++] = schema.getField(field);
+    }
+
+    LeafReaderContext leaf = null;
+    int nextDocBase = 0;
+    NumericDocValues[] numerics = new NumericDocValues[schemaFields.length];
+    SortedDocValues[] sorteds = new SortedDocValues[schemaFields.length];
+    Bits[] docsWithField = new Bits[schemaFields.length];
+    for (long next : toRead) {
+      int id = (int) (next >>> 32);
+      Document d = docs[(int) next];
+      if (leaf == null || id >= nextDocBase) {
+        leaf = leafContexts.get(ReaderUtil.subIndex(id, leafContexts));
+        nextDocBase = leaf.docBase + leaf.reader().maxDoc();
+        for (int i=0; i<schemaFields.length; i++) {
+          String name = schemaFields[i].getName();
+          if (schemaFields[i].getType() instanceof StrField) {
+            sorteds[i] = DocValues.getSorted(leaf.reader(), name);
+          } else {
+            numerics[i] = DocValues.getNumeric(leaf.reader(), name);
+            docsWithField[i] = DocValues.getDocsWithField(leaf.reader(), name);
+          }
+        }
+      }
+
+      int doc = id - leaf.docBase;
+      for (int i=0; i<schemaFields.length; i++) {
+        String name = schemaFields[i].getName();
+        if (sorteds[i] != null) {
+          int ord = sorteds[i].getOrd(doc);
+          if (ord != -1) {
+            d.add(new StoredField(name, sorteds[i].lookupOrd(ord).utf8ToString()));
+          }
+        } else if (docsWithField[i].get(doc)) {
+          long bits = numerics[i].get(doc);
+          switch (((TrieField) schemaFields[i].getType()).getType()) {
+            case INTEGER:
+              d.add(new StoredField(name, (int) bits));
+              break;
+            case FLOAT:
+              d.add(new StoredField(name, Float.intBitsToFloat((int) bits)));
+              break;
+            case DOUBLE:
+              d.add(new StoredField(name, Double.longBitsToDouble(bits)));
+              break;
+            default: // LONG and DATE
+              d.add(new StoredField(name, bits));
+              break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a stored fields reader of the segment that keeps the last block it decompressed, or
+   * null if the segment is not read through a codec.  The reader must only be used by one thread.
+   */
+  private static StoredFieldsReader getBlockReader(LeafReader reader) throws IOException {
+    LeafReader in = FilterLeafReader.unwrap(reader);
+    if (!(in instanceof CodecReader)) {
+      return null;
+    }
+    StoredFieldsReader fieldsReader = ((CodecReader) in).getFieldsReader();
+    // merge instances decompress whole blocks and keep them, instead of decompressing only
+    // the part of the block each document needs
+    return fieldsReader == null ? null : fieldsReader.getMergeInstance();
+  }
+
   /* ********************** end document retrieval *************************/
 
   ////////////////////////////////////////////////////////////////////////////////
@@ -779,6 +1003,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     return fieldValueCache;
   }
 
+  /** expert: internal API, subject to change */
+  public SolrCache<Query, JoinResult> getJoinCache() {
+    return joinCache;
+  }
+
   /** Returns a weighted sort according to this searcher */
   public Sort weightSort(Sort sort) throws IOException {
     return (sort != null) ? sort.rewrite(this) : null;
@@ -856,7 +1085,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     // or OS disk cache.
     if (optionalAnswer != null) {
       if (filterCache!=null) {
-        filterCache.put(query,optionalAnswer);
+        cacheFilter(query, optionalAnswer);
       }
       return;
     }
@@ -874,6 +1103,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     if (answer instanceof BitDocSet) {
       return (BitDocSet)answer;
     }
+    if (answer instanceof OffHeapBitDocSet) {
+      // already cached, the caller just needs a heap copy
+      return new BitDocSet(((OffHeapBitDocSet) answer).getBits(), answer.size());
+    }
 
     FixedBitSet bs = new FixedBitSet(maxDoc());
     DocIterator iter = answer.iterator();
@@ -883,7 +1116,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
     BitDocSet answerBits = new BitDocSet(bs , answer.size());
     if (filterCache != null) {
-      filterCache.put(q, answerBits);
+      cacheFilter(q, answerBits);
     }
     return answerBits;
   }
@@ -921,12 +1154,12 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
     }
 
-    DocSet absAnswer = getDocSetNC(absQ, null);
+    DocSet absAnswer = getDocSetFromSegments(absQ);
     DocSet answer = positive ? absAnswer : getPositiveDocSet(matchAllDocsQuery).andNot(absAnswer);
 
     if (filterCache != null) {
       // cache negative queries as positive
-      filterCache.put(absQ, absAnswer);
+      cacheFilter(absQ, absAnswer);
     }
 
     return answer;
@@ -939,12 +1172,19 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       answer = filterCache.get(q);
       if (answer!=null) return answer;
     }
-    answer = getDocSetNC(q,null);
-    if (filterCache != null) filterCache.put(
-        q,answer);
+    answer = getDocSetFromSegments(q);
+    if (filterCache != null) cacheFilter(q, answer);
     return answer;
   }
 
+  /**
+   * Puts a filter into the filterCache, moving large sets off the heap first
+   * when the cache is configured with <code>offHeap="true"</code>.
+   */
+  private void cacheFilter(Query key, DocSet answer) {
+    filterCache.put(key, filterCacheOffHeap ? OffHeapBitDocSet.toOffHeap(answer) : answer);
+  }
+
   private static Query matchAllDocsQuery = new MatchAllDocsQuery();
 
 
@@ -1245,7 +1485,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     }
 
     if (useCache) {
-      filterCache.put(key, result);
+      cacheFilter(key, result);
     }
     
     return result;
@@ -1256,6 +1496,46 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     return DocSetUtil.createDocSet(this, query, filter);
   }
 
+  /**
+   * Computes the DocSet of a positive query from per-segment sets kept in the segmentFilterCache,
+   * falling back to {@link #getDocSetNC} when that cache isn't configured.
+   * <p>
+   * Segment sets don't take deletions into account and are keyed by the segment's core key, so
+   * they carry over to new searchers for every segment that is still part of the index.  After a
+   * commit only the new segments need to be evaluated.
+   */
+  private DocSet getDocSetFromSegments(Query query) throws IOException {
+    if (segmentFilterCache == null || !QueryUtils.isSegmentLocal(query)) {
+      // queries like joins can depend on more than the docs of a single segment
+      return getDocSetNC(query, null);
+    }
+
+    Weight weight = null;
+    DocSetCollector collector = new DocSetCollector(maxDoc());
+    for (LeafReaderContext leaf : leafContexts) {
+      LeafReader reader = leaf.reader();
+      SegmentFilterKey key = new SegmentFilterKey(query, reader.getCoreCacheKey());
+      DocSet segmentSet = segmentFilterCache.get(key);
+      if (segmentSet == null) {
+        if (weight == null) weight = createNormalizedWeight(query, false);
+        // no acceptDocs, so that the set stays valid when docs of the segment get deleted
+        DocSetCollector segmentCollector = new DocSetCollector(reader.maxDoc());
+        BulkScorer scorer = weight.bulkScorer(leaf);
+        if (scorer != null) scorer.score(segmentCollector, null);
+        segmentSet = segmentCollector.getDocSet();
+        segmentFilterCache.put(key, segmentSet);
+      }
+
+      Bits liveDocs = reader.getLiveDocs();
+      LeafCollector leafCollector = collector.getLeafCollector(leaf);
+      for (DocIterator iter = segmentSet.iterator(); iter.hasNext(); ) {
+        int doc = iter.nextDoc();
+        if (liveDocs == null || liveDocs.get(doc)) leafCollector.collect(doc);
+      }
+    }
+    return collector.getDocSet();
+  }
+
 
   /**
    * Returns the set of document ids matching both the query and the filter.
@@ -1289,7 +1569,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       first = filterCache.get(absQ);
       if (first==null) {
         first = getDocSetNC(absQ,null);
-        filterCache.put(absQ,first);
+        cacheFilter(absQ, first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
     }
@@ -1485,7 +1765,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         // the base query and all filters.
         DocSet qDocSet = getDocListAndSetNC(qr,cmd);
         // cache the docSet matching the query w/o filtering
-        if (qDocSet!=null && filterCache!=null && !qr.isPartialResults()) filterCache.put(cmd.getQuery(),qDocSet);
+        if (qDocSet!=null && filterCache!=null && !qr.isPartialResults()) cacheFilter(cmd.getQuery(), qDocSet);
       } else {
         getDocListNC(qr,cmd);
       }
@@ -2033,7 +2313,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
 
     // bit of a hack to tell if a set is sorted - do it better in the future.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder = set instanceof BitDocSet || set instanceof OffHeapBitDocSet || set instanceof SortedIntDocSet
+        || set instanceof RoaringDocSet;
 
     TopDocsCollector topCollector = buildTopDocsCollector(nDocs, cmd);
 
@@ -19,14 +19,24 @@ package org.apache.solr.search;
 
 import static java.lang.System.nanoTime;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.index.QueryTimeout;
 
 /**
  * Implementation of {@link QueryTimeout} that is used by Solr. 
  * It uses a ThreadLocal variable to track the timeoutAt value
- * for each request thread.
+ * for each request thread, and another one for the flag that
+ * cancels the request, if it can be cancelled.
+ * <p>
+ * The index reader of the searcher checks it while enumerating terms.  Code that spends
+ * its time elsewhere, such as collectors and facet accumulators, checks it cooperatively
+ * with {@link #exitIfNeeded()}.
+ *
+ * @see CancellableQueries
  */
 public class SolrQueryTimeoutImpl implements QueryTimeout {
   /**
@@ -34,6 +44,11 @@ public class SolrQueryTimeoutImpl implements QueryTimeout {
    */
   public static ThreadLocal<Long> timeoutAt = new ThreadLocal<Long>();
 
+  /**
+   * The ThreadLocal variable to store the flag that is set when the request is cancelled.
+   */
+  public static ThreadLocal<AtomicBoolean> cancelled = new ThreadLocal<AtomicBoolean>();
+
   private SolrQueryTimeoutImpl() { }
   private static SolrQueryTimeoutImpl instance = new SolrQueryTimeoutImpl();
 
@@ -50,10 +65,15 @@ public class SolrQueryTimeoutImpl implements QueryTimeout {
   }
 
   /**
-   * Return true if a timeoutAt value is set and the current time has exceeded the set timeOut.
+   * Return true if the request was cancelled, or if a timeoutAt value is set and the current
+   * time has exceeded the set timeOut.
    */
   @Override
   public boolean shouldExit() {
+    AtomicBoolean cancelled = SolrQueryTimeoutImpl.cancelled.get();
+    if (cancelled != null && cancelled.get()) {
+      return true;
+    }
     Long timeoutAt = get();
     if (timeoutAt == null) {
       // timeout unset
@@ -62,6 +82,69 @@ public class SolrQueryTimeoutImpl implements QueryTimeout {
     return timeoutAt - nanoTime() < 0L;
   }
 
+  /**
+   * Throws an {@link ExitingQueryException} if the request of the current thread was cancelled
+   * or ran out of time.  It is cheap, but not free: loops should only call it every so often,
+   * for instance once per segment.
+   */
+  public static void exitIfNeeded() {
+    if (instance.shouldExit()) {
+      AtomicBoolean cancelled = SolrQueryTimeoutImpl.cancelled.get();
+      throw new ExitingQueryException(cancelled != null && cancelled.get()
+          ? "The request was cancelled" : "The request took too long to process. " + instance);
+    }
+  }
+
+  /**
+   * Returns true if the exception was thrown because the request was cancelled or
+   * ran out of time, be it by {@link #exitIfNeeded()} or by the index reader.
+   */
+  public static boolean isExit(Throwable t) {
+    return t instanceof ExitingQueryException || t instanceof ExitableDirectoryReader.ExitingReaderException;
+  }
+
+  /**
+   * Method to set the flag that cancels the request of the current thread.
+   */
+  public static void setCancelled(AtomicBoolean cancelled) {
+    SolrQueryTimeoutImpl.cancelled.set(cancelled);
+  }
+
+  /**
+   * Returns true if the request of the current thread can be cancelled.
+   */
+  public static boolean isCancellable() {
+    return cancelled.get() != null;
+  }
+
+  /**
+   * Returns a callable that runs with the timeout and the cancellation flag of the current
+   * thread, for work of the request that is handed over to other threads.
+   */
+  public static <T> Callable<T> propagate(final Callable<T> callable) {
+    final Long requestTimeoutAt = get();
+    final AtomicBoolean requestCancelled = cancelled.get();
+    if (requestTimeoutAt == null && requestCancelled == null) {
+      return callable;
+    }
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        // the callable may also run in the thread of the request
+        Long prevTimeoutAt = timeoutAt.get();
+        AtomicBoolean prevCancelled = cancelled.get();
+        timeoutAt.set(requestTimeoutAt);
+        cancelled.set(requestCancelled);
+        try {
+          return callable.call();
+        } finally {
+          timeoutAt.set(prevTimeoutAt);
+          cancelled.set(prevCancelled);
+        }
+      }
+    };
+  }
+
   /**
    * Method to set the time at which the timeOut should happen.
    * @param timeAllowed set the time at which this thread should timeout.
@@ -72,15 +155,24 @@ public class SolrQueryTimeoutImpl implements QueryTimeout {
   }
 
   /**
-   * Cleanup the ThreadLocal timeout value.
+   * Cleanup the ThreadLocal timeout and cancellation values.
    */
   public static void reset() {
     timeoutAt.remove();
+    cancelled.remove();
   }
 
   @Override
   public String toString() {
     return "timeoutAt: " + get() + " (System.nanoTime(): " + nanoTime() + ")";
   }
-}
 
+  /**
+   * Thrown by {@link #exitIfNeeded()} when the request was cancelled or ran out of time.
+   */
+  public static class ExitingQueryException extends RuntimeException {
+    public ExitingQueryException(String msg) {
+      super(msg);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package org.apache.solr.search;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.Accountable;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SolrCache based on the ConcurrentTinyLFUCache implementation.
+ * <p>
+ * Lookups are lock free and eviction is done incrementally by the inserting thread with
+ * a per-segment CLOCK hand, so there is no markAndSweep pause and no cleanup thread.
+ * New entries are only admitted over an existing one if they are estimated to be
+ * accessed at least as often, which protects popular filters from one-off queries.
+ * <p>
+ * Configure it like the other caches, e.g.
+ * <code>&lt;filterCache class="solr.TinyLFUCache" size="512" autowarmCount="128"/&gt;</code>.
+ * The optional <code>segments</code> parameter sets the number of independently locked
+ * eviction segments (rounded down to a power of two). Autowarming regenerates the
+ * most frequently used entries of the old cache.
+ * <p>
+ * If <code>maxRamMB</code> is set, inserts also evict entries until the estimated heap usage
+ * of the cache stays under it. Values, and ideally keys, must then implement {@link Accountable}.
+ * <p>
+ * <b>This API is experimental and subject to change</b>
+ *
+ * @see org.apache.solr.util.ConcurrentTinyLFUCache
+ * @see org.apache.solr.search.SolrCache
+ */
+public class TinyLFUCache<K,V> extends SolrCacheBase implements SolrCache<K,V>, Accountable {
+
+  // contains the statistics objects for all open caches of the same type
+  private List<ConcurrentTinyLFUCache.Stats> statsList;
+
+  private long warmupTime = 0;
+
+  private String description = "Concurrent TinyLFU Cache";
+  private ConcurrentTinyLFUCache<K,V> cache;
+  private int showItems = 0;
+  private long maxRamBytes = Long.MAX_VALUE;
+
+  @Override
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    super.init(args, regenerator);
+    String str = (String) args.get("size");
+    int limit = str == null ? 1024 : Integer.parseInt(str);
+    if (limit < 1) limit = 1;
+
+    str = (String) args.get("initialSize");
+    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    str = (String) args.get("segments");
+    int segments = str == null ? ConcurrentTinyLFUCache.defaultSegments(limit) : Integer.parseInt(str);
+
+    str = (String) args.get("maxRamMB");
+    maxRamBytes = str == null ? Long.MAX_VALUE : (long) (Double.parseDouble(str) * 1024L * 1024L);
+
+    str = (String) args.get("showItems");
+    showItems = str == null ? 0 : Integer.parseInt(str);
+    cache = new ConcurrentTinyLFUCache<>(limit, maxRamBytes, initialSize, segments, null);
+    cache.setAlive(false);
+    description = generateDescription(limit, initialSize, cache.getNumSegments());
+
+    statsList = (List<ConcurrentTinyLFUCache.Stats>) persistence;
+    if (statsList == null) {
+      // must be the first time a cache of this type is being created
+      // Use a CopyOnWriteArrayList since puts are very rare and iteration may be a frequent operation
+      // because it is used in getStatistics()
+      statsList = new CopyOnWriteArrayList<>();
+
+      // the first entry will be for cumulative stats of caches that have been closed.
+      statsList.add(new ConcurrentTinyLFUCache.Stats());
+    }
+    statsList.add(cache.getStats());
+    return statsList;
+  }
+
+  /**
+   * @return Returns the description of this Cache.
+   */
+  protected String generateDescription(int limit, int initialSize, int segments) {
+    String description = "Concurrent TinyLFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
+        ", segments=" + segments;
+    if (isAutowarmingOn()) {
+      description += ", " + getAutowarmDescription();
+    }
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / 1024L / 1024L);
+    }
+    description += ')';
+    return description;
+  }
+
+  @Override
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return cache.put(key, value);
+  }
+
+  @Override
+  public V get(K key) {
+    return cache.get(key);
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public void setState(State state) {
+    super.setState(state);
+    cache.setAlive(state == State.LIVE);
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher, SolrCache old) {
+    if (regenerator == null) return;
+    long warmingStartTime = System.nanoTime();
+    TinyLFUCache other = (TinyLFUCache) old;
+    // warm entries, hottest first so that an aborted regeneration keeps the most useful ones
+    if (isAutowarmingOn()) {
+      int sz = autowarm.getWarmCount(other.size());
+      Map items = other.cache.getHottestItems(sz);
+      for (Object o : items.entrySet()) {
+        Map.Entry mapEntry = (Map.Entry) o;
+        try {
+          boolean continueRegen = regenerator.regenerateItem(searcher,
+              this, old, mapEntry.getKey(), mapEntry.getValue());
+          if (!continueRegen) break;
+        }
+        catch (Exception e) {
+          SolrException.log(log, "Error during auto-warming of key:" + mapEntry.getKey(), e);
+        }
+      }
+    }
+    warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+
+  @Override
+  public void close() {
+    // add the stats to the cumulative stats object (the first in the statsList)
+    statsList.get(0).add(cache.getStats());
+    statsList.remove(cache.getStats());
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+  @Override
+  public String getName() {
+    return TinyLFUCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public String getSource() {
+    return null;
+  }
+
+
+  @Override
+  public NamedList getStatistics() {
+    NamedList<Serializable> lst = new SimpleOrderedMap<>();
+    if (cache == null)  return lst;
+    ConcurrentTinyLFUCache.Stats stats = cache.getStats();
+    long lookups = stats.getCumulativeLookups();
+    long hits = stats.getCumulativeHits();
+    long inserts = stats.getCumulativePuts();
+    long evictions = stats.getCumulativeEvictions();
+    long rejections = stats.getCumulativeRejections();
+    long size = stats.getCurrentSize();
+    long clookups = 0;
+    long chits = 0;
+    long cinserts = 0;
+    long cevictions = 0;
+    long crejections = 0;
+    long cevictionsRamUsage = 0;
+
+    // NOTE: It is safe to iterate on a CopyOnWriteArrayList
+    for (ConcurrentTinyLFUCache.Stats statistics : statsList) {
+      clookups += statistics.getCumulativeLookups();
+      chits += statistics.getCumulativeHits();
+      cinserts += statistics.getCumulativePuts();
+      cevictions += statistics.getCumulativeEvictions();
+      crejections += statistics.getCumulativeRejections();
+      cevictionsRamUsage += statistics.getCumulativeEvictionsRamUsage();
+    }
+
+    lst.add("lookups", lookups);
+    lst.add("hits", hits);
+    lst.add("hitratio", calcHitRatio(lookups, hits));
+    lst.add("inserts", inserts);
+    lst.add("evictions", evictions);
+    lst.add("rejections", rejections);
+    lst.add("size", size);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("maxRamMB", maxRamBytes / 1024L / 1024L);
+      lst.add("ramBytesUsed", ramBytesUsed());
+      lst.add("evictionsRamUsage", stats.getCumulativeEvictionsRamUsage());
+    }
+
+    lst.add("warmupTime", warmupTime);
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
+    lst.add("cumulative_inserts", cinserts);
+    lst.add("cumulative_evictions", cevictions);
+    lst.add("cumulative_rejections", crejections);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("cumulative_evictionsRamUsage", cevictionsRamUsage);
+    }
+
+    if (showItems != 0) {
+      Map items = cache.getHottestItems( showItems == -1 ? Integer.MAX_VALUE : showItems );
+      for (Object o : items.entrySet()) {
+        Map.Entry e = (Map.Entry) o;
+        String ks = "item_" + e.getKey();
+        String vs = e.getValue().toString();
+        lst.add(ks,vs);
+      }
+    }
+
+    return lst;
+  }
+
+  @Override
+  public String toString() {
+    return name() + getStatistics().toString();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return cache == null ? 0 : cache.ramBytesUsed();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+}
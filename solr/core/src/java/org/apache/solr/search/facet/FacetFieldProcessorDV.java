@@ -34,6 +34,7 @@ import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 
 class FacetFieldProcessorDV extends FacetFieldProcessorFCBase {
   static boolean unwrap_singleValued_multiDv = true;  // only set to false for test coverage
@@ -122,6 +123,7 @@ class FacetFieldProcessorDV extends FacetFieldProcessorFCBase {
 
     for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
       LeafReaderContext subCtx = leaves.get(subIdx);
+      SolrQueryTimeoutImpl.exitIfNeeded();
 
       setNextReaderFirstPhase(subCtx);
 
@@ -33,6 +33,7 @@ import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSetCollector;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 
 class FacetFieldProcessorNumeric extends FacetFieldProcessor {
   static int MAXIMUM_STARTING_TABLE_SIZE=1024;  // must be a power of two, non-final to support setting by tests
@@ -304,6 +305,7 @@ class FacetFieldProcessorNumeric extends FacetFieldProcessor {
       if (doc >= adjustedMax) {
         do {
           ctx = ctxIt.next();
+          SolrQueryTimeoutImpl.exitIfNeeded();
           segBase = ctx.docBase;
           segMax = ctx.reader().maxDoc();
           adjustedMax = segBase + segMax;
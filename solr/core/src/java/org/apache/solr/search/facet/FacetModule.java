@@ -40,6 +40,7 @@ import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
 import org.apache.solr.search.QueryContext;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,8 +85,18 @@ public class FacetModule extends SearchComponent {
     }
 
     FacetProcessor fproc = facetState.facetRequest.createFacetProcessor(fcontext);
-    fproc.process();
-    rb.rsp.add("facets", fproc.getResponse());
+    try {
+      fproc.process();
+    } catch (RuntimeException e) {
+      if (!SolrQueryTimeoutImpl.isExit(e)) throw e;
+      // the request was cancelled or ran out of time: return the facets computed so far
+      log.warn("Query: " + rb.req.getParamString() + "; " + e.getMessage());
+      if (rb.rsp.getResponseHeader().get("partialResults") == null) {
+        rb.rsp.getResponseHeader().add("partialResults", Boolean.TRUE);
+      }
+    }
+    Object response = fproc.getResponse();
+    rb.rsp.add("facets", response == null ? new SimpleOrderedMap<>() : response);
   }
 
 
@@ -41,6 +41,7 @@ import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 import org.apache.solr.search.SyntaxError;
 
 public class FacetProcessor<FacetRequestT extends FacetRequest>  {
@@ -239,6 +240,7 @@ public class FacetProcessor<FacetRequestT extends FacetRequest>  {
       if (doc >= adjustedMax) {
         do {
           ctx = ctxIt.next();
+          SolrQueryTimeoutImpl.exitIfNeeded();
           if (ctx == null) {
             // should be impossible
             throw new RuntimeException("INTERNAL FACET ERROR");
@@ -32,6 +32,7 @@ import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -70,6 +71,7 @@ public abstract class SlotAcc implements Closeable {
       if (doc >= adjustedMax) {
         do {
           ctx = ctxIt.next();
+          SolrQueryTimeoutImpl.exitIfNeeded();
           if (ctx == null) {
             // should be impossible
             throw new RuntimeException("INTERNAL FACET ERROR");
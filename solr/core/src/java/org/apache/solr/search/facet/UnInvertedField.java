@@ -45,6 +45,7 @@ import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
 
 /**
  *
@@ -337,8 +338,12 @@ public class UnInvertedField extends DocTermOrds {
 
     if (termInstances > 0) {
       DocIterator iter = docs.iterator();
+      int collected = 0;
       while (iter.hasNext()) {
         int doc = iter.nextDoc();
+        if ((++collected & 0xffff) == 0) {
+          SolrQueryTimeoutImpl.exitIfNeeded();
+        }
         int code = index[doc];
 
         if ((code & 0xff) == 1) {
@@ -450,6 +455,7 @@ public class UnInvertedField extends DocTermOrds {
         if (doc >= adjustedMax) {
           do {
             ctx = ctxIt.next();
+            SolrQueryTimeoutImpl.exitIfNeeded();
             if (ctx == null) {
               // should be impossible
               throw new RuntimeException("INTERNAL FACET ERROR");
@@ -61,6 +61,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -893,6 +894,13 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     if (this.ulog != null) {
       lst.add("transaction_logs_total_size", ulog.getTotalLogsSize());
       lst.add("transaction_logs_total_number", ulog.getTotalLogsNumber());
+      VersionInfo vinfo = ulog.getVersionInfo();
+      if (vinfo != null) {
+        lst.add("version_bucket_waits", vinfo.getBucketWaits());
+        lst.add("version_bucket_wait_ms", TimeUnit.NANOSECONDS.toMillis(vinfo.getBucketWaitNanos()));
+        lst.add("blocked_updates", vinfo.getBlockedUpdates());
+        lst.add("blocked_update_wait_ms", TimeUnit.NANOSECONDS.toMillis(vinfo.getBlockedUpdateNanos()));
+      }
     }
     return lst;
   }
@@ -246,7 +246,7 @@ public class HdfsTransactionLog extends TransactionLog {
 
   /* This method is thread safe */
   @Override
-  public Object lookup(long pos) {
+  public Object lookup(long pos, boolean readStringAsCharSeq) {
     // A negative position can result from a log replay (which does not re-log, but does
     // update the version map.  This is OK since the node won't be ACTIVE when this happens.
     if (pos < 0) return null;
@@ -272,6 +272,7 @@ public class HdfsTransactionLog extends TransactionLog {
       try {
         dis.seek(pos);
         LogCodec codec = new LogCodec(resolver);
+        codec.setReadStringAsCharSeq(readStringAsCharSeq);
         return codec.readVal(new FastInputStream(dis));
       } finally {
         dis.close();
@@ -99,6 +99,7 @@ public class HdfsUpdateLog extends UpdateLog {
 
     numRecordsToKeep = objToInt(info.initArgs.get("numRecordsToKeep"), 100);
     maxNumLogsToKeep = objToInt(info.initArgs.get("maxNumLogsToKeep"), 10);
+    numReplayThreads = objToInt(info.initArgs.get("numReplayThreads"), 1);
     
     tlogDfsReplication = (Integer) info.initArgs.get( "tlogDfsReplication");
     if (tlogDfsReplication == null) tlogDfsReplication = 1;
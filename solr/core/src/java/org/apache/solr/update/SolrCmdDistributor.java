@@ -336,34 +336,44 @@ public class SolrCmdDistributor {
     
     public void trackRequestResult(HttpResponse resp, boolean success) {      
       if (rfTracker != null) {
-        Integer rf = null;
-        if (resp != null) {
-          // need to parse out the rf from requests that were forwards to another leader
-          InputStream inputStream = null;
-          try {
-            inputStream = resp.getEntity().getContent();
-            BinaryResponseParser brp = new BinaryResponseParser();
-            NamedList<Object> nl= brp.processResponse(inputStream, null);
-            Object hdr = nl.get("responseHeader");
-            if (hdr != null && hdr instanceof NamedList) {
-              NamedList<Object> hdrList = (NamedList<Object>)hdr;
-              Object rfObj = hdrList.get(UpdateRequest.REPFACT);
-              if (rfObj != null && rfObj instanceof Integer) {
-                rf = (Integer)rfObj;
-              }
-            }
-          } catch (Exception e) {
-            log.warn("Failed to parse response from "+node+" during replication factor accounting due to: "+e);
-          } finally {
-            if (inputStream != null) {
-              try {
-                inputStream.close();
-              } catch (Exception ignore){}
-            }
+        trackReplicationFactor(resp != null ? getReplicationFactor(resp, node) : null, success);
+      }
+    }
+
+    /** Tracks the result of the request, with the replication factor the node responded with. */
+    public void trackReplicationFactor(Integer rf, boolean success) {
+      if (rfTracker != null) {
+        rfTracker.trackRequestResult(node, success, rf);
+      }
+    }
+
+    /** Parses the replication factor out of the response of a node, for requests forwarded to another leader. */
+    static Integer getReplicationFactor(HttpResponse resp, Node node) {
+      Integer rf = null;
+      // need to parse out the rf from requests that were forwards to another leader
+      InputStream inputStream = null;
+      try {
+        inputStream = resp.getEntity().getContent();
+        BinaryResponseParser brp = new BinaryResponseParser();
+        NamedList<Object> nl= brp.processResponse(inputStream, null);
+        Object hdr = nl.get("responseHeader");
+        if (hdr != null && hdr instanceof NamedList) {
+          NamedList<Object> hdrList = (NamedList<Object>)hdr;
+          Object rfObj = hdrList.get(UpdateRequest.REPFACT);
+          if (rfObj != null && rfObj instanceof Integer) {
+            rf = (Integer)rfObj;
           }
         }
-        rfTracker.trackRequestResult(node, success, rf);
+      } catch (Exception e) {
+        log.warn("Failed to parse response from "+node+" during replication factor accounting due to: "+e);
+      } finally {
+        if (inputStream != null) {
+          try {
+            inputStream.close();
+          } catch (Exception ignore){}
+        }
       }
+      return rf;
     }
   }
     
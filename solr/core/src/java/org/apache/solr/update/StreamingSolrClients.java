@@ -23,6 +23,7 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.update.SolrCmdDistributor.Error;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,7 +46,7 @@ public class StreamingSolrClients {
   
   private HttpClient httpClient;
   
-  private Map<String, ConcurrentUpdateSolrClient> solrClients = new HashMap<>();
+  private Map<String, StreamingClient> solrClients = new HashMap<>();
   private List<Error> errors = Collections.synchronizedList(new ArrayList<Error>());
 
   private ExecutorService updateExecutor;
@@ -65,29 +67,12 @@ public class StreamingSolrClients {
 
   public synchronized SolrClient getSolrClient(final SolrCmdDistributor.Req req) {
     String url = getFullUrl(req.node.getUrl());
-    ConcurrentUpdateSolrClient client = solrClients.get(url);
+    StreamingClient client = solrClients.get(url);
     if (client == null) {
       // NOTE: increasing to more than 1 threadCount for the client could cause updates to be reordered
       // on a greater scale since the current behavior is to only increase the number of connections/Runners when
       // the queue is more than half full.
-      client = new ConcurrentUpdateSolrClient(url, httpClient, 100, 1, updateExecutor, true) {
-        @Override
-        public void handleError(Throwable ex) {
-          req.trackRequestResult(null, false);
-          log.error("error", ex);
-          Error error = new Error();
-          error.e = (Exception) ex;
-          if (ex instanceof SolrException) {
-            error.statusCode = ((SolrException) ex).code();
-          }
-          error.req = req;
-          errors.add(error);
-        }
-        @Override
-        public void onSuccess(HttpResponse resp) {
-          req.trackRequestResult(resp, true);
-        }
-      };
+      client = new StreamingClient(url, req);
       client.setParser(new BinaryResponseParser());
       client.setRequestWriter(new BinaryRequestWriter());
       client.setPollQueueTime(req.pollQueueTime);
@@ -98,9 +83,82 @@ public class StreamingSolrClients {
       solrClients.put(url, client);
     }
 
+    client.sent.put(req.uReq, req);
     return client;
   }
 
+  /**
+   * Streams the updates sent to a node.  Many updates are sent in each request to the node, and
+   * its response is tracked for every one of them: when a request fails, every update it contained
+   * is reported as an error, so that the updates are retried or the node is recovered one by one.
+   */
+  private class StreamingClient extends ConcurrentUpdateSolrClient {
+    // the updates that were queued, by their requests
+    final Map<UpdateRequest, SolrCmdDistributor.Req> sent =
+        Collections.synchronizedMap(new IdentityHashMap<UpdateRequest, SolrCmdDistributor.Req>());
+    // reported for errors that can't be tied to the requests of a stream
+    private final SolrCmdDistributor.Req firstReq;
+
+    StreamingClient(String url, SolrCmdDistributor.Req firstReq) {
+      super(url, httpClient, 100, 1, updateExecutor, true);
+      this.firstReq = firstReq;
+    }
+
+    @Override
+    public void handleError(Throwable ex) {
+      handleError(ex, Collections.<UpdateRequest>emptyList());
+    }
+
+    @Override
+    public void handleError(Throwable ex, List<UpdateRequest> requests) {
+      log.error("error", ex);
+      List<SolrCmdDistributor.Req> reqs = removeSent(requests);
+      if (reqs.isEmpty()) {
+        reqs.add(firstReq);
+      }
+      for (SolrCmdDistributor.Req req : reqs) {
+        req.trackReplicationFactor(null, false);
+        Error error = new Error();
+        error.e = (Exception) ex;
+        if (ex instanceof SolrException) {
+          error.statusCode = ((SolrException) ex).code();
+        }
+        error.req = req;
+        errors.add(error);
+      }
+    }
+
+    @Override
+    public void onSuccess(HttpResponse resp, List<UpdateRequest> requests) {
+      List<SolrCmdDistributor.Req> reqs = removeSent(requests);
+      if (reqs.isEmpty()) {
+        reqs.add(firstReq);
+      }
+      // the response can only be read once, and is the same for all the updates of the stream
+      Integer rf = null;
+      for (SolrCmdDistributor.Req req : reqs) {
+        if (req.rfTracker != null) {
+          rf = SolrCmdDistributor.Req.getReplicationFactor(resp, req.node);
+          break;
+        }
+      }
+      for (SolrCmdDistributor.Req req : reqs) {
+        req.trackReplicationFactor(rf, true);
+      }
+    }
+
+    private List<SolrCmdDistributor.Req> removeSent(List<UpdateRequest> requests) {
+      List<SolrCmdDistributor.Req> reqs = new ArrayList<>(requests.size());
+      for (UpdateRequest request : requests) {
+        SolrCmdDistributor.Req req = sent.remove(request);
+        if (req != null) {
+          reqs.add(req);
+        }
+      }
+      return reqs;
+    }
+  }
+
   public synchronized void blockUntilFinished() {
     for (ConcurrentUpdateSolrClient client : solrClients.values()) {
       client.blockUntilFinished();
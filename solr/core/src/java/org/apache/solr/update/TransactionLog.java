@@ -84,6 +84,12 @@ public class TransactionLog {
 
   long snapshot_size;
   int snapshot_numRecords;
+
+  // group commit: concurrent fsyncs of the log are coalesced, see sync(long)
+  private final Object syncLock = new Object();
+  private long syncedSize;  // guarded by syncLock: how much of the log is known to be on disk
+  private boolean syncing;  // guarded by syncLock: true while a thread fsyncs for the others
+  long numSyncs;            // guarded by syncLock
   
   // write a BytesRef as a byte array
   JavaBinCodec.ObjectResolver resolver = new JavaBinCodec.ObjectResolver() {
@@ -240,13 +246,26 @@ public class TransactionLog {
   // This could mess with any readers or reverse readers that are open, or anything that might try to do a log lookup.
   // This should only be used to roll back buffered updates, not actually applied updates.
   public void rollback(long pos) throws IOException {
-    synchronized (this) {
-      assert snapshot_size == pos;
-      fos.flush();
-      raf.setLength(pos);
-      fos.setWritten(pos);
-      assert fos.size() == pos;
-      numRecords = snapshot_numRecords;
+    synchronized (syncLock) {
+      // a sync in flight would record that the log is on disk up to where it was before the rollback
+      while (syncing) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while waiting for the sync of " + this, e);
+        }
+      }
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        raf.setLength(pos);
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+      }
+      // what is written from now on, over what was rolled back, isn't on disk yet
+      syncedSize = Math.min(syncedSize, pos);
     }
   }
 
@@ -468,6 +487,18 @@ public class TransactionLog {
 
   /* This method is thread safe */
   public Object lookup(long pos) {
+    return lookup(pos, false);
+  }
+
+  /**
+   * Reads the record at the given position.  With <code>readStringAsCharSeq</code>, the string
+   * values of an added document are left as the UTF-8 bytes of the log, for records that are
+   * only passed on: writing them out again with javabin copies the bytes.
+   *
+   * @see JavaBinCodec#setReadStringAsCharSeq(boolean)
+   */
+  /* This method is thread safe */
+  public Object lookup(long pos, boolean readStringAsCharSeq) {
     // A negative position can result from a log replay (which does not re-log, but does
     // update the version map.  This is OK since the node won't be ACTIVE when this happens.
     if (pos < 0) return null;
@@ -487,6 +518,7 @@ public class TransactionLog {
 
       ChannelFastInputStream fis = new ChannelFastInputStream(channel, pos);
       LogCodec codec = new LogCodec(resolver);
+      codec.setReadStringAsCharSeq(readStringAsCharSeq);
       return codec.readVal(fis);
     } catch (IOException e) {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
@@ -520,15 +552,17 @@ public class TransactionLog {
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long size;
       synchronized (this) {
         fos.flushBuffer();
+        size = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
         // Since fsync is outside of synchronized block, we can end up with a partial
         // last record on power failure (which is OK, and does not represent an error...
         // we just need to be aware of it when reading).
-        raf.getFD().sync();
+        sync(size);
       }
 
     } catch (IOException e) {
@@ -536,6 +570,49 @@ public class TransactionLog {
     }
   }
 
+  /**
+   * Makes sure the first <code>size</code> bytes of the log are on disk.  Only one thread fsyncs
+   * at a time: it flushes what the other threads wrote in the meantime and syncs it along with its
+   * own records, and the threads that wait for it return without a sync of their own if it covered
+   * their records.  Concurrent updates with syncLevel=fsync thus share their fsyncs rather than
+   * queueing up behind each other's.
+   */
+  private void sync(long size) throws IOException {
+    synchronized (syncLock) {
+      while (syncedSize < size && syncing) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while waiting for the sync of " + this, e);
+        }
+      }
+      if (syncedSize >= size) return;
+      syncing = true;
+    }
+
+    long synced = -1;
+    try {
+      long target;
+      synchronized (this) {
+        fos.flushBuffer();
+        target = fos.size();
+      }
+      raf.getFD().sync();
+      synced = target;
+    } finally {
+      // on failure the waiting threads try the sync themselves
+      synchronized (syncLock) {
+        if (synced > syncedSize) {
+          syncedSize = synced;
+          numSyncs++;
+        }
+        syncing = false;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
   protected void close() {
     try {
       if (debug) {
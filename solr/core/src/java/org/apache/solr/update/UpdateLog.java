@@ -36,7 +36,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -71,6 +74,7 @@ import org.slf4j.LoggerFactory;
 /** @lucene.experimental */
 public class UpdateLog implements PluginInfoInitialized {
   private static final long STATUS_TIME = TimeUnit.NANOSECONDS.convert(60, TimeUnit.SECONDS);
+  private static final int REPLAY_BATCH_SIZE = 1000;
   public static String LOG_FILENAME_PATTERN = "%s.%019d";
   public static String TLOG_NAME="tlog";
 
@@ -146,6 +150,7 @@ public class UpdateLog implements PluginInfoInitialized {
   protected int numRecordsToKeep;
   protected int maxNumLogsToKeep;
   protected int numVersionBuckets; // This should only be used to initialize VersionInfo... the actual number of buckets may be rounded up to a power of two.
+  protected int numReplayThreads = 1;
   protected Long maxVersionFromIndex = null;
 
   // keep track of deletes only... this is not updated on an add
@@ -231,6 +236,10 @@ public class UpdateLog implements PluginInfoInitialized {
     return numVersionBuckets;
   }
 
+  public int getNumReplayThreads() {
+    return numReplayThreads;
+  }
+
   protected static int objToInt(Object obj, int def) {
     if (obj != null) {
       return Integer.parseInt(obj.toString());
@@ -249,9 +258,13 @@ public class UpdateLog implements PluginInfoInitialized {
     if (numVersionBuckets <= 0)
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
           "Number of version buckets must be greater than 0!");
+    numReplayThreads = objToInt(info.initArgs.get("numReplayThreads"), 1);
+    if (numReplayThreads <= 0)
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "Number of replay threads must be greater than 0!");
 
-    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={}",
-        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets);
+    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={} numReplayThreads={}",
+        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets, numReplayThreads);
   }
 
   /* Note, when this is called, uhandler is not completely constructed.
@@ -948,10 +961,15 @@ public class UpdateLog implements PluginInfoInitialized {
     }
     
     public Object lookup(long version) {
+      return lookup(version, false);
+    }
+
+    /** @see TransactionLog#lookup(long, boolean) */
+    public Object lookup(long version, boolean readStringAsCharSeq) {
       Update update = updates.get(version);
       if (update == null) return null;
 
-      return update.log.lookup(update.pointer);
+      return update.log.lookup(update.pointer, readStringAsCharSeq);
     }
 
     /** Returns the list of deleteByQueries that happened after the given version */
@@ -1227,6 +1245,16 @@ public class UpdateLog implements PluginInfoInitialized {
     boolean finishing = false;  // state where we lock out other updates and finish those updates that snuck in before we locked
     boolean debug = loglog.isDebugEnabled();
 
+    // With more than one replay thread, the adds and deletes by id are replayed in batches, by
+    // partition of their ids: the updates of a document are replayed in order by the same thread,
+    // while the threads replay different documents concurrently.  Deletes by query, and the end of
+    // the log, wait for the updates read before them.
+    private ExecutorService replayExecutor;
+    private List<List>[] partitions;
+    private int numPending;
+    private List<Future<Integer>> replaying = new ArrayList<>();
+    private SolrException replayFailure;
+
     public LogReplayer(List<TransactionLog> translogs, boolean activeLog) {
       this.translogs = new LinkedList<>();
       this.translogs.addAll(translogs);
@@ -1239,15 +1267,28 @@ public class UpdateLog implements PluginInfoInitialized {
     private SolrQueryResponse rsp;
 
 
-    @Override
-    public void run() {
+    private SolrParams getReplayParams() {
       ModifiableSolrParams params = new ModifiableSolrParams();
       params.set(DISTRIB_UPDATE_PARAM, FROMLEADER.toString());
       params.set(DistributedUpdateProcessor.LOG_REPLAY, "true");
-      req = new LocalSolrQueryRequest(uhandler.core, params);
+      return params;
+    }
+
+    @Override
+    public void run() {
+      req = new LocalSolrQueryRequest(uhandler.core, getReplayParams());
       rsp = new SolrQueryResponse();
       SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));    // setting request info will help logging
 
+      if (numReplayThreads > 1) {
+        replayExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(numReplayThreads,
+            new DefaultSolrThreadFactory("replayUpdatesExecutor"));
+        partitions = new List[numReplayThreads];
+        for (int i = 0; i < partitions.length; i++) {
+          partitions[i] = new ArrayList<>();
+        }
+      }
+
       try {
         for(;;) {
           TransactionLog translog = translogs.pollFirst();
@@ -1284,6 +1325,10 @@ public class UpdateLog implements PluginInfoInitialized {
           log.error("ERROR: didn't get to recover from tlog " + translog);
           translog.decref();
         }
+
+        if (replayExecutor != null) {
+          ExecutorUtil.shutdownAndAwaitTermination(replayExecutor);
+        }
       }
 
       loglog.warn("Log replay finished. recoveryInfo=" + recoveryInfo);
@@ -1337,7 +1382,8 @@ public class UpdateLog implements PluginInfoInitialized {
                 // we could be starved from ever completing recovery.  Only unlock
                 // after we've finished this recovery.
                 // NOTE: our own updates won't be blocked since the thread holding a write lock can
-                // lock a read lock.
+                // lock a read lock.  The replay threads would be, so the rest is replayed by this one.
+                waitForReplayThreads();
                 versionInfo.blockUpdates();
                 finishing = true;
                 o = tlogReader.next();
@@ -1356,6 +1402,7 @@ public class UpdateLog implements PluginInfoInitialized {
             SolrException.log(log,e);
           }
 
+          if (replayFailure != null) throw replayFailure;
           if (o == null) break;
 
           try {
@@ -1371,41 +1418,31 @@ public class UpdateLog implements PluginInfoInitialized {
               case UpdateLog.ADD:
               {
                 recoveryInfo.adds++;
-                // byte[] idBytes = (byte[]) entry.get(2);
-                SolrInputDocument sdoc = (SolrInputDocument)entry.get(entry.size()-1);
-                AddUpdateCommand cmd = new AddUpdateCommand(req);
-                // cmd.setIndexedId(new BytesRef(idBytes));
-                cmd.solrDoc = sdoc;
-                cmd.setVersion(version);
-                cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
-                if (debug) log.debug("add " +  cmd);
-
-                proc.processAdd(cmd);
+                if (replayExecutor != null && !finishing) {
+                  AddUpdateCommand cmd = new AddUpdateCommand(req);
+                  cmd.solrDoc = (SolrInputDocument)entry.get(entry.size()-1);
+                  addToPartition(cmd.getIndexedId(), entry);
+                } else {
+                  replay(entry, req, rsp, proc);
+                }
                 break;
               }
               case UpdateLog.DELETE:
               {
                 recoveryInfo.deletes++;
-                byte[] idBytes = (byte[]) entry.get(2);
-                DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
-                cmd.setIndexedId(new BytesRef(idBytes));
-                cmd.setVersion(version);
-                cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
-                if (debug) log.debug("delete " +  cmd);
-                proc.processDelete(cmd);
+                if (replayExecutor != null && !finishing) {
+                  addToPartition(new BytesRef((byte[]) entry.get(2)), entry);
+                } else {
+                  replay(entry, req, rsp, proc);
+                }
                 break;
               }
 
               case UpdateLog.DELETE_BY_QUERY:
               {
                 recoveryInfo.deleteByQuery++;
-                String query = (String)entry.get(2);
-                DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
-                cmd.query = query;
-                cmd.setVersion(version);
-                cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
-                if (debug) log.debug("deleteByQuery " +  cmd);
-                proc.processDelete(cmd);
+                waitForReplayThreads();
+                replay(entry, req, rsp, proc);
                 break;
               }
 
@@ -1418,11 +1455,6 @@ public class UpdateLog implements PluginInfoInitialized {
               default:
                 throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,  "Unknown Operation! " + oper);
             }
-
-            if (rsp.getException() != null) {
-              loglog.error("REPLAY_ERR: Exception replaying log", rsp.getException());
-              throw rsp.getException();
-            }
           } catch (IOException ex) {
             recoveryInfo.errors++;
             loglog.warn("REYPLAY_ERR: IOException reading log", ex);
@@ -1445,6 +1477,9 @@ public class UpdateLog implements PluginInfoInitialized {
           }
         }
 
+        waitForReplayThreads();
+        if (replayFailure != null) throw replayFailure;
+
         CommitUpdateCommand cmd = new CommitUpdateCommand(req, false);
         cmd.setVersion(commitVersion);
         cmd.softCommit = false;
@@ -1479,6 +1514,154 @@ public class UpdateLog implements PluginInfoInitialized {
         translog.decref();
       }
     }
+
+    /** Replays an add, a delete or a delete by query read from the log. */
+    private void replay(List entry, SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor proc) throws Exception {
+      int oper = (Integer)entry.get(0) & OPERATION_MASK;
+      long version = (Long) entry.get(1);
+
+      switch (oper) {
+        case UpdateLog.ADD:
+        {
+          // byte[] idBytes = (byte[]) entry.get(2);
+          SolrInputDocument sdoc = (SolrInputDocument)entry.get(entry.size()-1);
+          AddUpdateCommand cmd = new AddUpdateCommand(req);
+          // cmd.setIndexedId(new BytesRef(idBytes));
+          cmd.solrDoc = sdoc;
+          cmd.setVersion(version);
+          cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
+          if (debug) log.debug("add " +  cmd);
+
+          proc.processAdd(cmd);
+          break;
+        }
+        case UpdateLog.DELETE:
+        {
+          byte[] idBytes = (byte[]) entry.get(2);
+          DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
+          cmd.setIndexedId(new BytesRef(idBytes));
+          cmd.setVersion(version);
+          cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
+          if (debug) log.debug("delete " +  cmd);
+          proc.processDelete(cmd);
+          break;
+        }
+
+        case UpdateLog.DELETE_BY_QUERY:
+        {
+          String query = (String)entry.get(2);
+          DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
+          cmd.query = query;
+          cmd.setVersion(version);
+          cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
+          if (debug) log.debug("deleteByQuery " +  cmd);
+          proc.processDelete(cmd);
+          break;
+        }
+
+        default:
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,  "Unknown Operation! " + oper);
+      }
+
+      // the response is shared by the entries replayed with the same processor, so an error only
+      // counts against the entry that caused it
+      Exception ex = rsp.getException();
+      if (ex != null) {
+        rsp.setException(null);
+        loglog.error("REPLAY_ERR: Exception replaying log", ex);
+        throw ex;
+      }
+    }
+
+    private void addToPartition(BytesRef indexedId, List entry) {
+      partitions[(indexedId.hashCode() & 0x7fffffff) % partitions.length].add(entry);
+      if (++numPending >= REPLAY_BATCH_SIZE) {
+        submitPartitions();
+      }
+    }
+
+    /**
+     * Hands the partitions read so far to the replay threads, once the previous ones were replayed
+     * so that the updates of a document stay in order.
+     */
+    private void submitPartitions() {
+      waitForReplaying();
+      for (int i = 0; i < partitions.length; i++) {
+        if (!partitions[i].isEmpty()) {
+          replaying.add(replayExecutor.submit(new ReplayPartition(partitions[i])));
+          partitions[i] = new ArrayList<>();
+        }
+      }
+      numPending = 0;
+    }
+
+    /** Waits until every update read so far was replayed. */
+    private void waitForReplayThreads() {
+      if (replayExecutor == null) return;
+      if (numPending > 0) {
+        submitPartitions();
+      }
+      waitForReplaying();
+    }
+
+    private void waitForReplaying() {
+      for (Future<Integer> future : replaying) {
+        try {
+          recoveryInfo.errors += future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          replayFailure = new SolrException(ErrorCode.SERVER_ERROR, "Interrupted while replaying the log", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SolrException && ((SolrException) cause).code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
+            replayFailure = (SolrException) cause;
+          } else {
+            recoveryInfo.errors++;
+            loglog.warn("REPLAY_ERR: Exception replaying log", cause);
+          }
+        }
+      }
+      replaying.clear();
+    }
+
+    /** Replays a partition of the updates in a replay thread, and returns the number of errors. */
+    private class ReplayPartition implements Callable<Integer> {
+      private final List<List> entries;
+
+      ReplayPartition(List<List> entries) {
+        this.entries = entries;
+      }
+
+      @Override
+      public Integer call() throws Exception {
+        SolrQueryRequest req = new LocalSolrQueryRequest(uhandler.core, getReplayParams());
+        SolrQueryResponse rsp = new SolrQueryResponse();
+        SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+        int errors = 0;
+        try {
+          UpdateRequestProcessor proc = req.getCore().getUpdateProcessingChain(null).createProcessor(req, rsp);
+          for (List entry : entries) {
+            try {
+              replay(entry, req, rsp, proc);
+            } catch (SolrException ex) {
+              if (ex.code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
+                throw ex;
+              }
+              errors++;
+              loglog.warn("REPLAY_ERR: Exception replaying log", ex);
+            } catch (Exception ex) {
+              errors++;
+              loglog.warn("REPLAY_ERR: Exception replaying log", ex);
+            }
+          }
+          proc.finish();
+        } finally {
+          req.close();
+          SolrRequestInfo.clearRequestInfo();
+        }
+        return errors;
+      }
+    }
   }
 
   public void cancelApplyBufferedUpdates() {
@@ -17,6 +17,8 @@
 
 package org.apache.solr.update;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 // TODO: make inner?
 // TODO: store the highest possible in the index on a commit (but how to not block adds?)
 // TODO: could also store highest possible in the transaction log after a commit.
@@ -25,6 +27,9 @@ package org.apache.solr.update;
 public class VersionBucket {
   public long highest;
 
+  // not fair: the updates of a bucket are ordered by their versions, which are taken under the lock
+  final ReentrantLock lock = new ReentrantLock();
+
   public void updateHighest(long val) {
     if (highest != 0) {
       highest = Math.max(highest, Math.abs(val));
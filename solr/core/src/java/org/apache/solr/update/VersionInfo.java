@@ -19,7 +19,7 @@ package org.apache.solr.update;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.index.LeafReaderContext;
@@ -52,7 +52,15 @@ public class VersionInfo {
   private final VersionBucket[] buckets;
   private SchemaField versionField;
   private SchemaField idField;
-  final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+  // Not fair: a fair lock makes every update queue up for the read lock.  Updates still wait behind
+  // a queued blockUpdates(), so it isn't starved.
+  final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // contention on the locks, only counted when a thread had to wait
+  private final AtomicLong bucketWaits = new AtomicLong();
+  private final AtomicLong bucketWaitNanos = new AtomicLong();
+  private final AtomicLong blockedUpdates = new AtomicLong();
+  private final AtomicLong blockedUpdateNanos = new AtomicLong();
 
   /**
    * Gets and returns the {@link #VERSION_FIELD} from the specified 
@@ -108,7 +116,14 @@ public class VersionInfo {
   }
 
   public void lockForUpdate() {
+    if (!lock.isWriteLocked() || lock.isWriteLockedByCurrentThread()) {
+      lock.readLock().lock();
+      return;
+    }
+    long start = System.nanoTime();
     lock.readLock().lock();
+    blockedUpdates.incrementAndGet();
+    blockedUpdateNanos.addAndGet(System.nanoTime() - start);
   }
 
   public void unlockForUpdate() {
@@ -180,6 +195,44 @@ public class VersionInfo {
   }
 
 
+  /**
+   * Locks a bucket, so that its updates take their versions and are applied in the same order.
+   * This replaces synchronizing on the bucket, and counts the times a thread had to wait for it.
+   */
+  public void lockBucket(VersionBucket bucket) {
+    if (bucket.lock.tryLock()) {
+      return;
+    }
+    long start = System.nanoTime();
+    bucket.lock.lock();
+    bucketWaits.incrementAndGet();
+    bucketWaitNanos.addAndGet(System.nanoTime() - start);
+  }
+
+  public void unlockBucket(VersionBucket bucket) {
+    bucket.lock.unlock();
+  }
+
+  /** The number of times an update waited for the lock of its version bucket. */
+  public long getBucketWaits() {
+    return bucketWaits.get();
+  }
+
+  /** The total time updates waited for the locks of their version buckets, in nanoseconds. */
+  public long getBucketWaitNanos() {
+    return bucketWaitNanos.get();
+  }
+
+  /** The number of times an update waited because updates were blocked, by a commit or a recovery. */
+  public long getBlockedUpdates() {
+    return blockedUpdates.get();
+  }
+
+  /** The total time updates waited because updates were blocked, in nanoseconds. */
+  public long getBlockedUpdateNanos() {
+    return blockedUpdateNanos.get();
+  }
+
   public VersionBucket bucket(int hash) {
     // If this is a user provided hash, it may be poor in the right-hand bits.
     // Make sure high bits are moved down, since only the low bits will matter.
@@ -258,9 +311,12 @@ public class VersionInfo {
   public void seedBucketsWithHighestVersion(long highestVersion) {
     for (int i=0; i<buckets.length; i++) {
       // should not happen, but in case other threads are calling updateHighest on the version bucket
-      synchronized (buckets[i]) {
+      lockBucket(buckets[i]);
+      try {
         if (buckets[i].highest < highestVersion)
           buckets[i].highest = highestVersion;
+      } finally {
+        unlockBucket(buckets[i]);
       }
     }
   }
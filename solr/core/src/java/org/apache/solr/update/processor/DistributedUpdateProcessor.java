@@ -802,6 +802,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     // recover - the doc was already added locally, so it should have been
     // legit
 
+    Set<String> failedReplicas = new HashSet<>();
     for (final SolrCmdDistributor.Error error : errors) {
       
       if (error.req.node instanceof RetryNode) {
@@ -832,6 +833,10 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
         break;
       }
 
+      // every update of a failed stream is reported, but the replica only needs to recover once
+      if (!failedReplicas.add(replicaUrl))
+        continue;
+
       String collection = null;
       String shardId = null;
 
@@ -981,11 +986,12 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
     vinfo.lockForUpdate();
     try {
-      synchronized (bucket) {
-        // we obtain the version when synchronized and then do the add so we can ensure that
+      vinfo.lockBucket(bucket);
+      try {
+        // we obtain the version when locked and then do the add so we can ensure that
         // if version1 < version2 then version1 is actually added before version2.
 
-        // even if we don't store the version field, synchronizing on the bucket
+        // even if we don't store the version field, locking the bucket
         // will enable us to know what version happened first, and thus enable
         // realtime-get to work reliably.
         // TODO: if versions aren't stored, do we need to set on the cmd anyway for some reason?
@@ -1081,7 +1087,9 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
           cmd.solrDoc = clonedDoc;
         }
 
-      }  // end synchronized (bucket)
+      } finally {
+        vinfo.unlockBucket(bucket);
+      }
     } finally {
       vinfo.unlockForUpdate();
     }
@@ -1495,7 +1503,8 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     vinfo.lockForUpdate();
     try {
 
-      synchronized (bucket) {
+      vinfo.lockBucket(bucket);
+      try {
         if (versionsStored) {
           long bucketVersion = bucket.highest;
 
@@ -1562,7 +1571,9 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
         doLocalDelete(cmd);
         return false;
-      }  // end synchronized (bucket)
+      } finally {
+        vinfo.unlockBucket(bucket);
+      }
 
     } finally {
       vinfo.unlockForUpdate();
@@ -17,11 +17,18 @@ package org.apache.solr.util;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.Cache;
+import org.apache.solr.search.LRUCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeSet;
@@ -37,15 +44,24 @@ import java.util.concurrent.locks.ReentrantLock;
  * LRU version were not directly usable, perhaps it might be possible to
  * rewrite them with LFU in mind.
  * <p>
+ * The cache can additionally be bounded by the estimated heap usage of its entries. In that
+ * case values must implement {@link Accountable}, and once the total goes above
+ * 'ramUpperWatermark' the least frequently used entries are removed until it is below
+ * 'ramLowerWatermark'.
+ * <p>
  * <b>This API is experimental and subject to change</b>
  *
  * @since solr 1.6
  */
-public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
+public class ConcurrentLFUCache<K, V> implements Cache<K,V>, Accountable {
   private static Logger log = LoggerFactory.getLogger(ConcurrentLFUCache.class);
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(ConcurrentLFUCache.class);
+
   private final ConcurrentHashMap<Object, CacheEntry<K, V>> map;
   private final int upperWaterMark, lowerWaterMark;
+  private final long ramUpperWatermark, ramLowerWatermark;
+  private final AtomicLong ramBytes = new AtomicLong();
   private final ReentrantLock markAndSweepLock = new ReentrantLock(true);
   private boolean isCleaning = false;  // not volatile... piggybacked on other volatile vars
   private final boolean newThreadForCleanup;
@@ -61,14 +77,32 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
   public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K, V> evictionListener, boolean timeDecay) {
+    this(upperWaterMark, lowerWaterMark, acceptableSize, Long.MAX_VALUE, Long.MAX_VALUE, initialSize,
+        runCleanupThread, runNewThreadForCleanup, evictionListener, timeDecay);
+  }
+
+  /**
+   * @param ramUpperWatermark heap usage in bytes above which entries are evicted,
+   *                          or <code>Long.MAX_VALUE</code> to only bound the number of entries
+   * @param ramLowerWatermark heap usage in bytes to bring the cache down to once it is exceeded
+   */
+  public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
+                            long ramUpperWatermark, long ramLowerWatermark,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K, V> evictionListener, boolean timeDecay) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramUpperWatermark < 1) throw new IllegalArgumentException("ramUpperWatermark must be > 0");
+    if (ramLowerWatermark > ramUpperWatermark)
+      throw new IllegalArgumentException("ramLowerWatermark must be <= ramUpperWatermark");
     map = new ConcurrentHashMap<>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
     this.lowerWaterMark = lowerWaterMark;
     this.acceptableWaterMark = acceptableSize;
+    this.ramUpperWatermark = ramUpperWatermark;
+    this.ramLowerWatermark = ramLowerWatermark;
     this.evictionListener = evictionListener;
     this.timeDecay = timeDecay;
     if (runCleanupThread) {
@@ -105,6 +139,7 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
     CacheEntry<K, V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      ramBytes.addAndGet(-cacheEntry.ramBytesUsed);
       return cacheEntry.value;
     }
     return null;
@@ -113,13 +148,17 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
   @Override
   public V put(K key, V val) {
     if (val == null) return null;
-    CacheEntry<K, V> e = new CacheEntry<>(key, val, stats.accessCounter.incrementAndGet());
+    long entryRamBytes = isRamBounded() ? entryRamBytesUsed(key, val) : 0;
+    CacheEntry<K, V> e = new CacheEntry<>(key, val, stats.accessCounter.incrementAndGet(), entryRamBytes);
     CacheEntry<K, V> oldCacheEntry = map.put(key, e);
     int currentSize;
+    long currentRamBytes;
     if (oldCacheEntry == null) {
       currentSize = stats.size.incrementAndGet();
+      currentRamBytes = ramBytes.addAndGet(entryRamBytes);
     } else {
       currentSize = stats.size.get();
+      currentRamBytes = ramBytes.addAndGet(entryRamBytes - oldCacheEntry.ramBytesUsed);
     }
     if (islive) {
       stats.putCounter.incrementAndGet();
@@ -137,7 +176,7 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || currentRamBytes > ramUpperWatermark) && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -154,8 +193,24 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
     return oldCacheEntry == null ? null : oldCacheEntry.value;
   }
 
+  private boolean isRamBounded() {
+    return ramUpperWatermark != Long.MAX_VALUE;
+  }
+
+  private long entryRamBytesUsed(K key, V val) {
+    if (!(val instanceof Accountable)) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Cache is configured with maxRamBytes="
+          + RamUsageEstimator.humanReadableUnits(ramUpperWatermark)
+          + " but its values do not implement org.apache.lucene.util.Accountable");
+    }
+    long keyBytes = key instanceof Accountable ? ((Accountable) key).ramBytesUsed() : LRUCache.DEFAULT_RAM_BYTES_USED;
+    return keyBytes + ((Accountable) val).ramBytesUsed() + CacheEntry.BASE_RAM_BYTES_USED
+        + LRUCache.HASHTABLE_RAM_BYTES_PER_ENTRY;
+  }
+
   /**
-   * Removes items from the cache to bring the size down to the lowerWaterMark.
+   * Removes items from the cache to bring the size down to the lowerWaterMark,
+   * and the heap usage down to the ramLowerWatermark.
    */
   private void markAndSweep() {
     if (!markAndSweepLock.tryLock()) return;
@@ -163,6 +218,10 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
       long lowHitCount = this.lowHitCount;
       isCleaning = true;
       this.lowHitCount = lowHitCount; // volatile write to make isCleaning visible
+
+      if (ramBytes.get() > ramUpperWatermark) {
+        markAndSweepByRamSize();
+      }
       
       int sz = stats.size.get();
       if (sz <= upperWaterMark) {
@@ -217,12 +276,34 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
     }
   }
 
-  private void evictEntry(K key) {
+  /**
+   * Removes the least used items until the heap usage is below 'ramLowerWatermark'.
+   * Must be called with the markAndSweepLock held.
+   */
+  private void markAndSweepByRamSize() {
+    @SuppressWarnings("unchecked")
+    CacheEntry<K, V>[] entries = map.values().toArray(new CacheEntry[0]);
+    for (CacheEntry<K, V> ce : entries) {
+      ce.hitsCopy = ce.hits.get();
+      ce.lastAccessedCopy = ce.lastAccessed;
+    }
+    // CacheEntry sorts from the most to the least used
+    Arrays.sort(entries);
+    for (int i = entries.length - 1; i >= 0 && ramBytes.get() > ramLowerWatermark; i--) {
+      if (evictEntry(entries[i].key)) {
+        stats.evictionRamUsageCounter.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean evictEntry(K key) {
     CacheEntry<K, V> o = map.remove(key);
-    if (o == null) return;
+    if (o == null) return false;
     stats.size.decrementAndGet();
     stats.evictionCounter.incrementAndGet();
+    ramBytes.addAndGet(-o.ramBytesUsed);
     if (evictionListener != null) evictionListener.evictedEntry(o.key, o.value);
+    return true;
   }
 
   /**
@@ -320,24 +401,44 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
   @Override
   public void clear() {
     map.clear();
+    ramBytes.set(0);
   }
 
   public Map<Object, CacheEntry<K, V>> getMap() {
     return map;
   }
 
+  public long getRamUpperWatermark() {
+    return ramUpperWatermark;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + ramBytes.get();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
   private static class CacheEntry<K, V> implements Comparable<CacheEntry<K, V>> {
+    static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CacheEntry.class)
+        + RamUsageEstimator.shallowSizeOfInstance(AtomicLong.class);
+
     K key;
     V value;
     volatile AtomicLong hits = new AtomicLong(0);
     long hitsCopy = 0;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    final long ramBytesUsed; // only computed when the cache is bounded by heap usage
 
-    public CacheEntry(K key, V value, long lastAccessed) {
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytesUsed) {
       this.key = key;
       this.value = value;
       this.lastAccessed = lastAccessed;
+      this.ramBytesUsed = ramBytesUsed;
     }
 
     @Override
@@ -391,6 +492,7 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
         missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
     private AtomicLong evictionCounter = new AtomicLong();
+    private final AtomicLong evictionRamUsageCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
       return (accessCounter.get() - putCounter.get() - nonLivePutCounter.get()) + missCounter.get();
@@ -408,6 +510,11 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
       return evictionCounter.get();
     }
 
+    /** Number of evictions done to bring the heap usage of the cache down. */
+    public long getCumulativeEvictionsRamUsage() {
+      return evictionRamUsageCounter.get();
+    }
+
     public int getCurrentSize() {
       return size.get();
     }
@@ -426,6 +533,7 @@ public class ConcurrentLFUCache<K, V> implements Cache<K,V> {
       nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
       missCounter.addAndGet(other.missCounter.get());
       evictionCounter.addAndGet(other.evictionCounter.get());
+      evictionRamUsageCounter.addAndGet(other.evictionRamUsageCounter.get());
       size.set(Math.max(size.get(), other.size.get()));
     }
   }
@@ -0,0 +1,565 @@
+package org.apache.solr.util;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.Cache;
+import org.apache.solr.search.LRUCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache with CLOCK eviction and TinyLFU admission.
+ * <p>
+ * Lookups never take a lock: a hit only sets the entry's reference bit and bumps the
+ * key's counter in a small frequency sketch. Entries are hashed into segments, each with
+ * its own lock and CLOCK ring. Inserting into a full cache advances the clock hand of the
+ * inserting segment to the first unreferenced entry (clearing reference bits on the way),
+ * so eviction is O(1) amortized and only serializes writers of the same segment.
+ * <p>
+ * Before an entry is evicted, the estimated access frequency of the incoming key is
+ * compared to that of the victim and the new entry is rejected when it is less popular.
+ * This keeps one-off filters from flushing frequently used ones. Frequencies are tracked
+ * in a 4-bit count-min sketch that is periodically halved so that old popularity ages out.
+ * Admission is only applied while the cache is live; entries inserted during warming
+ * are always accepted.
+ * <p>
+ * The cache can also be bounded by the estimated heap usage of its entries, in which case
+ * values must implement {@link Accountable}. An insert then evicts until the new entry fits
+ * under 'maxRamBytes' as well as under 'maxSize'; the admission check is made against the
+ * first victim only.
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ */
+public class ConcurrentTinyLFUCache<K,V> implements Cache<K,V>, Accountable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(ConcurrentTinyLFUCache.class);
+
+  private final ConcurrentHashMap<Object, CacheEntry<K,V>> map;
+  private final Segment<K,V>[] segments;
+  private final int segmentShift;
+  private final FrequencySketch sketch;
+  private final int maxSize;
+  private final long maxRamBytes;
+  private final AtomicLong ramBytes = new AtomicLong();
+  private volatile boolean islive = true;
+  private final Stats stats = new Stats();
+  private final EvictionListener<K,V> evictionListener;
+
+  public ConcurrentTinyLFUCache(int maxSize, int initialSize, int numSegments,
+                                EvictionListener<K,V> evictionListener) {
+    this(maxSize, Long.MAX_VALUE, initialSize, numSegments, evictionListener);
+  }
+
+  /**
+   * @param maxRamBytes upper bound on the estimated heap usage of the entries,
+   *                    or <code>Long.MAX_VALUE</code> to only bound the number of entries
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentTinyLFUCache(int maxSize, long maxRamBytes, int initialSize, int numSegments,
+                                EvictionListener<K,V> evictionListener) {
+    if (maxSize < 1) throw new IllegalArgumentException("maxSize must be > 0");
+    if (maxRamBytes < 1) throw new IllegalArgumentException("maxRamBytes must be > 0");
+    if (numSegments < 1) throw new IllegalArgumentException("numSegments must be > 0");
+    int nSeg = Integer.highestOneBit(Math.min(numSegments, maxSize));
+    this.maxSize = maxSize;
+    this.maxRamBytes = maxRamBytes;
+    this.map = new ConcurrentHashMap<>(Math.max(initialSize, 16), 0.75f, nSeg);
+    this.segments = new Segment[nSeg];
+    for (int i = 0; i < nSeg; i++) {
+      segments[i] = new Segment<>(Math.min(initialSize, maxSize) / nSeg);
+    }
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(nSeg);
+    this.sketch = new FrequencySketch(maxSize);
+    this.evictionListener = evictionListener;
+  }
+
+  public ConcurrentTinyLFUCache(int maxSize) {
+    this(maxSize, maxSize, defaultSegments(maxSize), null);
+  }
+
+  /** Picks a segment count from the number of available processors, keeping segments reasonably large. */
+  public static int defaultSegments(int maxSize) {
+    int cpus = Runtime.getRuntime().availableProcessors();
+    int bySize = Math.max(1, maxSize / 64);
+    return Math.max(1, Math.min(Integer.highestOneBit(cpus) << 1, bySize));
+  }
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  @Override
+  public V get(K key) {
+    int hash = hash(key);
+    CacheEntry<K,V> e = map.get(key);
+    if (!islive) {
+      return e == null ? null : e.value;
+    }
+    sketch.increment(hash);
+    stats.lookupCounter.incrementAndGet();
+    if (e == null) {
+      return null;
+    }
+    stats.hitCounter.incrementAndGet();
+    // avoid dirtying the cache line when the bit is already set
+    if (!e.referenced) e.referenced = true;
+    return e.value;
+  }
+
+  @Override
+  public V put(K key, V val) {
+    if (val == null) return null;
+    int hash = hash(key);
+    long entryRamBytes = isRamBounded() ? entryRamBytesUsed(key, val) : 0;
+    if (entryRamBytes > maxRamBytes) {
+      // could never fit, don't flush the whole cache trying
+      stats.rejectionCounter.incrementAndGet();
+      return null;
+    }
+    Segment<K,V> segment = segmentFor(hash);
+    List<CacheEntry<K,V>> evicted = null;
+    V oldValue = null;
+
+    segment.lock.lock();
+    try {
+      CacheEntry<K,V> existing = map.get(key);
+      if (existing != null) {
+        oldValue = existing.value;
+        existing.value = val;
+        existing.referenced = true;
+        ramBytes.addAndGet(entryRamBytes - existing.ramBytesUsed);
+        existing.ramBytesUsed = entryRamBytes;
+      } else {
+        boolean admitted = false;
+        // loops more than once when the new entry needs the room of several others, or when
+        // concurrent inserts into other segments have pushed us over the limit
+        while (stats.size.get() >= maxSize || ramBytes.get() + entryRamBytes > maxRamBytes) {
+          Segment<K,V> victimSegment = segment.count > 0 ? segment : lockOtherSegment(segment);
+          if (victimSegment == null) break;
+          try {
+            CacheEntry<K,V> victim = victimSegment.nextVictim();
+            if (!admitted) {
+              if (islive && sketch.frequency(hash) < sketch.frequency(victim.hash)) {
+                // the candidate is less popular than what it would replace
+                stats.rejectionCounter.incrementAndGet();
+                return null;
+              }
+              admitted = true;
+            }
+            if (stats.size.get() < maxSize) {
+              stats.evictionRamUsageCounter.incrementAndGet();
+            }
+            if (evicted == null) evicted = new ArrayList<>(2);
+            evicted.add(evictLocked(victimSegment, victim));
+          } finally {
+            if (victimSegment != segment) victimSegment.lock.unlock();
+          }
+        }
+        CacheEntry<K,V> e = new CacheEntry<>(key, val, hash, entryRamBytes);
+        segment.add(e);
+        map.put(key, e);
+        stats.size.incrementAndGet();
+        ramBytes.addAndGet(entryRamBytes);
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+
+    if (islive) {
+      stats.putCounter.incrementAndGet();
+    } else {
+      stats.nonLivePutCounter.incrementAndGet();
+    }
+    if (evictionListener != null && evicted != null) {
+      for (CacheEntry<K,V> e : evicted) {
+        evictionListener.evictedEntry(e.key, e.value);
+      }
+    }
+    return oldValue;
+  }
+
+  private boolean isRamBounded() {
+    return maxRamBytes != Long.MAX_VALUE;
+  }
+
+  private long entryRamBytesUsed(K key, V val) {
+    if (!(val instanceof Accountable)) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Cache is configured with maxRamBytes="
+          + RamUsageEstimator.humanReadableUnits(maxRamBytes)
+          + " but its values do not implement org.apache.lucene.util.Accountable");
+    }
+    long keyBytes = key instanceof Accountable ? ((Accountable) key).ramBytesUsed() : LRUCache.DEFAULT_RAM_BYTES_USED;
+    return keyBytes + ((Accountable) val).ramBytesUsed() + CacheEntry.BASE_RAM_BYTES_USED
+        + LRUCache.HASHTABLE_RAM_BYTES_PER_ENTRY;
+  }
+
+  /**
+   * Called with the lock of an empty segment held, finds another segment to take a victim from.
+   * Only tryLock is used so that two writers can never deadlock; if every attempt fails the
+   * cache briefly holds an extra entry, which a later insert will evict.
+   */
+  private Segment<K,V> lockOtherSegment(Segment<K,V> own) {
+    for (Segment<K,V> other : segments) {
+      if (other != own && other.count > 0 && other.lock.tryLock()) {
+        if (other.count > 0) return other;
+        other.lock.unlock();
+      }
+    }
+    return null;
+  }
+
+  private CacheEntry<K,V> evictLocked(Segment<K,V> segment, CacheEntry<K,V> victim) {
+    map.remove(victim.key);
+    segment.remove(victim);
+    stats.size.decrementAndGet();
+    stats.evictionCounter.incrementAndGet();
+    ramBytes.addAndGet(-victim.ramBytesUsed);
+    return victim;
+  }
+
+  @Override
+  public V remove(K key) {
+    Segment<K,V> segment = segmentFor(hash(key));
+    segment.lock.lock();
+    try {
+      CacheEntry<K,V> e = map.remove(key);
+      if (e == null) return null;
+      segment.remove(e);
+      stats.size.decrementAndGet();
+      ramBytes.addAndGet(-e.ramBytesUsed);
+      return e.value;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (Segment<K,V> segment : segments) {
+      segment.lock.lock();
+    }
+    try {
+      map.clear();
+      for (Segment<K,V> segment : segments) {
+        segment.clear();
+      }
+      stats.size.set(0);
+      ramBytes.set(0);
+    } finally {
+      for (Segment<K,V> segment : segments) {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  public int size() {
+    return stats.size.get();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  public int getNumSegments() {
+    return segments.length;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + ramBytes.get();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Returns up to 'n' entries with the highest estimated access frequency,
+   * most frequently used first.
+   */
+  public Map<K,V> getHottestItems(int n) {
+    Map<K,V> result = new LinkedHashMap<>();
+    if (n <= 0) return result;
+    int sz = Math.min(n, map.size());
+    if (sz == 0) return result;
+    HotQueue<K,V> queue = new HotQueue<>(sz);
+    for (CacheEntry<K,V> e : map.values()) {
+      e.frequencyCopy = sketch.frequency(e.hash);
+      queue.insertWithOverflow(e);
+    }
+    int count = queue.size();
+    @SuppressWarnings("unchecked")
+    CacheEntry<K,V>[] hottest = new CacheEntry[count];
+    for (int i = count - 1; i >= 0; i--) {
+      hottest[i] = queue.pop();
+    }
+    for (CacheEntry<K,V> e : hottest) {
+      result.put(e.key, e.value);
+    }
+    return result;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  private Segment<K,V> segmentFor(int hash) {
+    return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  private static int hash(Object key) {
+    // spread the bits so that the segment (high bits) and sketch indexes are well distributed
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static final class CacheEntry<K,V> {
+    static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CacheEntry.class);
+
+    final K key;
+    final int hash;
+    volatile V value;
+    volatile boolean referenced;
+    int index;           // position in the segment's ring, guarded by the segment lock
+    long ramBytesUsed;   // guarded by the segment lock, only computed when bounded by heap usage
+    int frequencyCopy;   // only used while collecting the hottest items
+
+    CacheEntry(K key, V value, int hash, long ramBytesUsed) {
+      this.key = key;
+      this.value = value;
+      this.hash = hash;
+      this.ramBytesUsed = ramBytesUsed;
+    }
+
+    @Override
+    public String toString() {
+      return "key: " + key + " value: " + value + " referenced:" + referenced;
+    }
+  }
+
+  /** A CLOCK ring over the entries hashed to one segment. All access must hold {@link #lock}. */
+  private static final class Segment<K,V> {
+    final ReentrantLock lock = new ReentrantLock();
+    CacheEntry<K,V>[] slots;
+    int count;
+    int hand;
+
+    @SuppressWarnings("unchecked")
+    Segment(int initialCapacity) {
+      slots = new CacheEntry[Math.max(4, initialCapacity)];
+    }
+
+    void add(CacheEntry<K,V> e) {
+      if (count == slots.length) {
+        slots = Arrays.copyOf(slots, count << 1);
+      }
+      e.index = count;
+      slots[count++] = e;
+    }
+
+    /** Advances the hand to the first entry not referenced since the last pass; at most two turns. */
+    CacheEntry<K,V> nextVictim() {
+      for (;;) {
+        CacheEntry<K,V> e = slots[hand];
+        if (!e.referenced) {
+          return e;
+        }
+        e.referenced = false;
+        if (++hand == count) hand = 0;
+      }
+    }
+
+    /** Fills the hole with the last entry of the ring; the hand stays put and inspects it next. */
+    void remove(CacheEntry<K,V> e) {
+      int last = --count;
+      CacheEntry<K,V> moved = slots[last];
+      slots[e.index] = moved;
+      moved.index = e.index;
+      slots[last] = null;
+      if (hand >= count) hand = 0;
+    }
+
+    void clear() {
+      Arrays.fill(slots, 0, count, null);
+      count = 0;
+      hand = 0;
+    }
+  }
+
+  private static final class HotQueue<K,V> extends PriorityQueue<CacheEntry<K,V>> {
+    HotQueue(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected boolean lessThan(CacheEntry<K,V> a, CacheEntry<K,V> b) {
+      return a.frequencyCopy < b.frequencyCopy;
+    }
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters, four per key, sixteen packed into each long.
+   * Updates are deliberately unsynchronized: a lost increment only makes the estimate
+   * slightly lower, and every write still leaves each counter in a valid state.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;  // not volatile, an approximate count is good enough
+
+    FrequencySketch(int maxSize) {
+      int len = maxSize >= (1 << 30) ? (1 << 30) : Integer.highestOneBit(Math.max(maxSize, 8) - 1) << 1;
+      table = new long[len];
+      tableMask = len - 1;
+      sampleSize = (int) Math.min(10L * maxSize, Integer.MAX_VALUE);
+    }
+
+    int frequency(int hash) {
+      int start = (hash & 3) << 2;
+      int freq = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        freq = Math.min(freq, count);
+      }
+      return freq;
+    }
+
+    void increment(int hash) {
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int i, int j) {
+      int offset = j << 2;
+      long mask = 0xfL << offset;
+      long v = table[i];
+      if ((v & mask) != mask) {
+        table[i] = v + (1L << offset);
+        return true;
+      }
+      return false;
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int) h) & tableMask;
+    }
+
+    /** Halves every counter so that the sketch favors recent popularity. */
+    private void reset() {
+      int odd = 0;
+      for (int i = 0; i < table.length; i++) {
+        odd += Long.bitCount(table[i] & ONE_MASK);
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions = Math.max(0, (additions - (odd >>> 2)) >>> 1);
+    }
+  }
+
+  public static class Stats {
+    private final AtomicLong lookupCounter = new AtomicLong(),
+        hitCounter = new AtomicLong(),
+        putCounter = new AtomicLong(),
+        nonLivePutCounter = new AtomicLong(),
+        evictionCounter = new AtomicLong(),
+        evictionRamUsageCounter = new AtomicLong(),
+        rejectionCounter = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public long getCumulativeLookups() {
+      return lookupCounter.get();
+    }
+
+    public long getCumulativeHits() {
+      return hitCounter.get();
+    }
+
+    public long getCumulativePuts() {
+      return putCounter.get();
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return nonLivePutCounter.get();
+    }
+
+    public long getCumulativeEvictions() {
+      return evictionCounter.get();
+    }
+
+    /** Number of evictions done to keep the heap usage of the cache under its limit. */
+    public long getCumulativeEvictionsRamUsage() {
+      return evictionRamUsageCounter.get();
+    }
+
+    /** Number of inserts refused by the frequency based admission policy. */
+    public long getCumulativeRejections() {
+      return rejectionCounter.get();
+    }
+
+    public int getCurrentSize() {
+      return size.get();
+    }
+
+    public void add(Stats other) {
+      lookupCounter.addAndGet(other.lookupCounter.get());
+      hitCounter.addAndGet(other.hitCounter.get());
+      putCounter.addAndGet(other.putCounter.get());
+      nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
+      evictionCounter.addAndGet(other.evictionCounter.get());
+      evictionRamUsageCounter.addAndGet(other.evictionRamUsageCounter.get());
+      rejectionCounter.addAndGet(other.rejectionCounter.get());
+      size.set(Math.max(size.get(), other.size.get()));
+    }
+  }
+
+  public static interface EvictionListener<K,V> {
+    public void evictedEntry(K key, V value);
+  }
+}
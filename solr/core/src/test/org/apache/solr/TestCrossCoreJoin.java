@@ -21,6 +21,7 @@ import java.io.StringWriter;
 import java.util.Collections;
 
 import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.CoreDescriptor;
 import org.apache.solr.core.SolrCore;
@@ -30,8 +31,10 @@ import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.QueryResponseWriter;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.join.TestScoreJoinQPNoScore;
 import org.apache.solr.servlet.DirectSolrConnection;
+import org.apache.solr.util.RefCounted;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -105,6 +108,48 @@ public class TestCrossCoreJoin extends SolrTestCaseJ4 {
     );
   }
 
+  @Test
+  public void testJoinCache() throws Exception {
+    update(fromCore, add(doc("id", "20", "dept_id_s", "Research", "text", "These guys run the lab")));
+    update(fromCore, commit());
+    assertU(add(doc("id", "20", "name", "ron", "dept_s", "Research")));
+    assertU(add(doc("id", "23", "name", "lea", "dept_s", "Legal")));
+    assertU(commit());
+
+    String join = "{!join from=dept_id_s to=dept_s fromIndex=fromCore cache=false}text:lab";
+    assertJQ(req("q", join, "fl", "id", "sort", "id asc")
+        , "/response=={'numFound':1,'start':0,'docs':[{'id':'20'}]}"
+    );
+
+    // a new segment on the to side extends the cached result while warming
+    assertU(add(doc("id", "21", "name", "rita", "dept_s", "Research")));
+    assertU(commit());
+    long inserts = (Long) getJoinCacheStats().get("inserts");
+    assertJQ(req("q", join, "fl", "id", "sort", "id asc")
+        , "/response=={'numFound':2,'start':0,'docs':[{'id':'20'},{'id':'21'}]}"
+    );
+    NamedList stats = getJoinCacheStats();
+    assertEquals(1L, stats.get("hits"));
+    assertEquals(inserts, stats.get("inserts"));
+
+    // a change on the from side invalidates it
+    update(fromCore, add(doc("id", "22", "dept_id_s", "Legal", "text", "These guys read the lab contracts")));
+    update(fromCore, commit());
+    assertJQ(req("q", join, "fl", "id", "sort", "id asc")
+        , "/response=={'numFound':3,'start':0,'docs':[{'id':'20'},{'id':'21'},{'id':'23'}]}"
+    );
+    assertEquals(inserts + 1, getJoinCacheStats().get("inserts"));
+  }
+
+  private NamedList getJoinCacheStats() {
+    RefCounted<SolrIndexSearcher> searcher = h.getCore().getSearcher();
+    try {
+      return searcher.get().getJoinCache().getStatistics();
+    } finally {
+      searcher.decref();
+    }
+  }
+
   @Test
   public void testCoresAreDifferent() throws Exception {
     assertQEx("schema12.xml" + " has no \"cat\" field", req("cat:*"), ErrorCode.BAD_REQUEST);
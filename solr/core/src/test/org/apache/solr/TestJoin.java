@@ -17,6 +17,7 @@
 
 package org.apache.solr;
 
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.noggit.JSONUtil;
 import org.noggit.ObjectBuilder;
@@ -45,16 +46,17 @@ public class TestJoin extends SolrTestCaseJ4 {
 
   @Test
   public void testJoin() throws Exception {
-    assertU(add(doc("id", "1","name", "john", "title", "Director", "dept_s","Engineering")));
-    assertU(add(doc("id", "2","name", "mark", "title", "VP", "dept_s","Marketing")));
-    assertU(add(doc("id", "3","name", "nancy", "title", "MTS", "dept_s","Sales")));
-    assertU(add(doc("id", "4","name", "dave", "title", "MTS", "dept_s","Support", "dept_s","Engineering")));
-    assertU(add(doc("id", "5","name", "tina", "title", "VP", "dept_s","Engineering")));
-
-    assertU(add(doc("id","10", "dept_id_s", "Engineering", "text","These guys develop stuff")));
-    assertU(add(doc("id","11", "dept_id_s", "Marketing", "text","These guys make you look good")));
-    assertU(add(doc("id","12", "dept_id_s", "Sales", "text","These guys sell stuff")));
-    assertU(add(doc("id","13", "dept_id_s", "Support", "text","These guys help customers")));
+    assertU(add(doc("id", "1","name", "john", "title", "Director", "dept_s","Engineering", "dept_ssdv","Engineering", "dept_num_idv","1")));
+    assertU(add(doc("id", "2","name", "mark", "title", "VP", "dept_s","Marketing", "dept_ssdv","Marketing", "dept_num_idv","2")));
+    assertU(add(doc("id", "3","name", "nancy", "title", "MTS", "dept_s","Sales", "dept_ssdv","Sales", "dept_num_idv","3")));
+    assertU(add(doc("id", "4","name", "dave", "title", "MTS", "dept_s","Support", "dept_s","Engineering",
+        "dept_ssdv","Support", "dept_ssdv","Engineering", "dept_num_isdv","4", "dept_num_isdv","1")));
+    assertU(add(doc("id", "5","name", "tina", "title", "VP", "dept_s","Engineering", "dept_ssdv","Engineering", "dept_num_idv","1")));
+
+    assertU(add(doc("id","10", "dept_id_s", "Engineering", "num_idv","1", "text","These guys develop stuff")));
+    assertU(add(doc("id","11", "dept_id_s", "Marketing", "num_idv","2", "text","These guys make you look good")));
+    assertU(add(doc("id","12", "dept_id_s", "Sales", "num_idv","3", "text","These guys sell stuff")));
+    assertU(add(doc("id","13", "dept_id_s", "Support", "num_idv","4", "text","These guys help customers")));
 
     assertU(commit());
 
@@ -69,6 +71,31 @@ public class TestJoin extends SolrTestCaseJ4 {
         ,"/response=={'numFound':3,'start':0,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}"
     );
 
+    // docValues of the from field, only the terms of the from docs are visited
+    assertJQ(req(p, "q","{!join from=dept_ssdv to=dept_id_s method=dv}title:MTS", "fl","id", "debugQuery","true")
+        ,"/response=={'numFound':3,'start':0,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}"
+        ,"/debug/join/{!join from=dept_ssdv to=dept_id_s}title:MTS=={'_MATCH_':'fromSetSize,toSetSize,fromTermCount', 'fromSetSize':2, 'toSetSize':3, 'fromTermCount':3}"
+    );
+    assertJQ(req(p, "q","{!join from=dept_ssdv to=dept_id_s method=index}title:MTS", "fl","id", "debugQuery","true")
+        ,"/debug/join/{!join from=dept_ssdv to=dept_id_s}title:MTS=={'_MATCH_':'fromSetSize,toSetSize,fromTermCount', 'fromSetSize':2, 'toSetSize':3, 'fromTermCount':4}"
+    );
+    // no docValues, falls back to walking the terms
+    assertJQ(req(p, "q","{!join from=dept_s to=dept_id_s method=dv}title:MTS", "fl","id")
+        ,"/response=={'numFound':3,'start':0,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}"
+    );
+    // numeric keys, read from NUMERIC and SORTED_SET docValues
+    assertJQ(req(p, "q","{!join from=dept_num_idv to=num_idv method=dv}title:VP", "fl","id", "debugQuery","true")
+        ,"/response=={'numFound':2,'start':0,'docs':[{'id':'10'},{'id':'11'}]}"
+        ,"/debug/join/{!join from=dept_num_idv to=num_idv}title:VP=={'_MATCH_':'fromSetSize,fromTermCount', 'fromSetSize':2, 'fromTermCount':2}"
+    );
+    assertJQ(req(p, "q","{!join from=dept_num_isdv to=num_idv method=dv}title:MTS", "fl","id")
+        ,"/response=={'numFound':2,'start':0,'docs':[{'id':'10'},{'id':'13'}]}"
+    );
+    assertJQ(req(p, "q","{!join from=num_idv to=dept_num_idv method=dv}text:stuff", "fl","id")
+        ,"/response=={'numFound':3,'start':0,'docs':[{'id':'1'},{'id':'3'},{'id':'5'}]}"
+    );
+    assertQEx("unknown join method", req("q","{!join from=dept_s to=dept_id_s method=foo}title:MTS"), SolrException.ErrorCode.BAD_REQUEST);
+
     // empty from
     assertJQ(req(p, "q","{!join from=noexist_s to=dept_id_s}*:*", "fl","id")
         ,"/response=={'numFound':0,'start':0,'docs':[]}"
@@ -146,8 +173,8 @@ public class TestJoin extends SolrTestCaseJ4 {
     // groups of fields that have any chance of matching... used to
     // increase test effectiveness by avoiding 0 resultsets much of the time.
     String[][] compat = new String[][] {
-        {"small_s","small2_s","small2_ss","small3_ss"},
-        {"small_i","small2_i","small2_is","small3_is"}
+        {"small_s","small2_s","small2_ss","small3_ss","small_sdv","small2_ssdv"},
+        {"small_i","small2_i","small2_is","small3_is","small_idv","small2_isdv","small_tidv"}
     };
 
 
@@ -161,10 +188,15 @@ public class TestJoin extends SolrTestCaseJ4 {
       types.add(new FldType("small2_s",ZERO_ONE, new SVal('a',(char)('c'+indexSize/3),1,1)));
       types.add(new FldType("small2_ss",ZERO_TWO, new SVal('a',(char)('c'+indexSize/3),1,1)));
       types.add(new FldType("small3_ss",new IRange(0,25), new SVal('A','z',1,1)));
+      types.add(new FldType("small_sdv",ZERO_ONE, new SVal('a',(char)('c'+indexSize/3),1,1)));
+      types.add(new FldType("small2_ssdv",ZERO_TWO, new SVal('a',(char)('c'+indexSize/3),1,1)));
       types.add(new FldType("small_i",ZERO_ONE, new IRange(0,5+indexSize/3)));
       types.add(new FldType("small2_i",ZERO_ONE, new IRange(0,5+indexSize/3)));
       types.add(new FldType("small2_is",ZERO_TWO, new IRange(0,5+indexSize/3)));
       types.add(new FldType("small3_is",new IRange(0,25), new IRange(0,100)));
+      types.add(new FldType("small_idv",ZERO_ONE, new IRange(0,5+indexSize/3)));
+      types.add(new FldType("small2_isdv",ZERO_TWO, new IRange(0,5+indexSize/3)));
+      types.add(new FldType("small_tidv",ZERO_ONE, new IRange(-5,5+indexSize/3)));
 
       clearIndex();
       Map<Comparable, Doc> model = indexDocs(types, null, indexSize);
@@ -212,6 +244,7 @@ public class TestJoin extends SolrTestCaseJ4 {
         SolrQueryRequest req = req("wt","json","indent","true", "echoParams","all",
             "q","{!join from="+fromField+" to="+toField
                 + (random().nextInt(4)==0 ? " fromIndex=collection1" : "")
+                + (random().nextBoolean() ? " method=dv" : "")
                 +"}*:*"
         );
 
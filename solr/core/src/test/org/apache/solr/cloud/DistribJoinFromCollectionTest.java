@@ -99,10 +99,16 @@ public class DistribJoinFromCollectionTest extends AbstractFullDistribZkTestBase
     //with score
     testJoins(toColl, fromColl, toDocId, true);
 
+    // a from collection with a single replica, so most nodes of the "to" collection don't host it
+    String remoteColl = "from_remote_1x1";
+    createCollection(null, remoteColl, 1, 1, 1, null, nodeSet.iterator().next());
+    waitForRecoveriesToFinish(remoteColl, false);
+    testCrossCollectionJoin(toColl, remoteColl);
+
     log.info("DistribJoinFromCollectionTest logic complete ... deleting the " + toColl + " and " + fromColl + " collections");
 
     // try to clean up
-    for (String c : new String[]{ toColl, fromColl }) {
+    for (String c : new String[]{ toColl, fromColl, remoteColl }) {
       try {
         CollectionAdminRequest.Delete req = new CollectionAdminRequest.Delete()
                 .setCollectionName(c);
@@ -165,6 +171,37 @@ public class DistribJoinFromCollectionTest extends AbstractFullDistribZkTestBase
     assertScore(isScoresTest, doc);
   }
 
+  private void testCrossCollectionJoin(String toColl, String remoteColl) throws Exception {
+    UpdateRequest up = new UpdateRequest();
+    up.setParam("collection", toColl);
+    up.add(sdoc("id", 1101, "join_l1_dv", 7L, "get_s", "x"));
+    up.add(sdoc("id", 1102, "join_l1_dv", 8L, "get_s", "y"));
+    up.add(sdoc("id", 1103, "join_l1_dv", 9L, "get_s", "z"));
+    up.setAction(UpdateRequest.ACTION.COMMIT, true, true);
+    cloudClient.request(up);
+
+    up = new UpdateRequest();
+    up.setParam("collection", remoteColl);
+    up.add(sdoc("id", 2101, "join_l1_dv", 7L, "match_s", "r"));
+    up.add(sdoc("id", 2102, "join_l1_dv", 9L, "match_s", "r"));
+    up.add(sdoc("id", 2103, "join_l1_dv", 9L, "match_s", "r"));
+    up.add(sdoc("id", 2104, "join_l1_dv", 8L, "match_s", "s"));
+    up.setAction(UpdateRequest.ACTION.COMMIT, true, true);
+    cloudClient.request(up);
+
+    // every shard of the "to" collection fetches the keys, whether or not its node hosts the from collection
+    String joinQ = "{!join method=crossCollection from=join_l1_dv fromIndex=" + remoteColl + " to=join_l1_dv}match_s:r";
+    QueryRequest qr = new QueryRequest(params("collection", toColl, "q", joinQ, "fl", "id", "sort", "id asc"));
+    SolrDocumentList hits = new QueryResponse(cloudClient.request(qr), cloudClient).getResults();
+    assertEquals(2, hits.getNumFound());
+    assertEquals(1101, hits.get(0).getFirstValue("id"));
+    assertEquals(1103, hits.get(1).getFirstValue("id"));
+
+    joinQ = "{!join method=crossCollection from=join_l1_dv fromIndex=" + remoteColl + " to=join_l1_dv}match_s:nomatch";
+    qr = new QueryRequest(params("collection", toColl, "q", joinQ, "fl", "id"));
+    assertEquals(0, new QueryResponse(cloudClient.request(qr), cloudClient).getResults().getNumFound());
+  }
+
   private void assertScore(boolean isScoresTest, SolrDocument doc) {
     if (isScoresTest) {
       assertThat(doc.getFirstValue("score").toString(), not("1.0"));
@@ -0,0 +1,83 @@
+package org.apache.solr.handler.component;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.junit.Test;
+
+/**
+ * Test for the merge of the top ids of the shards by QueryComponent: the docs of each shard
+ * are merged as they arrive, and must still come out in the order, and on the pages, of a
+ * single core.
+ *
+ * @see org.apache.solr.handler.component.QueryComponent
+ */
+public class DistributedQueryComponentMergeTest extends BaseDistributedSearchTestCase {
+
+  private static final String[] SORTS = {
+      "a_i1 asc,a_s1 desc,id asc",
+      "a_s1 asc,other_tl1 desc,id desc",
+      "a_i1 desc,other_tl1 asc,a_s1 asc,id asc",
+      "other_tl1 desc,id asc"
+  };
+
+  public DistributedQueryComponentMergeTest() {
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 3)
+  public void test() throws Exception {
+    del("*:*");
+    handle.clear();
+    handle.put("timestamp", SKIPVAL);
+    handle.put("_version_", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+
+    // few distinct values, so that most docs tie on the first sort fields
+    String[] strings = {"x", "y", "z"};
+    int numDocs = 60;
+    for (int i = 0; i < numDocs; i++) {
+      if (i % 7 == 0) {
+        // some docs don't have a value to sort on
+        index("id", i, "a_s1", strings[random().nextInt(strings.length)]);
+      } else {
+        index("id", i, "a_i1", random().nextInt(4), "a_s1", strings[random().nextInt(strings.length)],
+            "other_tl1", random().nextInt(5));
+      }
+    }
+    // a run of docs that all sort first, and are all on one shard: the other shards' docs miss
+    // the queue once it holds the page
+    for (int i = 0; i < 15; i++) {
+      index_specific(0, "id", numDocs + i, "a_i1", -1, "a_s1", "w", "other_tl1", 10);
+    }
+    commit();
+
+    for (String sort : SORTS) {
+      for (int start : new int[] {0, 1, 5, 14, 15, 16, 40, 74, 80}) {
+        for (int rows : new int[] {1, 3, 10, 100}) {
+          query("q", "*:*", "fl", "id", "sort", sort, "start", start, "rows", rows);
+          query("q", "a_i1:[0 TO 2]", "fl", "id,a_i1,a_s1,other_tl1", "sort", sort, "start", start, "rows", rows);
+        }
+      }
+      // all the docs of every shard are merged, in one pass as well
+      query("q", "*:*", "fl", "id", "sort", sort, "rows", 1000);
+      query("q", "*:*", "fl", "id", "sort", sort, "start", 3, "rows", 20, "distrib.singlePass", true);
+    }
+  }
+}
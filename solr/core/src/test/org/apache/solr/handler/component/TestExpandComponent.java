@@ -19,7 +19,10 @@ package org.apache.solr.handler.component;
 
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.CollapsingQParserPlugin;
+import org.apache.solr.search.ExpandedGroups;
+import org.apache.solr.search.SolrCache;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -80,6 +83,132 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
       _testExpand(groups.get(0), floatAppend, hint);
   }
 
+  @Test
+  public void testSinglePassExpand() throws Exception {
+    String group = random().nextBoolean() ? "group_s" : "group_s_dv";
+    String hint = (random().nextBoolean() ? " hint="+ CollapsingQParserPlugin.HINT_TOP_FC : "");
+
+    assertU(adoc("id", "1", group, "1", "test_ti", "5"));
+    assertU(commit());
+    assertU(adoc("id", "2", group, "1", "test_ti", "50"));
+    assertU(adoc("id", "3", "test_ti", "5000"));
+    assertU(commit());
+    assertU(adoc("id", "4", "test_ti", "500"));
+    assertU(adoc("id", "5", group, "2", "test_ti", "4"));
+    assertU(commit());
+    assertU(adoc("id", "6", group, "2", "test_ti", "10"));
+    assertU(commit());
+    assertU(adoc("id", "7", group, "1", "test_ti", "1"));
+    assertU(commit());
+    assertU(adoc("id", "8", group, "2", "test_ti", "2"));
+    assertU(commit());
+    // the results of the other tests may have been autowarmed, these queries must collapse
+    ((SolrCache) h.getCore().getInfoRegistry().get("queryResultCache")).clear();
+
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("q", "*:*");
+    params.add("fq", "{!collapse field="+group+hint+"}");
+    params.add("defType", "edismax");
+    params.add("bf", "field(test_ti)");
+    params.add("expand", "true");
+    params.add("expand.singlePass", "true");
+    SolrQueryRequest request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=2]",
+        "*[count(/response/lst[@name='expanded']/result)=2]",
+        "/response/result/doc[1]/float[@name='id'][.='2.0']",
+        "/response/result/doc[2]/float[@name='id'][.='6.0']",
+        "/response/lst[@name='expanded']/result[@name='1'][@numFound='2']",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[1]/float[@name='id'][.='1.0']",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[2]/float[@name='id'][.='7.0']",
+        "/response/lst[@name='expanded']/result[@name='2'][@numFound='2']",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[1]/float[@name='id'][.='5.0']",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[2]/float[@name='id'][.='8.0']"
+    );
+    // the groups were gathered by the collapse
+    assertNotNull(request.getContext().get(ExpandedGroups.CONTEXT_KEY));
+
+    //Page 2 with expand.rows, served by the queryResultCache so expanded with a second pass
+    params.add("rows", "1");
+    params.add("start", "1");
+    params.add("expand.rows", "1");
+    request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=1]",
+        "*[count(/response/lst[@name='expanded']/result)=1]",
+        "/response/result/doc[1]/float[@name='id'][.='6.0']",
+        "/response/lst[@name='expanded']/result[@name='2'][@numFound='2']",
+        "*[count(/response/lst[@name='expanded']/result[@name='2']/doc)=1]",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[1]/float[@name='id'][.='5.0']"
+    );
+    assertNull(request.getContext().get(ExpandedGroups.CONTEXT_KEY));
+
+    //expand.rows on a new query
+    params.set("q", "id:[1 TO 8]");
+    request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=1]",
+        "/response/result/doc[1]/float[@name='id'][.='6.0']",
+        "/response/lst[@name='expanded']/result[@name='2'][@numFound='2']",
+        "*[count(/response/lst[@name='expanded']/result[@name='2']/doc)=1]",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[1]/float[@name='id'][.='5.0']"
+    );
+    assertNotNull(request.getContext().get(ExpandedGroups.CONTEXT_KEY));
+
+    //expand.sort needs the second pass
+    params = new ModifiableSolrParams();
+    params.add("q", "*:*");
+    params.add("fq", "{!collapse field="+group+hint+"}");
+    params.add("defType", "edismax");
+    params.add("bf", "field(test_ti)");
+    params.add("expand", "true");
+    params.add("expand.singlePass", "true");
+    params.add("expand.sort", "test_ti asc");
+    request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=2]",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[1]/float[@name='id'][.='7.0']",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[2]/float[@name='id'][.='1.0']"
+    );
+    assertNull(request.getContext().get(ExpandedGroups.CONTEXT_KEY));
+
+    //faceting with an excluded filter collapses other docs again, which must not be what is expanded
+    params = new ModifiableSolrParams();
+    params.add("q", "*:*");
+    params.add("fq", "{!collapse field="+group+hint+"}");
+    params.add("fq", "{!tag=ti}test_ti:[0 TO 10]");
+    params.add("defType", "edismax");
+    params.add("bf", "field(test_ti)");
+    params.add("expand", "true");
+    params.add("expand.singlePass", "true");
+    params.add("facet", "true");
+    params.add("facet.field", "{!ex=ti}" + group);
+    request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=2]",
+        "/response/result/doc[1]/float[@name='id'][.='6.0']",
+        "/response/result/doc[2]/float[@name='id'][.='1.0']",
+        "*[count(/response/lst[@name='expanded']/result)=2]",
+        "/response/lst[@name='expanded']/result[@name='1'][@numFound='1']",
+        "*[count(/response/lst[@name='expanded']/result[@name='1']/doc)=1]",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[1]/float[@name='id'][.='7.0']",
+        "/response/lst[@name='expanded']/result[@name='2'][@numFound='2']",
+        "*[count(/response/lst[@name='expanded']/result[@name='2']/doc)=2]",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[1]/float[@name='id'][.='5.0']",
+        "/response/lst[@name='expanded']/result[@name='2']/doc[2]/float[@name='id'][.='8.0']"
+    );
+    assertNotNull(request.getContext().get(ExpandedGroups.CONTEXT_KEY));
+
+    //groups that would take too much room are given up on, and expanded with the second pass
+    params.remove("facet");
+    params.remove("facet.field");
+    params.set("expand.rows", 5000000);
+    params.set("q", "{!cache=false}*:*"); // collapse again, rather than use the cached result
+    request = req(params);
+    assertQ(request, "*[count(/response/result/doc)=2]",
+        "/response/lst[@name='expanded']/result[@name='1'][@numFound='1']",
+        "/response/lst[@name='expanded']/result[@name='1']/doc[1]/float[@name='id'][.='7.0']",
+        "/response/lst[@name='expanded']/result[@name='2'][@numFound='2']",
+        "*[count(/response/lst[@name='expanded']/result[@name='2']/doc)=2]"
+    );
+    assertFalse(((ExpandedGroups) request.getContext().get(ExpandedGroups.CONTEXT_KEY)).isComplete());
+  }
+
   private void _testExpand(String group, String floatAppend, String hint) throws Exception {
 
     String[] doc = {"id","1", "term_s", "YYYY", group, "1"+floatAppend, "test_ti", "5", "test_tl", "10", "test_tf", "2000", "type_s", "parent"};
@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+
+// the replicas are plain http sockets
+@SolrTestCaseJ4.SuppressSSL
+public class TestHttpShardHandlerFactory extends SolrTestCaseJ4 {
+
+  public void testSaturatedExecutor() throws Exception {
+    NamedList<Object> args = new NamedList<>();
+    args.add(HttpShardHandlerFactory.INIT_CORE_POOL_SIZE, 1);
+    args.add(HttpShardHandlerFactory.INIT_MAX_POOL_SIZE, 1);
+    args.add(HttpShardHandlerFactory.INIT_SIZE_OF_QUEUE, 1);
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), args, null));
+
+      // take the only thread, and the only place in the queue
+      ThreadPoolExecutor executor = factory.getThreadPoolExecutor();
+      for (int i = 0; i < 2; i++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+      }
+
+      // the requests are still all sent, and answered: by nothing listening here
+      ShardHandler shardHandler = factory.getShardHandler();
+      ShardRequest sreq = new ShardRequest();
+      sreq.actualShards = new String[3];
+      for (int i = 0; i < sreq.actualShards.length; i++) {
+        sreq.actualShards[i] = "127.0.0.1:1/solr/shard" + i;
+        shardHandler.submit(sreq, sreq.actualShards[i], new ModifiableSolrParams());
+      }
+      ShardResponse rsp = shardHandler.takeCompletedIncludingErrors();
+      assertNotNull(rsp);
+      assertEquals(3, sreq.responses.size());
+      for (ShardResponse response : sreq.responses) {
+        assertNotNull(response.getException());
+      }
+      assertNull(shardHandler.takeCompletedIncludingErrors());
+      assertEquals(2, executor.getCompletedTaskCount() + executor.getActiveCount() + executor.getQueue().size());
+    } finally {
+      release.countDown();
+      factory.close();
+    }
+  }
+
+  public void testResponseListener() throws Exception {
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), new NamedList<>(), null));
+      ShardHandler shardHandler = factory.getShardHandler();
+      final ShardRequest sreq = new ShardRequest();
+      final List<ShardResponse> received = new CopyOnWriteArrayList<>();
+      sreq.responseListener = new ShardRequest.ResponseListener() {
+        @Override
+        public void responseReceived(ShardResponse srsp) {
+          // told of each response once it is in the responses of the request
+          assertSame(srsp, sreq.responses.get(received.size()));
+          received.add(srsp);
+        }
+      };
+      sreq.actualShards = new String[3];
+      for (int i = 0; i < sreq.actualShards.length; i++) {
+        sreq.actualShards[i] = "127.0.0.1:1/solr/shard" + i;
+        shardHandler.submit(sreq, sreq.actualShards[i], new ModifiableSolrParams());
+      }
+      assertNotNull(shardHandler.takeCompletedIncludingErrors());
+      assertEquals(sreq.responses, received);
+    } finally {
+      factory.close();
+    }
+  }
+
+  public void testLatencyAwareSelection() throws Exception {
+    NamedList<Object> args = new NamedList<>();
+    args.add(HttpShardHandlerFactory.INIT_LATENCY_AWARE_SELECTION, true);
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), args, null));
+      String fast = "http://fast:8983/solr";
+      String slow = "http://slow:8983/solr";
+      String unknown = "http://unknown:8983/solr";
+      for (int i = 0; i < 5; i++) {
+        respond(factory, fast, 10);
+        respond(factory, slow, 100);
+      }
+      // the replicas that weren't queried yet come first, then the fastest
+      for (int i = 0; i < 10; i++) {
+        assertEquals(Arrays.asList(unknown, fast, slow), factory.makeURLList("fast:8983/solr|slow:8983/solr|unknown:8983/solr"));
+      }
+
+      // a replica with many requests in flight is expected to be slower to answer
+      for (int i = 0; i < 20; i++) {
+        factory.requestStarted(fast);
+      }
+      assertEquals(Arrays.asList(slow, fast), factory.makeURLList("fast:8983/solr|slow:8983/solr"));
+
+      // a replica that fails is tried after the slow ones, even though it fails fast
+      String down = "http://127.0.0.1:1/solr/down";
+      String downToo = "http://127.0.0.1:1/solr/downToo";
+      ShardHandler shardHandler = factory.getShardHandler();
+      ShardRequest sreq = new ShardRequest();
+      String shard = "127.0.0.1:1/solr/down|127.0.0.1:1/solr/downToo";
+      sreq.actualShards = new String[] {shard};
+      shardHandler.submit(sreq, shard, new ModifiableSolrParams());
+      assertNotNull(shardHandler.takeCompletedIncludingErrors().getException());
+      for (String url : Arrays.asList(down, downToo)) {
+        HttpShardHandlerFactory.ReplicaStats stats = factory.getReplicaStats(url);
+        assertEquals(0, stats.outstanding.get());
+        assertTrue(stats.getResponseTime(System.nanoTime()) >= HttpShardHandlerFactory.ReplicaStats.FAILURE_PENALTY_NANOS);
+        assertEquals(0, stats.getResponseTimes().length);
+      }
+      List<String> urls = factory.makeURLList("slow:8983/solr|127.0.0.1:1/solr/down");
+      assertEquals(Arrays.asList(slow, down), urls);
+    } finally {
+      factory.close();
+    }
+  }
+
+  public void testHedgeDelay() throws Exception {
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), new NamedList<>(), null));
+      List<String> urls = Arrays.asList("http://a:8983/solr", "http://b:8983/solr");
+      for (int i = 1; i < HttpShardHandlerFactory.ReplicaStats.MIN_SAMPLES; i++) {
+        respond(factory, urls.get(0), i);
+      }
+      assertEquals(-1, factory.getHedgeDelay(urls, 95, TimeUnit.MILLISECONDS));
+      for (int i = HttpShardHandlerFactory.ReplicaStats.MIN_SAMPLES; i <= 100; i++) {
+        respond(factory, urls.get(i % 2), i);
+      }
+      assertEquals(95, factory.getHedgeDelay(urls, 95, TimeUnit.MILLISECONDS), 1);
+      assertEquals(50, factory.getHedgeDelay(urls, 50, TimeUnit.MILLISECONDS), 1);
+    } finally {
+      factory.close();
+    }
+  }
+
+  public void testHedgedRequest() throws Exception {
+    hedgedRequest(new NamedList<>());
+  }
+
+  public void testHedgedRequestWithQueuingExecutor() throws Exception {
+    // the shard requests queue up behind the one running: their hedges mustn't
+    NamedList<Object> args = new NamedList<>();
+    args.add(HttpShardHandlerFactory.INIT_CORE_POOL_SIZE, 0);
+    args.add(HttpShardHandlerFactory.INIT_MAX_POOL_SIZE, 1);
+    args.add(HttpShardHandlerFactory.INIT_SIZE_OF_QUEUE, 10);
+    hedgedRequest(args);
+  }
+
+  private void hedgedRequest(NamedList<Object> args) throws Exception {
+    args.add(HttpShardHandlerFactory.INIT_LATENCY_AWARE_SELECTION, true);
+    args.add(HttpClientUtil.PROP_SO_TIMEOUT, 30000);
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    // one replica takes the requests and never answers, the other answers right away
+    final List<Socket> stalled = new CopyOnWriteArrayList<>();
+    final ServerSocket stalling = new ServerSocket(0);
+    final ServerSocket answering = new ServerSocket(0);
+    Thread stallingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            stalled.add(stalling.accept());
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    };
+    Thread answeringThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            try (Socket socket = answering.accept()) {
+              NamedList<Object> response = new NamedList<>();
+              response.add("answered", "yes");
+              answer(socket, response);
+            }
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    };
+    stallingThread.start();
+    answeringThread.start();
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), args, null));
+      String stallingUrl = "http://127.0.0.1:" + stalling.getLocalPort() + "/solr";
+      String answeringUrl = "http://127.0.0.1:" + answering.getLocalPort() + "/solr";
+      // the stalling replica was the fastest so far, so it is queried first
+      for (int i = 0; i < HttpShardHandlerFactory.ReplicaStats.MIN_SAMPLES; i++) {
+        respond(factory, stallingUrl, 10);
+        respond(factory, answeringUrl, 50);
+      }
+
+      ShardHandler shardHandler = factory.getShardHandler();
+      ShardRequest sreq = new ShardRequest();
+      String shard = stallingUrl.substring("http://".length()) + "|" + answeringUrl.substring("http://".length());
+      sreq.actualShards = new String[] {shard};
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set(ShardParams.SHARDS_HEDGE, true);
+      shardHandler.submit(sreq, shard, params);
+      ShardResponse rsp = shardHandler.takeCompletedOrError();
+      assertNull(String.valueOf(rsp.getException()), rsp.getException());
+      assertEquals(answeringUrl, rsp.getShardAddress());
+      assertEquals("yes", rsp.getSolrResponse().getResponse().get("answered"));
+      assertTrue(rsp.getSolrResponse().getElapsedTime() < 30000);
+      assertEquals(1, stalled.size());
+
+      // the request to the stalling replica was aborted: its connection is closed
+      Socket socket = stalled.get(0);
+      socket.setSoTimeout(10000);
+      InputStream in = socket.getInputStream();
+      while (in.read() >= 0) {
+        // the request
+      }
+      HttpShardHandlerFactory.ReplicaStats stats = factory.getReplicaStats(stallingUrl);
+      for (int i = 0; i < 100 && stats.outstanding.get() > 0; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(0, stats.outstanding.get());
+    } finally {
+      stalling.close();
+      answering.close();
+      for (Socket socket : stalled) {
+        socket.close();
+      }
+      factory.close();
+      stallingThread.join();
+      answeringThread.join();
+    }
+  }
+
+  public void testResponseCache() throws Exception {
+    NamedList<Object> args = new NamedList<>();
+    args.add(HttpShardHandlerFactory.INIT_RESPONSE_CACHE_SIZE, 10);
+    args.add(HttpShardHandlerFactory.INIT_RESPONSE_CACHE_MAX_AGE, 60000);
+    args.add(HttpShardHandlerFactory.INIT_RESPONSE_CACHE_MAX_RAM_MB, 1);
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    // answers with the index version it is set to, and counts the searches and the version probes
+    final AtomicLong indexVersion = new AtomicLong(1);
+    final AtomicInteger searches = new AtomicInteger();
+    final AtomicInteger probes = new AtomicInteger();
+    final AtomicBoolean versionsAsked = new AtomicBoolean();
+    final ServerSocket server = new ServerSocket(0);
+    Thread serverThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            try (Socket socket = server.accept()) {
+              String request = readRequest(socket);
+              NamedList<Object> header = new NamedList<>();
+              NamedList<Object> response = new NamedList<>();
+              response.add("responseHeader", header);
+              if (request.startsWith("POST /solr/admin/luke ")) {
+                probes.incrementAndGet();
+                NamedList<Object> index = new NamedList<>();
+                index.add("version", indexVersion.get());
+                response.add("index", index);
+              } else {
+                // only a request whose response may be cached asks for the index version
+                boolean asked = request.contains(ShardParams.SHARDS_INDEX_VERSION + "=true");
+                versionsAsked.set(asked);
+                if (asked) {
+                  header.add(QueryComponent.INDEX_VERSION, indexVersion.get());
+                }
+                response.add("answered", String.valueOf(searches.incrementAndGet()));
+                if (request.contains("q=big")) {
+                  char[] padding = new char[200 * 1024];
+                  Arrays.fill(padding, 'x');
+                  response.add("padding", new String(padding));
+                }
+              }
+              writeResponse(socket, response);
+            }
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    };
+    serverThread.start();
+    try {
+      factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), args, null));
+      String shard = "127.0.0.1:" + server.getLocalPort() + "/solr";
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set("q", "*:*");
+
+      assertEquals("1", request(factory, shard, params).get("answered"));
+      assertEquals(1, searches.get());
+      assertTrue(versionsAsked.get());
+      // the same request, at another time, is answered from the cache once the replica tells its
+      // index didn't change: with a copy of the response
+      params.set("NOW", 12345);
+      NamedList<Object> response = request(factory, shard, params);
+      assertEquals("1", response.get("answered"));
+      assertEquals(1, searches.get());
+      assertEquals(1, probes.get());
+      response.remove("answered");
+      assertEquals("1", request(factory, shard, params).get("answered"));
+      assertEquals(1, searches.get());
+      assertEquals(2, probes.get());
+
+      // unless asked not to
+      params.set(ShardParams.SHARDS_CACHE, false);
+      request(factory, shard, params);
+      assertEquals(2, searches.get());
+      assertFalse(versionsAsked.get());
+      params.remove(ShardParams.SHARDS_CACHE);
+
+      // or if it depends on the time it is run
+      params.set("fq", "timestamp:[NOW-1DAY TO *]");
+      request(factory, shard, params);
+      request(factory, shard, params);
+      assertEquals(4, searches.get());
+      params.remove("fq");
+
+      // the index changes, and nothing else queries the replica: the probe sees it
+      indexVersion.set(2);
+      assertEquals("5", request(factory, shard, params).get("answered"));
+      assertEquals(5, searches.get());
+      assertEquals(3, probes.get());
+      assertEquals("5", request(factory, shard, params).get("answered"));
+      assertEquals(5, searches.get());
+      assertEquals(4, probes.get());
+
+      // once a response shows the index changed, what was cached before isn't even probed
+      indexVersion.set(3);
+      params.set("q", "id:1");
+      request(factory, shard, params);
+      assertEquals(6, searches.get());
+      params.set("q", "*:*");
+      assertEquals("7", request(factory, shard, params).get("answered"));
+      assertEquals(7, searches.get());
+      assertEquals(4, probes.get());
+
+      // what is cached for one user isn't for another
+      final Principal alice = new Principal() {
+        @Override
+        public String getName() {
+          return "alice";
+        }
+      };
+      SolrQueryRequest req = new LocalSolrQueryRequest(null, new ModifiableSolrParams()) {
+        @Override
+        public Principal getUserPrincipal() {
+          return alice;
+        }
+      };
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+      try {
+        assertEquals("8", request(factory, shard, params).get("answered"));
+        assertEquals("8", request(factory, shard, params).get("answered"));
+      } finally {
+        SolrRequestInfo.clearRequestInfo();
+      }
+      assertEquals("7", request(factory, shard, params).get("answered"));
+      assertEquals(8, searches.get());
+
+      // a response that would take much of the cache isn't cached
+      params.set("q", "big");
+      request(factory, shard, params);
+      request(factory, shard, params);
+      assertEquals(10, searches.get());
+    } finally {
+      server.close();
+      factory.close();
+      serverThread.join();
+    }
+  }
+
+  private static NamedList<Object> request(HttpShardHandlerFactory factory, String shard, ModifiableSolrParams params) {
+    ShardHandler shardHandler = factory.getShardHandler();
+    ShardRequest sreq = new ShardRequest();
+    sreq.purpose = ShardRequest.PURPOSE_GET_TOP_IDS;
+    sreq.actualShards = new String[] {shard};
+    shardHandler.submit(sreq, shard, new ModifiableSolrParams(params));
+    ShardResponse rsp = shardHandler.takeCompletedOrError();
+    assertNull(String.valueOf(rsp.getException()), rsp.getException());
+    return rsp.getSolrResponse().getResponse();
+  }
+
+  private static void respond(HttpShardHandlerFactory factory, String url, long millis) {
+    long start = factory.requestStarted(url);
+    factory.requestFinished(url, start - TimeUnit.MILLISECONDS.toNanos(millis), true);
+  }
+
+  /** Reads the http request, and answers it with the given response in javabin */
+  private static void answer(Socket socket, NamedList<Object> response) throws IOException {
+    readRequest(socket);
+    writeResponse(socket, response);
+  }
+
+  /** Reads the http request, and returns its request line and headers, followed by its body */
+  private static String readRequest(Socket socket) throws IOException {
+    InputStream in = socket.getInputStream();
+    StringBuilder headers = new StringBuilder();
+    while (!headers.toString().endsWith("\r\n\r\n")) {
+      int b = in.read();
+      if (b < 0) return "";
+      headers.append((char) b);
+    }
+    int contentLength = 0;
+    for (String header : headers.toString().split("\r\n")) {
+      if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+        contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+      }
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (int i = 0; i < contentLength; i++) {
+      int b = in.read();
+      if (b < 0) break;
+      body.write(b);
+    }
+    return headers + new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void writeResponse(Socket socket, NamedList<Object> response) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(response, body);
+    OutputStream out = socket.getOutputStream();
+    out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + body.size()
+        + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    body.writeTo(out);
+    out.flush();
+  }
+}
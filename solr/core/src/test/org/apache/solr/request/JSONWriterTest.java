@@ -27,6 +27,7 @@ import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.ByteArrayUtf8CharSequence;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.search.ReturnFields;
 import org.apache.solr.response.JSONResponseWriter;
@@ -94,9 +95,11 @@ public class JSONWriterTest extends SolrTestCaseJ4 {
     rsp.add("byte", Byte.valueOf((byte)-3));
     rsp.add("short", Short.valueOf((short)-4));
     rsp.add("bytes", "abc".getBytes(StandardCharsets.UTF_8));
+    byte[] utf8 = "xa\u00e9\"cx".getBytes(StandardCharsets.UTF_8);
+    rsp.add("utf8", new ByteArrayUtf8CharSequence(utf8, 1, utf8.length - 2));
 
     w.write(buf, req, rsp);
-    jsonEq("{\"nl\":[[\"data1\",\"he\\u2028llo\\u2029!\"],[null,42]],\"byte\":-3,\"short\":-4,\"bytes\":\"YWJj\"}", buf.toString());
+    jsonEq("{\"nl\":[[\"data1\",\"he\\u2028llo\\u2029!\"],[null,42]],\"byte\":-3,\"short\":-4,\"bytes\":\"YWJj\",\"utf8\":\"a\u00e9\\\"c\"}", buf.toString());
     req.close();
   }
 
@@ -23,11 +23,15 @@ import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.util.RefCounted;
 import org.junit.BeforeClass;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 public class DocValuesTest extends SolrTestCaseJ4 {
 
@@ -244,6 +248,54 @@ public class DocValuesTest extends SolrTestCaseJ4 {
         "//lst[@name='datedv']/lst[@name='1905-12-31T23:59:59.999Z']/long[@name='count'][.='8']");
   }
   
+  public void testDocValuesAsStored() throws Exception {
+    assertU(adoc("id", "1", "floatdvs", "2.5", "intdvs", "3", "doubledvs", "-4.5", "longdvs", "5",
+        "datedvs", "1995-12-31T23:59:59.999Z", "stringdvs", "b"));
+    assertU(adoc("id", "2", "intdvs", "-7"));
+    assertU(commit());
+    assertU(adoc("id", "3", "longdvs", "9223372036854775807", "stringdvs", "c"));
+    assertU(commit());
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertTrue(searcher.canUseDocValuesAsStored(new HashSet<>(Arrays.asList("intdvs", "stringdvs", "datedvs"))));
+      // the uniqueKey has no docValues, and the other docValues fields are not stored
+      assertFalse(searcher.canUseDocValuesAsStored(new HashSet<>(Arrays.asList("intdvs", "id"))));
+      assertFalse(searcher.canUseDocValuesAsStored(Collections.singleton("intdv")));
+      assertFalse(searcher.canUseDocValuesAsStored(Collections.singleton("nosuchfield")));
+    } finally {
+      req.close();
+    }
+
+    String allFields = "floatdvs,intdvs,doubledvs,longdvs,datedvs,stringdvs";
+    assertQ(req("q", "*:*", "sort", "id desc", "fl", allFields + ",score"),
+        "//*[@numFound='3']",
+        "//result/doc[1]/long[@name='longdvs'][.='9223372036854775807']",
+        "//result/doc[1]/str[@name='stringdvs'][.='c']",
+        "count(//result/doc[1]/*)=3",
+        "//result/doc[2]/int[@name='intdvs'][.='-7']",
+        "count(//result/doc[2]/*)=2",
+        "//result/doc[3]/float[@name='floatdvs'][.='2.5']",
+        "//result/doc[3]/int[@name='intdvs'][.='3']",
+        "//result/doc[3]/double[@name='doubledvs'][.='-4.5']",
+        "//result/doc[3]/long[@name='longdvs'][.='5']",
+        "//result/doc[3]/date[@name='datedvs'][.='1995-12-31T23:59:59.999Z']",
+        "//result/doc[3]/str[@name='stringdvs'][.='b']",
+        "count(//result/doc[3]/*)=7"
+    );
+
+    // the same docs from the stored fields, since the uniqueKey isn't read from docValues
+    assertQ(req("q", "*:*", "sort", "id desc", "fl", "id," + allFields),
+        "//*[@numFound='3']",
+        "//result/doc[1]/long[@name='longdvs'][.='9223372036854775807']",
+        "count(//result/doc[1]/*)=3",
+        "count(//result/doc[2]/*)=2",
+        "//result/doc[3]/date[@name='datedvs'][.='1995-12-31T23:59:59.999Z']",
+        "count(//result/doc[3]/*)=7"
+    );
+  }
+
   /** Tests the ability to do basic queries (without scoring, just match-only) on
    *  docvalues fields that are not inverted (indexed "forward" only)
    */
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.FacetComponent;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.request.SimpleFacets;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.After;
+import org.junit.BeforeClass;
+
+public class TestCancellableQueries extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @After
+  public void resetLimits() {
+    SolrQueryTimeoutImpl.reset();
+  }
+
+  public void testRegister() {
+    CancellableQueries queries = new CancellableQueries();
+    AtomicBoolean cancelled = queries.register("q1");
+    try {
+      queries.register("q1");
+      fail("the same id can't be used by two running requests");
+    } catch (SolrException e) {
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+    assertEquals(Collections.singletonList("q1"), queries.getQueryIds());
+
+    assertFalse(queries.cancel("q2"));
+    assertFalse(cancelled.get());
+    assertTrue(queries.cancel("q1"));
+    assertTrue(cancelled.get());
+
+    queries.unregister("q1", cancelled);
+    assertTrue(queries.getQueryIds().isEmpty());
+    assertFalse(queries.cancel("q1"));
+  }
+
+  public void testExitIfNeeded() throws Exception {
+    // no limits
+    SolrQueryTimeoutImpl.exitIfNeeded();
+    assertFalse(SolrQueryTimeoutImpl.isCancellable());
+
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    SolrQueryTimeoutImpl.setCancelled(cancelled);
+    assertTrue(SolrQueryTimeoutImpl.isCancellable());
+    SolrQueryTimeoutImpl.exitIfNeeded();
+
+    cancelled.set(true);
+    try {
+      SolrQueryTimeoutImpl.exitIfNeeded();
+      fail("the request was cancelled");
+    } catch (SolrQueryTimeoutImpl.ExitingQueryException e) {
+      assertTrue(SolrQueryTimeoutImpl.isExit(e));
+    }
+
+    Callable<Boolean> shouldExit = SolrQueryTimeoutImpl.propagate(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return SolrQueryTimeoutImpl.getInstance().shouldExit();
+      }
+    });
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertTrue(executor.submit(shouldExit).get());
+      // the limits don't stay behind in the threads that ran the work of the request
+      assertFalse(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return SolrQueryTimeoutImpl.isCancellable();
+        }
+      }).get());
+    } finally {
+      executor.shutdown();
+    }
+    // and are left as they were when the work runs in the thread of the request
+    assertTrue(shouldExit.call());
+    assertSame(cancelled, SolrQueryTimeoutImpl.cancelled.get());
+  }
+
+  public void testCancelledCollectionAndFacets() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1", "a_s", "x", "b_s", "y"));
+    assertU(adoc("id", "2", "a_s", "x", "b_s", "z"));
+    assertU(adoc("id", "3", "a_s", "w", "b_s", "z"));
+    assertU(commit());
+
+    SolrQueryRequest req = req("q", "*:*", "facet", "true", "facet.field", "a_s", "facet.field", "b_s",
+        "facet.query", "b_s:z", "facet.threads", random().nextBoolean() ? "2" : "0");
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      DocSet all = searcher.getDocSet(new MatchAllDocsQuery());
+      ResponseBuilder rb = new ResponseBuilder(req, new SolrQueryResponse(), Collections.<SearchComponent>emptyList());
+      FacetComponent.FacetContext.initContext(rb);
+      AtomicBoolean cancelled = new AtomicBoolean();
+      SolrQueryTimeoutImpl.setCancelled(cancelled);
+
+      SimpleFacets facets = new SimpleFacets(req, all, req.getParams(), rb);
+      NamedList<Object> counts = FacetComponent.getFacetCounts(facets);
+      assertFalse(facets.isPartialResults());
+      assertEquals(2, ((NamedList) counts.get("facet_fields")).size());
+
+      cancelled.set(true);
+
+      SolrIndexSearcher.QueryCommand cmd = new SolrIndexSearcher.QueryCommand();
+      cmd.setQuery(new MatchAllDocsQuery()).setLen(10)
+          .setFlags(SolrIndexSearcher.NO_CHECK_QCACHE | SolrIndexSearcher.NO_SET_QCACHE);
+      SolrIndexSearcher.QueryResult qr = searcher.search(new SolrIndexSearcher.QueryResult(), cmd);
+      assertTrue(qr.isPartialResults());
+      assertEquals(0, qr.getDocList().matches());
+
+      facets = new SimpleFacets(req, all, req.getParams(), rb);
+      counts = FacetComponent.getFacetCounts(facets);
+      assertTrue(facets.isPartialResults());
+      // every kind of facet is there, with what could be counted
+      assertEquals(0, ((NamedList) counts.get("facet_queries")).size());
+      assertEquals(0, ((NamedList) counts.get("facet_fields")).size());
+      assertNotNull(counts.get("facet_ranges"));
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testRunningQueriesHandler() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1", "a_s", "x"));
+    assertU(commit());
+
+    // a request with an id runs as usual, and is forgotten once it is done
+    assertQ(req("q", "*:*", "queryId", "q1", "facet", "true", "facet.field", "a_s"),
+        "//result[@numFound='1']",
+        "//lst[@name='a_s']/int[@name='x'][.='1']",
+        "not(//bool[@name='partialResults'])");
+    assertQ(req("qt", "/admin/queries"),
+        "count(//arr[@name='queryIds']/str)=0");
+    assertQ(req("qt", "/admin/queries", "cancel", "q1"),
+        "//lst[@name='cancelled']/bool[@name='q1'][.='false']");
+
+    AtomicBoolean cancelled = h.getCore().getCancellableQueries().register("q2");
+    try {
+      assertQ(req("qt", "/admin/queries", "cancel", "q2"),
+          "//lst[@name='cancelled']/bool[@name='q2'][.='true']",
+          "//arr[@name='queryIds']/str[.='q2']");
+    } finally {
+      h.getCore().getCancellableQueries().unregister("q2", cancelled);
+    }
+    assertTrue(cancelled.get());
+    assertQ(req("qt", "/admin/queries"),
+        "count(//arr[@name='queryIds']/str)=0");
+  }
+}
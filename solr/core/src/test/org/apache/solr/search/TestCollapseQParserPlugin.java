@@ -211,12 +211,49 @@ public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
 
   @Test
   public void testStringCollapse() throws Exception {
-    for (final String hint : new String[] {"", " hint="+CollapsingQParserPlugin.HINT_TOP_FC}) {
+    for (final String hint : new String[] {"", " hint="+CollapsingQParserPlugin.HINT_TOP_FC, " threads=2", " threads=-1"}) {
       testCollapseQueries("group_s", hint, false);
       testCollapseQueries("group_s_dv", hint, false);
     }
   }
 
+  @Test
+  public void testSparseGroupHeads() throws Exception {
+    // 64 groups over 4 segments, the best doc of every group is in the last segment
+    for (int seg = 0; seg < 4; seg++) {
+      for (int group = 0; group < 64; group++) {
+        String id = Integer.toString(seg * 64 + group);
+        assertU(adoc("id", id, "group_s", "group" + group, "test_ti", id));
+      }
+      assertU(commit());
+    }
+
+    final int sparseHeadsMinValueCount = CollapsingQParserPlugin.sparseHeadsMinValueCount;
+    CollapsingQParserPlugin.sparseHeadsMinValueCount = 0;
+    try {
+      for (final String threads : new String[] {"", " threads=2"}) {
+        // a few groups are hit, the heads stay in the hash table
+        assertQ(req("q", "{!func}field(test_ti)",
+                    "fq", "group_s:(group1 OR group2 OR group3)",
+                    "fq", "{!collapse field=group_s" + threads + "}"),
+                "*[count(//doc)=3]",
+                "//result/doc[1]/float[@name='id'][.='195.0']",
+                "//result/doc[2]/float[@name='id'][.='194.0']",
+                "//result/doc[3]/float[@name='id'][.='193.0']");
+
+        // all groups are hit, the heads move to arrays along the way
+        assertQ(req("q", "{!func}field(test_ti)",
+                    "fq", "{!collapse field=group_s" + threads + "}",
+                    "rows", "64"),
+                "*[count(//doc)=64]",
+                "//result/doc[1]/float[@name='id'][.='255.0']",
+                "//result/doc[64]/float[@name='id'][.='192.0']");
+      }
+    } finally {
+      CollapsingQParserPlugin.sparseHeadsMinValueCount = sparseHeadsMinValueCount;
+    }
+  }
+
   @Test
   public void testNumericCollapse() throws Exception {
     final String hint = "";
@@ -88,6 +88,22 @@ public class TestDocSet extends LuceneTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getOffHeapBitDocSet(FixedBitSet bs) {
+    return new OffHeapBitDocSet(bs, -1);
+  }
+
+  public DocSet getRoaringDocSet(FixedBitSet bs) {
+    if (rand.nextBoolean()) {
+      return RoaringDocSet.fromBits(bs);
+    }
+    int[] docs = new int[bs.cardinality()];
+    BitSetIterator iter = new BitSetIterator(bs, 0);
+    for (int i=0; i<docs.length; i++) {
+      docs[i] = iter.nextDoc();
+    }
+    return RoaringDocSet.fromSortedDocs(docs, docs.length);
+  }
+
   public DocSet getDocSlice(FixedBitSet bs) {
     int len = bs.cardinality();
     int[] arr = new int[len+5];
@@ -106,7 +122,7 @@ public class TestDocSet extends LuceneTestCase {
 
 
   public DocSet getDocSet(FixedBitSet bs) {
-    switch(rand.nextInt(10)) {
+    switch(rand.nextInt(12)) {
       case 0: return getHashDocSet(bs);
 
       case 1: return getBitDocSet(bs);
@@ -120,6 +136,10 @@ public class TestDocSet extends LuceneTestCase {
       case 8: return getIntDocSet(bs);
 
       case 9: return getDocSlice(bs);
+
+      case 10: return getOffHeapBitDocSet(bs);
+
+      case 11: return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -131,6 +151,16 @@ public class TestDocSet extends LuceneTestCase {
     assertEquals(bs.cardinality(), set.size());
   }
 
+  /** Unlike checkEqual, checks every doc of the set */
+  public void checkEqualAll(FixedBitSet bs, DocSet set) {
+    assertEquals(bs.cardinality(), set.size());
+    for (DocIterator iter = set.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      assertTrue(doc < bs.length() && bs.get(doc));
+      assertTrue(set.exists(doc));
+    }
+  }
+
   public void iter(DocSet d1, DocSet d2) {
     // HashDocSet and DocList doesn't iterate in order.
     if (d1 instanceof HashDocSet || d2 instanceof HashDocSet || d1 instanceof DocList || d2 instanceof DocList) return;
@@ -195,6 +225,85 @@ public class TestDocSet extends LuceneTestCase {
     // doMany(130, 1000000);
   }
 
+  /** Sets spanning several roaring containers, mixing sparse chunks, dense chunks and runs */
+  public FixedBitSet getRandomChunkedSet(int sz) {
+    FixedBitSet bs = new FixedBitSet(sz);
+    for (int start = 0; start < sz; start += 1 << 16) {
+      int end = Math.min(sz, start + (1 << 16));
+      switch (rand.nextInt(4)) {
+        case 0: // empty
+          break;
+        case 1: // sparse
+          for (int i = rand.nextInt(5000); i >= 0; i--) bs.set(start + rand.nextInt(end - start));
+          break;
+        case 2: // dense
+          for (int i = rand.nextInt(50000); i >= 0; i--) bs.set(start + rand.nextInt(end - start));
+          break;
+        case 3: // runs
+          for (int i = rand.nextInt(20); i >= 0; i--) {
+            int from = start + rand.nextInt(end - start);
+            bs.set(from, Math.min(end, from + rand.nextInt(10000) + 1));
+          }
+          break;
+      }
+    }
+    return bs;
+  }
+
+  public void testOffHeapBitDocSetExists() {
+    int sz = rand.nextInt(1000) + 1;
+    FixedBitSet bs = getRandomSet(sz, rand.nextInt(sz + 1));
+    DocSet set = getOffHeapBitDocSet(bs);
+    for (int doc = 0; doc < sz; doc++) {
+      assertEquals(bs.get(doc), set.exists(doc));
+    }
+    // a doc past the end of the set is a bug of the caller, not a doc that isn't in the set
+    boolean failed = false;
+    try {
+      set.exists(sz);
+    } catch (AssertionError e) {
+      failed = true;
+    }
+    assertTrue(failed);
+  }
+
+  public void testRoaringDocSet() {
+    for (int iter=0; iter<30; iter++) {
+      int sz = rand.nextInt(400000) + 1;
+      FixedBitSet bs1 = getRandomChunkedSet(sz);
+      FixedBitSet bs2 = getRandomChunkedSet(sz);
+
+      DocSet a1 = new BitDocSet(bs1);
+      DocSet b1 = getRoaringDocSet(bs1);
+      DocSet b2 = getRoaringDocSet(bs2);
+      DocSet[] others = {b2, new BitDocSet(bs2), getIntDocSet(bs2), getOffHeapBitDocSet(bs2)};
+
+      checkEqualAll(bs1, b1);
+      iter(a1, b1);
+      FixedBitSet bits = ((DocSetBase) b1).getBits();
+      assertEquals(bs1.cardinality(), bits.cardinality());
+      assertTrue(bits.length() >= sz || bs1.nextSetBit(bits.length()) == DocIdSetIterator.NO_MORE_DOCS);
+      assertTrue(b1.ramBytesUsed() > 0);
+
+      FixedBitSet a_and = bs1.clone(); a_and.and(bs2);
+      FixedBitSet a_or = bs1.clone(); a_or.or(bs2);
+      FixedBitSet a_andn = bs1.clone(); a_andn.andNot(bs2);
+
+      for (DocSet b : others) {
+        checkEqualAll(a_and, b1.intersection(b));
+        checkEqualAll(a_and, b.intersection(b1));
+        checkEqualAll(a_or, b1.union(b));
+        checkEqualAll(a_andn, b1.andNot(b));
+
+        assertEquals(a_and.cardinality(), b1.intersectionSize(b));
+        assertEquals(a_and.cardinality(), b.intersectionSize(b1));
+        assertEquals(a_and.cardinality() > 0, b1.intersects(b));
+        assertEquals(a_or.cardinality(), b1.unionSize(b));
+        assertEquals(a_andn.cardinality(), b1.andNotSize(b));
+      }
+    }
+  }
+
   public DocSet getRandomDocSet(int n, int maxDoc) {
     FixedBitSet obs = new FixedBitSet(maxDoc);
     int[] a = new int[n];
@@ -493,7 +602,12 @@ public class TestDocSet extends LuceneTestCase {
   public void doFilterTest(IndexReader reader) throws IOException {
     IndexReaderContext topLevelContext = reader.getContext();
     FixedBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc()+1));
-    DocSet a = new BitDocSet(bs);
+    DocSet a;
+    switch (rand.nextInt(3)) {
+      case 0: a = new BitDocSet(bs); break;
+      case 1: a = getOffHeapBitDocSet(bs); break;
+      default: a = getRoaringDocSet(bs); break;
+    }
     DocSet b = getIntDocSet(bs);
 
     Filter fa = a.getTopFilter();
@@ -536,5 +650,11 @@ public class TestDocSet extends LuceneTestCase {
       IndexReader r = dummyMultiReader(maxSeg, maxDoc);
       doFilterTest(r);
     }
+
+    // segments spanning several roaring containers
+    for (int i=0; i<20; i++) {
+      IndexReader r = dummyMultiReader(maxSeg, 200000);
+      doFilterTest(r);
+    }
   }
 }
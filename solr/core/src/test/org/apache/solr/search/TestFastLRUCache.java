@@ -16,13 +16,17 @@
  */
 package org.apache.solr.search;
 
+import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLRUCache;
 import org.apache.solr.util.RTimer;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -217,6 +221,66 @@ public class TestFastLRUCache extends LuceneTestCase {
     scNew.close();
   }
 
+  public void testMaxRamSize() throws Exception {
+    FastLRUCache<String, Accountable> cache = new FastLRUCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "5");
+    params.put("maxRamMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    long baseSize = cache.ramBytesUsed();
+    cache.put("1", accountable(512 * 1024));
+    assertEquals(1, cache.size());
+    assertTrue(cache.ramBytesUsed() > baseSize + 512 * 1024);
+    cache.put("2", accountable(512 * 1024));
+    // going over 1MB brings the cache back under 90% of it by evicting the oldest entry
+    assertEquals(1, cache.size());
+    assertNull(cache.get("1"));
+    assertNotNull(cache.get("2"));
+    assertTrue(cache.ramBytesUsed() < 1024 * 1024);
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(1L, nl.get("evictionsRamUsage"));
+    assertEquals(1L, nl.get("maxRamMB"));
+    cache.put("3", accountable(1024));
+    assertEquals(2, cache.size());
+    nl = cache.getStatistics();
+    assertEquals(1L, nl.get("evictionsRamUsage"));
+
+    cache.clear();
+    assertEquals(baseSize, cache.ramBytesUsed());
+    cache.close();
+  }
+
+  public void testNonAccountableValues() throws Exception {
+    FastLRUCache<String, String> cache = new FastLRUCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "5");
+    params.put("maxRamMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    try {
+      cache.put("1", "1");
+      fail("Adding a non-accountable value to a cache configured with maxRamMB should have failed");
+    } catch (SolrException e) {
+      // expected
+    }
+    cache.close();
+  }
+
+  private static Accountable accountable(final long ramBytes) {
+    return new Accountable() {
+      @Override
+      public long ramBytesUsed() {
+        return ramBytes;
+      }
+
+      @Override
+      public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+      }
+    };
+  }
+
   public void testOldestItems() {
     ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(100, 90);
     for (int i = 0; i < 50; i++) {
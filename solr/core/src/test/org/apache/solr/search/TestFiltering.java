@@ -24,6 +24,7 @@ import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -34,9 +35,15 @@ public class TestFiltering extends SolrTestCaseJ4 {
   @BeforeClass
   public static void beforeTests() throws Exception {
     System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    System.setProperty("solr.filterCache.offHeap", Boolean.toString(random().nextBoolean()));
     initCore("solrconfig.xml","schema12.xml");
   }
 
+  @AfterClass
+  public static void afterTests() {
+    System.clearProperty("solr.filterCache.offHeap");
+  }
+
 
   public void testCaching() throws Exception {
     clearIndex();
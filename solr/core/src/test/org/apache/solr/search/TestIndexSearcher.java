@@ -17,14 +17,17 @@
 package org.apache.solr.search;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
@@ -164,6 +167,52 @@ public class TestIndexSearcher extends SolrTestCaseJ4 {
     sr6.close();
   }
 
+  public void testReadDocs() throws Exception {
+    // several segments, with several docs per stored fields block
+    for (int i = 0; i < 30; i++) {
+      assertU(adoc("id", Integer.toString(i), "v_t", "doc " + i, "v_s", "s" + i));
+      if (i % 10 == 9) assertU(commit());
+    }
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      int[] ids = new int[searcher.maxDoc() + 2];
+      for (int i = 0; i < searcher.maxDoc(); i++) {
+        ids[i] = i;
+      }
+      // the same docs more than once, and in no particular order
+      ids[ids.length - 2] = 3;
+      ids[ids.length - 1] = 17;
+      for (int i = ids.length - 1; i > 0; i--) {
+        int j = random().nextInt(i + 1);
+        int tmp = ids[i];
+        ids[i] = ids[j];
+        ids[j] = tmp;
+      }
+
+      Set<String> fields = random().nextBoolean() ? null : Collections.singleton("id");
+      Document[] docs = new Document[ids.length];
+      searcher.readDocs(docs, ids, fields);
+      for (int i = 0; i < ids.length; i++) {
+        Document expected = searcher.getIndexReader().document(ids[i]);
+        assertEquals(expected.get("id"), docs[i].get("id"));
+        assertEquals(expected.get("v_t"), docs[i].get("v_t"));
+        assertEquals(expected.get("v_s"), docs[i].get("v_s"));
+        // the docs that were read are in the documentCache
+        assertSame(docs[i], searcher.doc(ids[i], fields));
+      }
+    } finally {
+      req.close();
+    }
+
+    // the docs of a response are read in batches, but written in order
+    assertQ(req("q","*:*", "rows","30", "sort","id desc", "fl","id,v_s"), "*[count(//doc)=30]",
+        "//result/doc[1]/arr[@name='v_s']/str[.='s29']", "//result/doc[17]/arr[@name='v_s']/str[.='s13']",
+        "//result/doc[30]/arr[@name='v_s']/str[.='s0']");
+  }
+
+
 
   // make sure we don't leak searchers (SOLR-3391)
   public void testCloses() {
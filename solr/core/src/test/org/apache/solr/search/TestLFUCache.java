@@ -17,7 +17,9 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.Accountable;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLFUCache;
@@ -27,6 +29,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -189,6 +194,62 @@ public class TestLFUCache extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testMaxRamSize() throws Exception {
+    LFUCache<String, Accountable> cache = new LFUCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "5");
+    params.put("maxRamMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    try {
+      long baseSize = cache.ramBytesUsed();
+      cache.put("1", accountable(512 * 1024));
+      for (int i = 0; i < 3; i++) {
+        assertNotNull(cache.get("1"));
+      }
+      cache.put("2", accountable(512 * 1024));
+      // going over 1MB brings the cache back under 90% of it by evicting the least used entry
+      assertEquals(1, cache.size());
+      assertNotNull(cache.get("1"));
+      assertNull(cache.get("2"));
+      assertTrue(cache.ramBytesUsed() < 1024 * 1024);
+      NamedList<Serializable> nl = cache.getStatistics();
+      assertEquals(1L, nl.get("evictions"));
+      assertEquals(1L, nl.get("evictionsRamUsage"));
+
+      cache.clear();
+      assertEquals(baseSize, cache.ramBytesUsed());
+
+      LFUCache<String, String> nonAccountable = new LFUCache<>();
+      nonAccountable.init(params, null, new NoOpRegenerator());
+      try {
+        nonAccountable.put("1", "1");
+        fail("Adding a non-accountable value to a cache configured with maxRamMB should have failed");
+      } catch (SolrException e) {
+        // expected
+      } finally {
+        nonAccountable.close();
+      }
+    } finally {
+      cache.close();
+    }
+  }
+
+  private static Accountable accountable(final long ramBytes) {
+    return new Accountable() {
+      @Override
+      public long ramBytesUsed() {
+        return ramBytes;
+      }
+
+      @Override
+      public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+      }
+    };
+  }
+
   @Test
   public void testItemOrdering() {
     ConcurrentLFUCache<Integer, String> cache = new ConcurrentLFUCache<>(100, 90);
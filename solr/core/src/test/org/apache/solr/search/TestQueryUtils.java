@@ -23,6 +23,7 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.index.Term;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.util.AbstractSolrTestCase;
 import org.junit.BeforeClass;
 
@@ -287,5 +288,29 @@ public class TestQueryUtils extends AbstractSolrTestCase {
             );
   }
 
+  public void testSegmentLocal() throws Exception {
+    TermQuery tq = new TermQuery(new Term("hi","there"));
+    assertTrue(QueryUtils.isSegmentLocal(tq));
+    assertTrue(QueryUtils.isSegmentLocal(new WrappedQuery(tq)));
+
+    BooleanQuery.Builder bq = new BooleanQuery.Builder();
+    bq.add(tq, BooleanClause.Occur.MUST);
+    bq.add(new TermQuery(new Term("wow","dude")), BooleanClause.Occur.MUST_NOT);
+    assertTrue(QueryUtils.isSegmentLocal(bq.build()));
+
+    SolrQueryRequest req = req();
+    try {
+      assertTrue(QueryUtils.isSegmentLocal(QParser.getParser("id:[1 TO 5] OR name:a*", null, req).getQuery()));
+      assertFalse(QueryUtils.isSegmentLocal(QParser.getParser("{!join from=id to=id}name:a", null, req).getQuery()));
+      assertFalse(QueryUtils.isSegmentLocal(QParser.getParser("{!frange l=1}ord(name)", null, req).getQuery()));
+
+      // a single non local clause is enough
+      bq.add(QParser.getParser("{!join from=id to=id}name:a", null, req).getQuery(), BooleanClause.Occur.SHOULD);
+      assertFalse(QueryUtils.isSegmentLocal(bq.build()));
+    } finally {
+      req.close();
+    }
+  }
+
 
 }
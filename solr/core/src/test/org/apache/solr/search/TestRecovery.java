@@ -60,6 +60,7 @@ public class TestRecovery extends SolrTestCaseJ4 {
   public static void beforeClass() throws Exception {
     savedFactory = System.getProperty("solr.DirectoryFactory");
     System.setProperty("solr.directoryFactory", "org.apache.solr.core.MockFSDirectoryFactory");
+    System.setProperty("solr.ulog.numReplayThreads", Integer.toString(random().nextBoolean() ? 1 : 2 + random().nextInt(3)));
     initCore("solrconfig-tlog.xml","schema15.xml");
   }
   
@@ -70,6 +71,7 @@ public class TestRecovery extends SolrTestCaseJ4 {
     } else {
       System.setProperty("solr.directoryFactory", savedFactory);
     }
+    System.clearProperty("solr.ulog.numReplayThreads");
   }
 
 
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // the sets of a segment are only carried over if it is not merged away
+    System.setProperty("solr.tests.mergePolicy", LogDocMergePolicy.class.getName());
+    initCore("solrconfig-segmentfiltercache.xml","schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.tests.mergePolicy");
+  }
+
+  public void testSegmentFilterCache() throws Exception {
+    assertU(adoc("id","1", "v_t","Hello Dude"));
+    assertU(adoc("id","2", "v_t","Hello Yonik"));
+    assertU(adoc("id","3", "v_t","Bye Yonik"));
+    assertU(commit());
+
+    assertQ(req("q","*:*", "fq","v_t:yonik"), "*[count(//doc)=2]");
+    // more recently used filters, which will be the ones autowarmed in the filterCache
+    assertQ(req("q","*:*", "fq","v_t:hello"), "*[count(//doc)=2]");
+    assertQ(req("q","*:*", "fq","v_t:bye"), "*[count(//doc)=1]");
+    assertQ(req("q","*:*", "fq","v_t:dude"), "*[count(//doc)=1]");
+    NamedList stats = h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+    assertEquals(4L, stats.get("inserts"));
+    assertEquals(0L, stats.get("hits"));
+
+    // a new segment, plus a deletion in the old one
+    assertU(adoc("id","4", "v_t","Hello again"));
+    assertU(delI("2"));
+    assertU(commit());
+
+    // the set of the old segment was carried over, only the new one is evaluated
+    stats = h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+    long hits = (Long) stats.get("cumulative_hits");
+    long inserts = (Long) stats.get("cumulative_inserts");
+    assertQ(req("q","*:*", "fq","v_t:yonik"), "*[count(//doc)=1]", "//int[@name='id'][.='3']");
+    stats = h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+    assertEquals(hits + 1, ((Long) stats.get("cumulative_hits")).longValue());
+    assertEquals(inserts + 1, ((Long) stats.get("cumulative_inserts")).longValue());
+    assertQ(req("q","*:*", "fq","v_t:hello"), "*[count(//doc)=2]");
+
+    // a query that is not cached doesn't touch the segment cache
+    stats = h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+    long lookups = (Long) stats.get("lookups");
+    assertQ(req("q","*:*", "fq","{!cache=false}v_t:bye"), "*[count(//doc)=1]");
+    stats = h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+    assertEquals(lookups, ((Long) stats.get("lookups")).longValue());
+  }
+}
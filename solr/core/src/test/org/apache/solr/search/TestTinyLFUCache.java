@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+import org.apache.solr.util.RTimer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test for TinyLFUCache
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ */
+public class TestTinyLFUCache extends LuceneTestCase {
+
+  public void testSimple() throws IOException {
+    TinyLFUCache sc = new TinyLFUCache();
+    Map l = new HashMap();
+    l.put("size", "100");
+    l.put("initialSize", "10");
+    l.put("autowarmCount", "25");
+    l.put("segments", "4");
+    CacheRegenerator cr = new NoOpRegenerator();
+    Object o = sc.init(l, null, cr);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 100; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    assertEquals(100, sc.size());
+    assertEquals("25", sc.get(25));
+    assertEquals(null, sc.get(110));
+    NamedList nl = sc.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(100L, nl.get("inserts"));
+    assertEquals(0L, nl.get("evictions"));
+
+    // make a few entries clearly hotter than the rest
+    for (int i = 0; i < 5; i++) {
+      for (int k = 90; k <= 100; k++) {
+        assertEquals("" + k, sc.get(k));
+      }
+    }
+
+    TinyLFUCache scNew = new TinyLFUCache();
+    scNew.init(l, o, cr);
+    scNew.warm(null, sc);
+    scNew.setState(SolrCache.State.LIVE);
+    sc.close();
+    assertEquals(25, scNew.size());
+    for (int k = 90; k <= 100; k++) {
+      assertEquals("" + k, scNew.get(k));
+    }
+    nl = scNew.getStatistics();
+    assertEquals(11L, nl.get("lookups"));
+    assertEquals(11L, nl.get("hits"));
+    assertEquals(0L, nl.get("inserts"));
+    assertEquals(2L + 55L + 11L, nl.get("cumulative_lookups"));
+    assertEquals(1L + 55L + 11L, nl.get("cumulative_hits"));
+    assertEquals(100L, nl.get("cumulative_inserts"));
+    scNew.close();
+  }
+
+  public void testNoAutowarm() throws IOException {
+    TinyLFUCache<Object, Object> cache = new TinyLFUCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    Object o = cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      cache.put(i + 1, "" + (i + 1));
+    }
+    TinyLFUCache<Object, Object> cacheNew = new TinyLFUCache<>();
+    cacheNew.init(params, o, new NoOpRegenerator());
+    cacheNew.warm(null, cache);
+    cacheNew.setState(SolrCache.State.LIVE);
+    cache.close();
+    assertEquals(0, cacheNew.size());
+    cacheNew.close();
+  }
+
+  public void testBoundedSize() {
+    int sz = random().nextInt(100) + 1;
+    int keyrange = random().nextInt(sz * 3) + 1;
+    int segments = random().nextInt(8) + 1;
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<>(sz, sz, segments, null);
+    for (int i = 0; i < 10000; i++) {
+      int k = random().nextInt(keyrange);
+      if (cache.get(k) == null) {
+        cache.put(k, "" + k);
+      }
+      if (random().nextInt(10) == 0) {
+        cache.remove(random().nextInt(keyrange));
+      }
+      assertTrue(cache.size() <= sz);
+      assertEquals(cache.size(), cache.getStats().getCurrentSize());
+    }
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(0));
+  }
+
+  public void testAdmission() {
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<>(100, 100, 1, null);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "" + i);
+    }
+    // access every resident entry several times
+    for (int j = 0; j < 5; j++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals("" + i, cache.get(i));
+      }
+    }
+    // a stream of one-off keys must not flush the popular entries
+    for (int i = 1000; i < 1200; i++) {
+      assertNull(cache.get(i));
+      cache.put(i, "" + i);
+    }
+    assertEquals(100, cache.size());
+    int survivors = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.get(i) != null) survivors++;
+    }
+    // the sketch is approximate, so allow for a few hash collisions
+    assertTrue("survivors=" + survivors, survivors >= 90);
+    assertTrue(cache.getStats().getCumulativeRejections() >= 190);
+
+    // a key that becomes popular eventually gets in
+    boolean admitted = false;
+    for (int j = 0; j < 20 && !admitted; j++) {
+      if (cache.get(5000) == null) {
+        cache.put(5000, "5000");
+      } else {
+        admitted = true;
+      }
+    }
+    assertTrue(admitted);
+  }
+
+  public void testHottestItems() {
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<>(50, 50, 2, null);
+    for (int i = 0; i < 50; i++) {
+      cache.put(i, "" + i);
+    }
+    for (int i = 0; i < 4; i++) {
+      cache.get(7);
+      cache.get(3);
+    }
+    cache.get(7);
+    Map<Integer, String> m = cache.getHottestItems(2);
+    assertEquals(2, m.size());
+    assertEquals(Integer.valueOf(7), m.keySet().iterator().next());
+    assertNotNull(m.get(3));
+    assertTrue(cache.getHottestItems(0).isEmpty());
+  }
+
+  public void testMaxRamSize() throws Exception {
+    TinyLFUCache<String, Accountable> cache = new TinyLFUCache<>();
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "5");
+    params.put("maxRamMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    long baseSize = cache.ramBytesUsed();
+    // not live yet, so admission is not applied
+    cache.put("1", accountable(256 * 1024));
+    cache.put("2", accountable(256 * 1024));
+    cache.put("3", accountable(256 * 1024));
+    assertEquals(3, cache.size());
+    cache.put("4", accountable(512 * 1024));
+    // two entries had to go to make room
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get("4"));
+    assertTrue(cache.ramBytesUsed() <= baseSize + 1024 * 1024);
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(2L, nl.get("evictions"));
+    assertEquals(2L, nl.get("evictionsRamUsage"));
+    assertEquals(1L, nl.get("maxRamMB"));
+
+    // can never fit
+    cache.put("5", accountable(2 * 1024 * 1024));
+    assertNull(cache.get("5"));
+    assertEquals(2, cache.size());
+
+    cache.clear();
+    assertEquals(baseSize, cache.ramBytesUsed());
+    cache.close();
+
+    TinyLFUCache<String, String> nonAccountable = new TinyLFUCache<>();
+    nonAccountable.init(params, null, new NoOpRegenerator());
+    try {
+      nonAccountable.put("1", "1");
+      fail("Adding a non-accountable value to a cache configured with maxRamMB should have failed");
+    } catch (SolrException e) {
+      // expected
+    }
+    nonAccountable.close();
+  }
+
+  private static Accountable accountable(final long ramBytes) {
+    return new Accountable() {
+      @Override
+      public long ramBytesUsed() {
+        return ramBytes;
+      }
+
+      @Override
+      public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+      }
+    };
+  }
+
+  // returns number of puts
+  int useCache(SolrCache sc, int numGets, int maxKey, int seed) {
+    int ret = 0;
+    Random r = new Random(seed);
+
+    // use like a cache... gets and a put if not found, with a skewed key distribution
+    for (int i=0; i<numGets; i++) {
+      Integer k = (int) (maxKey * Math.pow(r.nextDouble(), 3));
+      Integer v = (Integer)sc.get(k);
+      if (v == null) {
+        sc.put(k, k);
+        ret++;
+      }
+    }
+
+    return ret;
+  }
+
+  void cachePerfTest(final SolrCache sc, final int nThreads, final int numGets, int cacheSize, final int maxKey) {
+    Map l = new HashMap();
+    l.put("size", ""+cacheSize);
+    l.put("initialSize", ""+cacheSize);
+
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+
+    final RTimer timer = new RTimer();
+
+    Thread[] threads = new Thread[nThreads];
+    final AtomicInteger puts = new AtomicInteger(0);
+    for (int i=0; i<threads.length; i++) {
+      final int seed=random().nextInt();
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          int ret = useCache(sc, numGets/nThreads, maxKey, seed);
+          puts.addAndGet(ret);
+        }
+      };
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+    }
+
+    System.out.println("time=" + timer.getTime() + " impl=" +sc.getClass().getSimpleName()
+        +" nThreads= " + nThreads + " size="+cacheSize+" maxKey="+maxKey+" gets="+numGets
+        +" hitRatio="+(1-(((double)puts.get())/numGets)));
+    sc.close();
+  }
+
+  void perfTestAll(int nThreads, int numGets, int cacheSize, int maxKey) {
+    cachePerfTest(new LRUCache(), nThreads, numGets, cacheSize, maxKey);
+    cachePerfTest(new FastLRUCache(), nThreads, numGets, cacheSize, maxKey);
+    cachePerfTest(new LFUCache(), nThreads, numGets, cacheSize, maxKey);
+    cachePerfTest(new TinyLFUCache(), nThreads, numGets, cacheSize, maxKey);
+  }
+
+  /***
+  public void testCachePerf() {
+    // warmup
+    perfTestAll(2, 100000, 100000, 120000);
+    perfTestAll(1, 2000000, 100000, 200000); // big cache
+    perfTestAll(8, 2000000, 100000, 200000); // big cache, many threads
+    perfTestAll(1, 2000000, 100000, 1000000); // big cache, large key space
+    perfTestAll(8, 2000000, 100000, 1000000); // big cache, large key space, many threads
+    perfTestAll(1, 2000000, 1000, 10000); // small cache
+    perfTestAll(8, 2000000, 1000, 10000); // small cache, many threads
+    perfTestAll(1, 2000000, 1000, 100000); // small cache, large key space
+    perfTestAll(8, 2000000, 1000, 100000); // small cache, large key space, many threads
+  }
+  ***/
+}
@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.LogDocMergePolicy;
@@ -318,10 +320,41 @@ public class SolrCmdDistributorTest extends BaseDistributedSearchTestCase {
     testOneRetry();
     testRetryNodeAgainstBadAddress();
     testRetryNodeWontRetrySocketError();
+    testStreamErrorsReportedPerUpdate();
     
     testDistribOpenSearcher();
   }
 
+  private void testStreamErrorsReportedPerUpdate() throws Exception {
+    SolrCmdDistributor cmdDistrib = new SolrCmdDistributor(updateShardHandler);
+    String baseUrl = ((HttpSolrClient) clients.get(0)).getBaseURL();
+    ZkNodeProps nodeProps = new ZkNodeProps(ZkStateReader.BASE_URL_PROP, baseUrl.substring(0, baseUrl.lastIndexOf('/')),
+        ZkStateReader.CORE_NAME_PROP, "no_such_core");
+    List<Node> nodes = Collections.<Node>singletonList(new StdNode(new ZkCoreNodeProps(nodeProps)));
+
+    // the adds are streamed to the node together, and fail together
+    int numDocs = atLeast(10);
+    Set<String> ids = new HashSet<>();
+    for (int i = 0; i < numDocs; i++) {
+      AddUpdateCommand cmd = new AddUpdateCommand(null);
+      String docId = Integer.toString(id.incrementAndGet());
+      cmd.solrDoc = sdoc("id", docId);
+      cmd.pollQueueTime = 100;
+      cmdDistrib.distribAdd(cmd, nodes, new ModifiableSolrParams());
+      ids.add(docId);
+    }
+    cmdDistrib.finish();
+
+    // but every one of them is reported
+    Set<String> failedIds = new HashSet<>();
+    for (Error error : cmdDistrib.getErrors()) {
+      assertEquals(404, error.statusCode);
+      failedIds.add(error.req.uReq.getDocuments().get(0).getFieldValue("id").toString());
+    }
+    assertEquals(numDocs, cmdDistrib.getErrors().size());
+    assertEquals(ids, failedIds);
+  }
+
   private void testMaxRetries() throws IOException {
     final MockStreamingSolrClients streamingClients = new MockStreamingSolrClients(updateShardHandler);
     SolrCmdDistributor cmdDistrib = new SolrCmdDistributor(streamingClients, 5, 0);
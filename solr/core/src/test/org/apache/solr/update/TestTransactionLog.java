@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrInputDocument;
+
+public class TestTransactionLog extends SolrTestCaseJ4 {
+
+  public void testConcurrentFsync() throws Exception {
+    File file = new File(createTempDir().toFile(), "tlog.0000000000000000001");
+    final TransactionLog tlog = new TransactionLog(file, Collections.<String>emptyList());
+    try {
+      final int numThreads = atLeast(4);
+      final int numDocs = atLeast(50);
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int thread = t;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              for (int i = 0; i < numDocs; i++) {
+                SolrInputDocument doc = new SolrInputDocument();
+                doc.addField("id", thread + "_" + i);
+                AddUpdateCommand cmd = new AddUpdateCommand(null);
+                cmd.solrDoc = doc;
+                cmd.setVersion(thread * numDocs + i + 1);
+                tlog.write(cmd, 0);
+                tlog.finish(UpdateLog.SyncLevel.FSYNC);
+              }
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      // every update was synced, by fewer fsyncs when they came in together
+      long numSyncs = tlog.numSyncs;
+      assertTrue("syncs: " + numSyncs, numSyncs >= 1 && numSyncs <= numThreads * numDocs);
+
+      // nothing new to sync
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(numSyncs, tlog.numSyncs);
+
+      Set<Long> versions = new HashSet<>();
+      TransactionLog.LogReader reader = tlog.getReader(0);
+      try {
+        Object o;
+        while ((o = reader.next()) != null) {
+          versions.add((Long) ((List) o).get(1));
+        }
+      } finally {
+        reader.close();
+      }
+      assertEquals(numThreads * numDocs, versions.size());
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  public void testFsyncAfterRollback() throws Exception {
+    File file = new File(createTempDir().toFile(), "tlog.0000000000000000001");
+    TransactionLog tlog = new TransactionLog(file, Collections.<String>emptyList());
+    try {
+      tlog.write(add("1", 1), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(1, tlog.numSyncs);
+
+      // buffered updates, synced and then dropped
+      long pos = tlog.snapshot();
+      tlog.write(add("2", 2), 0);
+      tlog.write(add("3", 3), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(2, tlog.numSyncs);
+      tlog.rollback(pos);
+
+      // an update written where the dropped ones were is synced again
+      tlog.write(add("4", 4), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(3, tlog.numSyncs);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(3, tlog.numSyncs);
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  private static AddUpdateCommand add(String id, long version) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField("id", id);
+    AddUpdateCommand cmd = new AddUpdateCommand(null);
+    cmd.solrDoc = doc;
+    cmd.setVersion(version);
+    return cmd;
+  }
+}
@@ -48,6 +48,63 @@ public class VersionInfoTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testLockWaitsCounted() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema-version-indexed.xml");
+    try {
+      final VersionInfo vInfo = h.getCore().getUpdateHandler().getUpdateLog().getVersionInfo();
+      final VersionBucket bucket = vInfo.bucket(random().nextInt());
+      long bucketWaits = vInfo.getBucketWaits();
+      long blockedUpdates = vInfo.getBlockedUpdates();
+
+      // no waits without contention
+      vInfo.lockForUpdate();
+      vInfo.lockBucket(bucket);
+      vInfo.unlockBucket(bucket);
+      vInfo.unlockForUpdate();
+      assertEquals(bucketWaits, vInfo.getBucketWaits());
+      assertEquals(blockedUpdates, vInfo.getBlockedUpdates());
+
+      Thread update = new Thread() {
+        @Override
+        public void run() {
+          vInfo.lockForUpdate();
+          try {
+            vInfo.lockBucket(bucket);
+            vInfo.unlockBucket(bucket);
+          } finally {
+            vInfo.unlockForUpdate();
+          }
+        }
+      };
+      vInfo.blockUpdates();
+      try {
+        update.start();
+        while (!vInfo.lock.hasQueuedThreads()) {
+          Thread.sleep(1);
+        }
+        vInfo.lockBucket(bucket);
+      } finally {
+        vInfo.unblockUpdates();
+      }
+      try {
+        while (!bucket.lock.hasQueuedThreads()) {
+          Thread.sleep(1);
+        }
+      } finally {
+        vInfo.unlockBucket(bucket);
+      }
+      update.join();
+
+      assertEquals(bucketWaits + 1, vInfo.getBucketWaits());
+      assertEquals(blockedUpdates + 1, vInfo.getBlockedUpdates());
+      assertTrue(vInfo.getBucketWaitNanos() > 0);
+      assertTrue(vInfo.getBlockedUpdateNanos() > 0);
+    } finally {
+      deleteCore();
+    }
+  }
+
   protected void testMaxVersionLogic(SolrQueryRequest req) throws Exception {
     UpdateHandler uhandler = req.getCore().getUpdateHandler();
     UpdateLog ulog = uhandler.getUpdateLog();
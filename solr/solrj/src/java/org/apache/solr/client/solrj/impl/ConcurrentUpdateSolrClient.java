@@ -47,7 +47,9 @@ import org.slf4j.MDC;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
 import java.util.Set;
@@ -194,12 +196,15 @@ public class ConcurrentUpdateSolrClient extends SolrClient {
       while (!queue.isEmpty()) {
         HttpPost method = null;
         HttpResponse response = null;
+        // the requests sent in this stream, which its response is about
+        final List<UpdateRequest> streamed = new ArrayList<>();
 
         try {
           final UpdateRequest updateRequest =
               queue.poll(pollQueueTime, TimeUnit.MILLISECONDS);
           if (updateRequest == null)
             break;
+          streamed.add(updateRequest);
 
           String contentType = client.requestWriter.getUpdateContentType();
           final boolean isXml = ClientUtils.TEXT_XML.equals(contentType);
@@ -221,6 +226,9 @@ public class ConcurrentUpdateSolrClient extends SolrClient {
                     queue.add(req); // params are different, push back to queue
                     break;
                   }
+                  if (req != updateRequest) {
+                    streamed.add(req);
+                  }
 
                   client.requestWriter.write(req, out);
                   if (isXml) {
@@ -298,10 +306,18 @@ public class ConcurrentUpdateSolrClient extends SolrClient {
               log.warn("Failed to parse error response from " + client.getBaseURL() + " due to: " + exc);
             }
 
-            handleError(solrExc);
+            handleError(solrExc, streamed);
           } else {
-            onSuccess(response);
+            try {
+              onSuccess(response, streamed);
+            } catch (RuntimeException e) {
+              // the updates were applied: a failing callback doesn't make the stream fail
+              log.error("Error in onSuccess for " + client.getBaseURL(), e);
+            }
           }
+        } catch (Exception e) {
+          handleError(e, streamed);
+          return;
         } finally {
           try {
             if (response != null) {
@@ -453,6 +469,16 @@ public class ConcurrentUpdateSolrClient extends SolrClient {
   public void handleError(Throwable ex) {
     log.error("error", ex);
   }
+
+  /**
+   * Called when a stream of updates failed, with the requests that were sent in it, to find out
+   * which updates may not have been applied.  Calls {@link #handleError(Throwable)} by default.
+   *
+   * @param requests the requests of the stream, in the order they were sent
+   */
+  public void handleError(Throwable ex, List<UpdateRequest> requests) {
+    handleError(ex);
+  }
   
   /**
    * Intended to be used as an extension point for doing post processing after a request completes.
@@ -461,6 +487,17 @@ public class ConcurrentUpdateSolrClient extends SolrClient {
     // no-op by design, override to add functionality
   }
 
+  /**
+   * Called when a stream of updates succeeded, with the requests that were sent in it.  All the
+   * requests of a stream are acknowledged by its response.  Calls {@link #onSuccess(HttpResponse)}
+   * by default.
+   *
+   * @param requests the requests of the stream, in the order they were sent
+   */
+  public void onSuccess(HttpResponse resp, List<UpdateRequest> requests) {
+    onSuccess(resp);
+  }
+
   @Override
   public void close() {
     shutdown();
@@ -154,6 +154,12 @@ public interface CommonParams {
    * Timeout value in milliseconds.  If not set, or the value is &gt;= 0, there is no timeout.
    */
   public static final String TIME_ALLOWED = "timeAllowed";
+
+  /**
+   * Id of a request, unique among the running requests of a core, by which the request
+   * can be cancelled while it runs.
+   */
+  public static final String QUERY_ID = "queryId";
   
   /** 'true' if the header should include the handler name */
   public static final String HEADER_ECHO_HANDLER = "echoHandler";
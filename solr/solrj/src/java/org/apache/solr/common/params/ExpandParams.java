@@ -28,5 +28,8 @@ public interface ExpandParams {
   public static final String EXPAND_FIELD = EXPAND + ".field";
   public static final String EXPAND_Q = EXPAND + ".q";
   public static final String EXPAND_FQ = EXPAND + ".fq";
+
+  /** Gather the expanded groups while collapsing instead of running the query again? (true/false) */
+  public static final String EXPAND_SINGLE_PASS = EXPAND + ".singlePass";
 }
 
@@ -53,6 +53,18 @@ public interface ShardParams {
   /** query purpose for shard requests */
   public static final String SHARDS_PURPOSE = "shards.purpose";
 
+  /** Send a backup request to another replica of a shard that is slow to answer? (true/false) */
+  public static final String SHARDS_HEDGE = "shards.hedge";
+
+  /** The percentile of the response times of a shard's replicas after which the backup request is sent */
+  public static final String SHARDS_HEDGE_PERCENTILE = "shards.hedge.percentile";
+
+  /** Use the responses of the shards cached on the node that distributes the request, if it caches them? (true/false) */
+  public static final String SHARDS_CACHE = "shards.cache";
+
+  /** Put the version of the index a shard request was answered from in the response header? (true/false) */
+  public static final String SHARDS_INDEX_VERSION = "shards.indexVersion";
+
   public static final String _ROUTE_ = "_route_";
 
   /** Force a single-pass distributed query? (true/false) */
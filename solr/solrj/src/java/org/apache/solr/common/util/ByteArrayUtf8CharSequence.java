@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.common.util;
+
+/**
+ * A string value kept as the UTF-8 bytes it was read as.  The bytes are only decoded, once, when
+ * the characters are asked for, and {@link JavaBinCodec} writes them back out as they are.
+ *
+ * @see JavaBinCodec#setReadStringAsCharSeq(boolean)
+ */
+public class ByteArrayUtf8CharSequence implements CharSequence {
+  private final byte[] buf;
+  private final int offset;
+  private final int length;
+  private String str;
+
+  public ByteArrayUtf8CharSequence(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public ByteArrayUtf8CharSequence(String str) {
+    this.buf = new byte[ByteUtils.calcUTF16toUTF8Length(str, 0, str.length())];
+    this.offset = 0;
+    this.length = ByteUtils.UTF16toUTF8(str, 0, str.length(), buf, 0);
+    this.str = str;
+  }
+
+  public byte[] getBuf() {
+    return buf;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  /** The number of UTF-8 bytes */
+  public int size() {
+    return length;
+  }
+
+  /** Whether the bytes were decoded already */
+  public boolean isDecoded() {
+    return str != null;
+  }
+
+  @Override
+  public int length() {
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    if (str == null) {
+      str = ByteUtils.UTF8toUTF16(buf, offset, length);
+    }
+    return str;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof ByteArrayUtf8CharSequence)) {
+      return false;
+    }
+    ByteArrayUtf8CharSequence that = (ByteArrayUtf8CharSequence) other;
+    if (length != that.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buf[offset + i] != that.buf[that.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return Hash.murmurhash3_x86_32(buf, offset, length, 0);
+  }
+}
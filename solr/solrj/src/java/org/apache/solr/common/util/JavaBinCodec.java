@@ -94,6 +94,7 @@ public class JavaBinCodec {
   protected FastOutputStream daos;
   private StringCache stringCache;
   private WritableDocFields writableDocFields;
+  private boolean readStringAsCharSeq;
 
   public JavaBinCodec() {
     resolver =null;
@@ -109,6 +110,17 @@ public class JavaBinCodec {
 
   }
 
+  /**
+   * When set, the string values of the fields of a {@link SolrInputDocument} are read as
+   * {@link ByteArrayUtf8CharSequence}s rather than decoded to {@link String}s, and are written
+   * back without being transcoded.  Only for readers whose consumers treat field values as
+   * {@link CharSequence}s, or just pass the documents on.
+   */
+  public JavaBinCodec setReadStringAsCharSeq(boolean readStringAsCharSeq) {
+    this.readStringAsCharSeq = readStringAsCharSeq;
+    return this;
+  }
+
   public JavaBinCodec(ObjectResolver resolver, StringCache stringCache) {
     this.resolver = resolver;
     this.stringCache = stringCache;
@@ -205,6 +217,11 @@ public class JavaBinCodec {
 
   public Object readVal(DataInputInputStream dis) throws IOException {
     tagByte = dis.readByte();
+    return readObject(dis);
+  }
+
+  /** Reads the value of the {@link #tagByte} that was just read */
+  protected Object readObject(DataInputInputStream dis) throws IOException {
 
     // if ((tagByte & 0xe0) == 0) {
     // if top 3 bits are clear, this is a normal tag
@@ -456,12 +473,32 @@ public class JavaBinCodec {
       } else {
         fieldName = (String)obj;
       }
-      Object fieldVal = readVal(dis);
+      Object fieldVal = readFieldValue(dis);
       sdoc.setField(fieldName, fieldVal, boost);
     }
     return sdoc;
   }
 
+  private Object readFieldValue(DataInputInputStream dis) throws IOException {
+    if (!readStringAsCharSeq) {
+      return readVal(dis);
+    }
+    // strings, alone or in a multi-valued field, keep their bytes
+    tagByte = dis.readByte();
+    switch (tagByte >>> 5) {
+      case STR >>> 5:
+        return readUtf8(dis);
+      case ARR >>> 5:
+        int sz = readSize(dis);
+        ArrayList<Object> l = new ArrayList<>(sz);
+        for (int i = 0; i < sz; i++) {
+          l.add(readFieldValue(dis));
+        }
+        return l;
+    }
+    return readObject(dis);
+  }
+
   public void writeSolrInputDocument(SolrInputDocument sdoc) throws IOException {
     List<SolrInputDocument> children = sdoc.getChildDocuments();
     int sz = sdoc.size() + (children==null ? 0 : children.size());
@@ -666,6 +703,24 @@ public class JavaBinCodec {
     }
   }
 
+  /**
+   * read a string as its UTF-8 bytes, without decoding them
+   */
+  public ByteArrayUtf8CharSequence readUtf8(DataInputInputStream dis) throws IOException {
+    int sz = readSize(dis);
+    byte[] buf = new byte[sz];
+    dis.readFully(buf, 0, sz);
+    return new ByteArrayUtf8CharSequence(buf, 0, sz);
+  }
+
+  /**
+   * write the UTF-8 bytes of the string as they are
+   */
+  public void writeUtf8CharSeq(ByteArrayUtf8CharSequence utf8) throws IOException {
+    writeTag(STR, utf8.size());
+    daos.write(utf8.getBuf(), utf8.getOffset(), utf8.size());
+  }
+
   public void writeInt(int val) throws IOException {
     if (val > 0) {
       int b = SINT | (val & 0x0f);
@@ -727,6 +782,9 @@ public class JavaBinCodec {
     } else if (val instanceof String) {
       writeStr((String) val);
       return true;
+    } else if (val instanceof ByteArrayUtf8CharSequence) {
+      writeUtf8CharSeq((ByteArrayUtf8CharSequence) val);
+      return true;
     } else if (val instanceof Number) {
 
       if (val instanceof Integer) {
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.noggit.CharArr;
+
+/**
+ * A pull reader of a javabin response that hands out the documents of its document lists one
+ * field value at a time, rather than building them all in memory first.  Nothing of a document
+ * is kept once the cursor moves past it, and the string and number values are read into a
+ * {@link FieldValue} that is reused for every value, so even very large pages of documents are
+ * read with constant memory.
+ * <p>
+ * The raw javabin stream of a request is available with an
+ * {@link org.apache.solr.client.solrj.impl.InputStreamResponseParser}:
+ * <pre class="prettyprint">
+ * QueryRequest req = new QueryRequest(params);
+ * req.setResponseParser(new InputStreamResponseParser("javabin"));
+ * InputStream stream = (InputStream) client.request(req).get("stream");
+ * try (JavaBinDocCursor cursor = new JavaBinDocCursor(stream)) {
+ *   while (cursor.nextDocList()) {
+ *     while (cursor.nextDoc()) {
+ *       while (cursor.nextField()) {
+ *         String name = cursor.getFieldName();
+ *         while (cursor.nextValue()) {
+ *           FieldValue value = cursor.getValue();
+ *           ...
+ *         }
+ *       }
+ *     }
+ *   }
+ *   NamedList&lt;Object&gt; rest = cursor.getResponse();
+ * }
+ * </pre>
+ *
+ * Only the document lists at the top level of the response are streamed; everything else is
+ * read as {@link JavaBinCodec} would, into {@link #getResponse()}.
+ */
+public class JavaBinDocCursor extends JavaBinCodec implements Closeable {
+  private final FastInputStream dis;
+  private final NamedList<Object> response = new NamedList<>();
+  private final FieldValue value = new FieldValue();
+
+  private int entriesLeft;
+  private SolrDocumentList docList;
+  private int docsLeft;
+  private int fieldsLeft;
+  private List<SolrDocument> childDocs;
+  private String fieldName;
+  private int valuesLeft;
+  private boolean tagRead;
+
+  public JavaBinDocCursor(InputStream is) throws IOException {
+    dis = FastInputStream.wrap(is);
+    version = dis.readByte();
+    if (version != 2) {
+      throw new RuntimeException("Invalid version (expected 2, but " + version
+          + ") or the data in not in 'javabin' format");
+    }
+    tagByte = dis.readByte();
+    if ((tagByte >>> 5) != (ORDERED_MAP >>> 5) && (tagByte >>> 5) != (NAMED_LST >>> 5)) {
+      throw new RuntimeException("the response must be a NamedList");
+    }
+    entriesLeft = readSize(dis);
+  }
+
+  /**
+   * Moves to the next document list at the top level of the response, reading the entries
+   * before it into {@link #getResponse()}.  The documents of the current list that were not
+   * read are skipped.
+   *
+   * @return false when there are no more document lists, and the whole response was read
+   */
+  public boolean nextDocList() throws IOException {
+    while (nextDoc()) {
+      // skip the rest of the current list
+    }
+    while (entriesLeft > 0) {
+      entriesLeft--;
+      String name = (String) readVal(dis);
+      tagByte = dis.readByte();
+      if (tagByte != SOLRDOCLST) {
+        response.add(name, readObject(dis));
+        continue;
+      }
+      List info = (List) readVal(dis);
+      docList = new SolrDocumentList();
+      docList.setNumFound((Long) info.get(0));
+      docList.setStart((Long) info.get(1));
+      docList.setMaxScore((Float) info.get(2));
+      // the list goes in the response without its documents
+      response.add(name, docList);
+      tagByte = dis.readByte();
+      if ((tagByte >>> 5) != (ARR >>> 5)) {
+        throw new RuntimeException("doclist must have an array");
+      }
+      docsLeft = readSize(dis);
+      return true;
+    }
+    docList = null;
+    return false;
+  }
+
+  /** The current document list, with its numFound, start and maxScore, but without documents */
+  public SolrDocumentList getDocList() {
+    return docList;
+  }
+
+  /**
+   * Moves to the next document of the current list.  The fields of the current document that
+   * were not read are skipped.
+   */
+  public boolean nextDoc() throws IOException {
+    while (nextField()) {
+      // skip the rest of the current document
+    }
+    if (docsLeft <= 0) {
+      return false;
+    }
+    docsLeft--;
+    tagByte = dis.readByte();
+    if (tagByte != SOLRDOC) {
+      throw new RuntimeException("doclist must only have documents");
+    }
+    tagByte = dis.readByte();
+    fieldsLeft = readSize(dis);
+    childDocs = null;
+    return true;
+  }
+
+  /**
+   * Moves to the next field of the current document.  The values of the current field that
+   * were not read are skipped.
+   */
+  public boolean nextField() throws IOException {
+    while (nextValue()) {
+      // skip the rest of the current field
+    }
+    while (fieldsLeft > 0) {
+      fieldsLeft--;
+      Object obj = readVal(dis); // could be a field name, or a child document
+      if (obj instanceof SolrDocument) {
+        if (childDocs == null) childDocs = new ArrayList<>();
+        childDocs.add((SolrDocument) obj);
+        continue;
+      }
+      fieldName = (String) obj;
+      tagByte = dis.readByte();
+      if ((tagByte >>> 5) == (ARR >>> 5)) {
+        valuesLeft = readSize(dis);
+        tagRead = false;
+      } else {
+        valuesLeft = 1;
+        tagRead = true;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * The child documents of the current document.  They come after its fields, so they are
+   * only all known once {@link #nextField()} returned false.
+   */
+  public List<SolrDocument> getChildDocuments() {
+    return childDocs;
+  }
+
+  /**
+   * Moves to the next value of the current field: a single valued field has one value, and a
+   * multi valued field one for each of its values.
+   */
+  public boolean nextValue() throws IOException {
+    if (valuesLeft <= 0) {
+      return false;
+    }
+    valuesLeft--;
+    if (!tagRead) {
+      tagByte = dis.readByte();
+    }
+    tagRead = false;
+    readValue();
+    return true;
+  }
+
+  /** The current value, in a holder that is reused by the next call to {@link #nextValue()} */
+  public FieldValue getValue() {
+    return value;
+  }
+
+  /**
+   * The entries of the response read so far.  The document lists are in it without their
+   * documents.
+   */
+  public NamedList<Object> getResponse() {
+    return response;
+  }
+
+  @Override
+  public void close() throws IOException {
+    dis.close();
+  }
+
+  private void readValue() throws IOException {
+    value.tag = tagByte;
+    value.object = null;
+    switch (tagByte >>> 5) {
+      case STR >>> 5:
+        int sz = readSize(dis);
+        if (bytes == null || bytes.length < sz) bytes = new byte[sz];
+        dis.readFully(bytes, 0, sz);
+        value.chars.reset();
+        ByteUtils.UTF8toUTF16(bytes, 0, sz, value.chars);
+        value.tag = STR;
+        return;
+      case SINT >>> 5:
+        value.longValue = readSmallInt(dis);
+        value.tag = INT;
+        return;
+      case SLONG >>> 5:
+        value.longValue = readSmallLong(dis);
+        value.tag = LONG;
+        return;
+    }
+    switch (tagByte) {
+      case INT:
+        value.longValue = dis.readInt();
+        return;
+      case LONG:
+        value.longValue = dis.readLong();
+        return;
+      case SHORT:
+        value.longValue = dis.readShort();
+        return;
+      case BYTE:
+        value.longValue = dis.readByte();
+        return;
+      case FLOAT:
+        value.doubleValue = dis.readFloat();
+        return;
+      case DOUBLE:
+        value.doubleValue = dis.readDouble();
+        return;
+    }
+    value.object = readObject(dis);
+    value.tag = NULL;
+  }
+
+  /**
+   * A field value.  Strings and numbers are held without creating objects for them, and are
+   * only valid until the cursor moves on; {@link #getObject()} makes a copy that stays.
+   */
+  public static class FieldValue {
+    private final CharArr chars = new CharArr();
+    private byte tag;
+    private long longValue;
+    private double doubleValue;
+    private Object object;
+
+    public boolean isString() {
+      return tag == STR;
+    }
+
+    /** The characters of a string value, reused by the next value */
+    public CharSequence getCharSequence() {
+      if (tag != STR) throw new IllegalStateException("not a string value");
+      return chars;
+    }
+
+    public boolean isNumber() {
+      switch (tag) {
+        case INT: case LONG: case SHORT: case BYTE: case FLOAT: case DOUBLE:
+          return true;
+        default:
+          return object instanceof Number;
+      }
+    }
+
+    public long getLong() {
+      switch (tag) {
+        case INT: case LONG: case SHORT: case BYTE:
+          return longValue;
+        case FLOAT: case DOUBLE:
+          return (long) doubleValue;
+        default:
+          return ((Number) object).longValue();
+      }
+    }
+
+    public double getDouble() {
+      switch (tag) {
+        case INT: case LONG: case SHORT: case BYTE:
+          return longValue;
+        case FLOAT: case DOUBLE:
+          return doubleValue;
+        default:
+          return ((Number) object).doubleValue();
+      }
+    }
+
+    /** The value as {@link JavaBinCodec} would have read it */
+    public Object getObject() {
+      switch (tag) {
+        case STR:
+          return chars.toString();
+        case INT:
+          return (int) longValue;
+        case LONG:
+          return longValue;
+        case SHORT:
+          return (short) longValue;
+        case BYTE:
+          return (byte) longValue;
+        case FLOAT:
+          return (float) doubleValue;
+        case DOUBLE:
+          return doubleValue;
+        default:
+          return object;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(getObject());
+    }
+  }
+}
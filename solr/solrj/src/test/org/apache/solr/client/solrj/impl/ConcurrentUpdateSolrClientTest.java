@@ -199,6 +199,42 @@ public class ConcurrentUpdateSolrClientTest extends SolrJettyTestBase {
         TestServlet.numDocsRcvd.get() == expectedDocs);
   }
   
+  @Test
+  public void testFailingOnSuccess() throws Exception {
+    TestServlet.clear();
+
+    String serverUrl = jetty.getBaseUrl().toString() + "/cuss/foo";
+
+    final AtomicInteger successCounter = new AtomicInteger(0);
+    final AtomicInteger errorCounter = new AtomicInteger(0);
+
+    // a stream that succeeded isn't reported as failed when the success callback throws
+    @SuppressWarnings("serial")
+    ConcurrentUpdateSolrClient concurrentClient = new ConcurrentUpdateSolrClient(serverUrl, 10, 1) {
+      @Override
+      public void handleError(Throwable ex) {
+        errorCounter.incrementAndGet();
+      }
+      @Override
+      public void onSuccess(HttpResponse resp) {
+        successCounter.incrementAndGet();
+        throw new RuntimeException("failing onSuccess");
+      }
+    };
+    concurrentClient.setParser(new BinaryResponseParser());
+    concurrentClient.setRequestWriter(new BinaryRequestWriter());
+    concurrentClient.setPollQueueTime(0);
+
+    int numDocs = 10;
+    new SendDocsRunnable("failingOnSuccess", numDocs, concurrentClient).run();
+    concurrentClient.blockUntilFinished();
+    concurrentClient.shutdownNow();
+
+    assertEquals(0, errorCounter.get());
+    assertEquals(TestServlet.numReqsRcvd.get(), successCounter.get());
+    assertEquals(numDocs, TestServlet.numDocsRcvd.get());
+  }
+
   class SendDocsRunnable implements Runnable {
     
     private String id;
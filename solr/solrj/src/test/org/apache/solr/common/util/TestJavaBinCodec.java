@@ -304,6 +304,131 @@ public class TestJavaBinCodec extends SolrTestCaseJ4 {
     assertFalse(grandChildDocuments.get(0).hasChildDocuments());
     assertNull(grandChildDocuments.get(0).getChildDocuments());
   }
+
+  @Test
+  public void testReadStringAsCharSeq() throws IOException {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField("id", "1");
+    doc.addField("multi", "a\u00e9");
+    doc.addField("multi", "\u20ac\ud801\udc00");
+    doc.addField("num", 5);
+    List<Object> record = new ArrayList<>();
+    record.add("outside");
+    record.add(doc);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(record, os);
+    byte[] bytes = os.toByteArray();
+
+    List read = (List) new JavaBinCodec().setReadStringAsCharSeq(true).unmarshal(new ByteArrayInputStream(bytes));
+    // only the values of the fields are left undecoded
+    assertEquals("outside", read.get(0));
+    SolrInputDocument readDoc = (SolrInputDocument) read.get(1);
+    assertEquals(5, readDoc.getFieldValue("num"));
+    ByteArrayUtf8CharSequence id = (ByteArrayUtf8CharSequence) readDoc.getFieldValue("id");
+    assertFalse(id.isDecoded());
+    List<Object> multi = new ArrayList<>(readDoc.getFieldValues("multi"));
+    assertEquals(2, multi.size());
+    assertTrue(multi.get(1) instanceof ByteArrayUtf8CharSequence);
+    assertEquals("\u20ac\ud801\udc00", multi.get(1).toString());
+    assertEquals(new ByteArrayUtf8CharSequence("a\u00e9"), multi.get(0));
+
+    // written back as they were read, and without decoding them
+    os = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(read, os);
+    assertTrue(Arrays.equals(bytes, os.toByteArray()));
+    assertFalse(id.isDecoded());
+    assertEquals("1", id.toString());
+    assertEquals(1, id.length());
+    assertEquals('1', id.charAt(0));
+  }
+
+  @Test
+  public void testDocCursor() throws IOException {
+    NamedList<Object> response = new NamedList<>();
+    response.add("responseHeader", new SimpleOrderedMap<>());
+    SolrDocumentList docs = new SolrDocumentList();
+    docs.setNumFound(100);
+    docs.setStart(10);
+    docs.setMaxScore(2.5f);
+    for (int i = 0; i < 3; i++) {
+      SolrDocument doc = new SolrDocument();
+      doc.addField("id", "doc" + i);
+      doc.addField("cat", "a" + i);
+      doc.addField("cat", "b" + i);
+      doc.addField("popularity", i);
+      doc.addField("price", i + 0.5f);
+      doc.addField("date", new Date(i));
+      if (i == 1) {
+        SolrDocument child = new SolrDocument();
+        child.addField("id", "child");
+        doc.addChildDocument(child);
+      }
+      docs.add(doc);
+    }
+    response.add("response", docs);
+    response.add("after", "the docs");
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(response, os);
+
+    JavaBinDocCursor cursor = new JavaBinDocCursor(new ByteArrayInputStream(os.toByteArray()));
+    try {
+      assertTrue(cursor.nextDocList());
+      assertEquals(100, cursor.getDocList().getNumFound());
+      assertEquals(10, cursor.getDocList().getStart());
+      assertEquals(2.5f, cursor.getDocList().getMaxScore(), 0f);
+      assertEquals(2, cursor.getResponse().size());
+
+      // every value of the first document
+      assertTrue(cursor.nextDoc());
+      List<String> read = new ArrayList<>();
+      while (cursor.nextField()) {
+        while (cursor.nextValue()) {
+          JavaBinDocCursor.FieldValue value = cursor.getValue();
+          read.add(cursor.getFieldName() + "=" + value);
+          if (cursor.getFieldName().equals("cat")) {
+            assertTrue(value.isString());
+            assertEquals('a', value.getCharSequence().charAt(0));
+          } else if (cursor.getFieldName().equals("popularity")) {
+            assertTrue(value.isNumber());
+            assertEquals(0, value.getLong());
+            assertEquals(0, value.getObject());
+          } else if (cursor.getFieldName().equals("price")) {
+            assertEquals(0.5, value.getDouble(), 0.0);
+            assertEquals(0.5f, value.getObject());
+          } else if (cursor.getFieldName().equals("date")) {
+            assertEquals(new Date(0), value.getObject());
+          }
+          break;
+        }
+      }
+      assertEquals(Arrays.asList("id=doc0", "cat=a0", "popularity=0", "price=0.5", "date=" + new Date(0)), read);
+      assertNull(cursor.getChildDocuments());
+
+      // only the id of the second, and its children once its fields were read
+      assertTrue(cursor.nextDoc());
+      assertTrue(cursor.nextField());
+      assertEquals("id", cursor.getFieldName());
+      assertTrue(cursor.nextValue());
+      assertEquals("doc1", cursor.getValue().getCharSequence().toString());
+      assertFalse(cursor.nextValue());
+      while (cursor.nextField()) {
+        // skip
+      }
+      assertEquals(1, cursor.getChildDocuments().size());
+      assertEquals("child", cursor.getChildDocuments().get(0).getFieldValue("id"));
+
+      // the third is skipped
+      assertFalse(cursor.nextDocList());
+      assertEquals(3, cursor.getResponse().size());
+      assertEquals("the docs", cursor.getResponse().get("after"));
+      assertTrue(((SolrDocumentList) cursor.getResponse().get("response")).isEmpty());
+    } finally {
+      cursor.close();
+    }
+  }
+
   @Test
   public void testStringCaching() throws Exception {
     Map<String, Object> m = Utils.makeMap("key1", "val1", "key2", "val2");